@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ValueCacheImpl;
+import org.diirt.datasource.formula.FormulaAst;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.FusedListDouble;
+import org.diirt.util.array.ListMath;
+import org.diirt.util.array.ListNumber;
+import org.diirt.vtype.VNumberArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.vtype.ValueFactory.*;
+
+/**
+ * Measures {@code (a+b)*c - d} on waveforms, reading the result twice
+ * (e.g. once for rendering and once for statistics).
+ * <p>
+ * The lazy result walks the chain of operations at each read, while the
+ * fused result is calculated once, block by block, into an array.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayFormulaBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private ArrayDouble a;
+    private ArrayDouble b;
+    private ArrayDouble c;
+    private ArrayDouble d;
+    private ValueCacheImpl<Object> input;
+    private ReadFunction<?> formula;
+
+    @Setup
+    public void setUp() {
+        a = array(1);
+        b = array(2);
+        c = array(3);
+        d = array(4);
+        input = new ValueCacheImpl<>(Object.class);
+        Map<String, ReadFunction<?>> channels = new HashMap<>();
+        channels.put("a", input);
+        channels.put("b", constant(b));
+        channels.put("c", constant(c));
+        channels.put("d", constant(d));
+        formula = FormulaAst.formula("=arrayMult('a' + 'b', 'c') - 'd'").toReadFunction(channels);
+    }
+
+    private ArrayDouble array(int seed) {
+        double[] data = new double[size];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = Math.sin(seed * 31.0 + i);
+        }
+        return new ArrayDouble(data);
+    }
+
+    private ValueCacheImpl<Object> constant(ArrayDouble data) {
+        ValueCacheImpl<Object> cache = new ValueCacheImpl<>(Object.class);
+        cache.writeValue(newVDoubleArray(data, alarmNone(), timeNow(), displayNone()));
+        return cache;
+    }
+
+    private static double sum(ListNumber data) {
+        double sum = 0;
+        for (int i = 0; i < data.size(); i++) {
+            sum += data.getDouble(i);
+        }
+        return sum;
+    }
+
+    private ListNumber chain() {
+        return ListMath.subtract(ListMath.multiply(ListMath.add(a, b), c), d);
+    }
+
+    /**
+     * Reads the lazy result twice.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public double lazy() {
+        ListNumber result = chain();
+        return sum(result) + sum(result);
+    }
+
+    /**
+     * Materializes the result, and reads it twice.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public double fused() {
+        ListNumber result = ((FusedListDouble) chain()).toArrayDouble();
+        return sum(result) + sum(result);
+    }
+
+    /**
+     * Evaluates the formula on a new waveform, and reads the result twice.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public double formula() {
+        input.writeValue(newVDoubleArray(a, alarmNone(), timeNow(), displayNone()));
+        ListNumber result = ((VNumberArray) formula.readValue()).getData();
+        return sum(result) + sum(result);
+    }
+
+}
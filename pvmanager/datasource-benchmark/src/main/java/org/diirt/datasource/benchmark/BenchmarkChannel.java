@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import org.diirt.datasource.ChannelHandlerReadSubscription;
+import org.diirt.datasource.ChannelWriteCallback;
+import org.diirt.datasource.MultiplexedChannelHandler;
+import org.diirt.datasource.ValueCacheImpl;
+import org.diirt.datasource.WriteFunction;
+
+/**
+ * A channel handler whose messages are triggered by the benchmark, so that
+ * the fan-out to the monitors can be measured without a data source.
+ *
+ * @author carcassi
+ */
+class BenchmarkChannel extends MultiplexedChannelHandler<Object, Object> {
+
+    private static final WriteFunction<Exception> ignoreException = new WriteFunction<Exception>() {
+
+        @Override
+        public void writeValue(Exception newValue) {
+        }
+    };
+
+    private static final WriteFunction<Boolean> ignoreConnection = new WriteFunction<Boolean>() {
+
+        @Override
+        public void writeValue(Boolean newValue) {
+        }
+    };
+
+    BenchmarkChannel(String channelName) {
+        super(channelName);
+    }
+
+    /**
+     * Adds a monitor to the channel, which stores the last value.
+     *
+     * @return the subscription of the monitor
+     */
+    ChannelHandlerReadSubscription addMonitor() {
+        ChannelHandlerReadSubscription subscription = new ChannelHandlerReadSubscription(
+                new ValueCacheImpl<>(Object.class), ignoreException, ignoreConnection);
+        addReader(subscription);
+        return subscription;
+    }
+
+    /**
+     * Removes a monitor from the channel.
+     *
+     * @param subscription the subscription of the monitor
+     */
+    void removeMonitor(ChannelHandlerReadSubscription subscription) {
+        removeReader(subscription);
+    }
+
+    /**
+     * Dispatches the message to all monitors.
+     *
+     * @param message the new message
+     */
+    void fire(Object message) {
+        processMessage(message);
+    }
+
+    @Override
+    protected void connect() {
+        processConnection(new Object());
+    }
+
+    @Override
+    protected void disconnect() {
+        processConnection(null);
+    }
+
+    @Override
+    protected void write(Object newValue, ChannelWriteCallback callback) {
+        callback.channelWritten(null);
+    }
+
+}
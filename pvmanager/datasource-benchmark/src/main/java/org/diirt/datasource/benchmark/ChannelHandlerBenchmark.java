@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of {@code MultiplexedChannelHandler.processMessage}
+ * dispatching a message to all the monitors of a channel, alone and
+ * contended by other data source threads or by subscription changes.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelHandlerBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int monitors;
+
+    private BenchmarkChannel channel;
+    private Object[] messages;
+
+    /**
+     * The position of each benchmark thread in the list of messages.
+     */
+    @State(Scope.Thread)
+    public static class MessageCounter {
+        int counter;
+    }
+
+    @Setup
+    public void setUp() {
+        channel = new BenchmarkChannel("benchmark");
+        for (int i = 0; i < monitors; i++) {
+            channel.addMonitor();
+        }
+        // Different messages, so that the type adapter always updates the cache
+        messages = new Object[1024];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = Double.valueOf(i);
+        }
+    }
+
+    /**
+     * A single data source thread dispatching messages.
+     */
+    @Benchmark
+    public void processMessage(MessageCounter position) {
+        channel.fire(messages[position.counter++ & 1023]);
+    }
+
+    /**
+     * Several data source threads dispatching messages to the same channel.
+     */
+    @Benchmark
+    @Threads(4)
+    public void processMessageContended(MessageCounter position) {
+        channel.fire(messages[position.counter++ & 1023]);
+    }
+
+    /**
+     * Data source threads dispatching messages while readers of the same
+     * channel are opened and closed.
+     */
+    @Benchmark
+    @Group("subscriptionChurn")
+    @GroupThreads(3)
+    public void processMessageDuringChurn(MessageCounter position) {
+        channel.fire(messages[position.counter++ & 1023]);
+    }
+
+    /**
+     * A reader opened and closed while the messages are dispatched.
+     */
+    @Benchmark
+    @Group("subscriptionChurn")
+    @GroupThreads(1)
+    public void addAndRemoveMonitor() {
+        channel.removeMonitor(channel.addMonitor());
+    }
+
+}
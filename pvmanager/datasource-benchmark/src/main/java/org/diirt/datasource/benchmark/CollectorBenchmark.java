@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.Collector;
+import org.diirt.datasource.LatestValueCollector;
+import org.diirt.datasource.QueueCollector;
+import org.diirt.datasource.RingBufferCollector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the collectors, which are written by the data source threads
+ * and read by the scanner.
+ *
+ * @author carcassi
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorBenchmark {
+
+    @Param({"latestValue", "queue", "ringBuffer"})
+    public String collectorType;
+
+    /**
+     * Number of values written for each read, which is the number
+     * of source events for each scan.
+     */
+    @Param({"1", "10"})
+    public int writesPerRead;
+
+    private Collector<Object, ?> collector;
+    private final Object[] values = new Object[1024];
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        switch (collectorType) {
+            case "latestValue":
+                collector = new LatestValueCollector<>();
+                break;
+            case "queue":
+                collector = new QueueCollector<>(100);
+                break;
+            case "ringBuffer":
+                collector = new RingBufferCollector<>(100);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown collector " + collectorType);
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.valueOf(i);
+        }
+    }
+
+    /**
+     * Writes and reads from the same thread, which measures the cost
+     * without contention. The group has a single thread, so that
+     * the collector is not shared with the concurrent group.
+     *
+     * @return the value read
+     */
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public Object writeAndRead() {
+        for (int i = 0; i < writesPerRead; i++) {
+            collector.writeValue(values[counter++ & 1023]);
+        }
+        return collector.readValue();
+    }
+
+    /**
+     * Data source thread writing while the scanner reads.
+     */
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public void write() {
+        collector.writeValue(values[counter++ & 1023]);
+    }
+
+    /**
+     * Scanner thread reading while the data source writes.
+     *
+     * @return the value read
+     */
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public Object read() {
+        return collector.readValue();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.sim.SimulationDataSource;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.diirt.datasource.test.TestDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.util.concurrent.Executors.localThread;
+
+/**
+ * Measures the time to open a set of readers, wait for all of them to be
+ * connected and close them.
+ * <p>
+ * The loc and sim data sources use a different channel for each reader,
+ * so that each reader creates and destroys a channel handler. The test
+ * data source has a single channel, which is shared by all readers.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionChurnBenchmark {
+
+    @Param({"loc", "sim", "test"})
+    public String source;
+
+    @Param({"1", "100"})
+    public int readers;
+
+    private DataSource dataSource;
+    private String[] channelNames;
+    private final List<PVReader<?>> pvReaders = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        channelNames = new String[readers];
+        switch (source) {
+            case "loc":
+                dataSource = new LocalDataSource();
+                for (int i = 0; i < readers; i++) {
+                    channelNames[i] = "churn" + i;
+                }
+                break;
+            case "sim":
+                dataSource = new SimulationDataSource();
+                for (int i = 0; i < readers; i++) {
+                    channelNames[i] = "const(" + i + ")";
+                }
+                break;
+            case "test":
+                dataSource = new TestDataSource();
+                for (int i = 0; i < readers; i++) {
+                    channelNames[i] = "normal";
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown data source " + source);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * Opens all readers, waits for the connection and closes them.
+     *
+     * @throws Exception if the readers do not connect
+     */
+    @Benchmark
+    public void connectAndDisconnect() throws Exception {
+        CountDownPVReaderListener listener = new CountDownPVReaderListener(readers, PVReaderEvent.CONNECTION_MASK);
+        for (String channelName : channelNames) {
+            pvReaders.add(PVManager.read(channel(channelName)).from(dataSource)
+                    .notifyOn(localThread())
+                    .readListener(listener)
+                    .maxRate(Duration.ofMillis(1)));
+        }
+        boolean connected = listener.await(Duration.ofSeconds(10));
+        for (PVReader<?> pvReader : pvReaders) {
+            pvReader.close();
+        }
+        pvReaders.clear();
+        if (!connected) {
+            throw new IllegalStateException("Readers did not connect");
+        }
+    }
+
+}
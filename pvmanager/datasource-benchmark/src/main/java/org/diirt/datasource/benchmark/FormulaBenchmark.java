@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.formula.FormulaAst;
+import org.diirt.datasource.formula.FormulaFunction;
+import org.diirt.datasource.formula.FormulaFunctions;
+import org.diirt.datasource.formula.FormulaRegistry;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.diirt.vtype.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.datasource.formula.ExpressionLanguage.formula;
+import static org.diirt.util.concurrent.Executors.localThread;
+
+/**
+ * Measures the parsing and the evaluation of formulas.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaBenchmark {
+
+    private static final String FORMULA = "='formulaIn' * 2 + sin('formulaIn') / (1 + abs('formulaIn'))";
+
+    private LocalDataSource dataSource;
+    private PVReader<?> pvReader;
+    private PVWriter<Object> pvWriter;
+    private CountDownPVReaderListener listener;
+    private Collection<FormulaFunction> additions;
+    private double value;
+    private long parseCount;
+
+    @Setup
+    public void setUp() throws Exception {
+        additions = FormulaRegistry.getDefault().findFunctions("+", 2);
+
+        dataSource = new LocalDataSource();
+        listener = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        pvWriter = PVManager.write(channel("formulaIn")).from(dataSource).sync();
+        pvWriter.write(value);
+        pvReader = PVManager.read(formula(FORMULA)).from(dataSource)
+                .notifyOn(localThread())
+                .readListener(listener)
+                .maxRate(Duration.ofMillis(1));
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Formula was not evaluated");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pvReader.close();
+        pvWriter.close();
+        dataSource.close();
+    }
+
+    /**
+     * Returns the abstract syntax tree of a formula already parsed,
+     * from the cache.
+     *
+     * @return the parsed formula
+     */
+    @Benchmark
+    public FormulaAst parse() {
+        return FormulaAst.formula(FORMULA);
+    }
+
+    /**
+     * Parses a formula that is not in the cache, including the cost
+     * of the evictions.
+     *
+     * @return the parsed formula
+     */
+    @Benchmark
+    public FormulaAst parseNew() {
+        parseCount++;
+        return FormulaAst.formula(FORMULA + " + " + parseCount);
+    }
+
+    /**
+     * Parses the formula and creates the expression, as done when a
+     * formula reader is opened.
+     *
+     * @return the expression
+     */
+    @Benchmark
+    public Object parseAndCreateExpression() {
+        return FormulaAst.formula(FORMULA).toExpression();
+    }
+
+    /**
+     * Matches and calculates a single function on new arguments.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public Object matchAndCalculate() {
+        value++;
+        List<Object> args = Arrays.<Object>asList(ValueFactory.newVDouble(value), ValueFactory.newVDouble(1.0));
+        return FormulaFunctions.findFirstMatch(args, additions).calculate(args);
+    }
+
+    /**
+     * Resolves through the registry cache and calculates a single function
+     * on new arguments.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public Object resolveAndCalculate() {
+        value++;
+        List<Object> args = Arrays.<Object>asList(ValueFactory.newVDouble(value), ValueFactory.newVDouble(1.0));
+        return FormulaRegistry.getDefault().findFunction("+", args).calculate(args);
+    }
+
+    /**
+     * Writes a new value on the input channel and waits for the
+     * notification of the formula result.
+     *
+     * @throws Exception if the notification does not arrive
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void writeAndEvaluate() throws Exception {
+        listener.resetCount(1);
+        value++;
+        pvWriter.write(value);
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Formula was not evaluated");
+        }
+    }
+
+}
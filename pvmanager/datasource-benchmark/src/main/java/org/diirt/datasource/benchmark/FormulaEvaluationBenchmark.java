@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ValueCacheImpl;
+import org.diirt.datasource.formula.FormulaAst;
+import org.diirt.vtype.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the evaluation of many small arithmetic formulas with the
+ * function calls compiled or evaluated by the generic read function.
+ * <p>
+ * The formulas are evaluated on a value cache, without readers, so that
+ * only the evaluation is measured: at each invocation the input changes
+ * and all the formulas are recalculated, as in a scan of a dashboard.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaEvaluationBenchmark {
+
+    @Param({"true", "false"})
+    private boolean compiled;
+
+    @Param({"1000"})
+    private int nFormulas;
+
+    private ValueCacheImpl<Object> input;
+    private List<ReadFunction<?>> formulas;
+    private double value;
+
+    @Setup
+    public void setUp() {
+        if (compiled) {
+            System.clearProperty("FormulaCompilerDisabled");
+        } else {
+            System.setProperty("FormulaCompilerDisabled", "true");
+        }
+        input = new ValueCacheImpl<>(Object.class);
+        formulas = new ArrayList<>(nFormulas);
+        for (int i = 0; i < nFormulas; i++) {
+            String formula;
+            switch (i % 3) {
+                case 0:
+                    formula = "='in' * " + i + " + 1";
+                    break;
+                case 1:
+                    formula = "=('in' - " + i + ") / 2";
+                    break;
+                default:
+                    formula = "=abs('in' * 2 + sin('in'))";
+            }
+            formulas.add(FormulaAst.formula(formula).toReadFunction(Collections.singletonMap("in", input)));
+        }
+        System.clearProperty("FormulaCompilerDisabled");
+    }
+
+    /**
+     * Changes the input and evaluates all the formulas.
+     *
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        value++;
+        input.writeValue(ValueFactory.newVDouble(value));
+        for (ReadFunction<?> formula : formulas) {
+            blackhole.consume(formula.readValue());
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.Notification;
+import org.diirt.datasource.NotificationSupport;
+import org.diirt.datasource.NotificationSupportCache;
+import org.diirt.datasource.vtype.DataTypeSupport;
+import org.diirt.vtype.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the notification support lookups done at each scan, for all
+ * the readers. Each scan resolves the support once to check the value and
+ * once more to prepare the notification: "lookup" goes through the type
+ * support registry both times, while "cached" uses a cache per reader
+ * as the {@code PVDirector} does.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationSupportBenchmark {
+
+    @Param({"10000"})
+    public int readers;
+
+    @Param({"lookup", "cached"})
+    public String resolution;
+
+    private final List<NotificationSupportCache<Object>> caches = new ArrayList<>();
+    private Object[] oldValues;
+    private Object[] newValues;
+
+    @Setup
+    public void setUp() {
+        DataTypeSupport.install();
+        oldValues = new Object[readers];
+        newValues = new Object[readers];
+        for (int i = 0; i < readers; i++) {
+            caches.add(new NotificationSupportCache<>());
+            oldValues[i] = ValueFactory.newVDouble((double) i);
+            // A few readers with a different type, so that the registry is not trivial
+            newValues[i] = i % 10 == 0 ? ValueFactory.newVString("value" + i, ValueFactory.alarmNone(), ValueFactory.timeNow())
+                    : ValueFactory.newVDouble(i + 1.0);
+        }
+    }
+
+    /**
+     * Scans all the readers once.
+     *
+     * @return the number of notifications needed
+     */
+    @Benchmark
+    public int scanAll() {
+        int notifications = 0;
+        boolean cached = "cached".equals(resolution);
+        for (int i = 0; i < readers; i++) {
+            Object newValue = newValues[i];
+            Notification<Object> notification;
+            if (cached) {
+                NotificationSupportCache<Object> cache = caches.get(i);
+                cache.supportFor(newValue);
+                notification = cache.notification(oldValues[i], newValue);
+            } else {
+                NotificationSupport.findNotificationSupportFor(newValue);
+                notification = NotificationSupport.notification(oldValues[i], newValue);
+            }
+            if (notification.isNotificationNeeded()) {
+                notifications++;
+            }
+        }
+        return notifications;
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.util.concurrent.Executors.localThread;
+
+/**
+ * Measures the time from the write of a value on a local channel to
+ * the notification of all the readers of that channel. This includes
+ * the write on the data source, the fan-out to the collectors, the scan
+ * and the notification performed by the {@code PVDirector}.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PVDirectorBenchmark {
+
+    @Param({"1", "100"})
+    public int readers;
+
+    /**
+     * Whether the notification is done on the scanner thread or
+     * on a separate executor.
+     */
+    @Param({"scanner", "executor"})
+    public String notification;
+
+    private LocalDataSource dataSource;
+    private ExecutorService notificationExecutor;
+    private final List<PVReader<?>> pvReaders = new ArrayList<>();
+    private PVWriter<Object> pvWriter;
+    private CountDownPVReaderListener listener;
+    private double value;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new LocalDataSource();
+        Executor executor = localThread();
+        if ("executor".equals(notification)) {
+            notificationExecutor = Executors.newSingleThreadExecutor();
+            executor = notificationExecutor;
+        }
+        listener = new CountDownPVReaderListener(readers, PVReaderEvent.VALUE_MASK);
+        pvWriter = PVManager.write(channel("benchmark")).from(dataSource).sync();
+        pvWriter.write(value);
+        for (int i = 0; i < readers; i++) {
+            pvReaders.add(PVManager.read(channel("benchmark")).from(dataSource)
+                    .notifyOn(executor)
+                    .readListener(listener)
+                    .maxRate(Duration.ofMillis(1)));
+        }
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Readers did not receive the initial value");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (PVReader<?> pvReader : pvReaders) {
+            pvReader.close();
+        }
+        pvReaders.clear();
+        pvWriter.close();
+        if (notificationExecutor != null) {
+            notificationExecutor.shutdownNow();
+        }
+        dataSource.close();
+    }
+
+    /**
+     * Writes a new value and waits for all readers to be notified.
+     *
+     * @throws Exception if the notification does not arrive
+     */
+    @Benchmark
+    public void writeAndNotify() throws Exception {
+        listener.resetCount(readers);
+        value++;
+        pvWriter.write(value);
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Readers were not notified");
+        }
+    }
+
+}
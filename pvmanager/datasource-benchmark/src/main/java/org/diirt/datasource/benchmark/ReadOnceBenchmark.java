@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.util.concurrent.Executors.localThread;
+
+/**
+ * Measures the time to take a snapshot of many local channels, either
+ * by opening a reader for each channel and closing it after the first
+ * value, or with a single {@code readOnce} call.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadOnceBenchmark {
+
+    @Param({"1000", "30000"})
+    public int channels;
+
+    private LocalDataSource dataSource;
+    private final List<String> names = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        dataSource = new LocalDataSource();
+        for (int i = 0; i < channels; i++) {
+            names.add("snapshot" + i + "(" + i + ")");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * A reader for each channel, closed after the first value.
+     *
+     * @return the number of readers
+     * @throws Exception if the values do not arrive
+     */
+    @Benchmark
+    public int readers() throws Exception {
+        CountDownPVReaderListener listener = new CountDownPVReaderListener(channels, PVReaderEvent.VALUE_MASK);
+        List<PVReader<?>> pvReaders = new ArrayList<>(channels);
+        for (String name : names) {
+            pvReaders.add(PVManager.read(channel(name)).from(dataSource)
+                    .notifyOn(localThread())
+                    .readListener(listener)
+                    .maxRate(Duration.ofMillis(5)));
+        }
+        if (!listener.await(Duration.ofSeconds(60))) {
+            throw new IllegalStateException("Readers did not receive the values");
+        }
+        for (PVReader<?> pvReader : pvReaders) {
+            pvReader.close();
+        }
+        return pvReaders.size();
+    }
+
+    /**
+     * All the channels read with a single call.
+     *
+     * @return the number of values
+     * @throws Exception if the values do not arrive
+     */
+    @Benchmark
+    public int readOnce() throws Exception {
+        Map<String, Object> values = dataSource.readOnce(names, Duration.ofSeconds(60)).get();
+        if (values.size() != channels) {
+            throw new IllegalStateException("Only " + values.size() + " values were received");
+        }
+        return values.size();
+    }
+
+}
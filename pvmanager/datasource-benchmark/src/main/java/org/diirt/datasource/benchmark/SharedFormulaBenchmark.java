@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.diirt.datasource.formula.ExpressionLanguage.formula;
+import static org.diirt.datasource.formula.ExpressionLanguage.sharedFormula;
+
+/**
+ * Compares many readers of the same formula, each with its own evaluation
+ * or sharing a single one.
+ * <p>
+ * The benchmark measures the time from the write of the formula input to
+ * the notification of all readers. When the readers are created, it prints the
+ * heap retained by each reader; at the end of each iteration, it prints
+ * the CPU time used by the process for each second of the iteration,
+ * which includes the periodic evaluation of the formulas. Run with
+ * {@code -prof gc} to compare the allocation rates.
+ *
+ * @author carcassi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedFormulaBenchmark {
+
+    private static final String FORMULA = "='sharedIn' * 2 + sin('sharedIn') / (1 + abs('sharedIn'))";
+
+    @Param({"200"})
+    public int readers;
+
+    /**
+     * Whether each reader evaluates the formula ("private") or the readers
+     * share a single evaluation ("shared").
+     */
+    @Param({"private", "shared"})
+    public String evaluation;
+
+    private LocalDataSource dataSource;
+    private final List<PVReader<?>> pvReaders = new ArrayList<>();
+    private PVWriter<Object> pvWriter;
+    private CountDownPVReaderListener listener;
+    private double value;
+    private long iterationStart;
+    private long iterationCpuStart;
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new LocalDataSource();
+        pvWriter = PVManager.write(channel("sharedIn")).from(dataSource).sync();
+        pvWriter.write(value);
+        listener = new CountDownPVReaderListener(readers, PVReaderEvent.VALUE_MASK);
+        long heapBefore = usedHeap();
+        for (int i = 0; i < readers; i++) {
+            DesiredRateExpression<?> expression = "shared".equals(evaluation) ? sharedFormula(FORMULA) : formula(FORMULA);
+            pvReaders.add(PVManager.read(expression)
+                    .from(dataSource)
+                    .readListener(listener)
+                    .maxRate(Duration.ofMillis(10)));
+        }
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Readers did not receive the initial value");
+        }
+        long retained = usedHeap() - heapBefore;
+        System.out.println();
+        System.out.println(evaluation + ": retained heap per reader " + retained / readers + " bytes");
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationStart = System.nanoTime();
+        iterationCpuStart = processCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        double seconds = (System.nanoTime() - iterationStart) / 1000000000.0;
+        double cpuMillis = (processCpuTime() - iterationCpuStart) / 1000000.0;
+        System.out.println();
+        System.out.println(String.format("%s: process CPU %.1f ms per second", evaluation, cpuMillis / seconds));
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (PVReader<?> pvReader : pvReaders) {
+            pvReader.close();
+        }
+        pvReaders.clear();
+        pvWriter.close();
+        dataSource.close();
+    }
+
+    /**
+     * Writes a new input value and waits for all readers to be notified
+     * of the new formula result.
+     *
+     * @throws Exception if the notification does not arrive
+     */
+    @Benchmark
+    public void writeAndNotifyAll() throws Exception {
+        listener.resetCount(readers);
+        value++;
+        pvWriter.write(value);
+        if (!listener.await(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("Readers were not notified");
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+/**
+ * JMH benchmarks for the pvmanager core pipeline.
+ * <p>
+ * The benchmarks cover the path of a value from the channel handler to
+ * the listener: the fan-out of a message to all monitors
+ * ({@link org.diirt.datasource.benchmark.ChannelHandlerBenchmark}), the collectors
+ * ({@link org.diirt.datasource.benchmark.CollectorBenchmark}), the scan and
+ * notification of the reader ({@link org.diirt.datasource.benchmark.PVDirectorBenchmark}),
+ * the formula evaluation ({@link org.diirt.datasource.benchmark.FormulaBenchmark})
+ * and the cost of opening and closing readers
+ * ({@link org.diirt.datasource.benchmark.ConnectionChurnBenchmark}).
+ * <p>
+ * Build the module with <code>mvn package</code> and run all the benchmarks with
+ * <code>java -jar target/benchmarks.jar -rf json -rff results.json</code>.
+ * The json results can be archived and compared release over release. A subset
+ * can be selected with a regular expression (e.g. <code>java -jar target/benchmarks.jar Collector</code>).
+ */
+package org.diirt.datasource.benchmark;
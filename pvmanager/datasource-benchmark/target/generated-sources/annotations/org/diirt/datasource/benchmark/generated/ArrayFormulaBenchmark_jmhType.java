@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class ArrayFormulaBenchmark_jmhType extends ArrayFormulaBenchmark_jmhType_B3 {
+}
+
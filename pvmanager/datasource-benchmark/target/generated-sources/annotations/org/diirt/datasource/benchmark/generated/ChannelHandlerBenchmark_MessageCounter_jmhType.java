@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class ChannelHandlerBenchmark_MessageCounter_jmhType extends ChannelHandlerBenchmark_MessageCounter_jmhType_B3 {
+}
+
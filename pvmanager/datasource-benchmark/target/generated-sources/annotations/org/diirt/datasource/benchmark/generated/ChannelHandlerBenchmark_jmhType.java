@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class ChannelHandlerBenchmark_jmhType extends ChannelHandlerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class CollectorBenchmark_jmhType extends CollectorBenchmark_jmhType_B3 {
+}
+
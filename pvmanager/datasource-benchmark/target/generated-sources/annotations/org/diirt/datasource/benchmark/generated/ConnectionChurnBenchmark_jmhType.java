@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class ConnectionChurnBenchmark_jmhType extends ConnectionChurnBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class FormulaBenchmark_jmhType extends FormulaBenchmark_jmhType_B3 {
+}
+
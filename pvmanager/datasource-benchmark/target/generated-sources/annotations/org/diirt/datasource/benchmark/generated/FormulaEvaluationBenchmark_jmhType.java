@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class FormulaEvaluationBenchmark_jmhType extends FormulaEvaluationBenchmark_jmhType_B3 {
+}
+
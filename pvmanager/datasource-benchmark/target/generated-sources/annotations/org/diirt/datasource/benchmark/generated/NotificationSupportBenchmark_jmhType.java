@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class NotificationSupportBenchmark_jmhType extends NotificationSupportBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class PVDirectorBenchmark_jmhType extends PVDirectorBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class ReadOnceBenchmark_jmhType extends ReadOnceBenchmark_jmhType_B3 {
+}
+
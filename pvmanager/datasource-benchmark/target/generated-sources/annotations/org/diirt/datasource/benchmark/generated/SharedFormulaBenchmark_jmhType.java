@@ -0,0 +1,4 @@
+package org.diirt.datasource.benchmark.generated;
+public class SharedFormulaBenchmark_jmhType extends SharedFormulaBenchmark_jmhType_B3 {
+}
+
@@ -98,6 +98,17 @@ public abstract class AbstractVNumberToVNumberFormulaFunction implements Formula
         if (arg == null) {
             return null;
         }
+        return calculate(arg);
+    }
+
+    /**
+     * Calculates the result on an argument that is not null,
+     * without going through the argument list.
+     *
+     * @param arg the argument; can't be null
+     * @return the result
+     */
+    final Object calculate(VNumber arg) {
         return ValueFactory.newVDouble(calculate(arg.getValue().doubleValue()),
                 arg, arg, ValueFactory.displayNone());
     }
@@ -10,7 +10,6 @@ import org.diirt.vtype.Alarm;
 import org.diirt.vtype.Time;
 import org.diirt.vtype.VNumber;
 import org.diirt.vtype.ValueFactory;
-import org.diirt.vtype.ValueUtil;
 
 
 /**
@@ -106,14 +105,32 @@ public abstract class AbstractVNumberVNumberToVNumberFormulaFunction implements
         if (arg1 == null || arg2 == null) {
             return null;
         }
-        Alarm alarm = ValueUtil.highestSeverityOf(args, false);
-        Time time = ValueUtil.latestTimeOf(args);
-        if (time == null) {
-            time = ValueFactory.timeNow();
+        return calculate((VNumber) arg1, (VNumber) arg2);
+    }
+
+    /**
+     * Calculates the result on two arguments that are not null,
+     * without going through the argument list.
+     *
+     * @param arg1 the first argument; can't be null
+     * @param arg2 the second argument; can't be null
+     * @return the result
+     */
+    final Object calculate(VNumber arg1, VNumber arg2) {
+        // Same as ValueUtil.highestSeverityOf and latestTimeOf
+        Alarm alarm = ValueFactory.alarmNone();
+        if (arg1.getAlarmSeverity().compareTo(alarm.getAlarmSeverity()) > 0) {
+            alarm = arg1;
+        }
+        if (arg2.getAlarmSeverity().compareTo(alarm.getAlarmSeverity()) > 0) {
+            alarm = arg2;
+        }
+        Time time = arg1;
+        if (arg2.getTimestamp().compareTo(arg1.getTimestamp()) > 0) {
+            time = arg2;
         }
         return ValueFactory.newVDouble(
-                calculate(((VNumber) args.get(0)).getValue().doubleValue(),
-                ((VNumber) args.get(1)).getValue().doubleValue())
+                calculate(arg1.getValue().doubleValue(), arg2.getValue().doubleValue())
                 , alarm, time, ValueFactory.displayNone());
     }
 
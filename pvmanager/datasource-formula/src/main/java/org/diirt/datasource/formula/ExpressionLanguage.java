@@ -82,6 +82,37 @@ public class ExpressionLanguage {
         }
     }
 
+    /**
+     * Returns an expression for the formula whose evaluation is shared
+     * by all the readers of a structurally equal formula.
+     * <p>
+     * Formulas are equal if their abstract syntax trees are equal,
+     * regardless of spacing. This is useful when the same formula is opened
+     * by many clients (e.g. many panels or a web server): the formula is
+     * computed once, and each reader keeps its own rate and listeners.
+     * A formula that is a single channel is returned as is, since the data source
+     * already shares the channel.
+     *
+     * @param formula the formula to parse
+     * @return an expression for the formula
+     * @see org.diirt.datasource.ExpressionLanguage#shared(java.lang.Object, org.diirt.datasource.expression.DesiredRateExpression)
+     */
+    public static DesiredRateExpression<?> sharedFormula(String formula) {
+        FormulaAst ast;
+        DesiredRateExpression<?> exp;
+        try {
+            ast = FormulaAst.formula(formula);
+            exp = ast.toExpression();
+        } catch(RuntimeException ex) {
+            return errorDesiredRateExpression(ex);
+        }
+
+        if (exp instanceof LastOfChannelExpression || exp instanceof ErrorDesiredRateExpression) {
+            return exp;
+        }
+        return org.diirt.datasource.ExpressionLanguage.shared(ast, exp);
+    }
+
     private static DesiredRateExpression<?> parseFormula(String formula) {
         try {
             return FormulaAst.formula(formula).toExpression();
@@ -183,7 +214,7 @@ public class ExpressionLanguage {
 
     static DesiredRateExpression<?> function(String function, DesiredRateExpressionList<?> args) {
         Collection<FormulaFunction> matchedFunctions = FormulaRegistry.getDefault().findFunctions(function, args.getDesiredRateExpressions().size());
-        FormulaReadFunction readFunction = new FormulaReadFunction(Expressions.functionsOf(args), matchedFunctions, function);
+        FormulaReadFunction readFunction = FormulaCompiler.compile(Expressions.functionsOf(args), matchedFunctions, function, FormulaRegistry.getDefault());
         List<String> argNames = new ArrayList<>(args.getDesiredRateExpressions().size());
         for (DesiredRateExpression<? extends Object> arg : args.getDesiredRateExpressions()) {
             argNames.add(arg.getName());
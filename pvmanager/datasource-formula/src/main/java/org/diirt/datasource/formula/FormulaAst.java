@@ -15,9 +15,8 @@ import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.TokenStream;
+import org.diirt.datasource.ReadFunction;
 import org.diirt.datasource.expression.DesiredRateExpression;
-import org.diirt.datasource.expression.DesiredRateExpressionList;
-import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
 import org.diirt.util.text.StringUtil;
 
 /**
@@ -243,7 +242,8 @@ public class FormulaAst {
      * @return the new node
      */
     public static FormulaAst op(String opName, List<FormulaAst> children) {
-        return new FormulaAst(Type.OP, children, opName);
+        // Copy, so that the node is immutable and can be cached
+        return new FormulaAst(Type.OP, Collections.unmodifiableList(new ArrayList<>(children)), opName);
     }
 
     /**
@@ -259,13 +259,48 @@ public class FormulaAst {
         return new FormulaParser(tokenStream);
     }
 
+    /**
+     * The caches of the parsed formulas, created when the first formula is
+     * parsed.
+     */
+    private static class ParseCaches {
+        static final FormulaConfiguration configuration = FormulaConfiguration.read();
+        static final FormulaAstCache formulas = new FormulaAstCache(FormulaAst::parseFormula, configuration.parseCacheMaxSize);
+        static final FormulaAstCache singleChannels = new FormulaAstCache(FormulaAst::parseSingleChannel, configuration.parseCacheMaxSize);
+    }
+
+    /**
+     * The cache used by {@link #formula(java.lang.String) }.
+     *
+     * @return the cache of the parsed formulas
+     */
+    public static FormulaAstCache getFormulaCache() {
+        return ParseCaches.formulas;
+    }
+
+    /**
+     * The cache used by {@link #singleChannel(java.lang.String) }.
+     *
+     * @return the cache of the single channel formulas
+     */
+    public static FormulaAstCache getSingleChannelCache() {
+        return ParseCaches.singleChannels;
+    }
+
     /**
      * The AST corresponding to the parsed formula.
+     * <p>
+     * The parsed formulas are cached by text, so the same instance may
+     * be returned.
      *
      * @param formula the string to be parsed
      * @return the parsed AST
      */
     public static FormulaAst formula(String formula) {
+        return ParseCaches.formulas.get(formula);
+    }
+
+    private static FormulaAst parseFormula(String formula) {
         FormulaAst ast = staticChannel(formula);
         if (ast != null) {
             return ast;
@@ -297,11 +332,17 @@ public class FormulaAst {
     /**
      * The AST corresponding to a single channel, if the formula represents one,
      * or null, if the formula is not a single channel.
+     * <p>
+     * The results are cached by text, so the same instance may be returned.
      *
      * @param formula the string to be parsed
      * @return the parsed AST
      */
     public static FormulaAst singleChannel(String formula) {
+        return ParseCaches.singleChannels.get(formula);
+    }
+
+    private static FormulaAst parseSingleChannel(String formula) {
         FormulaAst ast = staticChannel(formula);
         if (ast != null) {
             return ast;
@@ -318,30 +359,32 @@ public class FormulaAst {
 
     /**
      * Converts the AST to a datasource expression.
+     * <p>
+     * Calls of pure functions on constant arguments are calculated
+     * once, and equal subexpressions are evaluated once per scan
+     * (see {@link FormulaOptimizer}).
      *
      * @return the new expression
      */
     public DesiredRateExpression<?> toExpression() {
-        switch(getType()) {
-            case CHANNEL:
-                return new LastOfChannelExpression<>((String) getValue(), Object.class);
-            case FLOATING_POINT:
-                return org.diirt.datasource.vtype.ExpressionLanguage.vConst((Double) getValue());
-            case INTEGER:
-                return org.diirt.datasource.vtype.ExpressionLanguage.vConst((Integer) getValue());
-            case STRING:
-                return org.diirt.datasource.vtype.ExpressionLanguage.vConst((String) getValue());
-            case ID:
-                return ExpressionLanguage.namedConstant((String) getValue());
-            case OP:
-                DesiredRateExpressionList<Object> expressions = new DesiredRateExpressionListImpl<>();
-                for (FormulaAst child : getChildren()) {
-                    expressions.and(child.toExpression());
-                }
-                return ExpressionLanguage.function((String) getValue(), expressions);
-            default:
-                throw new IllegalArgumentException("Unsupported type " + getType() + " for ast");
-        }
+        return new FormulaOptimizer(FormulaRegistry.getDefault()).toFormulaExpression(this);
+    }
+
+    /**
+     * Converts the AST to a read function that evaluates the formula on the
+     * given channel functions, without opening a reader.
+     * <p>
+     * Each channel is read from the function with the same name in the map,
+     * and function calls are compiled and optimized as in {@link #toExpression() }. This
+     * allows to evaluate a formula on values that are not coming
+     * from a data source (e.g. in tests). Functions that open channels
+     * need a reader, and are not supported.
+     *
+     * @param channelFunctions from channel name to the function that returns its value
+     * @return the new read function
+     */
+    public ReadFunction<?> toReadFunction(Map<String, ? extends ReadFunction<?>> channelFunctions) {
+        return new FormulaOptimizer(FormulaRegistry.getDefault()).toFormulaReadFunction(this, channelFunctions);
     }
 
     /**
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of parsed formulas, keyed by the text of the formula.
+ * <p>
+ * Since the abstract syntax trees are immutable, the same instance is
+ * returned for the same text. Lookups do not lock: each entry remembers
+ * when it was last used, and when the cache grows over its maximum size
+ * the least recently used entries are removed, down to 90% of the
+ * maximum, so that the cost of the eviction is spread over many parses.
+ * Formulas that fail to parse are not cached.
+ * <p>
+ * The maximum size is read from DIIRT_HOME/formula/formula.xml.
+ *
+ * @author carcassi
+ */
+public final class FormulaAstCache {
+
+    private static final class Entry {
+
+        final FormulaAst ast;
+        volatile long lastAccess;
+
+        Entry(FormulaAst ast, long lastAccess) {
+            this.ast = ast;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Function<String, FormulaAst> parser;
+    private final int maxSize;
+    // Only misses advance the clock: hits read it without contention
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final Object evictionLock = new Object();
+
+    FormulaAstCache(Function<String, FormulaAst> parser, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive (was " + maxSize + ")");
+        }
+        this.parser = parser;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the parsed formula, parsing it only if it is not in the cache.
+     *
+     * @param text the text of the formula
+     * @return the parsed formula; can be null if the parser returns null
+     */
+    FormulaAst get(String text) {
+        Entry entry = entries.get(text);
+        if (entry != null) {
+            entry.lastAccess = clock.get();
+            hitCount.increment();
+            return entry.ast;
+        }
+
+        missCount.increment();
+        entry = new Entry(parser.apply(text), clock.incrementAndGet());
+        Entry previous = entries.putIfAbsent(text, entry);
+        if (previous != null) {
+            // Parsed concurrently: keep a single instance
+            return previous.ast;
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return entry.ast;
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() <= maxSize) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+            Collections.sort(snapshot, new Comparator<Map.Entry<String, Entry>>() {
+
+                @Override
+                public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+                    return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+                }
+            });
+            int toRemove = snapshot.size() - maxSize * 9 / 10;
+            for (int i = 0; i < toRemove; i++) {
+                entries.remove(snapshot.get(i).getKey(), snapshot.get(i).getValue());
+            }
+        }
+    }
+
+    /**
+     * The number of lookups that found the formula in the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * The number of lookups that had to parse the formula.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * The number of formulas currently in the cache.
+     *
+     * @return the number of cached formulas
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * The maximum number of formulas kept in the cache.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Removes all the formulas from the cache. The hit and miss counts
+     * are not reset.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "FormulaAstCache[size=" + getSize() + ", maxSize=" + maxSize
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.Collection;
+import java.util.List;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.vtype.VNumber;
+
+/**
+ * Compiles the function calls of a formula into read functions specialized
+ * for their arguments.
+ * <p>
+ * The generic {@link FormulaReadFunction} passes the arguments to the
+ * function as a list. Calls with one or two arguments that can resolve
+ * to a numeric function (i.e. the arithmetic operators and the math functions)
+ * are compiled into nodes that call the function resolved for the classes
+ * of the arguments directly on the primitive values, as long as the resolution
+ * is valid. In all other cases, such as a null argument or an array instead
+ * of a scalar, the node falls back to the generic evaluation, which resolves
+ * the function again.
+ * <p>
+ * Compilation can be turned off with the FormulaCompilerDisabled system
+ * property, so that the two evaluations can be compared.
+ *
+ * @author carcassi
+ */
+final class FormulaCompiler {
+
+    private FormulaCompiler() {
+        // No instances
+    }
+
+    /**
+     * Returns the read function for a call of the given function.
+     *
+     * @param argumentFunctions the functions of the arguments
+     * @param formulaMatches the functions with the given name and number of arguments
+     * @param functionName the name of the function
+     * @param registry the registry that resolves the function
+     * @return the read function for the call
+     */
+    static FormulaReadFunction compile(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName, FormulaRegistry registry) {
+        if (System.getProperty("FormulaCompilerDisabled") == null) {
+            if (argumentFunctions.size() == 1 && containsInstanceOf(formulaMatches, AbstractVNumberToVNumberFormulaFunction.class)) {
+                return new UnaryNumberCall(argumentFunctions, formulaMatches, functionName, registry);
+            }
+            if (argumentFunctions.size() == 2 && containsInstanceOf(formulaMatches, AbstractVNumberVNumberToVNumberFormulaFunction.class)) {
+                return new BinaryNumberCall(argumentFunctions, formulaMatches, functionName, registry);
+            }
+        }
+        return new FormulaReadFunction(argumentFunctions, formulaMatches, functionName, registry);
+    }
+
+    private static boolean containsInstanceOf(Collection<FormulaFunction> formulaMatches, Class<?> clazz) {
+        for (FormulaFunction formulaMatch : formulaMatches) {
+            if (clazz.isInstance(formulaMatch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A call with a numeric argument.
+     */
+    static class UnaryNumberCall extends FormulaReadFunction {
+
+        private AbstractVNumberToVNumberFormulaFunction binding;
+
+        UnaryNumberCall(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName, FormulaRegistry registry) {
+            super(argumentFunctions, formulaMatches, functionName, registry);
+        }
+
+        @Override
+        public Object readValue() {
+            boolean changed = readArgument(0);
+            Object arg = argumentValues.get(0);
+            if (binding != null && arg != null && isResolved()) {
+                if (!changed) {
+                    return lastValue;
+                }
+                return updateValue(binding.calculate((VNumber) arg));
+            }
+
+            Object value = evaluate(changed);
+            // The function resolved for this type can be called directly
+            // as long as the resolution is valid
+            if (lastFormula instanceof AbstractVNumberToVNumberFormulaFunction && arg != null) {
+                binding = (AbstractVNumberToVNumberFormulaFunction) lastFormula;
+            } else {
+                binding = null;
+            }
+            return value;
+        }
+
+    }
+
+    /**
+     * A call with two numeric arguments.
+     */
+    static class BinaryNumberCall extends FormulaReadFunction {
+
+        private AbstractVNumberVNumberToVNumberFormulaFunction binding;
+
+        BinaryNumberCall(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName, FormulaRegistry registry) {
+            super(argumentFunctions, formulaMatches, functionName, registry);
+        }
+
+        @Override
+        public Object readValue() {
+            // Both arguments must be read
+            boolean changed = readArgument(0) | readArgument(1);
+            Object arg1 = argumentValues.get(0);
+            Object arg2 = argumentValues.get(1);
+            if (binding != null && arg1 != null && arg2 != null && isResolved()) {
+                if (!changed) {
+                    return lastValue;
+                }
+                return updateValue(binding.calculate((VNumber) arg1, (VNumber) arg2));
+            }
+
+            Object value = evaluate(changed);
+            // The function resolved for these types can be called directly
+            // as long as the resolution is valid
+            if (lastFormula instanceof AbstractVNumberVNumberToVNumberFormulaFunction && arg1 != null && arg2 != null) {
+                binding = (AbstractVNumberVNumberToVNumberFormulaFunction) lastFormula;
+            } else {
+                binding = null;
+            }
+            return value;
+        }
+
+    }
+
+}
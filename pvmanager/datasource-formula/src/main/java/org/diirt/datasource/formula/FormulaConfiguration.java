@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.diirt.util.config.Configuration;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Configuration for the formula support, read from
+ * DIIRT_HOME/formula/formula.xml.
+ *
+ * @author carcassi
+ */
+final class FormulaConfiguration {
+
+    private static final Logger log = Logger.getLogger(FormulaConfiguration.class.getName());
+
+    // Package private so we don't need getters
+    int parseCacheMaxSize = 1000;
+
+    FormulaConfiguration() {
+    }
+
+    FormulaConfiguration(InputStream input) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(input);
+
+            XPathFactory xpathFactory = XPathFactory.newInstance();
+            XPath xPath = xpathFactory.newXPath();
+
+            String ver = xPath.evaluate("/formula/@version", document);
+            if (!ver.equals("1")) {
+                throw new IllegalArgumentException("Unsupported version " + ver);
+            }
+
+            String maxSize = xPath.evaluate("/formula/parseCache/@maxSize", document);
+            if (maxSize != null && !maxSize.isEmpty()) {
+                this.parseCacheMaxSize = Integer.parseInt(maxSize);
+                if (parseCacheMaxSize <= 0) {
+                    throw new IllegalArgumentException("parseCache maxSize must be positive (was " + maxSize + ")");
+                }
+            }
+        } catch (ParserConfigurationException | SAXException | IOException | XPathExpressionException ex) {
+            log.log(Level.FINEST, "Couldn't load formula configuration", ex);
+            throw new IllegalArgumentException("Couldn't load formula configuration", ex);
+        }
+    }
+
+    /**
+     * Reads the configuration from the diirt configuration directory,
+     * or returns the default configuration if it can't be read.
+     *
+     * @return the formula configuration
+     */
+    static FormulaConfiguration read() {
+        try (InputStream input = Configuration.getFileAsStream("formula/formula.xml", new FormulaConfiguration(), "formula.default.xml")) {
+            return new FormulaConfiguration(input);
+        } catch (Exception ex) {
+            log.log(Level.SEVERE, "Couldn't load DIIRT_HOME/formula/formula.xml", ex);
+            return new FormulaConfiguration();
+        }
+    }
+
+}
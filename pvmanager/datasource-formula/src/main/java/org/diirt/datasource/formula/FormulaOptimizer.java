@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionList;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+
+/**
+ * Converts a formula AST to expressions or read functions, optimizing
+ * the evaluation of the formula.
+ * <p>
+ * Two optimizations are performed:
+ * <ul>
+ *   <li>Constant folding: a call of a pure function whose arguments are
+ *   all constant is calculated once, during the conversion, and replaced by
+ *   its result (e.g. {@code 2*3.14159}). If the calculation fails,
+ *   the call is left to be evaluated, so that the error is reported as before.</li>
+ *   <li>Common subexpression elimination: subtrees of the formula that are
+ *   equal, and that only call pure functions, are converted once, so that
+ *   each distinct channel or subexpression (e.g. {@code 'pv1'*'pv1'}) is read
+ *   and calculated once per scan. The repeated occurrences of an expression
+ *   refer to the same function, but do not add the channels to the
+ *   read recipe a second time.</li>
+ * </ul>
+ * A new optimizer is used for each conversion, so subexpressions
+ * are shared only within the same formula.
+ * <p>
+ * Element-wise array operations are fused (see
+ * {@link org.diirt.util.array.FusedListDouble}): the arrays are materialized
+ * only at the boundaries of the expression, that is the result of the
+ * formula and the folded constants, which are read many times.
+ * <p>
+ * The optimizations can be turned off with the FormulaOptimizerDisabled
+ * system property, so that the two evaluations can be compared.
+ *
+ * @author carcassi
+ */
+final class FormulaOptimizer {
+
+    private final FormulaRegistry registry;
+    private final boolean enabled;
+    // The converted subtrees that can be shared
+    private final Map<FormulaAst, DesiredRateExpression<?>> expressions = new HashMap<>();
+    private final Map<FormulaAst, ReadFunction<?>> functions = new HashMap<>();
+    // The values of the subtrees that are constant
+    private final Map<FormulaAst, Object> constants = new HashMap<>();
+
+    FormulaOptimizer(FormulaRegistry registry) {
+        this.registry = registry;
+        this.enabled = System.getProperty("FormulaOptimizerDisabled") == null;
+    }
+
+    /**
+     * Converts the formula to a datasource expression, materializing
+     * the arrays it returns.
+     *
+     * @param ast the formula
+     * @return the new expression
+     */
+    DesiredRateExpression<?> toFormulaExpression(FormulaAst ast) {
+        DesiredRateExpression<?> expression = toExpression(ast);
+        materializeArrays(expression.getFunction());
+        return expression;
+    }
+
+    /**
+     * Converts the formula to a read function, materializing
+     * the arrays it returns.
+     *
+     * @param ast the formula
+     * @param channelFunctions from channel name to the function that returns its value
+     * @return the new read function
+     */
+    ReadFunction<?> toFormulaReadFunction(FormulaAst ast, Map<String, ? extends ReadFunction<?>> channelFunctions) {
+        ReadFunction<?> function = toReadFunction(ast, channelFunctions);
+        materializeArrays(function);
+        return function;
+    }
+
+    private static void materializeArrays(ReadFunction<?> function) {
+        if (function instanceof FormulaReadFunction) {
+            ((FormulaReadFunction) function).materializeArrays();
+        }
+    }
+
+    /**
+     * Converts the AST to a datasource expression.
+     *
+     * @param ast the formula
+     * @return the new expression
+     */
+    DesiredRateExpression<?> toExpression(FormulaAst ast) {
+        DesiredRateExpression<?> expression = expressions.get(ast);
+        if (expression != null) {
+            return alias(expression);
+        }
+
+        expression = createExpression(ast);
+        if (enabled && isShareable(ast, expressions)) {
+            expressions.put(ast, expression);
+        }
+        return expression;
+    }
+
+    private DesiredRateExpression<?> createExpression(FormulaAst ast) {
+        switch(ast.getType()) {
+            case CHANNEL:
+                return new LastOfChannelExpression<>((String) ast.getValue(), Object.class);
+            case FLOATING_POINT:
+                return constant(ast, org.diirt.datasource.vtype.ExpressionLanguage.vConst((Double) ast.getValue()));
+            case INTEGER:
+                return constant(ast, org.diirt.datasource.vtype.ExpressionLanguage.vConst((Integer) ast.getValue()));
+            case STRING:
+                return constant(ast, org.diirt.datasource.vtype.ExpressionLanguage.vConst((String) ast.getValue()));
+            case ID:
+                return constant(ast, ExpressionLanguage.namedConstant((String) ast.getValue()));
+            case OP:
+                DesiredRateExpressionList<Object> arguments = new DesiredRateExpressionListImpl<>();
+                for (FormulaAst child : ast.getChildren()) {
+                    arguments.and(toExpression(child));
+                }
+                Object value = fold(ast);
+                if (value != null) {
+                    List<String> argNames = new ArrayList<>(ast.getChildren().size());
+                    for (DesiredRateExpression<?> argument : arguments.getDesiredRateExpressions()) {
+                        argNames.add(argument.getName());
+                    }
+                    return org.diirt.datasource.ExpressionLanguage.constant(value,
+                            FormulaFunctions.format((String) ast.getValue(), argNames));
+                }
+                return ExpressionLanguage.function((String) ast.getValue(), arguments);
+            default:
+                throw new IllegalArgumentException("Unsupported type " + ast.getType() + " for ast");
+        }
+    }
+
+    /**
+     * Converts the AST to a read function that evaluates the formula on the
+     * given channel functions.
+     *
+     * @param ast the formula
+     * @param channelFunctions from channel name to the function that returns its value
+     * @return the new read function
+     */
+    ReadFunction<?> toReadFunction(FormulaAst ast, Map<String, ? extends ReadFunction<?>> channelFunctions) {
+        ReadFunction<?> function = functions.get(ast);
+        if (function != null) {
+            return function;
+        }
+
+        function = createReadFunction(ast, channelFunctions);
+        if (enabled && isShareable(ast, functions)) {
+            functions.put(ast, function);
+        }
+        return function;
+    }
+
+    private ReadFunction<?> createReadFunction(FormulaAst ast, Map<String, ? extends ReadFunction<?>> channelFunctions) {
+        switch(ast.getType()) {
+            case CHANNEL:
+                ReadFunction<?> channelFunction = channelFunctions.get((String) ast.getValue());
+                if (channelFunction == null) {
+                    throw new IllegalArgumentException("No function for channel '" + ast.getValue() + "'");
+                }
+                return channelFunction;
+            case OP:
+                List<ReadFunction<?>> argumentFunctions = new ArrayList<>(ast.getChildren().size());
+                for (FormulaAst child : ast.getChildren()) {
+                    argumentFunctions.add(toReadFunction(child, channelFunctions));
+                }
+                Object value = fold(ast);
+                if (value != null) {
+                    return org.diirt.datasource.ExpressionLanguage.constant(value).getFunction();
+                }
+                return FormulaCompiler.compile(argumentFunctions,
+                        registry.findFunctions((String) ast.getValue(), argumentFunctions.size()),
+                        (String) ast.getValue(), registry);
+            default:
+                return createExpression(ast).getFunction();
+        }
+    }
+
+    private DesiredRateExpression<?> constant(FormulaAst ast, DesiredRateExpression<?> expression) {
+        constants.put(ast, expression.getFunction().readValue());
+        return expression;
+    }
+
+    /**
+     * Calculates the call if the function is pure and the arguments,
+     * already converted, are constant.
+     *
+     * @param ast a function call
+     * @return the result of the call; null if it cannot be folded
+     */
+    private Object fold(FormulaAst ast) {
+        if (!enabled) {
+            return null;
+        }
+
+        List<Object> arguments = new ArrayList<>(ast.getChildren().size());
+        for (FormulaAst child : ast.getChildren()) {
+            Object argument = constants.get(child);
+            if (argument == null) {
+                return null;
+            }
+            arguments.add(argument);
+        }
+
+        FormulaFunction function = registry.findFunction((String) ast.getValue(), arguments);
+        if (function == null || !function.isPure()) {
+            return null;
+        }
+        Object value;
+        try {
+            value = function.calculate(arguments);
+        } catch (RuntimeException ex) {
+            // Leave the error to the evaluation
+            return null;
+        }
+        // Constants are read at each evaluation
+        value = FormulaReadFunction.materialize(value);
+        if (value != null) {
+            constants.put(ast, value);
+        }
+        return value;
+    }
+
+    /**
+     * Whether the converted subtree can be used in more than one place:
+     * channels and constants can, and so can calls of pure functions
+     * on arguments that can be shared. The children must have already
+     * been converted.
+     *
+     * @param ast the converted subtree
+     * @param converted the shared subtrees
+     * @return true if the subtree can be shared
+     */
+    private boolean isShareable(FormulaAst ast, Map<FormulaAst, ?> converted) {
+        if (ast.getType() != FormulaAst.Type.OP) {
+            return true;
+        }
+        for (FormulaAst child : ast.getChildren()) {
+            if (!converted.containsKey(child)) {
+                return false;
+            }
+        }
+        Collection<FormulaFunction> matches = registry.findFunctions((String) ast.getValue(), ast.getChildren().size());
+        if (matches.isEmpty()) {
+            return false;
+        }
+        for (FormulaFunction match : matches) {
+            if (!match.isPure()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An expression that returns the value of the given expression, without
+     * connecting its channels again.
+     */
+    private static <T> DesiredRateExpression<T> alias(DesiredRateExpression<T> expression) {
+        return new DesiredRateExpressionImpl<>(new DesiredRateExpressionListImpl<>(), expression.getFunction(), expression.getName());
+    }
+
+}
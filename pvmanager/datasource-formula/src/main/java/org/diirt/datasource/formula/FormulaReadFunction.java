@@ -6,69 +6,140 @@ package org.diirt.datasource.formula;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import org.diirt.datasource.PVDirector;
 import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.VersionedReadFunction;
+import org.diirt.util.array.FusedListDouble;
+import org.diirt.vtype.VNumberArray;
+import org.diirt.vtype.ValueFactory;
 import org.diirt.vtype.ValueUtil;
 
 /**
+ * The read function for a formula function call.
+ * <p>
+ * If the arguments are versioned, pure functions are recalculated only when
+ * one of the versions changes; other arguments are compared by equality.
+ * The version of this function changes only when a new value is calculated,
+ * so that unchanged results propagate through nested calls.
+ * <p>
+ * The function to call is resolved through the registry, if given, and
+ * kept as long as the classes of the arguments do not change and no function
+ * set is registered.
+ * <p>
+ * This is the generic evaluation, used for any function call: calls
+ * that allow a faster evaluation are created by {@link FormulaCompiler}.
  *
  * @author carcassi
  */
-class FormulaReadFunction implements ReadFunction<Object> {
+class FormulaReadFunction implements VersionedReadFunction<Object> {
 
     public final List<ReadFunction<?>> argumentFunctions;
     public final Collection<FormulaFunction> formulaMatches;
     public final List<Object> argumentValues;
+    private final long[] argumentVersions;
+    private final VersionedReadFunction<?>[] versionedArguments;
+    private long version;
     public final String functionName;
+    private final FormulaRegistry registry;
+    private Class<?>[] resolvedClasses;
+    private int resolvedVersion;
     public FormulaFunction lastFormula;
     public Object lastValue;
     public volatile PVDirector<?> director;
+    private boolean materializeArrays;
 
     FormulaReadFunction(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName) {
+        this(argumentFunctions, formulaMatches, functionName, null);
+    }
+
+    FormulaReadFunction(List<ReadFunction<?>> argumentFunctions, Collection<FormulaFunction> formulaMatches, String functionName, FormulaRegistry registry) {
         this.argumentFunctions = argumentFunctions;
         this.formulaMatches = formulaMatches;
         this.argumentValues = new ArrayList<>(argumentFunctions.size());
         for (ReadFunction<?> argumentFunction : argumentFunctions) {
             argumentValues.add(null);
         }
+        this.argumentVersions = new long[argumentFunctions.size()];
+        Arrays.fill(argumentVersions, -1);
+        // Resolved once: a type check on an interface at each scan is not free
+        this.versionedArguments = new VersionedReadFunction<?>[argumentFunctions.size()];
+        for (int i = 0; i < argumentFunctions.size(); i++) {
+            if (argumentFunctions.get(i) instanceof VersionedReadFunction) {
+                versionedArguments[i] = (VersionedReadFunction<?>) argumentFunctions.get(i);
+            }
+        }
         this.functionName = functionName;
+        this.registry = registry;
+    }
+
+    /**
+     * Stores the elements of the arrays calculated by this function, instead
+     * of returning the lazy result of element-wise operations. This is set
+     * on the function that returns the value of the whole formula, which
+     * can be read many times (e.g. for rendering or statistics), while
+     * the nested calls keep the operations fused.
+     */
+    void materializeArrays() {
+        this.materializeArrays = true;
     }
 
     void setDirector(PVDirector<?> director) {
         this.director = director;
     }
 
-   @Override
+    @Override
     public Object readValue() {
         if (formulaMatches.isEmpty()) {
             throw new RuntimeException("No function named '" + functionName + "'  is defined");
         }
 
-        List<Object> previousValues = new ArrayList<>(argumentValues);
+        boolean changed = false;
         for (int i = 0; i < argumentFunctions.size(); i++) {
-            argumentValues.set(i, argumentFunctions.get(i).readValue());
-        }
-        if (previousValues.equals(argumentValues) && lastFormula != null && lastFormula.isPure()) {
-            return lastValue;
+            changed |= readArgument(i);
         }
+        return evaluate(changed);
+    }
 
-        if (lastFormula == null || !FormulaFunctions.matchArgumentTypes(argumentValues, lastFormula)) {
-            if (lastFormula instanceof StatefulFormulaFunction) {
-                ((StatefulFormulaFunction) lastFormula).dispose();
+    /**
+     * Reads the value of the argument at the given index.
+     *
+     * @param index the index of the argument
+     * @return true if the argument changed since the previous read
+     */
+    boolean readArgument(int index) {
+        Object value = argumentFunctions.get(index).readValue();
+        boolean changed = false;
+        VersionedReadFunction<?> versionedArgument = versionedArguments[index];
+        if (versionedArgument != null) {
+            long argumentVersion = versionedArgument.getVersion();
+            if (argumentVersion != argumentVersions[index]) {
+                argumentVersions[index] = argumentVersion;
+                changed = true;
             }
+        } else if (!Objects.equals(value, argumentValues.get(index))) {
+            changed = true;
+        }
+        argumentValues.set(index, value);
+        return changed;
+    }
 
-            lastFormula = FormulaFunctions.findFirstMatch(argumentValues, formulaMatches);
-            // If the function is stateful, create a new copy
-            // The copy will be kept until the same match works:
-            // is that the right behavior?
-            if (lastFormula instanceof StatefulFormulaFunction) {
-                lastFormula = FormulaFunctions.createInstance((StatefulFormulaFunction) lastFormula);
-            }
+    /**
+     * Calculates the value on the arguments already read, matching
+     * the function to the argument types.
+     *
+     * @param changed whether any argument changed since the previous evaluation
+     * @return the new value
+     */
+    Object evaluate(boolean changed) {
+        if (!changed && lastFormula != null && lastFormula.isPure()) {
+            return lastValue;
+        }
 
-            if (lastFormula instanceof DynamicFormulaFunction) {
-                ((DynamicFormulaFunction) lastFormula).setDirector(director);
-            }
+        if (!isResolved()) {
+            resolve();
         }
 
         if (lastFormula == null) {
@@ -87,8 +158,116 @@ class FormulaReadFunction implements ReadFunction<Object> {
             throw new RuntimeException("Can't find match for function '" + functionName + "'  and arguments " + typeNames);
         }
 
-        lastValue = lastFormula.calculate(argumentValues);
+        return updateValue(lastFormula.calculate(argumentValues));
+    }
+
+    /**
+     * Whether the function was resolved for arguments of the same classes
+     * as the current ones, and no function set was registered since.
+     *
+     * @return true if the last function can be called on the current arguments
+     */
+    boolean isResolved() {
+        if (lastFormula == null || resolvedClasses == null
+                || (registry != null && registry.getVersion() != resolvedVersion)) {
+            return false;
+        }
+        for (int i = 0; i < resolvedClasses.length; i++) {
+            Object argument = argumentValues.get(i);
+            if ((argument == null ? null : argument.getClass()) != resolvedClasses[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resolve() {
+        // Read the version before the resolution, so that a set
+        // registered in the meantime is not missed
+        int currentVersion = registry != null ? registry.getVersion() : 0;
+        boolean registryChanged = registry != null && currentVersion != resolvedVersion;
+
+        if (lastFormula == null || registryChanged || !FormulaFunctions.matchArgumentTypes(argumentValues, lastFormula)) {
+            FormulaFunction match;
+            if (registry != null) {
+                match = registry.findFunction(functionName, argumentValues);
+            } else {
+                match = FormulaFunctions.findFirstMatch(argumentValues, formulaMatches);
+            }
+
+            if (!isSameFunction(match, lastFormula)) {
+                if (lastFormula instanceof StatefulFormulaFunction) {
+                    ((StatefulFormulaFunction) lastFormula).dispose();
+                }
+
+                lastFormula = match;
+                // If the function is stateful, create a new copy
+                // The copy will be kept until the same match works:
+                // is that the right behavior?
+                if (lastFormula instanceof StatefulFormulaFunction) {
+                    lastFormula = FormulaFunctions.createInstance((StatefulFormulaFunction) lastFormula);
+                }
+
+                if (lastFormula instanceof DynamicFormulaFunction) {
+                    ((DynamicFormulaFunction) lastFormula).setDirector(director);
+                }
+            }
+        }
+
+        if (lastFormula != null) {
+            if (resolvedClasses == null) {
+                resolvedClasses = new Class<?>[argumentValues.size()];
+            }
+            for (int i = 0; i < resolvedClasses.length; i++) {
+                Object argument = argumentValues.get(i);
+                resolvedClasses[i] = argument == null ? null : argument.getClass();
+            }
+            resolvedVersion = currentVersion;
+        }
+    }
+
+    private static boolean isSameFunction(FormulaFunction match, FormulaFunction current) {
+        // A stateful function is a copy of the registered one
+        if (match instanceof StatefulFormulaFunction && current != null) {
+            return match.getClass().equals(current.getClass());
+        }
+        return match == current;
+    }
+
+    /**
+     * Changes the value returned by this function, increasing the version
+     * if it is a different instance.
+     *
+     * @param newValue the new value
+     * @return the new value
+     */
+    Object updateValue(Object newValue) {
+        if (newValue != lastValue) {
+            lastValue = materializeArrays ? materialize(newValue) : newValue;
+            version++;
+        }
         return lastValue;
     }
 
+    /**
+     * If the value is an array calculated by element-wise operations,
+     * returns a copy where the elements are stored.
+     *
+     * @param value a value; can be null
+     * @return the value with stored elements
+     */
+    static Object materialize(Object value) {
+        if (value instanceof VNumberArray && ((VNumberArray) value).getData() instanceof FusedListDouble) {
+            VNumberArray array = (VNumberArray) value;
+            return ValueFactory.newVNumberArray(((FusedListDouble) array.getData()).toArrayDouble(),
+                    array.getSizes(), array.getDimensionDisplay(), array, array, array);
+        }
+        return value;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
 }
@@ -4,12 +4,15 @@
  */
 package org.diirt.datasource.formula;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.diirt.util.config.ServiceLoaderOSGiWrapper;
 import org.diirt.vtype.ValueFactory;
@@ -48,9 +51,14 @@ public class FormulaRegistry {
         for (FormulaFunction formulaFunction : functionSet.getFunctions()) {
             registerFormulaFunction(formulaFunction);
         }
+        // The resolutions must be discarded after the functions are changed
+        resolutions = new ConcurrentHashMap<>();
+        version.incrementAndGet();
     }
 
     private final Map<String, FormulaFunctionSet> functionSets = new ConcurrentHashMap<>();
+    private volatile Map<Signature, FormulaFunction> resolutions = new ConcurrentHashMap<>();
+    private final AtomicInteger version = new AtomicInteger();
     private final Map<String, Map<Integer, Collection<FormulaFunction>>> formulaFunctions = new ConcurrentHashMap<>();
     private final Map<String, Object> constants = new ConcurrentHashMap<>();
 
@@ -141,6 +149,79 @@ public class FormulaRegistry {
         return functions;
     }
 
+    /**
+     * Finds the function that is called for the given arguments, which is
+     * the first function with the given name that accepts them.
+     * <p>
+     * Since the match only depends on the classes of the arguments,
+     * the result is cached by function name and argument classes, until
+     * a new function set is registered.
+     *
+     * @param functionName the name of the function
+     * @param arguments the values of the arguments; can contain nulls
+     * @return the matched function; null if no function accepts the arguments
+     */
+    public FormulaFunction findFunction(String functionName, List<Object> arguments) {
+        Map<Signature, FormulaFunction> cache = resolutions;
+        Signature signature = new Signature(functionName, arguments);
+        FormulaFunction function = cache.get(signature);
+        if (function == null) {
+            function = FormulaFunctions.findFirstMatch(arguments, findFunctions(functionName, arguments.size()));
+            if (function != null) {
+                cache.put(signature, function);
+            }
+        }
+        return function;
+    }
+
+    /**
+     * Changes every time a function set is registered, so that
+     * the functions resolved for the previous sets can be discarded.
+     *
+     * @return the version of the registered functions
+     */
+    int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * The name of a function and the classes of the arguments
+     * of a call.
+     */
+    private static final class Signature {
+
+        private final String functionName;
+        private final Class<?>[] argumentClasses;
+        private final int hash;
+
+        Signature(String functionName, List<Object> arguments) {
+            this.functionName = functionName;
+            this.argumentClasses = new Class<?>[arguments.size()];
+            for (int i = 0; i < argumentClasses.length; i++) {
+                Object argument = arguments.get(i);
+                argumentClasses[i] = argument == null ? null : argument.getClass();
+            }
+            this.hash = 31 * functionName.hashCode() + Arrays.hashCode(argumentClasses);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Signature) {
+                Signature other = (Signature) obj;
+                return functionName.equals(other.functionName) && Arrays.equals(argumentClasses, other.argumentClasses);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     /**
      * Returns the value of the constant with the given name
      *
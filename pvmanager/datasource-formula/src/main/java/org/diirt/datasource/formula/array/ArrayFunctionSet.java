@@ -161,7 +161,13 @@ public class ArrayFunctionSet extends FormulaFunctionSet {
                                 return ListMath.rescale(array, (1 / num), 0.0);
                             }
                         })
-                .addFormulaFunction(new DftFormulaFunction())
+                .addFormulaFunction(new DftFormulaFunction("dft"))
+                .addFormulaFunction(new DftFormulaFunction("fft"))
+                .addFormulaFunction(new FftFormulaFunction("fft", "Fourier transform of the complex argument", false))
+                .addFormulaFunction(new FftFormulaFunction("ifft", "Inverse Fourier transform of the complex argument", true))
+                .addFormulaFunction(new PowerSpectrumFormulaFunction())
+                .addFormulaFunction(new WindowFormulaFunction("hann", "Result[x] = array[x] * Hann window[x]", false))
+                .addFormulaFunction(new WindowFormulaFunction("hamming", "Result[x] = array[x] * Hamming window[x]", true))
                 .addFormulaFunction(new ArrayRangeOfFormulaFunction())
                 .addFormulaFunction(new DimDisplayFormulaFunction())
                 .addFormulaFunction(new NdArrayFormulaFunction())
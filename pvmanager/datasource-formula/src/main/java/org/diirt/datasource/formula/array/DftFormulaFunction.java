@@ -7,7 +7,6 @@ package org.diirt.datasource.formula.array;
 import java.util.Arrays;
 import java.util.List;
 import org.diirt.datasource.formula.FormulaFunction;
-import org.diirt.util.array.ArrayDouble;
 import org.diirt.util.array.ListDouble;
 
 import org.diirt.util.array.ListMath;
@@ -17,10 +16,19 @@ import org.diirt.vtype.VTable;
 import org.diirt.vtype.ValueFactory;
 
 /**
- *
+ * The Fourier transform of a real array, as a table with the real part,
+ * imaginary part, modulus and phase of each frequency.
+ * <p>
+ * The transform is calculated with {@link ListMath#fft(org.diirt.util.array.ListNumber) }.
  */
 class DftFormulaFunction implements FormulaFunction {
 
+    private final String name;
+
+    DftFormulaFunction(String name) {
+        this.name = name;
+    }
+
     @Override
     public boolean isPure() {
         return true;
@@ -33,12 +41,12 @@ class DftFormulaFunction implements FormulaFunction {
 
     @Override
     public String getName() {
-        return "dft";
+        return name;
     }
 
     @Override
     public String getDescription() {
-        return "(Experimental) DFT of the argument";
+        return "Fourier transform of the argument";
     }
 
     @Override
@@ -66,8 +74,17 @@ class DftFormulaFunction implements FormulaFunction {
             throw new IllegalArgumentException("Only 1D array supported for DFT");
         }
 
-        // TODO: no need to allocate empty array
-        List<ListNumber> fft = ListMath.dft(array.getData(), new ArrayDouble(new double[array.getData().size()]));
+        return spectrumTable(ListMath.fft(array.getData()));
+    }
+
+    /**
+     * Returns the table with the real part, imaginary part, modulus and
+     * phase of a transform.
+     *
+     * @param fft the real and imaginary part of the transform
+     * @return the table
+     */
+    static VTable spectrumTable(List<ListNumber> fft) {
         final ListNumber real = fft.get(0);
         final ListNumber imaginary = fft.get(1);
         ListNumber modulus = new ListDouble() {
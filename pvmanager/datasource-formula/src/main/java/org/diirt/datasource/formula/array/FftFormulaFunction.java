@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula.array;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.formula.FormulaFunction;
+import org.diirt.datasource.util.NullUtils;
+import org.diirt.util.array.ListMath;
+import org.diirt.vtype.VNumberArray;
+import org.diirt.vtype.VTable;
+
+/**
+ * The Fourier transform, or its inverse, of a complex array given as the
+ * real and imaginary parts. The result is a table in the same format
+ * as {@link DftFormulaFunction}.
+ *
+ * @author carcassi
+ */
+class FftFormulaFunction implements FormulaFunction {
+
+    private final String name;
+    private final String description;
+    private final boolean inverse;
+
+    FftFormulaFunction(String name, String description, boolean inverse) {
+        this.name = name;
+        this.description = description;
+        this.inverse = inverse;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isVarArgs() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public List<Class<?>> getArgumentTypes() {
+        return Arrays.<Class<?>>asList(VNumberArray.class, VNumberArray.class);
+    }
+
+    @Override
+    public List<String> getArgumentNames() {
+        return Arrays.asList("real", "imaginary");
+    }
+
+    @Override
+    public Class<?> getReturnType() {
+        return VTable.class;
+    }
+
+    @Override
+    public Object calculate(final List<Object> args) {
+        if (NullUtils.containsNull(args)) {
+            return null;
+        }
+
+        VNumberArray real = (VNumberArray) args.get(0);
+        VNumberArray imaginary = (VNumberArray) args.get(1);
+        if (real.getSizes().size() != 1 || imaginary.getSizes().size() != 1) {
+            throw new IllegalArgumentException("Only 1D array supported for FFT");
+        }
+
+        if (inverse) {
+            return DftFormulaFunction.spectrumTable(ListMath.ifft(real.getData(), imaginary.getData()));
+        } else {
+            return DftFormulaFunction.spectrumTable(ListMath.fft(real.getData(), imaginary.getData()));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula.array;
+
+import static org.diirt.vtype.ValueFactory.displayNone;
+import static org.diirt.vtype.ValueFactory.newVNumberArray;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.formula.FormulaFunction;
+import org.diirt.datasource.util.NullUtils;
+import org.diirt.util.array.ListMath;
+import org.diirt.vtype.VNumberArray;
+
+/**
+ * The power spectrum of a real array: the square modulus of the Fourier
+ * transform for the frequencies from 0 to n/2.
+ *
+ * @author carcassi
+ */
+class PowerSpectrumFormulaFunction implements FormulaFunction {
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isVarArgs() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return "powerSpectrum";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Power spectrum of the argument";
+    }
+
+    @Override
+    public List<Class<?>> getArgumentTypes() {
+        return Arrays.<Class<?>>asList(VNumberArray.class);
+    }
+
+    @Override
+    public List<String> getArgumentNames() {
+        return Arrays.asList("array1D");
+    }
+
+    @Override
+    public Class<?> getReturnType() {
+        return VNumberArray.class;
+    }
+
+    @Override
+    public Object calculate(final List<Object> args) {
+        if (NullUtils.containsNull(args)) {
+            return null;
+        }
+
+        VNumberArray array = (VNumberArray) args.get(0);
+        if (array.getSizes().size() != 1) {
+            throw new IllegalArgumentException("Only 1D array supported for power spectrum");
+        }
+
+        return newVNumberArray(ListMath.powerSpectrum(array.getData()),
+                array, array, displayNone());
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula.array;
+
+import static org.diirt.vtype.ValueFactory.displayNone;
+import static org.diirt.vtype.ValueFactory.newVNumberArray;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.formula.FormulaFunction;
+import org.diirt.datasource.util.NullUtils;
+import org.diirt.util.array.ListDouble;
+import org.diirt.util.array.ListMath;
+import org.diirt.vtype.VNumberArray;
+
+/**
+ * Multiplies a real array by a Hann or Hamming window, to reduce
+ * the leakage in its Fourier transform.
+ *
+ * @author carcassi
+ */
+class WindowFormulaFunction implements FormulaFunction {
+
+    private final String name;
+    private final String description;
+    private final boolean hamming;
+    // Waveforms rarely change size: keep the last window
+    private volatile ListDouble lastWindow;
+
+    WindowFormulaFunction(String name, String description, boolean hamming) {
+        this.name = name;
+        this.description = description;
+        this.hamming = hamming;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public boolean isVarArgs() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public List<Class<?>> getArgumentTypes() {
+        return Arrays.<Class<?>>asList(VNumberArray.class);
+    }
+
+    @Override
+    public List<String> getArgumentNames() {
+        return Arrays.asList("array1D");
+    }
+
+    @Override
+    public Class<?> getReturnType() {
+        return VNumberArray.class;
+    }
+
+    private ListDouble window(int size) {
+        ListDouble window = lastWindow;
+        if (window == null || window.size() != size) {
+            window = hamming ? ListMath.hammingWindow(size) : ListMath.hannWindow(size);
+            lastWindow = window;
+        }
+        return window;
+    }
+
+    @Override
+    public Object calculate(final List<Object> args) {
+        if (NullUtils.containsNull(args)) {
+            return null;
+        }
+
+        VNumberArray array = (VNumberArray) args.get(0);
+        if (array.getSizes().size() != 1) {
+            throw new IllegalArgumentException("Only 1D array supported for window");
+        }
+
+        return newVNumberArray(ListMath.multiply(array.getData(), window(array.getData().size())),
+                array, array, displayNone());
+    }
+}
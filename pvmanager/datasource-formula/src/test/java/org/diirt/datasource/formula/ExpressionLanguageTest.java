@@ -9,6 +9,8 @@ import java.time.Duration;
 import org.antlr.runtime.RecognitionException;
 import org.diirt.datasource.DataSource;
 import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
 import org.diirt.datasource.PVWriter;
 import org.diirt.datasource.ReadExpressionTester;
 import org.diirt.vtype.VDouble;
@@ -16,11 +18,13 @@ import org.junit.Test;
 
 import static org.diirt.datasource.formula.ExpressionLanguage.*;
 
+import org.diirt.datasource.test.CountDownPVReaderListener;
 import org.diirt.datasource.test.CountDownPVWriterListener;
 import org.diirt.datasource.test.MockDataSource;
 import org.diirt.util.array.*;
 import org.diirt.vtype.VBoolean;
 import org.diirt.vtype.VInt;
+import org.diirt.vtype.VNumber;
 import org.diirt.vtype.VNumberArray;
 import org.diirt.vtype.VString;
 import org.diirt.vtype.ValueFactory;
@@ -641,4 +645,33 @@ public class ExpressionLanguageTest {
             sim.close();
         }
     }
+
+    @Test
+    public void sharedFormula1() throws Exception {
+        DataSource mock = new MockDataSource();
+        CountDownPVReaderListener listener1 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        CountDownPVReaderListener listener2 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        PVReader<?> pv1 = PVManager.read(sharedFormula("=1+2")).from(mock)
+                .readListener(listener1).maxRate(Duration.ofMillis(10));
+        // Same formula, different spacing
+        PVReader<?> pv2 = PVManager.read(sharedFormula("= 1 + 2")).from(mock)
+                .readListener(listener2).maxRate(Duration.ofMillis(10));
+        try {
+            listener1.await(Duration.ofMillis(500));
+            listener2.await(Duration.ofMillis(500));
+            assertThat(((VNumber) pv1.getValue()).getValue().doubleValue(), equalTo(3.0));
+            assertThat(((VNumber) pv2.getValue()).getValue().doubleValue(), equalTo(3.0));
+        } finally {
+            pv1.close();
+            pv2.close();
+            mock.close();
+        }
+    }
+
+    @Test
+    public void sharedFormula2() {
+        // Single channels and errors are not wrapped
+        assertThat(sharedFormula("='pv'"), instanceOf(LastOfChannelExpression.class));
+        assertThat(sharedFormula("=1+"), instanceOf(ErrorDesiredRateExpression.class));
+    }
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the cache of parsed formulas and its configuration.
+ *
+ * @author carcassi
+ */
+public class FormulaAstCacheTest {
+
+    private final AtomicInteger parseCount = new AtomicInteger();
+
+    private final Function<String, FormulaAst> parser = new Function<String, FormulaAst>() {
+
+        @Override
+        public FormulaAst apply(String text) {
+            parseCount.incrementAndGet();
+            if (text.startsWith("!")) {
+                throw new IllegalArgumentException("Error parsing formula");
+            }
+            return FormulaAst.channel(text);
+        }
+    };
+
+    @Test
+    public void get1() {
+        FormulaAstCache cache = new FormulaAstCache(parser, 10);
+        FormulaAst ast = cache.get("a");
+        assertThat(cache.get("a"), sameInstance(ast));
+        assertThat(cache.get("b"), equalTo(FormulaAst.channel("b")));
+        assertThat(parseCount.get(), equalTo(2));
+        assertThat(cache.getHitCount(), equalTo(1L));
+        assertThat(cache.getMissCount(), equalTo(2L));
+        assertThat(cache.getSize(), equalTo(2));
+    }
+
+    @Test
+    public void get2() {
+        // Errors are not cached
+        FormulaAstCache cache = new FormulaAstCache(parser, 10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("!a");
+                fail("Parsing should fail");
+            } catch (IllegalArgumentException ex) {
+                // Expected
+            }
+        }
+        assertThat(parseCount.get(), equalTo(2));
+        assertThat(cache.getSize(), equalTo(0));
+    }
+
+    @Test
+    public void eviction1() {
+        FormulaAstCache cache = new FormulaAstCache(parser, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.get("f" + i);
+        }
+        cache.get("f0");
+        cache.get("f10");
+
+        // Least recently used are removed
+        assertThat(cache.getSize(), lessThanOrEqualTo(10));
+        int count = parseCount.get();
+        cache.get("f0");
+        cache.get("f10");
+        assertThat(parseCount.get(), equalTo(count));
+        cache.get("f1");
+        assertThat(parseCount.get(), equalTo(count + 1));
+    }
+
+    @Test
+    public void eviction2() {
+        FormulaAstCache cache = new FormulaAstCache(parser, 100);
+        for (int i = 0; i < 10000; i++) {
+            cache.get("f" + i);
+            assertThat(cache.getSize(), lessThanOrEqualTo(100));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void new1() {
+        new FormulaAstCache(parser, 0);
+    }
+
+    private static FormulaConfiguration configuration(String xml) {
+        return new FormulaConfiguration(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void configuration1() {
+        assertThat(configuration("<formula version=\"1\"/>").parseCacheMaxSize, equalTo(1000));
+        assertThat(configuration("<formula version=\"1\"><parseCache maxSize=\"50\"/></formula>").parseCacheMaxSize, equalTo(50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configuration2() {
+        configuration("<formula version=\"2\"/>");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configuration3() {
+        configuration("<formula version=\"1\"><parseCache maxSize=\"0\"/></formula>");
+    }
+
+}
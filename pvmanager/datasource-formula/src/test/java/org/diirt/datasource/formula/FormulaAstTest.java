@@ -44,6 +44,20 @@ public class FormulaAstTest {
         assertThat(formula("=3+4").toString(), equalTo("(3 + 4)"));
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void op1() {
+        // Nodes are immutable, so that they can be cached
+        formula("=3+4").getChildren().set(0, integer(5));
+    }
+
+    @Test
+    public void formula1() {
+        // The same text returns the cached instance
+        long hits = getFormulaCache().getHitCount();
+        assertThat(formula("='x' + 1"), sameInstance(formula("='x' + 1")));
+        assertThat(getFormulaCache().getHitCount(), greaterThan(hits));
+    }
+
     @Test
     public void listChannelNames1() {
         assertThat(formula("=3+4").listChannelNames(), equalTo(new ArrayList<String>()));
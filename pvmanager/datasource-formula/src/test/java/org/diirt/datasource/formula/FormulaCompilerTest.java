@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ValueCacheImpl;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VDouble;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VNumberArray;
+import org.junit.Test;
+import static org.diirt.datasource.formula.FormulaAst.*;
+import static org.diirt.vtype.ValueFactory.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the compilation of formula function calls.
+ *
+ * @author carcassi
+ */
+public class FormulaCompilerTest {
+
+    private final ValueCacheImpl<Object> x = new ValueCacheImpl<>(Object.class);
+    private final ValueCacheImpl<Object> y = new ValueCacheImpl<>(Object.class);
+
+    private ReadFunction<?> compile(FormulaAst ast) {
+        Map<String, ReadFunction<?>> channels = new HashMap<>();
+        channels.put("x", x);
+        channels.put("y", y);
+        return ast.toReadFunction(channels);
+    }
+
+    @Test
+    public void compile1() {
+        assertThat(compile(op("+", channel("x"), channel("y"))), instanceOf(FormulaCompiler.BinaryNumberCall.class));
+        assertThat(compile(op("sin", channel("x"))), instanceOf(FormulaCompiler.UnaryNumberCall.class));
+        assertThat(compile(op("<", channel("x"), channel("y"))).getClass(), equalTo((Object) FormulaReadFunction.class));
+    }
+
+    @Test
+    public void compile2() {
+        // With compilation off, the generic function is used
+        System.setProperty("FormulaCompilerDisabled", "true");
+        try {
+            assertThat(compile(op("+", channel("x"), channel("y"))).getClass(), equalTo((Object) FormulaReadFunction.class));
+        } finally {
+            System.clearProperty("FormulaCompilerDisabled");
+        }
+    }
+
+    @Test
+    public void readValue1() {
+        // Same value, alarm and time as the generic evaluation
+        ReadFunction<?> function = compile(op("+", op("*", channel("x"), channel("y")), op("sin", channel("y"))));
+        VDouble arg1 = newVDouble(3.0, newAlarm(AlarmSeverity.MINOR, "LOW"), newTime(Instant.ofEpochSecond(100)), displayNone());
+        VDouble arg2 = newVDouble(2.0, newAlarm(AlarmSeverity.MAJOR, "HIHI"), newTime(Instant.ofEpochSecond(50)), displayNone());
+        x.writeValue(arg1);
+        y.writeValue(arg2);
+        for (int i = 0; i < 2; i++) {
+            VNumber result = (VNumber) function.readValue();
+            assertThat(result.getValue().doubleValue(), equalTo(6.0 + Math.sin(2.0)));
+            assertThat(result.getAlarmSeverity(), equalTo(AlarmSeverity.MAJOR));
+            assertThat(result.getAlarmName(), equalTo("HIHI"));
+            assertThat(result.getTimestamp(), equalTo(Instant.ofEpochSecond(100)));
+        }
+    }
+
+    @Test
+    public void readValue2() {
+        // Value not recalculated if the arguments did not change
+        ReadFunction<?> function = compile(op("+", channel("x"), channel("y")));
+        x.writeValue(newVDouble(1.0));
+        y.writeValue(newVDouble(2.0));
+        Object value = function.readValue();
+        assertThat(((VNumber) value).getValue().doubleValue(), equalTo(3.0));
+        assertThat(function.readValue(), sameInstance(value));
+
+        y.writeValue(newVDouble(3.0));
+        assertThat(((VNumber) function.readValue()).getValue().doubleValue(), equalTo(4.0));
+    }
+
+    @Test
+    public void readValue3() {
+        // Falls back to the generic evaluation on type change
+        ReadFunction<?> function = compile(op("+", channel("x"), channel("y")));
+        x.writeValue(newVDouble(1.0));
+        y.writeValue(newVInt(2, alarmNone(), timeNow(), displayNone()));
+        assertThat(((VNumber) function.readValue()).getValue().doubleValue(), equalTo(3.0));
+
+        x.writeValue(newVDoubleArray(new ArrayDouble(1, 2), alarmNone(), timeNow(), displayNone()));
+        y.writeValue(newVDoubleArray(new ArrayDouble(3, 4), alarmNone(), timeNow(), displayNone()));
+        VNumberArray array = (VNumberArray) function.readValue();
+        assertThat(array.getData(), equalTo((Object) new ArrayDouble(4, 6)));
+
+        x.writeValue(null);
+        assertThat(function.readValue(), nullValue());
+
+        x.writeValue(newVDouble(2.0));
+        y.writeValue(newVDouble(2.0));
+        assertThat(((VNumber) function.readValue()).getValue().doubleValue(), equalTo(4.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toReadFunction1() {
+        op("+", channel("x"), channel("z")).toReadFunction(Collections.singletonMap("x", x));
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.diirt.datasource.ChannelReadRecipe;
+import org.diirt.datasource.ReadExpressionTester;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ValueCacheImpl;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.FusedListDouble;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VNumberArray;
+import org.junit.Test;
+import static org.diirt.datasource.formula.FormulaAst.*;
+import static org.diirt.vtype.ValueFactory.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the optimization of formulas.
+ *
+ * @author carcassi
+ */
+public class FormulaOptimizerTest {
+
+    @Test
+    public void fold1() {
+        DesiredRateExpression<?> exp = op("*", integer(2), floatingPoint(3.14159)).toExpression();
+        assertThat(exp, not(instanceOf(FormulaFunctionReadExpression.class)));
+        assertThat(exp.getName(), equalTo("(2 * 3.14159)"));
+        assertThat(((VNumber) exp.getFunction().readValue()).getValue().doubleValue(), equalTo(6.28318));
+    }
+
+    @Test
+    public void fold2() {
+        // Nested calls and named constants are folded
+        DesiredRateExpression<?> exp = op("+", op("*", integer(2), id("PI")), op("sin", integer(0))).toExpression();
+        assertThat(exp, not(instanceOf(FormulaFunctionReadExpression.class)));
+        assertThat(((VNumber) exp.getFunction().readValue()).getValue().doubleValue(), equalTo(2 * Math.PI));
+    }
+
+    @Test
+    public void fold3() {
+        // Only the constant part of the formula is folded
+        ReadExpressionTester exp = new ReadExpressionTester(op("+", channel("x"), op("*", integer(2), integer(3))).toExpression());
+        assertThat(exp.getExpression(), instanceOf(FormulaFunctionReadExpression.class));
+        assertThat(exp.getExpression().getName(), equalTo("(x + (2 * 3))"));
+        FormulaReadFunction function = (FormulaReadFunction) exp.getFunction();
+        assertThat(function.argumentFunctions.get(1), not(instanceOf(FormulaReadFunction.class)));
+        exp.writeValue("x", newVDouble(1.0));
+        assertThat(((VNumber) exp.getValue()).getValue().doubleValue(), equalTo(7.0));
+    }
+
+    @Test
+    public void fold4() {
+        // With optimization off, the constants are calculated at each evaluation
+        System.setProperty("FormulaOptimizerDisabled", "true");
+        try {
+            DesiredRateExpression<?> exp = op("*", integer(2), floatingPoint(3.14159)).toExpression();
+            assertThat(exp, instanceOf(FormulaFunctionReadExpression.class));
+            assertThat(((VNumber) exp.getFunction().readValue()).getValue().doubleValue(), equalTo(6.28318));
+        } finally {
+            System.clearProperty("FormulaOptimizerDisabled");
+        }
+    }
+
+    @Test
+    public void fold5() {
+        // Calls that do not match a function are left to the evaluation
+        DesiredRateExpression<?> exp = op("*", string("a"), integer(3)).toExpression();
+        assertThat(exp, instanceOf(FormulaFunctionReadExpression.class));
+    }
+
+    @Test
+    public void share1() {
+        // The channel is connected and read once
+        ReadExpressionTester exp = new ReadExpressionTester(op("+", op("*", channel("x"), channel("x")), channel("x")).toExpression());
+        int nRecipes = 0;
+        for (ChannelReadRecipe recipe : exp.getCurrentReadRecipe().getChannelReadRecipes()) {
+            if (recipe.getChannelName().equals("x")) {
+                nRecipes++;
+            }
+        }
+        assertThat(nRecipes, equalTo(1));
+
+        FormulaReadFunction function = (FormulaReadFunction) exp.getFunction();
+        FormulaReadFunction product = (FormulaReadFunction) function.argumentFunctions.get(0);
+        assertThat(product.argumentFunctions.get(1), sameInstance((Object) product.argumentFunctions.get(0)));
+        assertThat(function.argumentFunctions.get(1), sameInstance((Object) product.argumentFunctions.get(0)));
+
+        exp.writeValue("x", newVDouble(3.0));
+        assertThat(((VNumber) exp.getValue()).getValue().doubleValue(), equalTo(12.0));
+        exp.writeValue("x", newVDouble(2.0));
+        assertThat(((VNumber) exp.getValue()).getValue().doubleValue(), equalTo(6.0));
+    }
+
+    @Test
+    public void share2() {
+        // Equal subexpressions are calculated once
+        ValueCacheImpl<Object> x = new ValueCacheImpl<>(Object.class);
+        ValueCacheImpl<Object> y = new ValueCacheImpl<>(Object.class);
+        Map<String, ReadFunction<?>> channels = new HashMap<>();
+        channels.put("x", x);
+        channels.put("y", y);
+        FormulaReadFunction function = (FormulaReadFunction) op("-", op("*", channel("x"), channel("y")),
+                op("*", channel("x"), channel("y"))).toReadFunction(channels);
+        assertThat(function.argumentFunctions.get(1), sameInstance((Object) function.argumentFunctions.get(0)));
+
+        x.writeValue(newVDouble(3.0));
+        y.writeValue(newVDouble(2.0));
+        assertThat(((VNumber) function.readValue()).getValue().doubleValue(), equalTo(0.0));
+        y.writeValue(newVDouble(4.0));
+        assertThat(((VNumber) function.readValue()).getValue().doubleValue(), equalTo(0.0));
+    }
+
+    @Test
+    public void materialize1() {
+        // Element-wise operations are fused, and the result of the formula is stored
+        ValueCacheImpl<Object> x = new ValueCacheImpl<>(Object.class);
+        ValueCacheImpl<Object> y = new ValueCacheImpl<>(Object.class);
+        Map<String, ReadFunction<?>> channels = new HashMap<>();
+        channels.put("x", x);
+        channels.put("y", y);
+        FormulaReadFunction function = (FormulaReadFunction) op("-", op("arrayMult", op("+", channel("x"), channel("y")), channel("y")),
+                channel("x")).toReadFunction(channels);
+        x.writeValue(newVDoubleArray(new ArrayDouble(1, 2, 3), alarmNone(), timeNow(), displayNone()));
+        y.writeValue(newVDoubleArray(new ArrayDouble(4, 5, 6), alarmNone(), timeNow(), displayNone()));
+        VNumberArray result = (VNumberArray) function.readValue();
+        assertThat(result.getData(), instanceOf(ArrayDouble.class));
+        assertThat(result.getData(), equalTo((Object) new ArrayDouble(19, 33, 51)));
+        FormulaReadFunction product = (FormulaReadFunction) function.argumentFunctions.get(0);
+        assertThat(((VNumberArray) product.lastValue).getData(), instanceOf(FusedListDouble.class));
+    }
+
+    @Test
+    public void materialize2() {
+        // Folded arrays are stored
+        DesiredRateExpression<?> exp = op("*", op("arrayOf", integer(1), integer(2)), integer(3)).toExpression();
+        VNumberArray result = (VNumberArray) exp.getFunction().readValue();
+        assertThat(result.getData(), instanceOf(ArrayDouble.class));
+        assertThat(result.getData(), equalTo((Object) new ArrayDouble(3, 6)));
+    }
+
+}
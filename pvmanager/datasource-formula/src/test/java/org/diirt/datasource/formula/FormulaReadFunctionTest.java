@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.formula;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.diirt.datasource.ReadFunction;
+import org.diirt.datasource.ValueCacheImpl;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the read function of formula function calls.
+ *
+ * @author carcassi
+ */
+public class FormulaReadFunctionTest {
+
+    /**
+     * Concatenates the arguments, counting the calls.
+     */
+    private static class ConcatFunction implements FormulaFunction {
+
+        private int count;
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        public boolean isVarArgs() {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return "concat";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Concatenates the arguments";
+        }
+
+        @Override
+        public List<Class<?>> getArgumentTypes() {
+            return Arrays.<Class<?>>asList(Object.class);
+        }
+
+        @Override
+        public List<String> getArgumentNames() {
+            return Arrays.asList("args");
+        }
+
+        @Override
+        public Class<?> getReturnType() {
+            return String.class;
+        }
+
+        @Override
+        public Object calculate(List<Object> args) {
+            count++;
+            StringBuilder sb = new StringBuilder();
+            for (Object arg : args) {
+                sb.append(arg);
+            }
+            return sb.toString();
+        }
+    }
+
+    @Test
+    public void readValue1() {
+        ValueCacheImpl<Object> arg1 = new ValueCacheImpl<>(Object.class);
+        ValueCacheImpl<Object> arg2 = new ValueCacheImpl<>(Object.class);
+        arg1.writeValue("a");
+        arg2.writeValue("b");
+        ConcatFunction concat = new ConcatFunction();
+        FormulaReadFunction function = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg1, arg2),
+                Collections.<FormulaFunction>singletonList(concat), "concat");
+
+        assertThat(function.readValue(), equalTo((Object) "ab"));
+        long version = function.getVersion();
+        assertThat(function.readValue(), equalTo((Object) "ab"));
+        assertThat(concat.count, equalTo(1));
+        assertThat(function.getVersion(), equalTo(version));
+
+        arg2.writeValue("c");
+        assertThat(function.readValue(), equalTo((Object) "ac"));
+        assertThat(concat.count, equalTo(2));
+        assertThat(function.getVersion(), greaterThan(version));
+    }
+
+    @Test
+    public void readValue2() {
+        // Nested calls: the outer function is not recalculated
+        // if the inner result did not change
+        ValueCacheImpl<Object> arg = new ValueCacheImpl<>(Object.class);
+        arg.writeValue("a");
+        ConcatFunction inner = new ConcatFunction();
+        ConcatFunction outer = new ConcatFunction();
+        FormulaReadFunction innerFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg),
+                Collections.<FormulaFunction>singletonList(inner), "concat");
+        FormulaReadFunction outerFunction = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(innerFunction, innerFunction),
+                Collections.<FormulaFunction>singletonList(outer), "concat");
+
+        assertThat(outerFunction.readValue(), equalTo((Object) "aa"));
+        assertThat(outerFunction.readValue(), equalTo((Object) "aa"));
+        assertThat(inner.count, equalTo(1));
+        assertThat(outer.count, equalTo(1));
+
+        arg.writeValue("b");
+        assertThat(outerFunction.readValue(), equalTo((Object) "bb"));
+        assertThat(outer.count, equalTo(2));
+    }
+
+    @Test
+    public void readValue3() {
+        // The function is resolved again on type change
+        // and when a function set is registered
+        FormulaRegistry registry = new FormulaRegistry();
+        registry.registerFormulaFunctionSet(FormulaRegistryTest.labelSet(
+                new FormulaRegistryTest.LabelFunction(String.class, "string"),
+                new FormulaRegistryTest.LabelFunction(Number.class, "number")));
+        ValueCacheImpl<Object> arg = new ValueCacheImpl<>(Object.class);
+        FormulaReadFunction function = new FormulaReadFunction(Arrays.<ReadFunction<?>>asList(arg),
+                registry.findFunctions("label", 1), "label", registry);
+
+        arg.writeValue("a");
+        assertThat(function.readValue(), equalTo((Object) "string"));
+        arg.writeValue(1.0);
+        assertThat(function.readValue(), equalTo((Object) "number"));
+        arg.writeValue(2.0);
+        assertThat(function.readValue(), equalTo((Object) "number"));
+
+        registry.registerFormulaFunctionSet(FormulaRegistryTest.labelSet(
+                new FormulaRegistryTest.LabelFunction(Object.class, "object")));
+        arg.writeValue(3.0);
+        assertThat(function.readValue(), equalTo((Object) "object"));
+    }
+
+}
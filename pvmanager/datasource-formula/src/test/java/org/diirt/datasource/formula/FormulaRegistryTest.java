@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource.formula;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.antlr.runtime.*;
@@ -108,4 +109,97 @@ public class FormulaRegistryTest {
     public void validateFunction2() {
         FormulaRegistry.validateFormulaFunction(new Function2());
     }
+
+    /**
+     * A function on any argument that returns a fixed label.
+     */
+    public static class LabelFunction implements FormulaFunction {
+
+        private final Class<?> argumentType;
+        private final String label;
+
+        public LabelFunction(Class<?> argumentType, String label) {
+            this.argumentType = argumentType;
+            this.label = label;
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        public boolean isVarArgs() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "label";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Returns " + label;
+        }
+
+        @Override
+        public List<Class<?>> getArgumentTypes() {
+            return Collections.<Class<?>>singletonList(argumentType);
+        }
+
+        @Override
+        public List<String> getArgumentNames() {
+            return Collections.singletonList("arg");
+        }
+
+        @Override
+        public Class<?> getReturnType() {
+            return String.class;
+        }
+
+        @Override
+        public Object calculate(List<Object> args) {
+            return label;
+        }
+
+    }
+
+    static FormulaFunctionSet labelSet(FormulaFunction... functions) {
+        FormulaFunctionSetDescription description = new FormulaFunctionSetDescription("label", "Label functions");
+        for (FormulaFunction function : functions) {
+            description.addFormulaFunction(function);
+        }
+        return new FormulaFunctionSet(description) {
+        };
+    }
+
+    @Test
+    public void findFunction1() {
+        FormulaRegistry registry = new FormulaRegistry();
+        LabelFunction string = new LabelFunction(String.class, "string");
+        LabelFunction number = new LabelFunction(Number.class, "number");
+        registry.registerFormulaFunctionSet(labelSet(string, number));
+
+        assertThat(registry.findFunction("label", Arrays.<Object>asList("a")), sameInstance((FormulaFunction) string));
+        assertThat(registry.findFunction("label", Arrays.<Object>asList(1.0)), sameInstance((FormulaFunction) number));
+        assertThat(registry.findFunction("label", Arrays.<Object>asList("b")), sameInstance((FormulaFunction) string));
+        assertThat(registry.findFunction("label", Arrays.<Object>asList(new Object())), nullValue());
+        assertThat(registry.findFunction("label", Arrays.<Object>asList("a", "b")), nullValue());
+    }
+
+    @Test
+    public void findFunction2() {
+        // Registering a set discards the cached resolutions
+        FormulaRegistry registry = new FormulaRegistry();
+        LabelFunction first = new LabelFunction(Object.class, "first");
+        LabelFunction second = new LabelFunction(Object.class, "second");
+        registry.registerFormulaFunctionSet(labelSet(first));
+        int version = registry.getVersion();
+        assertThat(registry.findFunction("label", Arrays.<Object>asList("a")), sameInstance((FormulaFunction) first));
+
+        registry.registerFormulaFunctionSet(labelSet(second));
+        assertThat(registry.getVersion(), not(equalTo(version)));
+        assertThat(registry.findFunction("label", Arrays.<Object>asList("a")), sameInstance((FormulaFunction) second));
+    }
 }
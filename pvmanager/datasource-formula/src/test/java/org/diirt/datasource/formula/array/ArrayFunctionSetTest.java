@@ -12,11 +12,13 @@ import java.time.Instant;
 import java.util.Arrays;
 
 import org.diirt.datasource.formula.FormulaFunctionSet;
+import org.diirt.datasource.formula.FormulaFunctions;
 import org.diirt.datasource.formula.FunctionTester;
 import org.diirt.util.array.ArrayDouble;
 import org.diirt.util.array.ArrayInt;
 import org.diirt.util.array.ListDouble;
 import org.diirt.util.array.ListInt;
+import org.diirt.util.array.ListNumber;
 import org.diirt.vtype.Alarm;
 import org.diirt.vtype.AlarmSeverity;
 import org.diirt.vtype.ArrayDimensionDisplay;
@@ -26,11 +28,14 @@ import org.diirt.vtype.VNumber;
 import org.diirt.vtype.VNumberArray;
 import org.diirt.vtype.VString;
 import org.diirt.vtype.VStringArray;
+import org.diirt.vtype.VTable;
 import org.diirt.vtype.ValueFactory;
 import org.diirt.vtype.table.ListNumberProvider;
 import org.diirt.vtype.table.VTableFactory;
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 /**
  * @author shroffk
  *
@@ -379,4 +384,74 @@ public class ArrayFunctionSetTest {
                 .compareReturnValue(null, null, ValueFactory.newDisplay(20))
                 .compareReturnValue(null, new ArrayDouble(1,2,3), null);
     }
+
+    private static void assertColumn(VTable table, int column, double... expected) {
+        ListNumber data = (ListNumber) table.getColumnData(column);
+        assertEquals(expected.length, data.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], data.getDouble(i), 1e-12);
+        }
+    }
+
+    @Test
+    public void fft() {
+        VNumberArray real = newVDoubleArray(new ArrayDouble(0, 1, 0, -1), alarmNone(), timeNow(), displayNone());
+        VNumberArray imaginary = newVDoubleArray(new ArrayDouble(0, 0, 0, 0), alarmNone(), timeNow(), displayNone());
+        VTable table = (VTable) set.findFunctions("dft").iterator().next().calculate(Arrays.<Object>asList(real));
+        assertColumn(table, 0, 0, 0, 0, 0);
+        assertColumn(table, 1, 0, -0.5, 0, 0.5);
+        assertColumn(table, 2, 0, 0.5, 0, 0.5);
+
+        table = (VTable) FormulaFunctions.findArgTypeMatch(Arrays.<Class<?>>asList(VNumberArray.class),
+                set.findFunctions("fft")).iterator().next().calculate(Arrays.<Object>asList(real));
+        assertColumn(table, 0, 0, 0, 0, 0);
+        assertColumn(table, 1, 0, -0.5, 0, 0.5);
+
+        table = (VTable) FormulaFunctions.findArgTypeMatch(Arrays.<Class<?>>asList(VNumberArray.class, VNumberArray.class),
+                set.findFunctions("fft")).iterator().next().calculate(Arrays.<Object>asList(real, imaginary));
+        assertColumn(table, 0, 0, 0, 0, 0);
+        assertColumn(table, 1, 0, -0.5, 0, 0.5);
+    }
+
+    @Test
+    public void ifft() {
+        VNumberArray real = newVDoubleArray(new ArrayDouble(0, 0, 0, 0), alarmNone(), timeNow(), displayNone());
+        VNumberArray imaginary = newVDoubleArray(new ArrayDouble(0, -0.5, 0, 0.5), alarmNone(), timeNow(), displayNone());
+        VTable table = (VTable) set.findFunctions("ifft").iterator().next().calculate(Arrays.<Object>asList(real, imaginary));
+        assertColumn(table, 0, 0, 1, 0, -1);
+        assertColumn(table, 1, 0, 0, 0, 0);
+        assertNull(set.findFunctions("ifft").iterator().next().calculate(Arrays.<Object>asList(real, null)));
+    }
+
+    @Test
+    public void powerSpectrum() {
+        Alarm alarm = newAlarm(AlarmSeverity.MINOR, "HIGH");
+        Time time = timeNow();
+        VNumberArray array = newVDoubleArray(new ArrayDouble(1, 1, 1, 1), alarm, time, displayNone());
+        VNumberArray expected = newVDoubleArray(new ArrayDouble(1, 0, 0), alarm, time, displayNone());
+        FunctionTester.findByName(set, "powerSpectrum")
+                .compareReturnValue(expected, array)
+                .compareReturnValue(null, (Object) null);
+    }
+
+    @Test
+    public void hann() {
+        VNumberArray array = newVDoubleArray(new ArrayDouble(1, 2, 3, 4, 5), alarmNone(), timeNow(), displayNone());
+        VNumberArray result = (VNumberArray) set.findFunctions("hann").iterator().next().calculate(Arrays.<Object>asList(array));
+        double[] expected = {0, 1, 3, 2, 0};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.getData().getDouble(i), 1e-12);
+        }
+        assertNull(set.findFunctions("hann").iterator().next().calculate(Arrays.<Object>asList((Object) null)));
+    }
+
+    @Test
+    public void hamming() {
+        VNumberArray array = newVDoubleArray(new ArrayDouble(1, 1, 1, 1, 1), alarmNone(), timeNow(), displayNone());
+        VNumberArray result = (VNumberArray) set.findFunctions("hamming").iterator().next().calculate(Arrays.<Object>asList(array));
+        double[] expected = {0.08, 0.54, 1, 0.54, 0.08};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.getData().getDouble(i), 1e-12);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.loc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.CompositeDataSource;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.DataSourceProvider;
+import org.diirt.vtype.VDouble;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the one-shot read of many channels.
+ *
+ * @author carcassi
+ */
+public class ReadOnceTest {
+
+    private LocalDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new LocalDataSource();
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void readOnce1() throws Exception {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            names.add("readOnce" + i + "(" + i + ")");
+        }
+        long start = System.nanoTime();
+        Map<String, Object> values = dataSource.readOnce(names, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+
+        // All values received before the timeout
+        assertThat(System.nanoTime() - start, lessThan(TimeUnit.SECONDS.toNanos(5)));
+        assertThat(values.size(), equalTo(2500));
+        assertThat(((VDouble) values.get("readOnce42(42)")).getValue(), equalTo(42.0));
+
+        // All the batches were disconnected
+        Thread.sleep(100);
+        for (String name : Arrays.asList("readOnce0", "readOnce1200", "readOnce2499")) {
+            assertThat(dataSource.getChannels().get(name).getUsageCounter(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void readOnce2() throws Exception {
+        // A channel without value: completes at the timeout with the others
+        Map<String, Object> values = dataSource.readOnce(Arrays.asList("readOnceA(1)", "readOnceB"), Duration.ofMillis(200))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(values.keySet(), equalTo(Collections.singleton("readOnceA(1)")));
+        Thread.sleep(100);
+        assertThat(dataSource.getChannels().get("readOnceB").getUsageCounter(), equalTo(0));
+    }
+
+    @Test
+    public void readOnce3() throws Exception {
+        Map<String, Object> values = dataSource.readOnce(Collections.<String>emptyList(), Duration.ofMillis(200))
+                .get(1, TimeUnit.SECONDS);
+        assertThat(values.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void readOnceComposite1() throws Exception {
+        // Channels with an unknown or missing prefix are left out,
+        // without delaying or dropping the valid ones
+        CompositeDataSource composite = new CompositeDataSource();
+        composite.putDataSource("loc", dataSource);
+        List<String> names = new ArrayList<>();
+        names.add("xyz://readOnceBad");
+        for (int i = 0; i < 20; i++) {
+            names.add("loc://readOnceC" + i + "(" + i + ")");
+            names.add("xyz://readOnceBad" + i);
+        }
+        names.add("readOnceNoPrefix");
+        long start = System.nanoTime();
+        Map<String, Object> values = composite.readOnce(names, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+
+        assertThat(System.nanoTime() - start, lessThan(TimeUnit.SECONDS.toNanos(5)));
+        assertThat(values.size(), equalTo(20));
+        for (int i = 0; i < 20; i++) {
+            assertThat(((VDouble) values.get("loc://readOnceC" + i + "(" + i + ")")).getValue(), equalTo((double) i));
+        }
+        Thread.sleep(100);
+        assertThat(dataSource.getChannels().get("readOnceC0").getUsageCounter(), equalTo(0));
+    }
+
+    @Test
+    public void readOnceComposite2() throws Exception {
+        // A data source that fails: the batches already connected
+        // are disconnected and the future fails
+        CompositeDataSource composite = new CompositeDataSource();
+        composite.putDataSource("loc", dataSource);
+        composite.putDataSource(new DataSourceProvider() {
+
+            @Override
+            public String getName() {
+                return "broken";
+            }
+
+            @Override
+            public DataSource createInstance() {
+                throw new IllegalStateException("Broken data source");
+            }
+        });
+        try {
+            composite.readOnce(Arrays.asList("loc://readOnceD", "broken://readOnceE"), Duration.ofSeconds(10))
+                    .get(5, TimeUnit.SECONDS);
+            fail("Read should fail");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause().getMessage(), equalTo("Broken data source"));
+        }
+        Thread.sleep(100);
+        assertThat(dataSource.getChannels().get("readOnceD").getUsageCounter(), equalTo(0));
+    }
+
+}
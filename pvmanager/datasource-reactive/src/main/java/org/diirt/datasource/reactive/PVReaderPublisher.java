@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.reactive;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+import org.diirt.datasource.PVReaderConfiguration;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * A Reactive Streams publisher for the values of a {@link org.diirt.datasource.PVReader}.
+ * <p>
+ * Each subscriber gets its own reader, created from the given configuration
+ * the first time the subscriber requests a value. The flow of values
+ * is controlled by the demand: when the subscriber has no outstanding
+ * requests, the reader is paused, so that the channels are still
+ * monitored but no scan and no read function is computed. While
+ * paused, at most one value is kept (the latest), which is sent as soon as
+ * new demand arrives.
+ * <p>
+ * Only values are published: connection changes are not signaled, and
+ * null values (e.g. before the connection) are skipped. An exception reported
+ * by the reader terminates the subscription with onError and closes the
+ * reader; a new subscription opens a new reader. The stream never completes.
+ * Cancelling the subscription closes the reader.
+ * <p>
+ * Since expressions cannot be shared across readers, the configuration
+ * is given as a supplier that creates a new one for each subscriber. For example:
+ * <pre>
+ * Publisher&lt;Object&gt; publisher = new PVReaderPublisher&lt;&gt;(
+ *         () -&gt; PVManager.read(channel("beamCurrent")), Duration.ofMillis(100));
+ * </pre>
+ *
+ * @param <T> the type of the published values
+ * @author carcassi
+ */
+public final class PVReaderPublisher<T> implements Publisher<T> {
+
+    private final Supplier<? extends PVReaderConfiguration<T>> readerConfiguration;
+    private final Duration maxRate;
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param readerConfiguration creates the configuration of the reader for each subscriber;
+     * the listener will be added by the publisher
+     * @param maxRate the maximum rate of the reader
+     */
+    public PVReaderPublisher(Supplier<? extends PVReaderConfiguration<T>> readerConfiguration, Duration maxRate) {
+        this.readerConfiguration = Objects.requireNonNull(readerConfiguration, "readerConfiguration can't be null");
+        this.maxRate = Objects.requireNonNull(maxRate, "maxRate can't be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber can't be null");
+        subscriber.onSubscribe(new PVReaderSubscription<>(subscriber, readerConfiguration, maxRate));
+    }
+
+}
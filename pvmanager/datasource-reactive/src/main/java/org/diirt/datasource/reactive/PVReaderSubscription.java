@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.reactive;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderConfiguration;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * The subscription of a {@link PVReaderPublisher}, which owns the reader
+ * and forwards its values to the subscriber according to the demand.
+ * <p>
+ * All signals to the subscriber, and all operations on the reader, are
+ * done by one thread at a time: the one that finds no other thread
+ * already emitting. The other threads only update the state and leave the
+ * work to the emitting thread, which loops until there is nothing left to do.
+ *
+ * @author carcassi
+ */
+class PVReaderSubscription<T> implements Subscription, PVReaderListener<T> {
+
+    private static final Logger log = Logger.getLogger(PVReaderSubscription.class.getName());
+
+    private final Supplier<? extends PVReaderConfiguration<T>> readerConfiguration;
+    private final Duration maxRate;
+
+    private final Object lock = new Object();
+    // Guarded by lock. The subscriber is null after cancel or termination.
+    private Subscriber<? super T> subscriber;
+    private long requested;
+    private T pendingValue;
+    private Exception pendingException;
+    private boolean emitting;
+
+    // Only accessed by the emitting thread
+    private PVReader<T> pvReader;
+    private boolean paused;
+    private boolean closed;
+
+    PVReaderSubscription(Subscriber<? super T> subscriber, Supplier<? extends PVReaderConfiguration<T>> readerConfiguration, Duration maxRate) {
+        this.subscriber = subscriber;
+        this.readerConfiguration = readerConfiguration;
+        this.maxRate = maxRate;
+    }
+
+    @Override
+    public void request(long n) {
+        synchronized (lock) {
+            if (subscriber == null) {
+                return;
+            }
+            if (n <= 0) {
+                pendingValue = null;
+                pendingException = new IllegalArgumentException("Rule 3.9: the number of requested elements must be positive (was " + n + ")");
+            } else {
+                requested += n;
+                if (requested < 0) {
+                    requested = Long.MAX_VALUE;
+                }
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (lock) {
+            subscriber = null;
+            pendingValue = null;
+        }
+        drain();
+    }
+
+    @Override
+    public void pvChanged(PVReaderEvent<T> event) {
+        PVReader<T> reader = event.getPvReader();
+        synchronized (lock) {
+            if (subscriber == null) {
+                return;
+            }
+            if (event.isValueChanged()) {
+                T value = reader.getValue();
+                if (value != null) {
+                    // Latest value wins
+                    pendingValue = value;
+                }
+            }
+            if (event.isExceptionChanged()) {
+                Exception ex = reader.lastException();
+                if (ex != null) {
+                    pendingException = ex;
+                }
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        synchronized (lock) {
+            if (emitting) {
+                return;
+            }
+            emitting = true;
+        }
+
+        while (true) {
+            Subscriber<? super T> target;
+            T value = null;
+            Exception error = null;
+            boolean close = false;
+            boolean createReader = false;
+            boolean pause = paused;
+            synchronized (lock) {
+                target = subscriber;
+                if (target == null) {
+                    close = pvReader != null && !closed;
+                } else if (pendingValue != null && requested > 0) {
+                    value = pendingValue;
+                    pendingValue = null;
+                    if (requested != Long.MAX_VALUE) {
+                        requested--;
+                    }
+                } else if (pendingException != null) {
+                    error = pendingException;
+                    pendingException = null;
+                    pendingValue = null;
+                    subscriber = null;
+                } else if (pvReader == null) {
+                    // The reader is created at the first request
+                    createReader = requested > 0;
+                } else {
+                    // No readFunction work without demand
+                    pause = requested == 0;
+                }
+
+                if (value == null && error == null && !close && !createReader && pause == paused) {
+                    emitting = false;
+                    return;
+                }
+            }
+
+            if (value != null) {
+                try {
+                    target.onNext(value);
+                } catch (RuntimeException ex) {
+                    log.log(Level.WARNING, "Subscriber onNext threw an exception (Rule 2.13): cancelling subscription", ex);
+                    synchronized (lock) {
+                        subscriber = null;
+                    }
+                }
+            } else if (error != null) {
+                try {
+                    target.onError(error);
+                } catch (RuntimeException ex) {
+                    log.log(Level.WARNING, "Subscriber onError threw an exception (Rule 2.13)", ex);
+                }
+            } else if (close) {
+                pvReader.close();
+                closed = true;
+            } else if (createReader) {
+                try {
+                    pvReader = readerConfiguration.get().readListener(this).maxRate(maxRate);
+                } catch (RuntimeException ex) {
+                    synchronized (lock) {
+                        pendingException = ex;
+                    }
+                }
+            } else {
+                pvReader.setPaused(pause);
+                paused = pause;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+/**
+ * Support for <a href="http://www.reactive-streams.org/">Reactive Streams</a>:
+ * exposes pvmanager readers as a {@link org.reactivestreams.Publisher}.
+ * <p>
+ * On Java 9 or later, the publisher can be converted to a
+ * {@code java.util.concurrent.Flow.Publisher} with
+ * {@code org.reactivestreams.FlowAdapters.toFlowPublisher(publisher)},
+ * which is part of the reactive-streams artifact.
+ */
+package org.diirt.datasource.reactive;
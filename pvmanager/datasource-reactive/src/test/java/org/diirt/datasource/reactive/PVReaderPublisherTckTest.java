@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.reactive;
+
+import java.time.Duration;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.sim.SimulationDataSource;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import static org.diirt.datasource.ExpressionLanguage.*;
+
+/**
+ * Reactive Streams TCK for the {@link PVReaderPublisher}, on a simulated
+ * channel that changes every millisecond.
+ * <p>
+ * The publisher never completes, so the rules that require a finite
+ * stream are skipped by the TCK.
+ *
+ * @author carcassi
+ */
+public class PVReaderPublisherTckTest extends PublisherVerification<Object> {
+
+    private final SimulationDataSource dataSource = new SimulationDataSource();
+
+    public PVReaderPublisherTckTest() {
+        super(new TestEnvironment(1000));
+    }
+
+    @AfterClass
+    public void closeDataSource() {
+        dataSource.close();
+    }
+
+    @Override
+    public Publisher<Object> createPublisher(long elements) {
+        return new PVReaderPublisher<>(() -> PVManager.read(channel("ramp(0, 1000000, 1, 0.001)")).from(dataSource),
+                Duration.ofMillis(5));
+    }
+
+    @Override
+    public Publisher<Object> createFailedPublisher() {
+        // The reader is created only on demand, so there is no way
+        // to fail before the first request
+        return null;
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        return publisherUnableToSignalOnComplete();
+    }
+
+}
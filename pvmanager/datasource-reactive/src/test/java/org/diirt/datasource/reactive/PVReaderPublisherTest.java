@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.reactive;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.test.MockDataSource;
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the demand driven flow of {@link PVReaderPublisher}.
+ *
+ * @author carcassi
+ */
+public class PVReaderPublisherTest {
+
+    private static class TestSubscriber<T> implements Subscriber<T> {
+
+        private final BlockingQueue<Object> values = new LinkedBlockingQueue<>();
+        private volatile Subscription subscription;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            throw new AssertionError("Should never complete");
+        }
+
+        Object next() throws InterruptedException {
+            return values.poll(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+    private final Queue<Integer> queue = queueOf(Integer.class);
+    private TestSubscriber<List<Integer>> subscriber;
+
+    private PVReaderPublisher<List<Integer>> countingPublisher() {
+        return new PVReaderPublisher<>(() -> PVManager.read(resultOf(new OneArgFunction<List<Integer>, List<Integer>>() {
+
+            @Override
+            public List<Integer> calculate(List<Integer> arg) {
+                evaluations.incrementAndGet();
+                return arg;
+            }
+        }, queue)).from(new MockDataSource()), Duration.ofMillis(10));
+    }
+
+    @After
+    public void tearDown() {
+        if (subscriber != null && subscriber.subscription != null) {
+            subscriber.subscription.cancel();
+        }
+    }
+
+    @Test
+    public void request1() throws Exception {
+        subscriber = new TestSubscriber<>();
+        countingPublisher().subscribe(subscriber);
+        assertThat(subscriber.subscription, notNullValue());
+
+        // Nothing is computed before the request
+        queue.add(1);
+        Thread.sleep(100);
+        assertThat(evaluations.get(), equalTo(0));
+        assertThat(subscriber.values.isEmpty(), equalTo(true));
+
+        subscriber.subscription.request(1);
+        assertThat(subscriber.next(), equalTo((Object) java.util.Arrays.asList(1)));
+    }
+
+    @Test
+    public void request2() throws Exception {
+        subscriber = new TestSubscriber<>();
+        countingPublisher().subscribe(subscriber);
+        queue.add(0);
+        subscriber.subscription.request(1);
+        assertThat(subscriber.next(), notNullValue());
+        Thread.sleep(50);
+
+        // No demand: the reader is paused and values accumulate in the queue
+        int evaluationsBefore = evaluations.get();
+        for (int i = 0; i < 5; i++) {
+            queue.add(i);
+            Thread.sleep(30);
+        }
+        assertThat(evaluations.get(), lessThanOrEqualTo(evaluationsBefore + 1));
+        assertThat(subscriber.values.isEmpty(), equalTo(true));
+
+        // New demand: the values are delivered
+        subscriber.subscription.request(1);
+        @SuppressWarnings("unchecked")
+        List<Integer> values = (List<Integer>) subscriber.next();
+        assertThat(values, hasItems(3, 4));
+    }
+
+    @Test
+    public void request3() throws Exception {
+        // Non positive requests terminate with an error
+        subscriber = new TestSubscriber<>();
+        countingPublisher().subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void cancel1() throws Exception {
+        subscriber = new TestSubscriber<>();
+        countingPublisher().subscribe(subscriber);
+        queue.add(0);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.next(), notNullValue());
+        subscriber.subscription.cancel();
+        Thread.sleep(50);
+        subscriber.values.clear();
+        int evaluationsBefore = evaluations.get();
+
+        queue.add(1);
+        Thread.sleep(100);
+        assertThat(subscriber.values.isEmpty(), equalTo(true));
+        assertThat(evaluations.get(), equalTo(evaluationsBefore));
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.diirt.datasource.BackpressurePolicy;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.util.LatencyHistogram;
+import static java.time.Duration.ofMillis;
+import static org.diirt.datasource.ExpressionLanguage.*;
+
+/**
+ * Compares the backpressure policies with a listener that is deliberately
+ * slower than the source.
+ * <p>
+ * A producer writes timestamps at a fixed rate in a queue of size 1, so that
+ * only the latest value is available at each scan. The listener sleeps
+ * at each notification. For each policy, the benchmark reports how many
+ * values were notified, dropped and conflated, and the latency between
+ * the production of a value and its notification.
+ * <p>
+ * Usage: BackpressureBenchmark [producerRateHz] [listenerMillis] [seconds]
+ *
+ * @author carcassi
+ */
+public class BackpressureBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int producerRate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int listenerMillis = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        BackpressurePolicy[] policies = {BackpressurePolicy.latestValue(), BackpressurePolicy.conflateAndCount(),
+            BackpressurePolicy.queue(10), BackpressurePolicy.queue(1000), BackpressurePolicy.blockScanner()};
+        System.out.println("Producer " + producerRate + " Hz, listener " + listenerMillis + " ms, " + seconds + " s per policy");
+        for (BackpressurePolicy policy : policies) {
+            run(policy, producerRate, listenerMillis, seconds);
+        }
+        System.exit(0);
+    }
+
+    private static void run(BackpressurePolicy policy, int producerRate, final int listenerMillis, int seconds) throws Exception {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong notified = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong conflated = new AtomicLong();
+        ExecutorService notificationThread = Executors.newSingleThreadExecutor();
+        LocalDataSource dataSource = new LocalDataSource();
+
+        final Queue<Long> queue = queueOf(Long.class).maxSize(1);
+        PVReader<List<Long>> pv = PVManager.read(queue).from(dataSource)
+                .notifyOn(notificationThread)
+                .backpressure(policy)
+                .readListener(new PVReaderListener<List<Long>>() {
+
+                    @Override
+                    public void pvChanged(PVReaderEvent<List<Long>> event) {
+                        dropped.addAndGet(event.getDroppedCount());
+                        conflated.addAndGet(event.getConflatedCount());
+                        if (event.isValueChanged()) {
+                            long now = System.nanoTime();
+                            for (Long timestamp : event.getPvReader().getValue()) {
+                                latency.record(now - timestamp);
+                                notified.incrementAndGet();
+                            }
+                        }
+                        try {
+                            Thread.sleep(listenerMillis);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                })
+                .maxRate(ofMillis(5));
+
+        long produced = 0;
+        long periodNanos = 1000000000L / producerRate;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long next = start;
+        while (next < end) {
+            queue.add(System.nanoTime());
+            produced++;
+            next += periodNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            }
+        }
+        pv.close();
+        notificationThread.shutdownNow();
+        dataSource.close();
+
+        System.out.println(String.format("%-20s produced %7d - notified %6d (%6.1f/s) - dropped %6d - conflated %7d - latency p50 %8.3f ms p99 %8.3f ms max %8.3f ms",
+                policy, produced, notified.get(), notified.get() / (double) seconds, dropped.get(), conflated.get(),
+                latency.getPercentileNanos(50) / 1000000.0, latency.getPercentileNanos(99) / 1000000.0,
+                latency.getMaxNanos() / 1000000.0));
+    }
+}
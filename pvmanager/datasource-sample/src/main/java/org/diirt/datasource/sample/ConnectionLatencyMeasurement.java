@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import org.diirt.datasource.PVReaderEvent;
+import org.diirt.datasource.PVReaderListener;
+import org.diirt.datasource.loc.LocalDataSource;
+import org.diirt.datasource.sim.SimulationDataSource;
+import org.diirt.datasource.util.LatencyHistogram;
+import org.diirt.datasource.vtype.ExpressionLanguage;
+import static org.diirt.util.time.TimeDuration.*;
+import org.diirt.vtype.VType;
+
+/**
+ * Measures the time between the creation of a reader and the notification
+ * of its first value, when a large number of channels is opened at once.
+ * <p>
+ * Usage: ConnectionLatencyMeasurement [loc|sim] [nChannels] [nRuns]
+ * <p>
+ * The connection pipeline of the data source can be tuned through the
+ * MaxConnectionPoolSize and ConnectionBatchWindowMillis system properties.
+ *
+ * @author carcassi
+ */
+public class ConnectionLatencyMeasurement {
+
+    public static void main(String[] args) throws InterruptedException {
+        String source = args.length > 0 ? args[0] : "loc";
+        int nChannels = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int nRuns = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (int run = 0; run < nRuns; run++) {
+            DataSource dataSource = "sim".equals(source) ? new SimulationDataSource() : new LocalDataSource();
+            LatencyHistogram latency = measure(dataSource, source, nChannels, run);
+            dataSource.close();
+            System.out.println(String.format("Run %d: %d channels - p50 %.3f ms - p90 %.3f ms - p99 %.3f ms - max %.3f ms",
+                    run, nChannels, latency.getPercentileNanos(50) / 1000000.0, latency.getPercentileNanos(90) / 1000000.0,
+                    latency.getPercentileNanos(99) / 1000000.0, latency.getMaxNanos() / 1000000.0));
+        }
+    }
+
+    private static LatencyHistogram measure(DataSource dataSource, String source, int nChannels, int run) throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final CountDownLatch connected = new CountDownLatch(nChannels);
+        List<PVReader<VType>> readers = new ArrayList<>();
+
+        for (int i = 0; i < nChannels; i++) {
+            String channelName = "sim".equals(source) ? "noise(0," + (i + 1) + ",0.1)" : "latency" + run + "_" + i + "(0)";
+            final long start = System.nanoTime();
+            PVReader<VType> reader = PVManager.read(ExpressionLanguage.vType(channelName))
+                    .readListener(new PVReaderListener<VType>() {
+
+                        private boolean first = true;
+
+                        @Override
+                        public void pvChanged(PVReaderEvent<VType> event) {
+                            if (first && event.isValueChanged()) {
+                                first = false;
+                                latency.record(System.nanoTime() - start);
+                                connected.countDown();
+                            }
+                        }
+                    })
+                    .from(dataSource).maxRate(ofHertz(50));
+            readers.add(reader);
+        }
+
+        if (!connected.await(60, TimeUnit.SECONDS)) {
+            System.out.println("Timed out: " + connected.getCount() + " channels did not receive a value");
+        }
+
+        for (PVReader<VType> reader : readers) {
+            reader.close();
+        }
+        return latency;
+    }
+}
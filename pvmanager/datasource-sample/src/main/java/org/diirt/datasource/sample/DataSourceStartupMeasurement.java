@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.Arrays;
+import java.util.List;
+import org.diirt.datasource.CompositeDataSource;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.DataSourceProvider;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVReader;
+import static java.time.Duration.ofMillis;
+import static org.diirt.datasource.ExpressionLanguage.*;
+
+/**
+ * Measures the startup cost of the default composite data source with
+ * all the data sources on the classpath of this module (ca, sim, loc,
+ * sys, file).
+ * <p>
+ * In "lazy" mode, the measurement reports the time to read the configuration
+ * and find the providers, and then the time to open the first channel
+ * of each of the given data sources, which is when each data source
+ * is created. In "eager" mode, it reports the time to create all the data
+ * sources upfront, which is what the startup would cost if they were
+ * not created on demand. Each mode should be run in a fresh JVM.
+ * <p>
+ * Usage: DataSourceStartupMeasurement [lazy|eager] [channel...]
+ *
+ * @author carcassi
+ */
+public class DataSourceStartupMeasurement {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "lazy";
+        List<String> channels = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList("loc://startup(0)", "sim://noise");
+
+        long start = System.nanoTime();
+        CompositeDataSource composite = DataSourceProvider.createDataSource();
+        long created = System.nanoTime();
+        System.out.println(String.format("Configuration and %d providers %s: %.1f ms",
+                composite.getDataSourceProviders().size(), composite.getDataSourceProviders().keySet(), (created - start) / 1000000.0));
+
+        if ("eager".equals(mode)) {
+            for (DataSourceProvider provider : composite.getDataSourceProviders().values()) {
+                long providerStart = System.nanoTime();
+                DataSource dataSource = provider.createInstance();
+                System.out.println(String.format("  create %-5s %.1f ms", provider.getName(), (System.nanoTime() - providerStart) / 1000000.0));
+                if (dataSource != null) {
+                    dataSource.close();
+                }
+            }
+            System.out.println(String.format("Eager startup: %.1f ms", (System.nanoTime() - start) / 1000000.0));
+        } else {
+            System.out.println("Data sources created at startup: " + composite.getDataSources().keySet());
+            for (String channel : channels) {
+                long channelStart = System.nanoTime();
+                PVReader<?> pv = PVManager.read(channel(channel)).from(composite).maxRate(ofMillis(100));
+                System.out.println(String.format("  first channel %-20s %.1f ms", channel, (System.nanoTime() - channelStart) / 1000000.0));
+                pv.close();
+            }
+            System.out.println("Data sources created: " + composite.getDataSources().keySet());
+            System.out.println(String.format("Lazy startup with %d channels: %.1f ms", channels.size(), (System.nanoTime() - start) / 1000000.0));
+        }
+        composite.close();
+        System.exit(0);
+    }
+}
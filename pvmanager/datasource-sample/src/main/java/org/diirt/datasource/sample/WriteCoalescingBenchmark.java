@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.sample;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.diirt.datasource.ChannelHandler;
+import org.diirt.datasource.ChannelWriteCallback;
+import org.diirt.datasource.DataSource;
+import org.diirt.datasource.MultiplexedChannelHandler;
+import org.diirt.datasource.PVManager;
+import org.diirt.datasource.PVWriter;
+import org.diirt.datasource.PVWriterConfiguration;
+import org.diirt.datasource.PVWriterMetrics;
+import org.diirt.datasource.util.LatencySummary;
+import static org.diirt.datasource.ExpressionLanguage.*;
+
+/**
+ * Compares plain and coalesced writes from a producer that is faster
+ * than the data source.
+ * <p>
+ * The data source processes one put at a time, each taking a fixed time,
+ * as a channel that can't pipeline its puts would. A producer writes
+ * at a fixed rate on an asynchronous writer. For each mode, the benchmark
+ * reports how many puts reached the data source, how many writes were coalesced,
+ * and the latency between the write request and its notification.
+ * <p>
+ * Usage: WriteCoalescingBenchmark [producerRateHz] [putMillis] [seconds]
+ *
+ * @author carcassi
+ */
+public class WriteCoalescingBenchmark {
+
+    private static class SlowDataSource extends DataSource {
+
+        private final ExecutorService link = Executors.newSingleThreadExecutor();
+        private final AtomicLong puts = new AtomicLong();
+        private final long putMillis;
+
+        SlowDataSource(long putMillis) {
+            super(true);
+            this.putMillis = putMillis;
+        }
+
+        @Override
+        protected ChannelHandler createChannel(String channelName) {
+            return new MultiplexedChannelHandler<Object, Object>(channelName) {
+
+                @Override
+                protected void connect() {
+                    processConnection(new Object());
+                }
+
+                @Override
+                protected void disconnect() {
+                    processConnection(null);
+                }
+
+                @Override
+                protected void write(Object newValue, final ChannelWriteCallback callback) {
+                    link.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(putMillis);
+                            } catch (InterruptedException ex) {
+                                Thread.currentThread().interrupt();
+                            }
+                            puts.incrementAndGet();
+                            callback.channelWritten(null);
+                        }
+                    });
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            link.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producerRate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int putMillis = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("Producer " + producerRate + " Hz, put " + putMillis + " ms, " + seconds + " s per mode");
+        run(false, producerRate, putMillis, seconds);
+        run(true, producerRate, putMillis, seconds);
+        System.exit(0);
+    }
+
+    private static void run(boolean coalesce, int producerRate, int putMillis, int seconds) throws Exception {
+        SlowDataSource dataSource = new SlowDataSource(putMillis);
+        PVWriterConfiguration<Object> configuration = PVManager.write(channel("setpoint")).from(dataSource)
+                .collectMetrics();
+        if (coalesce) {
+            configuration.coalesceWrites();
+        }
+        PVWriter<Object> pv = configuration.async();
+        PVWriterMetrics metrics = PVWriterMetrics.of(pv);
+
+        long produced = 0;
+        long periodNanos = 1000000000L / producerRate;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long next = start;
+        while (next < end) {
+            pv.write((double) produced);
+            produced++;
+            next += periodNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            }
+        }
+
+        // Wait for the writes to drain
+        long drainStart = System.nanoTime();
+        while (metrics.getWriteSuccessCount() + metrics.getWriteFailureCount() < produced
+                && System.nanoTime() - drainStart < TimeUnit.SECONDS.toNanos(60)) {
+            Thread.sleep(10);
+        }
+        long drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+        pv.close();
+        dataSource.close();
+
+        LatencySummary latency = metrics.getWriteRoundTrip();
+        System.out.println(String.format("%-10s produced %7d - puts %7d - coalesced %7d - drain %6d ms - latency p50 %8.3f ms p99 %8.3f ms max %8.3f ms",
+                coalesce ? "coalesced" : "plain", produced, dataSource.puts.get(), metrics.getCoalescedWriteCount(), drainMillis,
+                latency.getP50Nanos() / 1000000.0, latency.getP99Nanos() / 1000000.0, latency.getMaxNanos() / 1000000.0));
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.diirt.datasource.expression.ChangeSetMap;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.expression.ReadMap;
+import org.diirt.datasource.test.MockDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static java.time.Duration.*;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the backpressure policies with a slow listener.
+ *
+ * @author carcassi
+ */
+public class BackpressureTest {
+
+    private volatile PVReader<?> pv;
+    private ExecutorService notificationThread;
+    private final List<Integer> received = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        notificationThread = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        if (pv != null) {
+            pv.close();
+            pv = null;
+        }
+        notificationThread.shutdownNow();
+    }
+
+    private PVReaderListener<List<Integer>> slowListener(final long millis) {
+        return new PVReaderListener<List<Integer>>() {
+
+            @Override
+            public void pvChanged(PVReaderEvent<List<Integer>> event) {
+                dropped.addAndGet(event.getDroppedCount());
+                conflated.addAndGet(event.getConflatedCount());
+                if (event.isValueChanged()) {
+                    received.addAll(event.getPvReader().getValue());
+                }
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void latestValue1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class).maxSize(100);
+        pv = PVManager.read(queue).from(new MockDataSource())
+                .notifyOn(notificationThread)
+                .readListener(slowListener(100))
+                .maxRate(ofMillis(10));
+        Thread.sleep(200);
+        for (int i = 0; i < 6; i++) {
+            queue.add(i);
+            Thread.sleep(20);
+        }
+        Thread.sleep(400);
+
+        // Nothing is lost or counted
+        assertThat(received.size(), equalTo(6));
+        assertThat(dropped.get(), equalTo(0L));
+        assertThat(conflated.get(), equalTo(0L));
+    }
+
+    @Test
+    public void conflateAndCount1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class).maxSize(100);
+        pv = PVManager.read(queue).from(new MockDataSource())
+                .notifyOn(notificationThread)
+                .readListener(slowListener(200))
+                .backpressure(BackpressurePolicy.conflateAndCount())
+                .maxRate(ofMillis(10));
+        Thread.sleep(300);
+        queue.add(0);
+        Thread.sleep(50);
+        // Listener is busy: these are conflated in a single notification
+        for (int i = 1; i < 6; i++) {
+            queue.add(i);
+        }
+        Thread.sleep(600);
+
+        assertThat(received.size(), equalTo(6));
+        assertThat(conflated.get(), equalTo(4L));
+        assertThat(dropped.get(), equalTo(0L));
+    }
+
+    @Test
+    public void queue1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class).maxSize(100);
+        pv = PVManager.read(queue).from(new MockDataSource())
+                .notifyOn(notificationThread)
+                .readListener(slowListener(100))
+                .backpressure(BackpressurePolicy.queue(2))
+                .maxRate(ofMillis(10));
+        Thread.sleep(200);
+        // A scan for each value, while the listener is busy
+        for (int i = 0; i < 10; i++) {
+            queue.add(i);
+            Thread.sleep(20);
+        }
+        Thread.sleep(600);
+
+        assertThat(dropped.get(), greaterThan(0L));
+        assertThat(received.size(), lessThan(10));
+        assertThat(received.get(received.size() - 1), equalTo(9));
+    }
+
+    @Test
+    public void queue3() throws Exception {
+        // The changes of the dropped maps are merged in the next notified map,
+        // so that a listener that applies the changes does not drift
+        final int nKeys = 10;
+        final Integer[] values = new Integer[nKeys];
+        ReadMap<Integer> map = incrementalReadMapOf(Integer.class);
+        for (int i = 0; i < nKeys; i++) {
+            final int key = i;
+            map.add(new DesiredRateExpressionImpl<>(new DesiredRateExpressionListImpl<Object>(), new ReadFunction<Integer>() {
+
+                @Override
+                public Integer readValue() {
+                    synchronized (values) {
+                        return values[key];
+                    }
+                }
+            }, "k" + i));
+        }
+        final Map<String, Integer> applied = new ConcurrentHashMap<>();
+        pv = PVManager.read(map).from(new MockDataSource())
+                .notifyOn(notificationThread)
+                .readListener(new PVReaderListener<Map<String, Integer>>() {
+
+                    @Override
+                    public void pvChanged(PVReaderEvent<Map<String, Integer>> event) {
+                        dropped.addAndGet(event.getDroppedCount());
+                        if (event.isValueChanged()) {
+                            ChangeSetMap<Integer> changeSet = (ChangeSetMap<Integer>) event.getPvReader().getValue();
+                            applied.putAll(changeSet.getChanges());
+                            applied.keySet().removeAll(changeSet.getRemovedKeys());
+                        }
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                })
+                .backpressure(BackpressurePolicy.queue(1))
+                .maxRate(ofMillis(10));
+        Thread.sleep(200);
+        // A key changes at each scan, while the listener is busy
+        for (int i = 0; i < nKeys; i++) {
+            synchronized (values) {
+                values[i] = i;
+            }
+            Thread.sleep(20);
+        }
+        Thread.sleep(600);
+
+        assertThat(dropped.get(), greaterThan(0L));
+        assertThat(applied.size(), equalTo(nKeys));
+        assertThat(applied, equalTo(pv.getValue()));
+    }
+
+    @Test
+    public void blockScanner1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class).maxSize(100);
+        pv = PVManager.read(queue).from(new MockDataSource())
+                .notifyOn(notificationThread)
+                .readListener(slowListener(50))
+                .backpressure(BackpressurePolicy.blockScanner())
+                .maxRate(ofMillis(10));
+        Thread.sleep(200);
+        for (int i = 0; i < 10; i++) {
+            queue.add(i);
+            Thread.sleep(10);
+        }
+        Thread.sleep(400);
+
+        assertThat(received.size(), equalTo(10));
+        assertThat(received.get(9), equalTo(9));
+        assertThat(dropped.get(), equalTo(0L));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void queue2() {
+        BackpressurePolicy.queue(0);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void backpressure1() {
+        PVManager.read(queueOf(Integer.class)).backpressure(BackpressurePolicy.queue(10))
+                .backpressure(BackpressurePolicy.latestValue());
+    }
+
+}
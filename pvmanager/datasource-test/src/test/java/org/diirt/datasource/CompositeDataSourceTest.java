@@ -5,9 +5,18 @@
 package org.diirt.datasource;
 
 import org.diirt.datasource.test.MockDataSource;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -167,6 +176,108 @@ public class CompositeDataSourceTest {
         assertThat(channelNames(mock2Caches), hasItem("pv04"));
     }
 
+    @Test
+    public void testLazyCreation() throws Exception {
+        // Setup composite with a slow provider
+        final CompositeDataSource composite = new CompositeDataSource();
+        final AtomicInteger instances = new AtomicInteger();
+        composite.putDataSource(new DataSourceProvider() {
+
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public DataSource createInstance() {
+                instances.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return new MockDataSource();
+            }
+        });
+        assertThat(composite.getDataSources().isEmpty(), equalTo(true));
+
+        // Connect from different threads at the same time
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int n = i;
+            futures.add(exec.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    ReadRecipeBuilder builder = new ReadRecipeBuilder();
+                    builder.addChannel("slow://pv0" + n, new ValueCacheImpl<Double>(Double.class));
+                    composite.connectRead(builder.build(new ValueCacheImpl<Exception>(Exception.class), new ConnectionCollector()));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        exec.shutdown();
+
+        // Only one instance was created
+        assertThat(instances.get(), equalTo(1));
+        assertThat(composite.getDataSources().size(), equalTo(1));
+    }
+
+    @Test
+    public void testIndependentCreation() throws Exception {
+        // Setup composite with a provider that blocks until released
+        final CompositeDataSource composite = new CompositeDataSource();
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        composite.putDataSource(new DataSourceProvider() {
+
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public DataSource createInstance() {
+                creating.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return new MockDataSource();
+            }
+        });
+        composite.putDataSource("fast", new MockDataSource());
+
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        Future<?> slow = exec.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                ReadRecipeBuilder builder = new ReadRecipeBuilder();
+                builder.addChannel("slow://pv01", new ValueCacheImpl<Double>(Double.class));
+                composite.connectRead(builder.build(new ValueCacheImpl<Exception>(Exception.class), new ConnectionCollector()));
+            }
+        });
+        assertThat(creating.await(10, TimeUnit.SECONDS), equalTo(true));
+
+        // Other data sources are created while the slow one is being created
+        try {
+            ReadRecipeBuilder builder = new ReadRecipeBuilder();
+            builder.addChannel("fast://pv01", new ValueCacheImpl<Double>(Double.class));
+            composite.connectRead(builder.build(new ValueCacheImpl<Exception>(Exception.class), new ConnectionCollector()));
+            assertThat(composite.getDataSources().keySet(), equalTo((Set<String>) Collections.singleton("fast")));
+        } finally {
+            release.countDown();
+        }
+        slow.get(10, TimeUnit.SECONDS);
+        exec.shutdown();
+        assertThat(composite.getDataSources().size(), equalTo(2));
+    }
+
     @Test (expected=IllegalArgumentException.class)
     public void testReadEmpty() {
         // Setup composite
@@ -73,4 +73,36 @@ public class ConnectionCollectorTest {
         collector.removeChannel("first");
         assertThat(collector.readValue(), equalTo(true));
     }
+
+    @Test
+    public void summary1() {
+        ConnectionCollector collector = new ConnectionCollector();
+        assertThat(collector.getSummary().getChannelCount(), equalTo(0));
+        assertThat(collector.getSummary().isConnected(), equalTo(true));
+
+        WriteFunction<Boolean> first = collector.addChannel("first");
+        WriteFunction<Boolean> second = collector.addChannel("second");
+        collector.addChannel("third");
+        assertThat(collector.getSummary().getConnectedCount(), equalTo(0));
+        assertThat(collector.getSummary().getChannelCount(), equalTo(3));
+
+        first.writeValue(true);
+        second.writeValue(true);
+        // Repeated notifications do not change the counts
+        second.writeValue(true);
+        assertThat(collector.getSummary().getConnectedCount(), equalTo(2));
+        assertThat(collector.readValue(), equalTo(false));
+
+        collector.removeChannel("third");
+        assertThat(collector.getSummary().getConnectedCount(), equalTo(2));
+        assertThat(collector.getSummary().getChannelCount(), equalTo(2));
+        assertThat(collector.readValue(), equalTo(true));
+
+        second.writeValue(false);
+        collector.removeChannel("first");
+        assertThat(collector.getSummary().getConnectedCount(), equalTo(0));
+        assertThat(collector.getSummary().getChannelCount(), equalTo(1));
+        assertThat(collector.readValue(), equalTo(false));
+        assertThat(collector.getSummary().toString(), equalTo("0/1 connected"));
+    }
 }
@@ -6,6 +6,7 @@ package org.diirt.datasource;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.*;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
@@ -61,4 +62,101 @@ public class DatasourceTypeSupportTest {
         converters.add(converter);
         DataSourceTypeAdapter<Class<?>, Object> matched = matcher.find(converters, new ValueCacheImpl<Number>(Number.class), String.class);
     }
+
+    private static class CachingTypeSupport extends DataSourceTypeSupport {
+
+        @Override
+        protected Object typeSignature(Object connection) {
+            return connection;
+        }
+
+    }
+
+    private static DataSourceTypeAdapter<Class<?>, Object> createCountingConverter(final Class<?> clazz, final AtomicInteger matchCount) {
+        return new DataSourceTypeAdapter<Class<?>, Object>() {
+
+            @Override
+            public int match(ValueCache<?> cache, Class<?> connection) {
+                matchCount.incrementAndGet();
+                if (clazz.equals(connection) && cache.getType().isAssignableFrom(connection)) {
+                    return 1;
+                } else {
+                    return 0;
+                }
+            }
+
+            @Override
+            public Object getSubscriptionParameter(ValueCache<?> cache, Class<?> connection) {
+                return null;
+            }
+
+            @Override
+            public boolean updateCache(ValueCache<?> cache, Class<?> connection, Object message) {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    public void find3() {
+        // Matches are cached by cache type and signature
+        AtomicInteger matchCount = new AtomicInteger();
+        DataSourceTypeSupport matcher = new CachingTypeSupport();
+        Collection<DataSourceTypeAdapter<Class<?>, Object>> converters = new ArrayList<DataSourceTypeAdapter<Class<?>, Object>>();
+        DataSourceTypeAdapter<Class<?>, Object> converter = createCountingConverter(Double.class, matchCount);
+        converters.add(converter);
+        converters.add(createCountingConverter(String.class, matchCount));
+
+        assertThat(matcher.find(converters, new ValueCacheImpl<Number>(Number.class), Double.class), sameInstance(converter));
+        assertThat(matchCount.get(), equalTo(2));
+        assertThat(matcher.find(converters, new ValueCacheImpl<Number>(Number.class), Double.class), sameInstance(converter));
+        assertThat(matchCount.get(), equalTo(2));
+        assertThat(matcher.getResolutionCacheHitCount(), equalTo(1L));
+        assertThat(matcher.getResolutionCacheMissCount(), equalTo(1L));
+
+        // Different cache type
+        assertThat(matcher.find(converters, new ValueCacheImpl<Object>(Object.class), Double.class), sameInstance(converter));
+        assertThat(matchCount.get(), equalTo(4));
+        assertThat(matcher.getResolutionCacheMissCount(), equalTo(2L));
+    }
+
+    @Test
+    public void find4() {
+        // Invalidation
+        AtomicInteger matchCount = new AtomicInteger();
+        DataSourceTypeSupport matcher = new CachingTypeSupport();
+        Collection<DataSourceTypeAdapter<Class<?>, Object>> converters = new ArrayList<DataSourceTypeAdapter<Class<?>, Object>>();
+        DataSourceTypeAdapter<Class<?>, Object> converter = createCountingConverter(Double.class, matchCount);
+        converters.add(converter);
+
+        matcher.find(converters, new ValueCacheImpl<Number>(Number.class), Double.class);
+        matcher.invalidateResolutionCache();
+        matcher.find(converters, new ValueCacheImpl<Number>(Number.class), Double.class);
+        assertThat(matchCount.get(), equalTo(2));
+
+        // A new collection of adapters is never matched from the old one
+        Collection<DataSourceTypeAdapter<Class<?>, Object>> newConverters = new ArrayList<DataSourceTypeAdapter<Class<?>, Object>>();
+        DataSourceTypeAdapter<Class<?>, Object> newConverter = createCountingConverter(Double.class, matchCount);
+        newConverters.add(newConverter);
+        assertThat(matcher.find(newConverters, new ValueCacheImpl<Number>(Number.class), Double.class), sameInstance(newConverter));
+        assertThat(matcher.getResolutionCacheHitCount(), equalTo(0L));
+        assertThat(matcher.getResolutionCacheMissCount(), equalTo(3L));
+    }
+
+    @Test
+    public void find5() {
+        // Failed matches are not cached
+        DataSourceTypeSupport matcher = new CachingTypeSupport();
+        Collection<DataSourceTypeAdapter<Class<?>, Object>> converters = new ArrayList<DataSourceTypeAdapter<Class<?>, Object>>();
+        converters.add(createMockConverter(Double.class));
+        for (int i = 0; i < 2; i++) {
+            try {
+                matcher.find(converters, new ValueCacheImpl<Number>(Number.class), String.class);
+                fail("Should not match");
+            } catch (IllegalStateException ex) {
+                // Expected
+            }
+        }
+        assertThat(matcher.getResolutionCacheMissCount(), equalTo(2L));
+    }
 }
@@ -7,14 +7,17 @@ package org.diirt.datasource;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.Test;
 import static org.diirt.datasource.ExpressionLanguage.*;
 import org.diirt.datasource.expression.Cache;
 import org.diirt.datasource.expression.ChannelExpression;
+import org.diirt.datasource.expression.DesiredRateExpression;
 import org.diirt.datasource.expression.ReadMap;
 import org.diirt.datasource.expression.Queue;
 import org.diirt.datasource.expression.ReadWriteMap;
+import org.diirt.datasource.expression.RingQueue;
 import org.diirt.datasource.expression.WriteMap;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
@@ -62,6 +65,37 @@ public class ExpressionLanguageTest {
         assertThat(exp.getValue(), equalTo((Object) Collections.EMPTY_LIST));
     }
 
+    @Test
+    public void ringQueue1() {
+        RingQueue<String> queue = ringQueueOf(String.class, 5);
+        assertThat(queue.getMaxSize(), equalTo(5));
+        ReadExpressionTester exp = new ReadExpressionTester(queue);
+        assertThat(exp.getReadRecipe().getChannelReadRecipes().isEmpty(), equalTo(true));
+        assertThat(exp.getValue(), equalTo((Object) Collections.EMPTY_LIST));
+        queue.add("one");
+        queue.add("two");
+        assertThat(exp.getValue(), equalTo((Object) Arrays.asList("one", "two")));
+        queue.add("one");
+        queue.add("two");
+        queue.add("three");
+        queue.add("four");
+        queue.add("five");
+        queue.add("six");
+        assertThat(exp.getValue(), equalTo((Object) Arrays.asList("two", "three", "four", "five", "six")));
+        assertThat(exp.getValue(), equalTo((Object) Collections.EMPTY_LIST));
+    }
+
+    @Test
+    public void ringBuffer1() {
+        DesiredRateExpression<List<Object>> exp = ringBufferOf(channel("my pv"), 5);
+        assertThat(exp.getFunction(), instanceOf(RingBufferCollector.class));
+        assertThat(exp.getName(), equalTo("my pv"));
+        RingBufferCollector<Object> collector = (RingBufferCollector<Object>) exp.getFunction();
+        assertThat(collector.getMaxSize(), equalTo(5));
+        // Data sources may write from more than one thread
+        assertThat(collector.isMultipleProducers(), equalTo(true));
+    }
+
     @Test
     public void cache1() {
         Cache<String> cache = cacheOf(String.class).maxSize(5);
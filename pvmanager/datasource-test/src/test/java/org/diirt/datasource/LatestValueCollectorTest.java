@@ -23,4 +23,19 @@ public class LatestValueCollectorTest {
             assertThat(collector.readValue(), equalTo(i));
         }
     }
+
+    @Test
+    public void version1() {
+        LatestValueCollector<Integer> collector = new LatestValueCollector<>();
+        collector.writeValue(1);
+        collector.readValue();
+        long version = collector.getVersion();
+        collector.readValue();
+        assertThat(collector.getVersion(), equalTo(version));
+        collector.writeValue(1);
+        // The version is taken at read time
+        assertThat(collector.getVersion(), equalTo(version));
+        collector.readValue();
+        assertThat(collector.getVersion(), greaterThan(version));
+    }
 }
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the notification support cache.
+ *
+ * @author carcassi
+ */
+public class NotificationSupportCacheTest {
+
+    private interface Shape {
+    }
+
+    private static class Square implements Shape {
+    }
+
+    private static class Circle implements Shape {
+    }
+
+    private static final NotificationSupport<Shape> shapeSupport = NotificationSupport.immutableTypeSupport(Shape.class);
+
+    @BeforeClass
+    public static void installSupport() {
+        BasicTypeSupport.install();
+        TypeSupport.addTypeSupport(shapeSupport);
+    }
+
+    @Test
+    public void supportFor1() {
+        NotificationSupportCache<Object> cache = new NotificationSupportCache<>();
+        NotificationSupport<Object> support = cache.supportFor(1.0);
+        assertThat(support, sameInstance((Object) NotificationSupport.findNotificationSupportFor(1.0)));
+        assertThat(cache.supportFor(2.0), sameInstance(support));
+        assertThat(cache.supportFor("test"), sameInstance((Object) NotificationSupport.findNotificationSupportFor("test")));
+    }
+
+    @Test
+    public void supportFor2() {
+        NotificationSupportCache<Shape> cache = new NotificationSupportCache<>();
+        assertThat(cache.supportFor(new Circle()), sameInstance(shapeSupport));
+        assertThat(cache.supportFor(new Square()), sameInstance(shapeSupport));
+
+        // A more specific support replaces the cached one
+        NotificationSupport<Square> squareSupport = NotificationSupport.immutableTypeSupport(Square.class);
+        TypeSupport.addTypeSupport(squareSupport);
+        assertThat(cache.supportFor(new Square()), sameInstance((Object) squareSupport));
+        assertThat(cache.supportFor(new Circle()), sameInstance(shapeSupport));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void supportFor3() {
+        new NotificationSupportCache<Object>().supportFor(new Object());
+    }
+
+    @Test
+    public void notification1() {
+        NotificationSupportCache<Object> cache = new NotificationSupportCache<>();
+        assertThat(cache.notification(1.0, 1.0).isNotificationNeeded(), equalTo(false));
+        Notification<Object> notification = cache.notification(1.0, 2.0);
+        assertThat(notification.isNotificationNeeded(), equalTo(true));
+        assertThat(notification.getNewValue(), equalTo((Object) 2.0));
+    }
+
+}
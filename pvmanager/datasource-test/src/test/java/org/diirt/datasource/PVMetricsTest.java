@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.diirt.datasource.test.MockDataSource;
+import org.diirt.datasource.test.TestDataSource;
+import org.junit.After;
+import org.junit.Test;
+import static java.time.Duration.*;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the metrics collected for readers and writers.
+ *
+ * @author carcassi
+ */
+public class PVMetricsTest {
+
+    private volatile PVReader<?> pvReader;
+    private volatile PVWriter<?> pvWriter;
+
+    @After
+    public void tearDown() {
+        if (pvReader != null) {
+            pvReader.close();
+            pvReader = null;
+        }
+        if (pvWriter != null) {
+            pvWriter.close();
+            pvWriter = null;
+        }
+    }
+
+    private static int registeredMBeans(String type, String name) throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().queryNames(
+                new ObjectName("org.diirt.datasource:type=" + type + ",name=" + ObjectName.quote(name) + ",*"), null).size();
+    }
+
+    @Test
+    public void readerMetrics1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class).maxSize(10);
+        CountDownPVReaderListener listener = new CountDownPVReaderListener(1);
+        PVReader<?> pv = PVManager.read(queue).from(new MockDataSource())
+                .readListener(listener)
+                .collectMetrics()
+                .maxRate(ofMillis(10));
+        pvReader = pv;
+        listener.await(ofMillis(500));
+
+        listener.resetCount(1);
+        queue.add(1);
+        listener.await(ofMillis(500));
+        assertThat(listener.getCount(), equalTo(0));
+
+        PVReaderMetrics metrics = PVReaderMetrics.of(pv);
+        assertThat(metrics, notNullValue());
+        assertThat(metrics.getScanCount(), greaterThanOrEqualTo(1L));
+        assertThat(metrics.getNotificationCount(), greaterThanOrEqualTo(1L));
+        assertThat(metrics.getReadValueTime().getCount(), equalTo(metrics.getScanCount()));
+        assertThat(metrics.getNotificationQueueTime().getCount(), greaterThanOrEqualTo(1L));
+        assertThat(metrics.getScanToNotifyLag().getCount(), greaterThanOrEqualTo(1L));
+        assertThat(registeredMBeans("PVReader", metrics.getName()), equalTo(1));
+
+        pv.close();
+        pvReader = null;
+        assertThat(registeredMBeans("PVReader", metrics.getName()), equalTo(0));
+    }
+
+    @Test
+    public void readerMetrics2() throws Exception {
+        // Metrics not requested
+        pvReader = PVManager.read(queueOf(Integer.class)).from(new MockDataSource())
+                .maxRate(ofMillis(10));
+        assertThat(PVReaderMetrics.of(pvReader), nullValue());
+    }
+
+    @Test
+    public void writerMetrics1() throws Exception {
+        PVWriter<Object> pv = PVManager.write(channel("normal")).from(new TestDataSource())
+                .collectMetrics()
+                .sync();
+        pvWriter = pv;
+        pv.write("Value");
+
+        PVWriterMetrics metrics = PVWriterMetrics.of(pv);
+        assertThat(metrics.getWriteCount(), equalTo(1L));
+        assertThat(metrics.getWriteSuccessCount(), equalTo(1L));
+        assertThat(metrics.getWriteFailureCount(), equalTo(0L));
+        assertThat(metrics.getWriteRoundTrip().getCount(), equalTo(1L));
+        assertThat(registeredMBeans("PVWriter", "normal"), greaterThanOrEqualTo(1));
+
+        try {
+            pv.write("Fail");
+            fail("Write should have failed");
+        } catch (RuntimeException ex) {
+            // Expected
+        }
+        assertThat(metrics.getWriteCount(), equalTo(2L));
+        assertThat(metrics.getWriteFailureCount(), equalTo(1L));
+    }
+
+    @Test
+    public void pvMetrics1() throws Exception {
+        PV<Object, Object> pv = PVManager.readAndWrite(channel("normal")).from(new TestDataSource())
+                .collectMetrics()
+                .synchWriteAndMaxReadRate(ofMillis(10));
+        pvReader = pv;
+        assertThat(PVReaderMetrics.of(pv), notNullValue());
+        assertThat(PVWriterMetrics.of(pv), notNullValue());
+        pv.write("Value");
+        assertThat(PVWriterMetrics.of(pv).getWriteSuccessCount(), equalTo(1L));
+    }
+
+}
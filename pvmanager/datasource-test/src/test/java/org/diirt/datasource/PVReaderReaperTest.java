@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.List;
+import org.diirt.datasource.test.MockDataSource;
+import org.junit.Test;
+import static java.time.Duration.*;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that readers that are not closed are reclaimed.
+ *
+ * @author carcassi
+ */
+public class PVReaderReaperTest {
+
+    private static void openReader(MockDataSource dataSource) {
+        // The reader is not closed and not referenced after this method
+        PVManager.read(latestValueOf(channel("leaked"))).from(dataSource).maxRate(ofSeconds(10));
+    }
+
+    @Test
+    public void reclaim1() throws Exception {
+        MockDataSource dataSource = new MockDataSource();
+        long leaked = PVReaderReaper.getLeakedCount();
+        openReader(dataSource);
+        assertThat(dataSource.getConnectedReadRecipes().size(), equalTo(1));
+
+        // The scan is not going to notice for 10 seconds: the reaper must
+        for (int i = 0; i < 50 && PVReaderReaper.getLeakedCount() == leaked; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Thread.sleep(100);
+
+        assertThat(PVReaderReaper.getLeakedCount(), equalTo(leaked + 1));
+        assertThat(dataSource.getConnectedReadRecipes().size(), equalTo(0));
+        List<Exception> traces = PVReaderReaper.getLeakStackTraces();
+        boolean found = false;
+        for (StackTraceElement element : traces.get(traces.size() - 1).getStackTrace()) {
+            found = found || "openReader".equals(element.getMethodName());
+        }
+        assertThat(found, equalTo(true));
+    }
+
+    @Test
+    public void close1() throws Exception {
+        MockDataSource dataSource = new MockDataSource();
+        long leaked = PVReaderReaper.getLeakedCount();
+        PVReader<?> pv = PVManager.read(latestValueOf(channel("closed"))).from(dataSource).maxRate(ofMillis(100));
+        // Other readers may be reclaimed in the meantime: the count can only go down
+        int open = PVReaderReaper.getOpenCount();
+        assertThat(open, greaterThan(0));
+        pv.close();
+        assertThat(PVReaderReaper.getOpenCount(), lessThan(open));
+
+        pv = null;
+        System.gc();
+        Thread.sleep(200);
+        // A closed reader is not a leak
+        assertThat(PVReaderReaper.getLeakedCount(), equalTo(leaked));
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests the RingBufferCollector.
+ *
+ * @author carcassi
+ */
+public class RingBufferCollectorTest {
+
+    @Test
+    public void inputOutput() {
+        RingBufferCollector<Integer> collector = new RingBufferCollector<>(5);
+        assertThat(collector.readValue().size(), equalTo(0));
+        collector.writeValue(0);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(0)));
+        assertThat(collector.readValue().size(), equalTo(0));
+        collector.writeValue(1);
+        collector.writeValue(2);
+        collector.writeValue(3);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(1,2,3)));
+        assertThat(collector.readValue().size(), equalTo(0));
+        collector.writeValue(1);
+        collector.writeValue(2);
+        collector.writeValue(3);
+        collector.writeValue(4);
+        collector.writeValue(5);
+        collector.writeValue(6);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(2,3,4,5,6)));
+        assertThat(collector.readValue().size(), equalTo(0));
+    }
+
+    @Test
+    public void inputOutputMultipleProducers() {
+        RingBufferCollector<Integer> collector = new RingBufferCollector<>(3, true);
+        assertThat(collector.readValue().size(), equalTo(0));
+        for (int i = 0; i < 10; i++) {
+            collector.writeValue(i);
+        }
+        assertThat(collector.readValue(), equalTo(Arrays.asList(7,8,9)));
+        assertThat(collector.readValue().size(), equalTo(0));
+        collector.writeValue(10);
+        assertThat(collector.readValue(), equalTo(Arrays.asList(10)));
+    }
+
+    @Test
+    public void notification() {
+        RingBufferCollector<Integer> collector = new RingBufferCollector<>(5);
+        final int[] count = new int[1];
+        collector.setChangeNotification(new Runnable() {
+
+            @Override
+            public void run() {
+                count[0]++;
+            }
+        });
+        collector.writeValue(1);
+        collector.writeValue(2);
+        assertThat(count[0], equalTo(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxSize() {
+        new RingBufferCollector<Integer>(0);
+    }
+
+    @Test
+    public void concurrentProducers() throws Exception {
+        final int nProducers = 4;
+        final int nValues = 100000;
+        final RingBufferCollector<Integer> collector = new RingBufferCollector<>(64, true);
+        final CountDownLatch done = new CountDownLatch(nProducers);
+        ExecutorService exec = Executors.newFixedThreadPool(nProducers);
+        for (int p = 0; p < nProducers; p++) {
+            final int producer = p;
+            exec.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < nValues; i++) {
+                        collector.writeValue(producer * nValues + i);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        // Values from the same producer must always come out in order
+        int[] lastValue = new int[nProducers];
+        Arrays.fill(lastValue, -1);
+        List<Integer> values = new ArrayList<>();
+        while (done.getCount() != 0) {
+            values.addAll(collector.readValue());
+        }
+        values.addAll(collector.readValue());
+        exec.shutdown();
+        assertThat(exec.awaitTermination(1, TimeUnit.SECONDS), equalTo(true));
+        for (Integer value : values) {
+            int producer = value / nValues;
+            int index = value % nValues;
+            assertThat(index, greaterThan(lastValue[producer]));
+            lastValue[producer] = index;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.test.CountDownPVReaderListener;
+import org.diirt.datasource.test.MockDataSource;
+import org.junit.After;
+import org.junit.Test;
+import static java.time.Duration.*;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the expressions shared across readers.
+ *
+ * @author carcassi
+ */
+public class SharedReadExpressionTest {
+
+    private final MockDataSource dataSource = new MockDataSource();
+    private final AtomicInteger evaluations = new AtomicInteger();
+    private volatile PVReader<?> pv1;
+    private volatile PVReader<?> pv2;
+
+    @After
+    public void tearDown() {
+        if (pv1 != null) {
+            pv1.close();
+        }
+        if (pv2 != null) {
+            pv2.close();
+        }
+    }
+
+    private DesiredRateExpression<List<Integer>> countingExpression(Queue<Integer> queue) {
+        return resultOf(new OneArgFunction<List<Integer>, List<Integer>>() {
+
+            @Override
+            public List<Integer> calculate(List<Integer> arg) {
+                evaluations.incrementAndGet();
+                return arg;
+            }
+        }, queue);
+    }
+
+    @Test
+    public void shared1() throws Exception {
+        Queue<Integer> queue = queueOf(Integer.class);
+        CountDownPVReaderListener listener1 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        CountDownPVReaderListener listener2 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        PVReader<List<Integer>> reader1 = PVManager.read(shared("key1", countingExpression(queue))).from(dataSource)
+                .readListener(listener1).maxRate(ofMillis(10));
+        pv1 = reader1;
+        // Same key: the second queue is never used
+        PVReader<List<Integer>> reader2 = PVManager.read(shared("key1", countingExpression(queueOf(Integer.class)))).from(dataSource)
+                .readListener(listener2).maxRate(ofMillis(50));
+        pv2 = reader2;
+        assertThat(SharedReadNode.getNodeCount(), equalTo(1));
+
+        // A single value: an upstream scan between two additions would
+        // split them across events, and each reader only keeps the latest
+        queue.add(1);
+        listener1.await(ofMillis(500));
+        listener2.await(ofMillis(500));
+        assertThat(reader1.getValue(), equalTo(Arrays.asList(1)));
+        assertThat(reader2.getValue(), equalTo(Arrays.asList(1)));
+        assertThat(reader1.isConnected(), equalTo(true));
+
+        reader1.close();
+        assertThat(SharedReadNode.getNodeCount(), equalTo(1));
+        reader2.close();
+        assertThat(SharedReadNode.getNodeCount(), equalTo(0));
+    }
+
+    @Test
+    public void shared2() throws Exception {
+        // Different keys are evaluated separately
+        Queue<Integer> queue1 = queueOf(Integer.class);
+        Queue<Integer> queue2 = queueOf(Integer.class);
+        CountDownPVReaderListener listener2 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        pv1 = PVManager.read(shared("key1", countingExpression(queue1))).from(dataSource).maxRate(ofMillis(10));
+        PVReader<List<Integer>> reader2 = PVManager.read(shared("key2", countingExpression(queue2))).from(dataSource)
+                .readListener(listener2).maxRate(ofMillis(10));
+        pv2 = reader2;
+        assertThat(SharedReadNode.getNodeCount(), equalTo(2));
+
+        queue2.add(3);
+        listener2.await(ofMillis(500));
+        assertThat(reader2.getValue(), equalTo(Arrays.asList(3)));
+    }
+
+    @Test
+    public void shared3() throws Exception {
+        // A late reader receives the current value
+        Queue<Integer> queue = queueOf(Integer.class);
+        CountDownPVReaderListener listener1 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        pv1 = PVManager.read(shared("key1", countingExpression(queue))).from(dataSource)
+                .readListener(listener1).maxRate(ofMillis(10));
+        queue.add(1);
+        listener1.await(ofMillis(500));
+
+        CountDownPVReaderListener listener2 = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        PVReader<List<Integer>> reader2 = PVManager.read(shared("key1", countingExpression(queueOf(Integer.class)))).from(dataSource)
+                .readListener(listener2).maxRate(ofMillis(10));
+        pv2 = reader2;
+        listener2.await(ofMillis(500));
+        assertThat(reader2.getValue(), equalTo(Arrays.asList(1)));
+    }
+
+    @Test
+    public void shared5() throws Exception {
+        // The upstream reader can't be created: the node is removed,
+        // so that a later reader with the same key creates a new one
+        DesiredRateExpression<Integer> failing = new DesiredRateExpressionImpl<Integer>(new DesiredRateExpressionListImpl<Object>(),
+                new ReadFunction<Integer>() {
+
+                    @Override
+                    public Integer readValue() {
+                        return 1;
+                    }
+                }, "failing") {
+
+            @Override
+            public void fillReadRecipe(PVDirector director, ReadRecipeBuilder builder) {
+                throw new IllegalStateException("Can't connect");
+            }
+        };
+        try {
+            PVManager.read(shared("key5", failing)).from(dataSource).maxRate(ofMillis(10));
+            fail("Reader should not be created");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), equalTo("Can't connect"));
+        }
+        assertThat(SharedReadNode.getNodeCount(), equalTo(0));
+
+        Queue<Integer> queue = queueOf(Integer.class);
+        CountDownPVReaderListener listener = new CountDownPVReaderListener(1, PVReaderEvent.VALUE_MASK);
+        PVReader<List<Integer>> reader = PVManager.read(shared("key5", countingExpression(queue))).from(dataSource)
+                .readListener(listener).maxRate(ofMillis(10));
+        pv1 = reader;
+        assertThat(SharedReadNode.getNodeCount(), equalTo(1));
+        queue.add(5);
+        listener.await(ofMillis(500));
+        assertThat(reader.getValue(), equalTo(Arrays.asList(5)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void shared4() {
+        shared(null, constant(1));
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import static org.diirt.datasource.ExpressionLanguage.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of writes while a write is in flight.
+ *
+ * @author carcassi
+ */
+public class WriteCoalescingTest {
+
+    /**
+     * A data source that completes each write only when the test releases it.
+     */
+    private static class GatedDataSource extends DataSource {
+
+        final List<Object> writes = new CopyOnWriteArrayList<>();
+        final BlockingQueue<ChannelWriteCallback> callbacks = new LinkedBlockingQueue<>();
+
+        GatedDataSource() {
+            super(true);
+        }
+
+        @Override
+        protected ChannelHandler createChannel(String channelName) {
+            return new MultiplexedChannelHandler<Object, Object>(channelName) {
+
+                @Override
+                protected void connect() {
+                    processConnection(new Object());
+                }
+
+                @Override
+                protected void disconnect() {
+                    processConnection(null);
+                }
+
+                @Override
+                protected void write(Object newValue, ChannelWriteCallback callback) {
+                    writes.add(newValue);
+                    callbacks.add(callback);
+                }
+            };
+        }
+
+        void release() throws InterruptedException {
+            ChannelWriteCallback callback = callbacks.poll(1, TimeUnit.SECONDS);
+            assertThat("No write was submitted", callback, notNullValue());
+            callback.channelWritten(null);
+        }
+    }
+
+    private final GatedDataSource dataSource = new GatedDataSource();
+    private volatile PVWriter<?> pvWriter;
+
+    @After
+    public void tearDown() {
+        if (pvWriter != null) {
+            pvWriter.close();
+            pvWriter = null;
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void coalesceWrites1() throws Exception {
+        PVWriter<Object> pv = PVManager.write(channel("gated")).from(dataSource)
+                .coalesceWrites()
+                .collectMetrics()
+                .async();
+        pvWriter = pv;
+        pv.write(1);
+        Thread.sleep(50);
+        // The first write is in flight: these are merged
+        pv.write(2);
+        pv.write(3);
+        pv.write(4);
+        dataSource.release();
+        dataSource.release();
+        Thread.sleep(50);
+
+        assertThat(dataSource.writes, contains((Object) 1, 4));
+        PVWriterMetrics metrics = PVWriterMetrics.of(pv);
+        assertThat(metrics.getWriteCount(), equalTo(4L));
+        assertThat(metrics.getCoalescedWriteCount(), equalTo(2L));
+        assertThat(metrics.getWriteSuccessCount(), equalTo(4L));
+        assertThat(metrics.getWriteRoundTrip().getCount(), equalTo(4L));
+
+        // Nothing in flight: the write goes through right away
+        pv.write(5);
+        dataSource.release();
+        Thread.sleep(50);
+        assertThat(dataSource.writes, contains((Object) 1, 4, 5));
+        assertThat(metrics.getCoalescedWriteCount(), equalTo(2L));
+    }
+
+    @Test
+    public void coalesceWrites2() throws Exception {
+        // Without coalescing, every write is submitted
+        PVWriter<Object> pv = PVManager.write(channel("gated")).from(dataSource)
+                .async();
+        pvWriter = pv;
+        pv.write(1);
+        pv.write(2);
+        pv.write(3);
+        for (int i = 0; i < 3; i++) {
+            dataSource.release();
+        }
+        Thread.sleep(50);
+        assertThat(dataSource.writes, contains((Object) 1, 2, 3));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void coalesceWrites3() {
+        PVManager.write(channel("gated")).coalesceWrites().coalesceWrites();
+    }
+
+}
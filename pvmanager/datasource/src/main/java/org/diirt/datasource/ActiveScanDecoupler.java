@@ -6,8 +6,6 @@ package org.diirt.datasource;
 
 import java.time.Duration;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -15,16 +13,26 @@ import java.util.concurrent.TimeUnit;
  */
 class ActiveScanDecoupler extends SourceDesiredRateDecoupler {
 
-    private volatile ScheduledFuture<?> scanTaskHandle;
+    private final ScanScheduler scanScheduler;
+    private volatile ScanScheduler.Scan scanTaskHandle;
 
     public ActiveScanDecoupler(ScheduledExecutorService scannerExecutor,
             Duration maxDuration, DesiredRateEventListener listener) {
+        this(scannerExecutor, maxDuration, listener, null);
+    }
+
+    public ActiveScanDecoupler(ScheduledExecutorService scannerExecutor,
+            Duration maxDuration, DesiredRateEventListener listener, ScanScheduler scanScheduler) {
         super(scannerExecutor, maxDuration, listener);
+        if (scanScheduler == null) {
+            scanScheduler = new ExecutorScanScheduler(scannerExecutor);
+        }
+        this.scanScheduler = scanScheduler;
     }
 
     @Override
     void onStart() {
-        scanTaskHandle = getScannerExecutor().scheduleWithFixedDelay(new Runnable() {
+        scanTaskHandle = scanScheduler.schedule(new Runnable() {
 
             @Override
             public void run() {
@@ -38,13 +46,13 @@ class ActiveScanDecoupler extends SourceDesiredRateDecoupler {
                     sendDesiredRateEvent(event);
                 }
             }
-        }, 0, getMaxDuration().toNanos(), TimeUnit.NANOSECONDS);
+        }, getMaxDuration());
     }
 
     @Override
     void onStop() {
         if (scanTaskHandle != null) {
-            scanTaskHandle.cancel(false);
+            scanTaskHandle.cancel();
             scanTaskHandle = null;
         } else {
             throw new IllegalStateException("Scan was never started");
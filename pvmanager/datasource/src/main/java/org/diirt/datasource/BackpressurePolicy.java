@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+/**
+ * Determines what a {@link PVReader} does when the listeners are slower
+ * than the rate at which new values are available.
+ * <p>
+ * By default, pvmanager does not compute a new value while the previous
+ * notification is still in flight: the values are conflated and the listener
+ * always receives the latest. The other policies allow to count what was
+ * conflated, to queue the values or to hold the scanner until the listener
+ * is done. The counts are reported through {@link PVReaderEvent#getDroppedCount() }
+ * and {@link PVReaderEvent#getConflatedCount() }.
+ *
+ * @author carcassi
+ */
+public final class BackpressurePolicy {
+
+    /**
+     * The type of policy.
+     */
+    public enum Type {
+
+        /**
+         * Values are conflated and nothing is counted. This is the default.
+         */
+        LATEST_VALUE,
+
+        /**
+         * Values are conflated, and each event reports the number of source
+         * events that were merged into it.
+         */
+        CONFLATE_AND_COUNT,
+
+        /**
+         * Values are computed at every scan and queued for the listeners. When
+         * the queue is full, the oldest value is dropped.
+         */
+        QUEUE,
+
+        /**
+         * The scan does not complete until the listeners have processed
+         * the notification, holding the scanner thread.
+         */
+        BLOCK_SCANNER
+    }
+
+    private static final BackpressurePolicy LATEST_VALUE = new BackpressurePolicy(Type.LATEST_VALUE, 1);
+    private static final BackpressurePolicy CONFLATE_AND_COUNT = new BackpressurePolicy(Type.CONFLATE_AND_COUNT, 1);
+    private static final BackpressurePolicy BLOCK_SCANNER = new BackpressurePolicy(Type.BLOCK_SCANNER, 1);
+
+    private final Type type;
+    private final int maxSize;
+
+    private BackpressurePolicy(Type type, int maxSize) {
+        this.type = type;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The listener receives only the latest value. This is the default policy.
+     *
+     * @return the policy
+     */
+    public static BackpressurePolicy latestValue() {
+        return LATEST_VALUE;
+    }
+
+    /**
+     * The listener receives only the latest value, and each event reports
+     * how many source events were conflated into it.
+     *
+     * @return the policy
+     */
+    public static BackpressurePolicy conflateAndCount() {
+        return CONFLATE_AND_COUNT;
+    }
+
+    /**
+     * A new value is computed at every scan, regardless of the listeners,
+     * and at most maxSize values are kept for notification. When the queue is full,
+     * the oldest value is dropped, and the next event reports the number of
+     * values dropped.
+     * <p>
+     * The listeners are notified once for each queued value, each in a separate
+     * task of the notification executor. Since values are kept after the next scan,
+     * they must not be modified by the read function: lists returned by
+     * collectors are copied, and all other values are assumed to be immutable,
+     * which is the case for VTypes.
+     *
+     * @param maxSize the maximum number of values waiting for notification
+     * @return the policy
+     */
+    public static BackpressurePolicy queue(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive (was " + maxSize + ")");
+        }
+        return new BackpressurePolicy(Type.QUEUE, maxSize);
+    }
+
+    /**
+     * The scanner thread waits for the listeners to process each notification.
+     * <p>
+     * The slow listener is pushed back onto the scanner: with a shared scanner
+     * pool, this delays the other readers. The notification executor must
+     * not be the scanner itself, or the scanner will wait forever.
+     *
+     * @return the policy
+     */
+    public static BackpressurePolicy blockScanner() {
+        return BLOCK_SCANNER;
+    }
+
+    /**
+     * The type of the policy.
+     *
+     * @return the policy type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The maximum number of values waiting for notification. It is
+     * always 1, except for the {@link Type#QUEUE} policy.
+     *
+     * @return the queue size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.QUEUE) {
+            return type + "(" + maxSize + ")";
+        }
+        return type.toString();
+    }
+
+}
@@ -11,12 +11,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.diirt.datasource.expression.ChangeSetMap;
 
 /**
  * Implements support for basic standard java types.
  * <p>
  * For Number and String the immutable type support is used. For List and Map,
  * we check whether any element need notification; if so, a copy is made.
+ * A {@link ChangeSetMap} is immutable and is not copied, so that the
+ * listeners get its changes.
  *
  * @author carcassi
  */
@@ -52,6 +55,7 @@ public class BasicTypeSupport {
             // Add support for lists
             addList();
             addMap();
+            addChangeSetMap();
 
             // Add support for numbers and strings
             TypeSupport.addTypeSupport(NotificationSupport.immutableTypeSupport(Number.class));
@@ -137,4 +141,20 @@ public class BasicTypeSupport {
         });
     }
 
+    private static void addChangeSetMap() {
+        TypeSupport.addTypeSupport(new NotificationSupport<ChangeSetMap>(ChangeSetMap.class) {
+
+            @Override
+            public Notification<ChangeSetMap> prepareNotification(ChangeSetMap oldValue, ChangeSetMap newValue) {
+                // The map is immutable, and carries what changed
+                if (oldValue == null || (oldValue != newValue &&
+                        (!newValue.getChanges().isEmpty() || !newValue.getRemovedKeys().isEmpty()))) {
+                    return new Notification<>(true, newValue);
+                } else {
+                    return new Notification<>(false, oldValue);
+                }
+            }
+        });
+    }
+
 }
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the current value of a set of channels once, directly from the
+ * channel handlers.
+ * <p>
+ * The channels are connected in batches, each with a single recipe. The first
+ * value of each channel is kept and the batch is disconnected as soon as
+ * all its channels responded. There is no director, collector or scanner.
+ * <p>
+ * On a {@link CompositeDataSource}, the channels are grouped by data source
+ * and each batch is connected directly to its data source, so that errors
+ * reported for a recipe are not confused with errors of a channel.
+ * Channels that no data source serves are not read.
+ *
+ * @author carcassi
+ */
+class BulkRead {
+
+    private static final Logger log = Logger.getLogger(BulkRead.class.getName());
+
+    /** Maximum number of channels connected with a single recipe */
+    static final int BATCH_SIZE = batchSize(System.getProperty("BulkReadBatchSize"), 1000);
+
+    /**
+     * Parses the batch size property, falling back to the default if the
+     * property is missing or is not an integer.
+     *
+     * @param property the value of the property; can be null
+     * @param defaultSize the size to use if the property is not valid
+     * @return the batch size, at least one
+     */
+    static int batchSize(String property, int defaultSize) {
+        if (property == null) {
+            return defaultSize;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(property.trim()));
+        } catch (NumberFormatException ex) {
+            log.log(Level.WARNING, "Invalid BulkReadBatchSize ''{0}'': using {1}", new Object[] {property, defaultSize});
+            return defaultSize;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final Map<String, Object> values = new HashMap<>();
+    private final List<Batch> openBatches = new ArrayList<>();
+    private int pendingCount;
+    private boolean done;
+    private ScheduledFuture<?> timeoutTask;
+
+    /**
+     * The channels connected with a single recipe.
+     */
+    private class Batch {
+
+        private String source;
+        private ReadRecipe recipe;
+        // Guarded by lock
+        private int pendingCount;
+        // Guarded by lock: set before connecting
+        private DataSource target;
+    }
+
+    /**
+     * Keeps the first value of a channel.
+     */
+    private class FirstValueCache extends ValueCacheImpl<Object> {
+
+        private final String channelName;
+        private final Batch batch;
+        // Guarded by lock
+        private boolean responded;
+
+        FirstValueCache(String channelName, Batch batch) {
+            super(Object.class);
+            this.channelName = channelName;
+            this.batch = batch;
+        }
+
+        @Override
+        public void writeValue(Object newValue) {
+            super.writeValue(newValue);
+            if (newValue != null) {
+                responded(this, newValue);
+            }
+        }
+    }
+
+    private BulkRead(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Starts reading the given channels.
+     *
+     * @param dataSource the data source to read from
+     * @param channelNames the channels to read
+     * @param timeout the maximum time to wait for all the values
+     * @return the future with the values that were read
+     */
+    static CompletableFuture<Map<String, Object>> read(DataSource dataSource, Collection<String> channelNames, Duration timeout) {
+        BulkRead read = new BulkRead(dataSource);
+        read.start(new ArrayList<>(new LinkedHashSet<>(channelNames)), timeout);
+        return read.result;
+    }
+
+    private void start(List<String> channelNames, Duration timeout) {
+        // Group the channels by data source, leaving out the ones
+        // that no data source serves
+        CompositeDataSource composite = dataSource instanceof CompositeDataSource ? (CompositeDataSource) dataSource : null;
+        Map<String, List<String>> namesBySource = new LinkedHashMap<>();
+        int channelCount = 0;
+        for (String name : channelNames) {
+            String source = "";
+            if (composite != null) {
+                try {
+                    source = composite.sourceOf(name);
+                } catch (IllegalArgumentException ex) {
+                    log.log(Level.FINE, "Channel " + name + " can't be read", ex);
+                    continue;
+                }
+            }
+            List<String> names = namesBySource.get(source);
+            if (names == null) {
+                names = new ArrayList<>();
+                namesBySource.put(source, names);
+            }
+            names.add(name);
+            channelCount++;
+        }
+
+        if (channelCount == 0) {
+            result.complete(values);
+            return;
+        }
+
+        // Prepare all the batches before connecting, so that the
+        // count is complete before the first value arrives
+        List<Batch> batches = new ArrayList<>();
+        synchronized (lock) {
+            pendingCount = channelCount;
+            for (Map.Entry<String, List<String>> entry : namesBySource.entrySet()) {
+                List<String> sourceNames = entry.getValue();
+                for (int start = 0; start < sourceNames.size(); start += BATCH_SIZE) {
+                    List<String> names = sourceNames.subList(start, Math.min(start + BATCH_SIZE, sourceNames.size()));
+                    Batch batch = new Batch();
+                    batch.source = entry.getKey();
+                    batch.pendingCount = names.size();
+                    List<ChannelReadRecipe> channelRecipes = new ArrayList<>(names.size());
+                    for (String name : names) {
+                        final FirstValueCache cache = new FirstValueCache(name, batch);
+                        String sourceName = composite != null ? composite.nameOf(name) : name;
+                        channelRecipes.add(new ChannelReadRecipe(sourceName, new ChannelHandlerReadSubscription(cache, new WriteFunction<Exception>() {
+
+                            @Override
+                            public void writeValue(Exception newValue) {
+                                // A channel that fails won't give a value
+                                responded(cache, null);
+                            }
+                        }, new WriteFunction<Boolean>() {
+
+                            @Override
+                            public void writeValue(Boolean newValue) {
+                                // Connection changes are not needed
+                            }
+                        })));
+                    }
+                    batch.recipe = new ReadRecipe(channelRecipes);
+                    openBatches.add(batch);
+                    batches.add(batch);
+                }
+            }
+        }
+
+        for (Batch batch : batches) {
+            try {
+                DataSource target = composite != null ? composite.retrieveDataSource(batch.source) : dataSource;
+                synchronized (lock) {
+                    batch.target = target;
+                }
+                target.connectRead(batch.recipe);
+            } catch (RuntimeException ex) {
+                // Don't leave the batches already connected behind
+                fail(ex);
+                return;
+            }
+        }
+
+        // The timeout starts after all the batches are connected, so that
+        // it can't disconnect a batch before it's connected
+        ScheduledFuture<?> task;
+        try {
+            task = PVManager.getReadScannerExecutorService().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    complete();
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RuntimeException ex) {
+            fail(ex);
+            return;
+        }
+        synchronized (lock) {
+            if (done) {
+                task.cancel(false);
+            } else {
+                timeoutTask = task;
+            }
+        }
+    }
+
+    private void responded(FirstValueCache cache, Object value) {
+        boolean batchDone;
+        boolean allDone;
+        synchronized (lock) {
+            if (done || cache.responded) {
+                return;
+            }
+            cache.responded = true;
+            if (value != null) {
+                values.put(cache.channelName, value);
+            }
+            cache.batch.pendingCount--;
+            pendingCount--;
+            batchDone = cache.batch.pendingCount == 0 && openBatches.remove(cache.batch);
+            allDone = pendingCount == 0;
+        }
+        if (batchDone) {
+            disconnect(cache.batch);
+        }
+        if (allDone) {
+            complete();
+        }
+    }
+
+    /**
+     * Disconnects what is still connected and completes the result
+     * with the values received so far.
+     */
+    private void complete() {
+        List<Batch> batches;
+        Map<String, Object> finalValues;
+        synchronized (lock) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            batches = new ArrayList<>(openBatches);
+            openBatches.clear();
+            finalValues = new HashMap<>(values);
+        }
+        for (Batch batch : batches) {
+            disconnect(batch);
+        }
+        result.complete(finalValues);
+    }
+
+    /**
+     * Disconnects what is already connected and completes the result
+     * with the given error.
+     */
+    private void fail(RuntimeException error) {
+        List<Batch> batches;
+        synchronized (lock) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            batches = new ArrayList<>(openBatches);
+            openBatches.clear();
+        }
+        for (Batch batch : batches) {
+            disconnect(batch);
+        }
+        result.completeExceptionally(error);
+    }
+
+    private void disconnect(Batch batch) {
+        DataSource target;
+        synchronized (lock) {
+            target = batch.target;
+        }
+        // Batches that were never connected have no target
+        if (target != null) {
+            try {
+                target.disconnectRead(batch.recipe);
+            } catch (RuntimeException ex) {
+                log.log(Level.WARNING, "Couldn't disconnect channels read once", ex);
+            }
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ class CommonConfiguration {
     DataSource dataSource;
     Duration timeout;
     String timeoutMessage;
+    boolean collectMetrics;
 
     /**
      * Defines which DataSource should be used to read the data.
@@ -61,6 +62,17 @@ class CommonConfiguration {
         return this;
     }
 
+    /**
+     * Collects timing metrics for the reader or writer. The metrics
+     * are also exposed through JMX.
+     *
+     * @return this
+     */
+    public CommonConfiguration collectMetrics() {
+        this.collectMetrics = true;
+        return this;
+    }
+
     void checkDataSourceAndThreadSwitch() {
         // Get defaults
         if (dataSource == null) {
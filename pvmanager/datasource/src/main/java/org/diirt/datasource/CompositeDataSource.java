@@ -13,6 +13,11 @@ import java.util.logging.Logger;
 /**
  * A data source that can dispatch a request to multiple different
  * data sources.
+ * <p>
+ * The data sources are registered through their {@link DataSourceProvider},
+ * and each is created only when the first channel with its prefix is
+ * opened: data sources that are never used do not open contexts, threads
+ * or connections.
  *
  * @author carcassi
  */
@@ -20,8 +25,12 @@ public class CompositeDataSource extends DataSource {
 
     private static final Logger log = Logger.getLogger(CompositeDataSource.class.getName());
 
-    // Stores all data sources by name
+    // Stores all data sources by name, created at the first channel
+    // that uses them
     private final Map<String, DataSource> dataSources = new ConcurrentHashMap<>();
+    // One lock for each data source name, so that a slow creation
+    // does not block the data sources with other names
+    private final Map<String, Object> creationLocks = new ConcurrentHashMap<>();
     private final Map<String, DataSourceProvider> dataSourceProviders = new ConcurrentHashMap<>();
 
     private volatile CompositeDataSourceConfiguration conf = new CompositeDataSourceConfiguration();
@@ -85,8 +94,10 @@ public class CompositeDataSource extends DataSource {
      */
     public void putDataSource(DataSourceProvider dataSourceProvider) {
         // XXX: datasources should be closed
-        dataSources.remove(dataSourceProvider.getName());
-        dataSourceProviders.put(dataSourceProvider.getName(), dataSourceProvider);
+        synchronized (creationLock(dataSourceProvider.getName())) {
+            dataSources.remove(dataSourceProvider.getName());
+            dataSourceProviders.put(dataSourceProvider.getName(), dataSourceProvider);
+        }
     }
 
     /**
@@ -111,7 +122,13 @@ public class CompositeDataSource extends DataSource {
         return Collections.unmodifiableMap(dataSourceProviders);
     }
 
-    private  String nameOf(String channelName) {
+    /**
+     * Returns the name of the channel within its data source.
+     *
+     * @param channelName the full channel name
+     * @return the channel name without the data source prefix
+     */
+    String nameOf(String channelName) {
         String delimiter = conf.delimiter;
         int indexDelimiter = channelName.indexOf(delimiter);
         if (indexDelimiter == -1) {
@@ -121,7 +138,14 @@ public class CompositeDataSource extends DataSource {
         }
     }
 
-    private String sourceOf(String channelName) {
+    /**
+     * Returns the name of the data source that serves the given channel.
+     *
+     * @param channelName the full channel name
+     * @return the data source name
+     * @throws IllegalArgumentException if no configured data source serves the channel
+     */
+    String sourceOf(String channelName) {
         String delimiter = conf.delimiter;
         String defaultDataSource = conf.defaultDataSource;
         int indexDelimiter = channelName.indexOf(delimiter);
@@ -222,22 +246,53 @@ public class CompositeDataSource extends DataSource {
         return splitRecipes;
     }
 
-    private DataSource retrieveDataSource(String name) {
+    private Object creationLock(String name) {
+        Object lock = creationLocks.get(name);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = creationLocks.putIfAbsent(name, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Returns the data source with the given name, creating it if needed.
+     *
+     * @param name the data source name
+     * @return the data source
+     */
+    DataSource retrieveDataSource(String name) {
         DataSource dataSource = dataSources.get(name);
-        if (dataSource == null) {
-            DataSourceProvider factory = dataSourceProviders.get(name);
-            if (factory == null) {
-                throw new IllegalArgumentException("DataSource '" + name + conf.delimiter + "' was not configured.");
-            } else {
+        if (dataSource != null) {
+            return dataSource;
+        }
+
+        // Checked before taking the lock, so that locks are created
+        // only for configured names
+        if (!dataSourceProviders.containsKey(name)) {
+            throw new IllegalArgumentException("DataSource '" + name + conf.delimiter + "' was not configured.");
+        }
+
+        // Data sources may open contexts, threads or sockets: make sure
+        // that concurrent connections create only one instance
+        synchronized (creationLock(name)) {
+            dataSource = dataSources.get(name);
+            if (dataSource == null) {
+                DataSourceProvider factory = dataSourceProviders.get(name);
+                long start = System.nanoTime();
                 dataSource = factory.createInstance();
                 if (dataSource == null) {
                     throw new IllegalStateException("DataSourceProvider '" + name + conf.delimiter + "' did not create a valid datasource.");
                 }
                 dataSources.put(name, dataSource);
-                log.log(Level.CONFIG, "Created instance for data source {0} ({1})", new Object[]{name, dataSource.getClass().getSimpleName()});
+                log.log(Level.CONFIG, "Created instance for data source {0} ({1}) in {2} ms",
+                        new Object[]{name, dataSource.getClass().getSimpleName(), (System.nanoTime() - start) / 1000000});
             }
+            return dataSource;
         }
-        return dataSource;
     }
 
     @Override
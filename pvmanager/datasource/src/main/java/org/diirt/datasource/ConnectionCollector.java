@@ -11,6 +11,10 @@ import java.util.Map;
  * A specialized collector to handle multiple channels that can be added/removed
  * dynamically and which gets translated to a single connection flag for a
  * reader or writer.
+ * <p>
+ * The number of disconnected channels is kept up to date at each change,
+ * so that both the updates and the aggregate connection flag are constant
+ * time regardless of the number of channels.
  *
  * @author carcassi
  */
@@ -19,7 +23,7 @@ public class ConnectionCollector implements ReadFunction<Boolean> {
     private final Object lock = new Object();
     private final Map<String, Boolean> channelConnected = new HashMap<>();
     private final Map<String, ConnectionWriteFunction> writeFunctions = new HashMap<>();
-    private Boolean connected;
+    private int disconnectedCount;
     private Runnable notification;
 
     public void setChangeNotification(Runnable notification) {
@@ -44,8 +48,12 @@ public class ConnectionCollector implements ReadFunction<Boolean> {
                 if (isClosed()) {
                     throw new IllegalStateException("ConnectionCollector for '" + name + "' was closed.");
                 }
-                channelConnected.put(name, newValue);
-                connected = null;
+                Boolean oldValue = channelConnected.put(name, newValue);
+                if (oldValue != Boolean.TRUE && newValue == Boolean.TRUE) {
+                    disconnectedCount--;
+                } else if (oldValue == Boolean.TRUE && newValue != Boolean.TRUE) {
+                    disconnectedCount++;
+                }
                 task = notification;
             }
             // Run task without holding the lock
@@ -85,7 +93,7 @@ public class ConnectionCollector implements ReadFunction<Boolean> {
                 channelConnected.put(name, false);
                 ConnectionWriteFunction writeFunction = new ConnectionWriteFunction(name);
                 writeFunctions.put(name, writeFunction);
-                connected = null;
+                disconnectedCount++;
                 return writeFunction;
             }
         }
@@ -94,31 +102,19 @@ public class ConnectionCollector implements ReadFunction<Boolean> {
     @Override
     public Boolean readValue() {
         synchronized (lock) {
-            if (connected == null) {
-                connected = calculate(channelConnected);
-            }
-
-            return connected;
+            return disconnectedCount == 0;
         }
     }
 
     /**
-     * Calculates the overall connection status based on the status of each
-     * channel.
-     * <p>
-     * For future development, this is the method that one could
-     * override to implement a different connection logic.
+     * The number of connected channels over the total number of channels.
      *
-     * @param channelConnected the connection status of each channel
-     * @return the overall connection status
+     * @return the connection summary
      */
-    boolean calculate(Map<String, Boolean> channelConnected) {
-        for (Boolean conn : channelConnected.values()) {
-            if (conn != Boolean.TRUE) {
-                return false;
-            }
+    public ConnectionSummary getSummary() {
+        synchronized (lock) {
+            return new ConnectionSummary(channelConnected.size() - disconnectedCount, channelConnected.size());
         }
-        return true;
     }
 
     /**
@@ -134,9 +130,10 @@ public class ConnectionCollector implements ReadFunction<Boolean> {
             } else {
                 function.close();
                 if (function.isClosed()) {
-                    channelConnected.remove(channelName);
+                    if (channelConnected.remove(channelName) != Boolean.TRUE) {
+                        disconnectedCount--;
+                    }
                     writeFunctions.remove(channelName);
-                    connected = null;
                 }
             }
         }
@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.diirt.datasource.util.LatencyHistogram;
+import static org.diirt.util.concurrent.Executors.namedPool;
+
+/**
+ * Executes the connection operations of a data source on a bounded pool,
+ * batching the operations that arrive within a short window.
+ * <p>
+ * Each operation is submitted together with a key (the channel handler):
+ * operations with the same key are executed in submission order, one at a
+ * time, while operations for different keys are executed in parallel.
+ * When the first operation arrives, a window starts: at the end of the window
+ * all the keys that received operations are split in at most one group
+ * per thread, and each group is drained by a single task. Opening a screen
+ * with thousands of channels therefore results in a handful of tasks
+ * instead of a serial queue of thousands.
+ * <p>
+ * Threads are created on demand and are released when idle.
+ *
+ * @author carcassi
+ */
+class ConnectionPipeline {
+
+    private static final Logger log = Logger.getLogger(ConnectionPipeline.class.getName());
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final int parallelism;
+    private final long batchWindowNanos;
+
+    private final Object lock = new Object();
+    /** Operations waiting for each key; a key is present while it is being drained; guarded by lock */
+    private final Map<Object, Deque<Operation>> queues = new HashMap<>();
+    /** Keys that received operations during the current window; guarded by lock */
+    private List<Object> readyKeys = new ArrayList<>();
+    /** Whether the end of the current window was scheduled; guarded by lock */
+    private boolean flushScheduled;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong operationCount = new AtomicLong();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+
+    private static class Operation {
+        private final Runnable task;
+        private final long submissionTime;
+
+        Operation(Runnable task, long submissionTime) {
+            this.task = task;
+            this.submissionTime = submissionTime;
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param poolName the prefix for the name of the threads
+     * @param parallelism the maximum number of threads
+     * @param batchWindow the time during which operations are collected
+     */
+    ConnectionPipeline(String poolName, int parallelism, Duration batchWindow) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive (was " + parallelism + ")");
+        }
+        if (batchWindow.isNegative()) {
+            throw new IllegalArgumentException("batchWindow must not be negative (was " + batchWindow + ")");
+        }
+        this.parallelism = parallelism;
+        this.batchWindowNanos = batchWindow.toNanos();
+        this.executor = new ScheduledThreadPoolExecutor(parallelism, namedPool(poolName));
+        this.executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the operation for the given key. The operation will be
+     * executed after all the operations previously submitted for
+     * the same key.
+     *
+     * @param key the key that identifies the ordering group
+     * @param operation the operation to execute
+     */
+    void submit(Object key, Runnable operation) {
+        Operation op = new Operation(operation, System.nanoTime());
+        boolean startWindow = false;
+        synchronized (lock) {
+            Deque<Operation> queue = queues.get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(key, queue);
+                readyKeys.add(key);
+                startWindow = !flushScheduled;
+                flushScheduled = true;
+            }
+            queue.add(op);
+        }
+        if (startWindow) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (batchWindowNanos == 0) {
+            executor.execute(flushTask);
+        } else {
+            executor.schedule(flushTask, batchWindowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        List<Object> keys;
+        synchronized (lock) {
+            keys = readyKeys;
+            readyKeys = new ArrayList<>();
+            flushScheduled = false;
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        int groups = Math.min(parallelism, keys.size());
+        int groupSize = (keys.size() + groups - 1) / groups;
+        for (int start = 0; start < keys.size(); start += groupSize) {
+            final List<Object> group = keys.subList(start, Math.min(start + groupSize, keys.size()));
+            batchCount.incrementAndGet();
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    int next = 0;
+                    try {
+                        while (next < group.size()) {
+                            drain(group.get(next));
+                            next++;
+                        }
+                    } finally {
+                        // If an error stopped the group, the keys
+                        // that were not drained go in the next window
+                        for (int i = next + 1; i < group.size(); i++) {
+                            reschedule(group.get(i));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void drain(Object key) {
+        boolean drained = false;
+        try {
+            while (true) {
+                Operation op;
+                synchronized (lock) {
+                    Deque<Operation> queue = queues.get(key);
+                    op = queue.poll();
+                    if (op == null) {
+                        queues.remove(key);
+                        drained = true;
+                        return;
+                    }
+                }
+                queueLatency.record(System.nanoTime() - op.submissionTime);
+                operationCount.incrementAndGet();
+                try {
+                    op.task.run();
+                } catch (RuntimeException ex) {
+                    log.log(Level.WARNING, "Connection operation failed for " + key, ex);
+                } catch (Error err) {
+                    log.log(Level.SEVERE, "Connection operation failed for " + key, err);
+                    throw err;
+                }
+            }
+        } finally {
+            // An error other than an exception leaves the key in the queues:
+            // submit would only append to it, and the key would never
+            // be drained again
+            if (!drained) {
+                reschedule(key);
+            }
+        }
+    }
+
+    /**
+     * Puts the key back in the current window if it has operations left,
+     * or removes it.
+     */
+    private void reschedule(Object key) {
+        boolean startWindow;
+        synchronized (lock) {
+            Deque<Operation> queue = queues.get(key);
+            if (queue == null) {
+                return;
+            }
+            if (queue.isEmpty()) {
+                queues.remove(key);
+                return;
+            }
+            readyKeys.add(key);
+            startWindow = !flushScheduled;
+            flushScheduled = true;
+        }
+        if (startWindow) {
+            try {
+                scheduleFlush();
+            } catch (RuntimeException ex) {
+                // Pipeline closed: operations are discarded
+                log.log(Level.FINE, "Couldn't reschedule connection operations for " + key, ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the pipeline. Operations not yet executed are discarded.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The number of tasks submitted to the pool to drain the operations.
+     *
+     * @return the number of batches
+     */
+    long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * The number of operations executed.
+     *
+     * @return the number of operations
+     */
+    long getOperationCount() {
+        return operationCount.get();
+    }
+
+    /**
+     * The distribution of the time between the submission of each operation
+     * and the start of its execution.
+     *
+     * @return the queue latency histogram
+     */
+    LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+/**
+ * How many of the channels of a {@link PVReader} are connected.
+ * <p>
+ * A reader is connected only if all its channels are: for readers
+ * of many channels (e.g. {@link ExpressionLanguage#mapOf(org.diirt.datasource.expression.DesiredRateExpressionList) })
+ * the summary tells how far the reader is from being connected. The counts
+ * are maintained as the connections change, so taking the summary does not
+ * iterate over the channels.
+ *
+ * @author carcassi
+ */
+public final class ConnectionSummary {
+
+    private final int connectedCount;
+    private final int channelCount;
+
+    ConnectionSummary(int connectedCount, int channelCount) {
+        this.connectedCount = connectedCount;
+        this.channelCount = channelCount;
+    }
+
+    /**
+     * Returns the current connection summary of the given reader.
+     *
+     * @param pvReader a reader created by PVManager
+     * @return the connection summary
+     */
+    public static ConnectionSummary of(PVReader<?> pvReader) {
+        if (pvReader instanceof PV) {
+            pvReader = ((PV<?, ?>) pvReader).getReader();
+        }
+        PVDirector<?> director = PVReaderImpl.implOf(pvReader).getDirector();
+        if (director == null) {
+            return new ConnectionSummary(0, 0);
+        }
+        return director.getConnectionCollector().getSummary();
+    }
+
+    /**
+     * The number of channels that are connected.
+     *
+     * @return the connected channels
+     */
+    public int getConnectedCount() {
+        return connectedCount;
+    }
+
+    /**
+     * The total number of channels.
+     *
+     * @return the channels
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * True if all channels are connected.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connectedCount == channelCount;
+    }
+
+    @Override
+    public String toString() {
+        return connectedCount + "/" + channelCount + " connected";
+    }
+
+}
@@ -4,6 +4,7 @@
  */
 package org.diirt.datasource;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -119,6 +120,38 @@ public abstract class DataSource {
     // mainly to be able to shut it down during cleanup
     private final ExecutorService exec = Executors.newSingleThreadExecutor(namedPool("PVMgr " + getClass().getSimpleName() + " Worker "));
 
+    // The number of threads used to connect and disconnect readers, and the
+    // time during which read connections are batched together
+    private static final int connectionPoolSize = Math.max(1,
+            System.getProperty("MaxConnectionPoolSize") != null
+                    ? Integer.valueOf(System.getProperty("MaxConnectionPoolSize"))
+                    : Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final Duration connectionBatchWindow = Duration.ofMillis(Math.max(0,
+            System.getProperty("ConnectionBatchWindowMillis") != null
+                    ? Long.valueOf(System.getProperty("ConnectionBatchWindowMillis"))
+                    : 2));
+
+    // The pipeline used to connect and disconnect readers. Operations on
+    // different channel handlers are done in parallel, while operations on
+    // the same handler are done in order. Created at the first read connection,
+    // so that data sources that only delegate do not allocate it.
+    private final Object pipelineLock = new Object();
+    private ConnectionPipeline readPipeline;
+    private boolean closed;
+
+    ConnectionPipeline readPipeline() {
+        synchronized (pipelineLock) {
+            if (readPipeline == null) {
+                if (closed) {
+                    throw new IllegalStateException("Data source " + getClass().getSimpleName() + " was closed");
+                }
+                readPipeline = new ConnectionPipeline("PVMgr " + getClass().getSimpleName() + " Connector ",
+                        connectionPoolSize, connectionBatchWindow);
+            }
+            return readPipeline;
+        }
+    }
+
     // Keeps track of the recipes that were opened with
     // this data source.
     private final Set<ChannelReadRecipe> readRecipes = Collections.synchronizedSet(new HashSet<ChannelReadRecipe>());
@@ -165,14 +198,17 @@ public abstract class DataSource {
         }
 
         // Now that we went through all channels,
-        // add a monitor to the ones that were found
-        exec.execute(new Runnable() {
-
-            @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, Collection<ChannelReadRecipe>> entry : handlersWithSubscriptions.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    Collection<ChannelReadRecipe> channelRecipes = entry.getValue();
+        // add a monitor to the ones that were found.
+        // Each handler is connected independently, so that a slow handler
+        // does not delay the others
+        ConnectionPipeline pipeline = readPipeline();
+        for (Map.Entry<ChannelHandler, Collection<ChannelReadRecipe>> entry : handlersWithSubscriptions.entrySet()) {
+            final ChannelHandler channelHandler = entry.getKey();
+            final Collection<ChannelReadRecipe> channelRecipes = entry.getValue();
+            pipeline.submit(channelHandler, new Runnable() {
+
+                @Override
+                public void run() {
                     for (ChannelReadRecipe channelRecipe : channelRecipes) {
                         try {
                             channelHandler.addReader(channelRecipe.getReadSubscription());
@@ -183,8 +219,8 @@ public abstract class DataSource {
                         }
                     }
                 }
-            }
-        });
+            });
+        }
     }
 
     /**
@@ -216,18 +252,19 @@ public abstract class DataSource {
         }
 
         // Schedule disconnection and return right away.
-        exec.execute(new Runnable() {
-
-            @Override
-            public void run() {
-                for (Map.Entry<ChannelHandler, ChannelHandlerReadSubscription> entry : handlers.entrySet()) {
-                    ChannelHandler channelHandler = entry.getKey();
-                    ChannelHandlerReadSubscription channelHandlerReadSubscription = entry.getValue();
+        // The disconnection of each handler is queued after its connection.
+        ConnectionPipeline pipeline = readPipeline();
+        for (Map.Entry<ChannelHandler, ChannelHandlerReadSubscription> entry : handlers.entrySet()) {
+            final ChannelHandler channelHandler = entry.getKey();
+            final ChannelHandlerReadSubscription channelHandlerReadSubscription = entry.getValue();
+            pipeline.submit(channelHandler, new Runnable() {
+
+                @Override
+                public void run() {
                     channelHandler.removeReader(channelHandlerReadSubscription);
                 }
-            }
-
-        });
+            });
+        }
 
     }
 
@@ -405,6 +442,25 @@ public abstract class DataSource {
         });
     }
 
+    /**
+     * Reads the current value of the given channels once.
+     * <p>
+     * This is meant for taking snapshots of many channels: the channels
+     * are connected in batches directly to the channel handlers, without
+     * creating a reader for each, and each batch is disconnected as soon
+     * as all its channels sent a value. The future completes when all
+     * channels responded or when the timeout expires, whichever comes first.
+     * Channels that failed or did not send a value in time are not
+     * in the map.
+     *
+     * @param channelNames the names of the channels to read
+     * @param timeout the maximum time to wait for the values
+     * @return the values by channel name
+     */
+    public CompletableFuture<Map<String, Object>> readOnce(Collection<String> channelNames, Duration timeout) {
+        return BulkRead.read(this, channelNames, timeout);
+    }
+
     /**
      * Returns the channel handlers for this data source.
      *
@@ -419,6 +475,12 @@ public abstract class DataSource {
      */
     public void close() {
         exec.shutdownNow();
+        synchronized (pipelineLock) {
+            closed = true;
+            if (readPipeline != null) {
+                readPipeline.close();
+            }
+        }
     }
 
 }
@@ -45,6 +45,11 @@ public abstract class DataSourceProvider {
     /**
      * Looks up the registered factories and creates a CompositeDataSource
      * using them.
+     * <p>
+     * The configuration is read right away, but only the providers are
+     * instantiated: each data source is created by the composite when
+     * it's first used. Providers should therefore be cheap to create, and
+     * leave all expensive initialization to {@link #createInstance() }.
      *
      * @return a new DataSource
      */
@@ -11,6 +11,10 @@ package org.diirt.datasource;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The type support for a datasource. This optional class is provided to help
@@ -18,16 +22,69 @@ import java.util.List;
  * for individual types is done through runtime configuration. It provides
  * default implementation for matching typeAdapters from the desired cache
  * and connection payload.
+ * <p>
+ * The result of the match can be cached: if a data source can tell which
+ * part of the connection payload is used by the type adapters for the
+ * match (e.g. the type of the channel and whether it is an array),
+ * it can override {@link #typeSignature(java.lang.Object) }. The adapter
+ * is then matched only once for each combination of cache type and
+ * signature, instead of once per subscription and reconnection.
  *
  * @author carcassi
  */
 public class DataSourceTypeSupport {
 
+    private final Map<ResolutionKey, DataSourceTypeAdapter<?, ?>> resolutionCache = new ConcurrentHashMap<>();
+    private volatile Collection<?> resolutionCacheAdapters;
+    private final LongAdder resolutionCacheHits = new LongAdder();
+    private final LongAdder resolutionCacheMisses = new LongAdder();
+
+    /**
+     * The key of the resolution cache. The collection of type adapters
+     * is compared by identity, so that an entry computed for a previous
+     * collection is never returned for a new one.
+     */
+    private static class ResolutionKey {
+
+        private final Collection<?> typeAdapters;
+        private final Class<?> cacheType;
+        private final Object signature;
+
+        ResolutionKey(Collection<?> typeAdapters, Class<?> cacheType, Object signature) {
+            this.typeAdapters = typeAdapters;
+            this.cacheType = cacheType;
+            this.signature = signature;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 59 * hash + System.identityHashCode(typeAdapters);
+            hash = 59 * hash + Objects.hashCode(cacheType);
+            hash = 59 * hash + signature.hashCode();
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey) obj;
+            return typeAdapters == other.typeAdapters && Objects.equals(cacheType, other.cacheType)
+                    && signature.equals(other.signature);
+        }
+
+    }
+
     /**
      * Given a collection of type datapters, finds the one that can store
      * data in the cache given the channel information described in the
      * connection payload. If there isn't a unique match, an exception
      * is thrown.
+     * <p>
+     * If the connection has a {@link #typeSignature(java.lang.Object) type signature},
+     * the match is cached. Failed matches are not cached.
      *
      * @param <C> type of connection payload
      * @param <T> datasource specific type adapter type
@@ -36,7 +93,34 @@ public class DataSourceTypeSupport {
      * @param connection the connection payload
      * @return 0 if the type was not matched
      */
+    @SuppressWarnings("unchecked")
     protected <C, T extends DataSourceTypeAdapter<? super C,?>> T find(Collection<T> typeAdapters, ValueCache<?> cache, C connection) {
+        Object signature = typeSignature(connection);
+        if (signature == null) {
+            return match(typeAdapters, cache, connection);
+        }
+
+        if (resolutionCacheAdapters != typeAdapters) {
+            // The adapters have changed: the entries for the old
+            // ones will never be used again
+            resolutionCacheAdapters = typeAdapters;
+            resolutionCache.clear();
+        }
+
+        ResolutionKey key = new ResolutionKey(typeAdapters, cache.getType(), signature);
+        T adapter = (T) resolutionCache.get(key);
+        if (adapter != null) {
+            resolutionCacheHits.increment();
+            return adapter;
+        }
+
+        resolutionCacheMisses.increment();
+        adapter = match(typeAdapters, cache, connection);
+        resolutionCache.put(key, adapter);
+        return adapter;
+    }
+
+    private <C, T extends DataSourceTypeAdapter<? super C,?>> T match(Collection<T> typeAdapters, ValueCache<?> cache, C connection) {
         int matched = 0;
         List<T> matchedConverters = new ArrayList<T>();
         for (T converter : typeAdapters) {
@@ -56,6 +140,51 @@ public class DataSourceTypeSupport {
         return matchedConverters.get(0);
     }
 
+    /**
+     * The part of the connection payload that determines which type
+     * adapter is matched. Two connections with equal signatures must
+     * match the same adapter for the same cache type, so the signature must
+     * include everything the adapters look at (e.g. channel type,
+     * element count, ...) and must implement equals and hashCode.
+     * <p>
+     * By default, returns null, which means that the matches are not cached.
+     *
+     * @param connection the connection payload
+     * @return the signature of the connection, or null if the match should not be cached
+     */
+    protected Object typeSignature(Object connection) {
+        return null;
+    }
+
+    /**
+     * Removes all the cached matches. This must be called if the
+     * type adapters change their matching logic without changing
+     * the collection of adapters.
+     */
+    public void invalidateResolutionCache() {
+        resolutionCache.clear();
+    }
+
+    /**
+     * The number of matches that were found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getResolutionCacheHitCount() {
+        return resolutionCacheHits.sum();
+    }
+
+    /**
+     * The number of matches that had to be computed because they
+     * were not in the cache. Matches for connections without a signature
+     * are not counted.
+     *
+     * @return the number of cache misses
+     */
+    public long getResolutionCacheMissCount() {
+        return resolutionCacheMisses.sum();
+    }
+
     /**
      * Formats the error message in case of not unique match. This
      * allows data sources to give more specific error messages.
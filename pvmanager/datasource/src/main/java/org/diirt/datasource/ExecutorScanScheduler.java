@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scan scheduler that submits a separate periodic task for each scan.
+ *
+ * @author carcassi
+ */
+class ExecutorScanScheduler implements ScanScheduler {
+
+    private final ScheduledExecutorService scannerExecutor;
+
+    ExecutorScanScheduler(ScheduledExecutorService scannerExecutor) {
+        this.scannerExecutor = scannerExecutor;
+    }
+
+    @Override
+    public Scan schedule(Runnable task, Duration period) {
+        final ScheduledFuture<?> handle = scannerExecutor.scheduleWithFixedDelay(task, 0, period.toNanos(), TimeUnit.NANOSECONDS);
+        return new Scan() {
+
+            @Override
+            public void cancel() {
+                handle.cancel(false);
+            }
+        };
+    }
+
+}
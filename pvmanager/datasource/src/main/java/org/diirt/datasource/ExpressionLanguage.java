@@ -20,6 +20,7 @@ import org.diirt.datasource.expression.DesiredRateReadWriteExpression;
 import org.diirt.datasource.expression.SourceRateReadWriteExpressionList;
 import org.diirt.datasource.expression.DesiredRateExpression;
 import org.diirt.datasource.expression.Queue;
+import org.diirt.datasource.expression.RingQueue;
 import org.diirt.datasource.expression.ReadMap;
 import org.diirt.datasource.expression.SourceRateReadWriteExpression;
 import org.diirt.datasource.expression.ChannelExpressionList;
@@ -192,6 +193,45 @@ public class ExpressionLanguage {
                 expression.getName());
     }
 
+    /**
+     * Returns up to maxValues new values generated by the expression source rate,
+     * collected in a preallocated lock-free ring buffer.
+     * <p>
+     * Same as {@link #newValuesOf(org.diirt.datasource.expression.SourceRateExpression, int) }
+     * but the values are collected by a {@link RingBufferCollector}, so that
+     * the data source threads never contend for a lock with the scanning thread.
+     * The values can be written by any number of data source threads.
+     *
+     * @param <T> type being read
+     * @param expression source rate expression
+     * @param maxValues maximum number of values to send with each notification
+     * @return a new expression
+     */
+    public static <T> DesiredRateExpression<List<T>>
+            ringBufferOf(SourceRateExpression<T> expression, int maxValues) {
+        return new DesiredRateExpressionImpl<List<T>>(expression,
+                new RingBufferCollector<T>(maxValues, true),
+                expression.getName());
+    }
+
+    /**
+     * Returns up to maxValues new values generated by each expression source rate,
+     * collected in preallocated lock-free ring buffers.
+     *
+     * @param <T> type being read
+     * @param expressions source rate expressions
+     * @param maxValues maximum number of values to send with each notification
+     * @return a new expression
+     */
+    public static <T> DesiredRateExpressionList<List<T>>
+            ringBufferOf(SourceRateExpressionList<T> expressions, int maxValues) {
+        DesiredRateExpressionList<List<T>> list = new DesiredRateExpressionListImpl<List<T>>();
+        for (SourceRateExpression<T> expression : expressions.getSourceRateExpressions()) {
+            list.and(ringBufferOf(expression, maxValues));
+        }
+        return list;
+    }
+
     /**
      * Expression that returns (only) the latest value computed
      * from a {@code SourceRateExpression}.
@@ -594,6 +634,38 @@ public class ExpressionLanguage {
         return new ReadMap<R>().add(expressions);
     }
 
+    /**
+     * An empty map that can manage expressions of the given type, and
+     * whose values are computed incrementally.
+     * <p>
+     * Each value of the map is a {@link org.diirt.datasource.expression.ChangeSetMap}:
+     * an immutable map that shares the unchanged entries with the previous value
+     * and that lists the entries that changed or were removed. Compared to
+     * {@link #readMapOf(java.lang.Class) }, the cost of each new value is
+     * proportional to the number of changes instead of the size of the map.
+     *
+     * @param <R> the type of the values
+     * @param clazz the type of the values
+     * @return an expression representing a map from name to results
+     */
+    public static <R> ReadMap<R> incrementalReadMapOf(Class<R> clazz){
+        return new ReadMap<>(true);
+    }
+
+    /**
+     * An expression that returns a key/value map where the key is the
+     * expression name and the value is the expression value, computed
+     * incrementally.
+     *
+     * @param <R> the type of the values
+     * @param expressions a list of expressions
+     * @return an expression representing a map from name to results
+     * @see #incrementalReadMapOf(java.lang.Class)
+     */
+    public static <R> ReadMap<R> incrementalMapOf(DesiredRateExpressionList<R> expressions){
+        return new ReadMap<R>(true).add(expressions);
+    }
+
     /**
      * An expression that expects a key/value map where the key is the
      * expression name and the value is the expression value.
@@ -644,6 +716,23 @@ public class ExpressionLanguage {
         return new Queue<>(10);
     }
 
+    /**
+     * A queue of objects of the given class backed by a preallocated
+     * lock-free ring buffer.
+     * <p>
+     * Same as {@link #queueOf(java.lang.Class) }, but values can be added
+     * concurrently from any number of threads without taking a lock.
+     * The size of the queue is fixed at creation.
+     *
+     * @param <R> the type to be kept in the queue
+     * @param clazz the type for the values to be kept in the queue
+     * @param maxSize the maximum number of elements in the queue
+     * @return a new queue
+     */
+    public static <R> RingQueue<R> ringQueueOf(Class<R> clazz, int maxSize) {
+        return new RingQueue<>(maxSize);
+    }
+
     /**
      * A cache of objects of the given class. By default, it holds at maximum
      * 10 elements.
@@ -660,4 +749,29 @@ public class ExpressionLanguage {
     public static <R> Cache<R> cacheOf(Class<R> clazz) {
         return new Cache<>(10);
     }
+
+    /**
+     * An expression whose evaluation is shared by all the readers that
+     * use an equal key on the same data source.
+     * <p>
+     * The key must identify the computation: readers that use equal keys
+     * receive the values of the expression given by the first of them, which is
+     * evaluated only once regardless of the number of readers. The evaluation
+     * starts when the first reader is connected and stops when the last one
+     * is closed. Each reader keeps its own rate and notification, but it
+     * can't be notified faster than the evaluation rate of the shared expression
+     * (10 ms by default, configurable through the SharedExpressionMaxRateMillis
+     * system property).
+     *
+     * @param <T> the type of the expression
+     * @param key a key that is equal for structurally equal expressions
+     * @param expression the expression to share
+     * @return a new expression
+     */
+    public static <T> DesiredRateExpression<T> shared(Object key, DesiredRateExpression<T> expression) {
+        if (key == null) {
+            throw new IllegalArgumentException("key can't be null");
+        }
+        return new SharedReadExpression<>(key, expression);
+    }
 }
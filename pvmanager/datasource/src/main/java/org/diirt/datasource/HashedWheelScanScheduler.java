@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.diirt.datasource.util.LatencyHistogram;
+
+/**
+ * A scan scheduler that shares a single periodic task across all the scans,
+ * using a hashed timing wheel.
+ * <p>
+ * Scans with the same period (rounded to the tick duration) are grouped
+ * in the same bucket. The wheel advances at every tick, and each bucket that
+ * is due submits a single task to the executor that runs all the scans in the
+ * bucket. Thousands of readers at the same rate therefore cost one periodic
+ * task and one submission per period, instead of one entry each in the
+ * executor queue. Each scan runs right away when scheduled; a scan that joins
+ * an existing bucket then runs with the bucket, so its first period
+ * can be shorter.
+ * <p>
+ * The lag between the time a tick was due and the time it was processed
+ * is recorded, and can be used to check whether the executor is keeping up.
+ *
+ * @author carcassi
+ */
+public class HashedWheelScanScheduler implements ScanScheduler {
+
+    private static final Logger log = Logger.getLogger(HashedWheelScanScheduler.class.getName());
+
+    private final ScheduledExecutorService executor;
+    private final long tickNanos;
+    private final long startNanos;
+    private final ScheduledFuture<?> tickHandle;
+
+    private final Object lock = new Object();
+    /** Buckets for each slot of the wheel; guarded by lock */
+    private final List<List<Bucket>> wheel;
+    /** Buckets by period in ticks; guarded by lock */
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    /** The next tick to be processed; guarded by lock */
+    private long currentTick;
+    /** Buckets that are due at the current tick; accessed by the tick task only */
+    private final List<Bucket> dueBuckets = new ArrayList<>();
+
+    private final LatencyHistogram tickLag = new LatencyHistogram();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong skippedBatchCount = new AtomicLong();
+
+    private class Bucket implements Runnable {
+
+        private final long periodTicks;
+        private final Set<Member> members = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean running = new AtomicBoolean();
+        /** Wheel turns before the bucket is due; guarded by lock */
+        private long remainingRounds;
+
+        Bucket(long periodTicks) {
+            this.periodTicks = periodTicks;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Member member : members) {
+                    member.run();
+                }
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    private class Member implements Scan, Runnable {
+
+        private final Runnable task;
+        private final Bucket bucket;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        Member(Runnable task, Bucket bucket) {
+            this.task = task;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public void run() {
+            if (!cancelled && running.compareAndSet(false, true)) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    log.log(Level.WARNING, "Scan task failed", ex);
+                } finally {
+                    running.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            bucket.members.remove(this);
+        }
+    }
+
+    /**
+     * Creates a new scheduler with a wheel of 512 slots.
+     *
+     * @param executor the executor for the tick task and the scans
+     * @param tickDuration the resolution of the scheduler
+     */
+    public HashedWheelScanScheduler(ScheduledExecutorService executor, Duration tickDuration) {
+        this(executor, tickDuration, 512);
+    }
+
+    /**
+     * Creates a new scheduler. The wheel starts ticking right away,
+     * and will continue until {@link #close() } is called.
+     *
+     * @param executor the executor for the tick task and the scans
+     * @param tickDuration the resolution of the scheduler
+     * @param wheelSize the number of slots in the wheel
+     */
+    public HashedWheelScanScheduler(ScheduledExecutorService executor, Duration tickDuration, int wheelSize) {
+        if (tickDuration.isNegative() || tickDuration.isZero()) {
+            throw new IllegalArgumentException("tickDuration must be positive (was " + tickDuration + ")");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be positive (was " + wheelSize + ")");
+        }
+        this.executor = executor;
+        this.tickNanos = tickDuration.toNanos();
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<Bucket>());
+        }
+        this.startNanos = System.nanoTime() + tickNanos;
+        this.tickHandle = executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Scan schedule(Runnable task, Duration period) {
+        long periodTicks = Math.max(1, Math.round((double) period.toNanos() / tickNanos));
+        Member member;
+        synchronized (lock) {
+            Bucket bucket = buckets.get(periodTicks);
+            if (bucket == null) {
+                bucket = new Bucket(periodTicks);
+                buckets.put(periodTicks, bucket);
+                // The period is counted from the first tick due after now,
+                // so that the first scan is never early, even if the
+                // ticks are lagging behind
+                long nextTick = Math.max(currentTick, -Math.floorDiv(startNanos - System.nanoTime(), tickNanos));
+                place(bucket, nextTick + periodTicks, currentTick - 1);
+            }
+            member = new Member(task, bucket);
+            bucket.members.add(member);
+        }
+        executor.execute(member);
+        return member;
+    }
+
+    /**
+     * Puts the bucket in the slot for the given tick. Must be called
+     * while holding the lock.
+     *
+     * @param bucket the bucket to place
+     * @param dueTick the tick at which the bucket needs to be processed
+     * @param lastTick the last tick that was processed
+     */
+    private void place(Bucket bucket, long dueTick, long lastTick) {
+        bucket.remainingRounds = (dueTick - lastTick - 1) / wheel.size();
+        wheel.get((int) (dueTick % wheel.size())).add(bucket);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            tickLag.record(now - (startNanos + currentTick * tickNanos));
+            List<Bucket> slot = wheel.get((int) (currentTick % wheel.size()));
+            Iterator<Bucket> iter = slot.iterator();
+            while (iter.hasNext()) {
+                Bucket bucket = iter.next();
+                if (bucket.remainingRounds > 0) {
+                    bucket.remainingRounds--;
+                } else {
+                    iter.remove();
+                    if (bucket.members.isEmpty()) {
+                        buckets.remove(bucket.periodTicks);
+                    } else {
+                        dueBuckets.add(bucket);
+                    }
+                }
+            }
+            for (Bucket bucket : dueBuckets) {
+                place(bucket, currentTick + bucket.periodTicks, currentTick);
+            }
+            currentTick++;
+        }
+
+        for (Bucket bucket : dueBuckets) {
+            if (bucket.running.compareAndSet(false, true)) {
+                batchCount.incrementAndGet();
+                executor.execute(bucket);
+            } else {
+                // The previous batch is still running: skip this period
+                skippedBatchCount.incrementAndGet();
+            }
+        }
+        dueBuckets.clear();
+    }
+
+    /**
+     * Stops the wheel. Scans that are registered will no longer be executed.
+     */
+    public void close() {
+        tickHandle.cancel(false);
+    }
+
+    /**
+     * The duration of each tick.
+     *
+     * @return the tick duration
+     */
+    public Duration getTickDuration() {
+        return Duration.ofNanos(tickNanos);
+    }
+
+    /**
+     * The number of ticks processed so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTickCount() {
+        synchronized (lock) {
+            return currentTick;
+        }
+    }
+
+    /**
+     * The distribution of the delay between the time at which each tick
+     * was due and the time at which it was processed.
+     *
+     * @return the tick lag histogram
+     */
+    public LatencyHistogram getTickLag() {
+        return tickLag;
+    }
+
+    /**
+     * The number of buckets, that is the number of different periods,
+     * currently on the wheel.
+     *
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        synchronized (lock) {
+            return buckets.size();
+        }
+    }
+
+    /**
+     * The number of scans currently registered.
+     *
+     * @return the number of scans
+     */
+    public int getScanCount() {
+        synchronized (lock) {
+            int count = 0;
+            for (Bucket bucket : buckets.values()) {
+                count += bucket.members.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The number of batched tasks submitted to the executor.
+     *
+     * @return the number of batches
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * The number of batches that were skipped because the batch for
+     * the previous period was still running.
+     *
+     * @return the number of skipped batches
+     */
+    public long getSkippedBatchCount() {
+        return skippedBatchCount.get();
+    }
+
+}
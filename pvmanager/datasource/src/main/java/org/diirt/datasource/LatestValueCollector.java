@@ -6,21 +6,27 @@ package org.diirt.datasource;
 
 /**
  * A collector that keeps only the latest value.
+ * <p>
+ * The version of the collector increases at each write.
  *
  * @param <T> the type stored in the collector
  * @author carcassi
  */
-public class LatestValueCollector<T> implements Collector<T, T> {
+public class LatestValueCollector<T> implements Collector<T, T>, VersionedReadFunction<T> {
 
     private final Object lock = new Object();
     private T value;
+    private long version;
     private Runnable notification;
+    // Accessed only by the reading thread
+    private long readVersion;
 
     @Override
     public void writeValue(T newValue) {
         Runnable task;
         synchronized (lock) {
             value = newValue;
+            version++;
             task = notification;
         }
         // Run the task without holding the lock
@@ -32,10 +38,16 @@ public class LatestValueCollector<T> implements Collector<T, T> {
     @Override
     public T readValue() {
         synchronized (lock) {
+            readVersion = version;
             return value;
         }
     }
 
+    @Override
+    public long getVersion() {
+        return readVersion;
+    }
+
     @Override
     public void setChangeNotification(Runnable notification) {
         synchronized (lock) {
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the metrics of readers and writers in the platform MBean server.
+ * <p>
+ * Failures are logged and never propagated: metrics must not prevent
+ * a reader or writer from working.
+ *
+ * @author carcassi
+ */
+class MetricsRegistration {
+
+    private static final Logger log = Logger.getLogger(MetricsRegistration.class.getName());
+    private static final AtomicLong counter = new AtomicLong();
+
+    private MetricsRegistration() {
+        // Prevent instances
+    }
+
+    /**
+     * Registers the given MXBean under the diirt domain.
+     *
+     * @param mxbean the object to register
+     * @param type the type of the object (e.g. PVReader)
+     * @param name the name of the reader or writer
+     * @return the name used for the registration, or null if it failed
+     */
+    static ObjectName register(Object mxbean, String type, String name) {
+        try {
+            ObjectName objectName = new ObjectName("org.diirt.datasource:type=" + type
+                    + ",name=" + ObjectName.quote(String.valueOf(name)) + ",id=" + counter.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mxbean, objectName);
+            return objectName;
+        } catch (JMException | RuntimeException ex) {
+            log.log(Level.WARNING, "Couldn't register metrics for " + type + " " + name, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the registration, if present.
+     *
+     * @param objectName the name returned by the registration; can be null
+     */
+    static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException ex) {
+            // Already unregistered
+        } catch (JMException | RuntimeException ex) {
+            log.log(Level.WARNING, "Couldn't unregister metrics " + objectName, ex);
+        }
+    }
+}
@@ -4,6 +4,9 @@
  */
 package org.diirt.datasource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -35,6 +38,15 @@ import java.util.logging.Logger;
  * message payload never leave this handler, only value types created by the
  * type adapters</li>
  * </ul>
+ * <p>
+ * Messages are dispatched without holding the handler lock: the monitors
+ * are kept in an immutable snapshot that is copied whenever a reader is added or
+ * removed, and each monitor caches the type adapter matched for the current
+ * connection payload. Dispatching only takes a separate dispatch lock, which
+ * is also taken to replay the last message to a new reader and to the
+ * readers of a new connection, but never while connecting or disconnecting.
+ * A slow subscription change never blocks the transport thread, and
+ * each cache is written by one thread at a time, in message order.
  *
  * @param <ConnectionPayload> type of the payload for the connection
  * @param <MessagePayload> type of the payload for each message
@@ -47,17 +59,37 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     private int writeUsageCounter = 0;
     private boolean connected = false;
     private boolean writeConnected = false;
-    private MessagePayload lastMessage;
-    private ConnectionPayload connectionPayload;
-    private Map<ChannelHandlerReadSubscription, MonitorHandler> monitors = new ConcurrentHashMap<>();
+    // Guards the dispatch of messages to the monitors
+    private final Object dispatchLock = new Object();
+    private volatile MessagePayload lastMessage;
+    private volatile ConnectionPayload connectionPayload;
+    // Copy on write: never modified once published
+    private volatile List<MonitorHandler> monitors = Collections.emptyList();
     private Map<WriteCache<?>, ChannelHandlerWriteSubscription> writeSubscriptions = new ConcurrentHashMap<>();
     private boolean processMessageOnDisconnect = true;
     private boolean processMessageOnReconnect = true;
 
+    /**
+     * A type adapter together with the connection payload it was matched
+     * for. It is replaced as a whole, so that a message is never processed
+     * with the adapter of one connection and the payload of another.
+     */
+    private static class AdapterMatch<C, M> {
+
+        private final DataSourceTypeAdapter<C, M> typeAdapter;
+        private final C connectionPayload;
+
+        AdapterMatch(DataSourceTypeAdapter<C, M> typeAdapter, C connectionPayload) {
+            this.typeAdapter = typeAdapter;
+            this.connectionPayload = connectionPayload;
+        }
+
+    }
+
     private class MonitorHandler {
 
         private final ChannelHandlerReadSubscription subscription;
-        private DataSourceTypeAdapter<ConnectionPayload, MessagePayload> typeAdapter;
+        private volatile AdapterMatch<ConnectionPayload, MessagePayload> adapterMatch;
 
         public MonitorHandler(ChannelHandlerReadSubscription subscription) {
             this.subscription = subscription;
@@ -68,23 +100,25 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
         }
 
         public final void processValue(MessagePayload payload) {
-            if (typeAdapter == null)
+            AdapterMatch<ConnectionPayload, MessagePayload> match = adapterMatch;
+            if (match == null)
                 return;
 
             // Lock the collector and prepare the new value.
             try {
-                typeAdapter.updateCache(subscription.getValueCache(), getConnectionPayload(), payload);
+                match.typeAdapter.updateCache(subscription.getValueCache(), match.connectionPayload, payload);
             } catch (RuntimeException e) {
                 subscription.getExceptionWriteFunction().writeValue(e);
             }
         }
 
         public final void findTypeAdapter() {
-            if (getConnectionPayload() == null) {
-                typeAdapter = null;
+            ConnectionPayload connection = connectionPayload;
+            if (connection == null) {
+                adapterMatch = null;
             } else {
                 try {
-                    typeAdapter = MultiplexedChannelHandler.this.findTypeAdapter(subscription.getValueCache(), getConnectionPayload());
+                    adapterMatch = new AdapterMatch<>(MultiplexedChannelHandler.this.findTypeAdapter(subscription.getValueCache(), connection), connection);
                 } catch(RuntimeException ex) {
                     subscription.getExceptionWriteFunction().writeValue(ex);
                 }
@@ -99,7 +133,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      * @param ex the exception to notify
      */
     protected synchronized final void reportExceptionToAllReadersAndWriters(Exception ex) {
-        for (MonitorHandler monitor : monitors.values()) {
+        for (MonitorHandler monitor : monitors) {
             monitor.subscription.getExceptionWriteFunction().writeValue(ex);
         }
         for (ChannelHandlerWriteSubscription subscription : writeSubscriptions.values()) {
@@ -119,7 +153,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     }
 
     private void reportConnectionStatus(boolean connected) {
-        for (MonitorHandler monitor : monitors.values()) {
+        for (MonitorHandler monitor : monitors) {
             monitor.processConnection(connected);
         }
     }
@@ -135,7 +169,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      *
      * @return the connection payload or null
      */
-    protected synchronized final ConnectionPayload getConnectionPayload() {
+    protected final ConnectionPayload getConnectionPayload() {
         return connectionPayload;
     }
 
@@ -144,7 +178,7 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      *
      * @return the message payload or null
      */
-    protected synchronized final MessagePayload getLastMessagePayload() {
+    protected final MessagePayload getLastMessagePayload() {
         return lastMessage;
     }
 
@@ -163,15 +197,15 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
         setConnected(isConnected(connectionPayload));
         setWriteConnected(isWriteConnected(connectionPayload));
 
-        for (MonitorHandler monitor : monitors.values()) {
+        for (MonitorHandler monitor : monitors) {
             monitor.findTypeAdapter();
         }
 
-        if (isConnected() && lastMessage != null && processMessageOnReconnect) {
-            processMessage(lastMessage);
+        if (isConnected() && processMessageOnReconnect) {
+            dispatchLastMessage();
         }
-        if (!isConnected() && lastMessage != null && processMessageOnDisconnect) {
-            processMessage(lastMessage);
+        if (!isConnected() && processMessageOnDisconnect) {
+            dispatchLastMessage();
         }
     }
 
@@ -242,22 +276,35 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
     protected synchronized void addReader(ChannelHandlerReadSubscription subscription) {
         readUsageCounter++;
         MonitorHandler monitor = new MonitorHandler(subscription);
-        monitors.put(subscription, monitor);
         monitor.findTypeAdapter();
-        guardedConnect();
-        if (getUsageCounter() > 1) {
-            if (connectionPayload != null) {
-                monitor.processConnection(isConnected());
-            }
-            if (lastMessage != null) {
-                monitor.processValue(lastMessage);
+        // The last message is replayed before the monitor is published,
+        // so that no other message can come before or during the replay
+        synchronized(dispatchLock) {
+            if (getUsageCounter() > 1) {
+                if (connectionPayload != null) {
+                    monitor.processConnection(isConnected());
+                }
+                if (lastMessage != null) {
+                    monitor.processValue(lastMessage);
+                }
             }
+            List<MonitorHandler> newMonitors = new ArrayList<>(monitors);
+            newMonitors.add(monitor);
+            monitors = Collections.unmodifiableList(newMonitors);
         }
+        guardedConnect();
     }
 
     @Override
     protected synchronized void removeReader(ChannelHandlerReadSubscription subscription) {
-        monitors.remove(subscription);
+        List<MonitorHandler> newMonitors = new ArrayList<>(monitors);
+        for (int i = 0; i < newMonitors.size(); i++) {
+            if (newMonitors.get(i).subscription.equals(subscription)) {
+                newMonitors.remove(i);
+                break;
+            }
+        }
+        monitors = Collections.unmodifiableList(newMonitors);
         readUsageCounter--;
         guardedDisconnect();
     }
@@ -293,17 +340,42 @@ public abstract class MultiplexedChannelHandler<ConnectionPayload, MessagePayloa
      * a new value needs to be processed. The handler will take care of
      * using the correct {@link DataSourceTypeAdapter}
      * for each read monitor that was setup.
+     * <p>
+     * The message is dispatched without locking the handler and without
+     * allocating, using the monitors subscribed at the time of the call.
+     * Only the dispatch lock is taken, so that the replay of the last
+     * message to a new reader is never interleaved with a new message.
      *
      * @param payload the payload of for this type of channel
      */
-    protected synchronized final void processMessage(MessagePayload payload) {
+    protected final void processMessage(MessagePayload payload) {
         if (log.isLoggable(Level.FINEST)) {
             log.log(Level.FINEST, "processMessage for channel {0} messagePayload {1}", new Object[]{getChannelName(), payload});
         }
 
-        lastMessage = payload;
-        for (MonitorHandler monitor : monitors.values()) {
-            monitor.processValue(payload);
+        synchronized(dispatchLock) {
+            lastMessage = payload;
+            dispatch(payload);
+        }
+    }
+
+    private void dispatch(MessagePayload payload) {
+        // Indexed loop: no iterator is allocated
+        List<MonitorHandler> currentMonitors = monitors;
+        for (int i = 0; i < currentMonitors.size(); i++) {
+            currentMonitors.get(i).processValue(payload);
+        }
+    }
+
+    /**
+     * Dispatches the last message again, for example after the type adapters
+     * have changed.
+     */
+    private void dispatchLastMessage() {
+        synchronized(dispatchLock) {
+            if (lastMessage != null) {
+                dispatch(lastMessage);
+            }
         }
     }
 
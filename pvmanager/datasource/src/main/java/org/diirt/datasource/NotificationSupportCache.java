@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+/**
+ * Remembers the notification support resolved for the class of the last
+ * value, so that a reader whose value type does not change resolves it only once.
+ * <p>
+ * The cached support is discarded when the class of the value changes
+ * or when a new support is added through {@link TypeSupport#addTypeSupport(org.diirt.datasource.TypeSupport) }.
+ * The cache is thread-safe, but it holds only one entry: it is meant to
+ * be used by a single reader.
+ *
+ * @param <T> type for which the notifications are prepared
+ * @author carcassi
+ */
+public final class NotificationSupportCache<T> {
+
+    private static final class Entry<T> {
+
+        private final Class<?> type;
+        private final int version;
+        private final NotificationSupport<T> support;
+
+        Entry(Class<?> type, int version, NotificationSupport<T> support) {
+            this.type = type;
+            this.version = version;
+            this.support = support;
+        }
+    }
+
+    private volatile Entry<T> entry;
+
+    /**
+     * Returns the notification support for the given value.
+     * <p>
+     * If no support is found, an exception is thrown.
+     *
+     * @param value the value; can't be null
+     * @return the notification support
+     */
+    public NotificationSupport<T> supportFor(T value) {
+        Entry<T> current = entry;
+        int version = TypeSupport.getSupportVersion();
+        if (current == null || current.type != value.getClass() || current.version != version) {
+            current = new Entry<>(value.getClass(), version, NotificationSupport.findNotificationSupportFor(value));
+            entry = current;
+        }
+        return current.support;
+    }
+
+    /**
+     * Returns the final value by using the cached type support.
+     *
+     * @param oldValue the oldValue, which was previously in the previous notification
+     * @param newValue the newValue, which was computed during the scanning
+     * @return the value to be notified
+     * @see NotificationSupport#notification(java.lang.Object, java.lang.Object)
+     */
+    public Notification<T> notification(T oldValue, T newValue) {
+        return supportFor(newValue).prepareNotification(oldValue, newValue);
+    }
+
+}
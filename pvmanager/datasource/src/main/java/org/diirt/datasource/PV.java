@@ -25,6 +25,14 @@ public class PV<R, W> implements PVReader<R>, PVWriter<W> {
         this.writer = writer;
     }
 
+    PVReader<R> getReader() {
+        return reader;
+    }
+
+    PVWriter<W> getWriter() {
+        return writer;
+    }
+
     @Override
     public void addPVWriterListener(PVWriterListener<? extends W> listener) {
         writer.addPVWriterListener(listener);
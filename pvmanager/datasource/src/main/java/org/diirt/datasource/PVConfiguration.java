@@ -122,6 +122,56 @@ public class PVConfiguration<R, W> extends CommonConfiguration {
         return this;
     }
 
+    /**
+     * Sets what to do when the read listeners are slower than the rate at which
+     * new values are available.
+     *
+     * @param backpressurePolicy the policy for slow listeners
+     * @return this
+     * @see PVReaderConfiguration#backpressure(org.diirt.datasource.BackpressurePolicy)
+     */
+    public PVConfiguration<R, W> backpressure(BackpressurePolicy backpressurePolicy) {
+        pvReaderConfiguration.backpressure(backpressurePolicy);
+        return this;
+    }
+
+    /**
+     * Coalesces the writes requested while a previous write is in flight.
+     *
+     * @return this
+     * @see PVWriterConfiguration#coalesceWrites()
+     */
+    public PVConfiguration<R, W> coalesceWrites() {
+        pvWriterConfiguration.coalesceWrites();
+        return this;
+    }
+
+    /**
+     * Collects timing metrics for both reader and writer.
+     *
+     * @return this
+     * @see PVReaderConfiguration#collectMetrics()
+     * @see PVWriterConfiguration#collectMetrics()
+     */
+    @Override
+    public PVConfiguration<R, W> collectMetrics() {
+        pvReaderConfiguration.collectMetrics();
+        pvWriterConfiguration.collectMetrics();
+        return this;
+    }
+
+    /**
+     * Schedules the periodic scan of the read expression on the given scheduler.
+     *
+     * @param scanScheduler the scheduler for the periodic scan
+     * @return this
+     * @see PVReaderConfiguration#scanWith(org.diirt.datasource.ScanScheduler)
+     */
+    public PVConfiguration<R, W> scanWith(ScanScheduler scanScheduler) {
+        pvReaderConfiguration.scanWith(scanScheduler);
+        return this;
+    }
+
     /**
      * Creates the pv such that writes are synchronous and read notifications
      * comes at most at the rate specified.
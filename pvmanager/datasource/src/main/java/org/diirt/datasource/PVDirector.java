@@ -6,16 +6,23 @@ package org.diirt.datasource;
 
 import java.lang.ref.WeakReference;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.diirt.datasource.expression.ChangeSetMap;
 import org.diirt.datasource.expression.DesiredRateExpression;
 
 /**
@@ -51,14 +58,41 @@ public class PVDirector<T> {
     private final ReadFunction<T> readFunction;
     /** Creation for stack trace */
     private final Exception creationStackTrace = new Exception("PV was never closed (stack trace for creation)");
+    /** Registration to reclaim the reader if it's garbage collected */
+    private final PVReaderReaper.ReaderReference reaperReference;
     /** Used to ignore duplicated errors */
     private final AtomicReference<Exception> previousCalculationException = new AtomicReference<>();
+    /** Metrics for the reader; null if not collected */
+    private PVReaderMetrics metrics;
+    /** Notification support resolved by the scan; separate from the notification
+     *  since queued values may be copies of a different class */
+    private final NotificationSupportCache<T> scanSupportCache = new NotificationSupportCache<>();
+    /** Notification support resolved at notification */
+    private final NotificationSupportCache<T> notificationSupportCache = new NotificationSupportCache<>();
+
+    // Required for backpressure
+
+    /** What to do when the listeners are slower than the scan */
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.latestValue();
+    /** Whether the source events need to be counted for the policy */
+    private volatile boolean countSourceEvents;
+    /** Source events since the last scan; used only if countSourceEvents */
+    private final AtomicLong sourceEventCount = new AtomicLong();
+    /** Scans waiting for notification with the queue policy; guarded by itself */
+    private final Deque<ReadSnapshot<T>> pendingNotifications = new ArrayDeque<>();
+    /** Scans dropped since the last notification; guarded by pendingNotifications */
+    private long droppedCount;
+    /** Changes of the dropped change set maps, which are merged in the next
+     *  notified map; guarded by pendingNotifications */
+    private ChangeSetMap<?> droppedChanges;
 
     // Required to connect/disconnect expressions
     private final DataSource dataSource;
     private final Object lock = new Object();
     private final Map<DesiredRateExpression<?>, ReadRecipe> readRecipies =
             new HashMap<>();
+    private final Map<DesiredRateExpression<?>, List<Runnable>> disconnectTasks =
+            new HashMap<>();
     private SourceDesiredRateDecoupler scanStrategy;
 
     // Required for multiple operations
@@ -88,11 +122,36 @@ public class PVDirector<T> {
         });
     }
 
+    void setMetrics(PVReaderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    ConnectionCollector getConnectionCollector() {
+        return readConnCollector;
+    }
+
+    QueueCollector<Exception> getExceptionCollector() {
+        return readExceptionCollector;
+    }
+
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
+    void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+        this.countSourceEvents = backpressurePolicy.getType() != BackpressurePolicy.Type.LATEST_VALUE
+                && backpressurePolicy.getType() != BackpressurePolicy.Type.BLOCK_SCANNER;
+    }
+
     public void registerCollector(Collector<?, ?> collector) {
         collector.setChangeNotification(new Runnable() {
 
             @Override
             public void run() {
+                if (countSourceEvents) {
+                    sourceEventCount.incrementAndGet();
+                }
                 if (scanStrategy != null) {
                     scanStrategy.newValueEvent();
                 }
@@ -126,6 +185,9 @@ public class PVDirector<T> {
         ReadRecipe recipe = builder.build(readExceptionCollector, readConnCollector);
         synchronized(lock) {
             readRecipies.put(expression, recipe);
+            if (!builder.getDisconnectTasks().isEmpty()) {
+                disconnectTasks.put(expression, builder.getDisconnectTasks());
+            }
         }
         if (!recipe.getChannelReadRecipes().isEmpty()) {
             try {
@@ -168,13 +230,25 @@ public class PVDirector<T> {
      */
     public void disconnectReadExpression(DesiredRateExpression<?> expression) {
         ReadRecipe recipe;
+        List<Runnable> tasks;
         synchronized(lock) {
             recipe = readRecipies.remove(expression);
+            tasks = disconnectTasks.remove(expression);
         }
         if (recipe == null) {
             log.log(Level.SEVERE, "Director was asked to disconnect expression '" + expression + "' which was not found.");
         }
 
+        if (tasks != null) {
+            for (Runnable task : tasks) {
+                try {
+                    task.run();
+                } catch(RuntimeException ex) {
+                    log.log(Level.WARNING, "Disconnect task for expression '" + expression + "' failed", ex);
+                }
+            }
+        }
+
         if (!recipe.getChannelReadRecipes().isEmpty()) {
             try {
                 for (ChannelReadRecipe channelRecipe : recipe.getChannelReadRecipes()) {
@@ -190,8 +264,35 @@ public class PVDirector<T> {
     private volatile boolean closed = false;
 
     void close() {
-        closed = true;
+        SourceDesiredRateDecoupler scanner;
+        synchronized(lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            scanner = scanStrategy;
+        }
+        PVReaderReaper.unregister(reaperReference);
+        if (scanner != null && !scanner.isStopped()) {
+            scanner.stop();
+        }
         disconnect();
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Closes the director after the reader was garbage collected without
+     * being closed. Called either by the reaper or by the scan, whichever
+     * notices first; the leak is reported only once.
+     */
+    void reclaim() {
+        if (PVReaderReaper.unregister(reaperReference)) {
+            PVReaderReaper.leaked(creationStackTrace);
+            log.log(Level.WARNING, "PVReader wasn't properly closed and it was garbage collected. Closing the associated connections...", creationStackTrace);
+        }
+        close();
     }
 
     /**
@@ -221,6 +322,7 @@ public class PVDirector<T> {
     PVDirector(PVReaderImpl<T> pv, ReadFunction<T> function, ScheduledExecutorService scannerExecutor,
             Executor notificationExecutor, DataSource dataSource, ExceptionHandler exceptionHandler) {
         this.pvReaderRef = new WeakReference<>(pv);
+        this.reaperReference = PVReaderReaper.register(pv, this);
         this.readFunction = function;
         this.notificationExecutor = notificationExecutor;
         this.scannerExecutor = scannerExecutor;
@@ -248,7 +350,7 @@ public class PVDirector<T> {
         if (pv != null && !pv.isClosed()) {
             return true;
         } else if (pv == null && closed != true) {
-            log.log(Level.WARNING, "PVReader wasn't properly closed and it was garbage collected. Closing the associated connections...", creationStackTrace);
+            reclaim();
             return false;
         } else {
             return false;
@@ -265,25 +367,130 @@ public class PVDirector<T> {
 
     private volatile boolean notificationInFlight = false;
 
+    /**
+     * The result of a scan, ready to be shipped to the notification thread.
+     *
+     * @param <T> the type of the value
+     */
+    private static class ReadSnapshot<T> {
+        private final T value;
+        private final boolean calculationSucceeded;
+        private final boolean connected;
+        private final Exception lastException;
+        private final long conflatedCount;
+        private final long scanStart;
+
+        ReadSnapshot(T value, boolean calculationSucceeded, boolean connected,
+                Exception lastException, long conflatedCount, long scanStart) {
+            this.value = value;
+            this.calculationSucceeded = calculationSucceeded;
+            this.connected = connected;
+            this.lastException = lastException;
+            this.conflatedCount = conflatedCount;
+            this.scanStart = scanStart;
+        }
+    }
+
     /**
      * Notifies the PVReader of a new value.
+     *
+     * @param scanStart the time the scan started; used only if metrics are collected
      */
-    private void notifyPv() {
+    private void notifyPv(final long scanStart) {
+        // Metrics are read once, so that the cost when they are
+        // not collected is a single null check
+        final PVReaderMetrics metrics = this.metrics;
+
+        if (backpressurePolicy.getType() == BackpressurePolicy.Type.QUEUE) {
+            // Values are computed at every scan, and queued for notification
+            queueNotification(detach(computeSnapshot(metrics, scanStart)), metrics);
+            scanStrategy.readyForNextEvent();
+            return;
+        }
+
         // Don't even calculate if notification is in flight.
         // This makes pvManager automatically throttle back if the consumer
         // is slower than the producer.
-        if (notificationInFlight)
+        if (notificationInFlight) {
+            if (metrics != null) {
+                metrics.skippedScanCount.increment();
+            }
             return;
+        }
+
+        // Prepare values to ship to the other thread.
+        // The data will be shipped as part of the task,
+        // which is properly synchronized by the executor
+        final ReadSnapshot<T> snapshot = computeSnapshot(metrics, scanStart);
+        final boolean blockScanner = backpressurePolicy.getType() == BackpressurePolicy.Type.BLOCK_SCANNER;
+        final CountDownLatch notificationDone = blockScanner ? new CountDownLatch(1) : null;
+        final long submissionTime = metrics != null ? System.nanoTime() : 0;
+        notificationInFlight = true;
+        notificationExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                if (metrics != null) {
+                    metrics.notificationQueueTime.record(System.nanoTime() - submissionTime);
+                }
+                try {
+                    deliver(snapshot, 0);
+                } finally {
+                    if (metrics != null) {
+                        metrics.scanToNotifyLag.record(System.nanoTime() - scanStart);
+                        metrics.notificationCount.increment();
+                    }
+                    notificationInFlight = false;
+                    if (blockScanner) {
+                        notificationDone.countDown();
+                    } else {
+                        scanStrategy.readyForNextEvent();
+                    }
+                }
+            }
+        });
+
+        if (blockScanner) {
+            // Hold the scanner thread until the listeners are done,
+            // checking periodically whether the reader was closed
+            try {
+                while (!notificationDone.await(100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            scanStrategy.readyForNextEvent();
+        }
+    }
 
+    /**
+     * Calculates the new value, connection and exception.
+     *
+     * @param metrics the metrics to update; can be null
+     * @param scanStart the time the scan started
+     * @return the result of the scan
+     */
+    private ReadSnapshot<T> computeSnapshot(PVReaderMetrics metrics, long scanStart) {
         // Calculate new value
         T newValue = null;
         Exception calculationException = null;
         boolean calculationSucceeded = false;
         try {
             // Tries to calculate the value
-            newValue = readFunction.readValue();
+            if (metrics != null) {
+                long start = System.nanoTime();
+                newValue = readFunction.readValue();
+                metrics.readValueTime.record(System.nanoTime() - start);
+                metrics.scanCount.increment();
+            } else {
+                newValue = readFunction.readValue();
+            }
             if (newValue != null) {
-                NotificationSupport.findNotificationSupportFor(newValue);
+                scanSupportCache.supportFor(newValue);
             }
             calculationSucceeded = true;
         } catch (RuntimeException ex) {
@@ -311,69 +518,201 @@ public class PVDirector<T> {
             lastException = exceptions.get(exceptions.size() - 1);
         }
 
+        // All the source events since the previous scan, but the first one,
+        // were conflated into this value
+        long conflatedCount = 0;
+        if (countSourceEvents) {
+            conflatedCount = Math.max(0, sourceEventCount.getAndSet(0) - 1);
+        }
+
         // TODO: if payload is immutable, the difference test should be done here
         // and not in the runnable (to save SWT time)
+        return new ReadSnapshot<>(newValue, calculationSucceeded, connected, lastException, conflatedCount, scanStart);
+    }
 
-        // Prepare values to ship to the other thread.
-        // The data will be shipped as part of the task,
-        // which is properly synchronized by the executor
-        final T finalValue = newValue;
-        final boolean finalCalculationSucceeded = calculationSucceeded;
-        notificationInFlight = true;
+    /**
+     * Makes sure the value of the snapshot is not modified by the next scan.
+     * Collectors reuse the lists they return, so lists are copied: other
+     * values are assumed immutable.
+     *
+     * @param snapshot the result of the scan
+     * @return a snapshot that can be queued
+     */
+    @SuppressWarnings("unchecked")
+    private ReadSnapshot<T> detach(ReadSnapshot<T> snapshot) {
+        if (!(snapshot.value instanceof List)) {
+            return snapshot;
+        }
+        T copy = (T) Collections.unmodifiableList(new ArrayList<>((List<?>) snapshot.value));
+        return new ReadSnapshot<>(copy, snapshot.calculationSucceeded, snapshot.connected,
+                snapshot.lastException, snapshot.conflatedCount, snapshot.scanStart);
+    }
+
+    /**
+     * Merges the changes of a dropped change set map in the following one,
+     * so that the listeners that process the changes don't miss any.
+     *
+     * @param older the changes dropped so far; can be null
+     * @param newer the following map
+     * @return the newer map with all the changes
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ChangeSetMap<?> mergeChanges(ChangeSetMap<?> older, ChangeSetMap<?> newer) {
+        if (older == null) {
+            return newer;
+        }
+        return ChangeSetMap.merge((ChangeSetMap) older, (ChangeSetMap) newer);
+    }
+
+    /**
+     * A copy of the snapshot with a different value.
+     *
+     * @param snapshot the result of the scan
+     * @param value the new value
+     * @return a new snapshot
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ReadSnapshot<T> withValue(ReadSnapshot<T> snapshot, Object value) {
+        return new ReadSnapshot<>((T) value, snapshot.calculationSucceeded, snapshot.connected,
+                snapshot.lastException, snapshot.conflatedCount, snapshot.scanStart);
+    }
+
+    /**
+     * Adds the snapshot to the queue of pending notifications, dropping
+     * the oldest if the queue is full, and starts the delivery if needed.
+     *
+     * @param snapshot the result of the scan
+     * @param metrics the metrics to update; can be null
+     */
+    private void queueNotification(ReadSnapshot<T> snapshot, PVReaderMetrics metrics) {
+        boolean startDelivery;
+        synchronized (pendingNotifications) {
+            if (pendingNotifications.size() >= backpressurePolicy.getMaxSize()) {
+                ReadSnapshot<T> dropped = pendingNotifications.poll();
+                droppedCount++;
+                if (dropped.value instanceof ChangeSetMap) {
+                    droppedChanges = mergeChanges(droppedChanges, (ChangeSetMap<?>) dropped.value);
+                }
+            }
+            pendingNotifications.add(snapshot);
+            startDelivery = !notificationInFlight;
+            notificationInFlight = true;
+        }
+        if (startDelivery) {
+            deliverNextQueued(metrics);
+        }
+    }
+
+    /**
+     * Submits the notification of the oldest queued snapshot. Each snapshot is
+     * notified in its own task, so that the notification thread is not
+     * monopolized by one reader.
+     *
+     * @param metrics the metrics to update; can be null
+     */
+    private void deliverNextQueued(final PVReaderMetrics metrics) {
+        final long submissionTime = metrics != null ? System.nanoTime() : 0;
         notificationExecutor.execute(new Runnable() {
 
             @Override
             public void run() {
+                if (metrics != null) {
+                    metrics.notificationQueueTime.record(System.nanoTime() - submissionTime);
+                }
+                ReadSnapshot<T> snapshot;
+                long dropped;
+                synchronized (pendingNotifications) {
+                    snapshot = pendingNotifications.poll();
+                    dropped = droppedCount;
+                    droppedCount = 0;
+                    if (droppedChanges != null && snapshot != null && snapshot.value instanceof ChangeSetMap) {
+                        snapshot = withValue(snapshot, mergeChanges(droppedChanges, (ChangeSetMap<?>) snapshot.value));
+                        droppedChanges = null;
+                    }
+                }
+                boolean more;
                 try {
-                    PVReaderImpl<T> pv = pvReaderRef.get();
-                    // Proceed with notification only if PVReader was not garbage
-                    // collected
-                    if (pv != null) {
-
-                        // Atomicity guaranteed by:
-                        //  - all the modification on the PVReader
-                        //    are done here, on the same thread where the listeners will be called.
-                        //    This means the callbacks are guaranteed to run after all
-                        //    changes are done
-                        //  - notificationInFlight guarantees that no other notification
-                        //    will run while one notification is running. This means
-                        //    the next event is serialized after the end of this one.
-                        pv.setConnected(connected);
-                        if (lastException != null) {
-                            if (lastException instanceof TimeoutException &&
-                                    (connected || finalValue != null)) {
-                                // Skip TimeoutExceptions if we are connected and/or
-                                // have a value
-                            } else {
-                                pv.setLastException(lastException);
-                            }
+                    if (snapshot != null) {
+                        deliver(snapshot, dropped);
+                    }
+                } finally {
+                    if (metrics != null && snapshot != null) {
+                        metrics.scanToNotifyLag.record(System.nanoTime() - snapshot.scanStart);
+                        metrics.notificationCount.increment();
+                    }
+                    synchronized (pendingNotifications) {
+                        if (closed) {
+                            pendingNotifications.clear();
                         }
-
-                        // XXX Are we sure that we should skip notifications if values are null?
-                        if (finalCalculationSucceeded && finalValue != null) {
-                            Notification<T> notification =
-                                    NotificationSupport.notification(pv.getValue(), finalValue);
-                            // Remember to notify anyway if an exception need to be notified
-                            if (notification.isNotificationNeeded()) {
-                                pv.setValue(notification.getNewValue());
-                            } else if (pv.isLastExceptionToNotify() || pv.isReadConnectionToNotify()) {
-                                pv.firePvValueChanged();
-                            }
-                        } else {
-                            // Remember to notify anyway if an exception need to be notified
-                            if (pv.isLastExceptionToNotify() || pv.isReadConnectionToNotify()) {
-                                pv.firePvValueChanged();
-                            }
+                        more = !pendingNotifications.isEmpty();
+                        if (!more) {
+                            notificationInFlight = false;
                         }
                     }
-                } finally {
-                    notificationInFlight = false;
-                    scanStrategy.readyForNextEvent();
+                }
+                if (more) {
+                    deliverNextQueued(metrics);
                 }
             }
         });
     }
 
+    /**
+     * Updates the PVReader and notifies the listeners. Must be called
+     * on the notification thread.
+     *
+     * @param snapshot the result of the scan
+     * @param dropped the number of snapshots dropped since the last delivery
+     */
+    private void deliver(ReadSnapshot<T> snapshot, long dropped) {
+        PVReaderImpl<T> pv = pvReaderRef.get();
+        // Proceed with notification only if PVReader was not garbage
+        // collected
+        if (pv != null) {
+
+            // Atomicity guaranteed by:
+            //  - all the modification on the PVReader
+            //    are done here, on the same thread where the listeners will be called.
+            //    This means the callbacks are guaranteed to run after all
+            //    changes are done
+            //  - notificationInFlight guarantees that no other notification
+            //    will run while one notification is running. This means
+            //    the next event is serialized after the end of this one.
+            if (dropped != 0 || snapshot.conflatedCount != 0) {
+                pv.addBackpressureCounts(dropped, snapshot.conflatedCount);
+            }
+            pv.setConnected(snapshot.connected);
+            Exception lastException = snapshot.lastException;
+            T finalValue = snapshot.value;
+            if (lastException != null) {
+                if (lastException instanceof TimeoutException &&
+                        (snapshot.connected || finalValue != null)) {
+                    // Skip TimeoutExceptions if we are connected and/or
+                    // have a value
+                } else {
+                    pv.setLastException(lastException);
+                }
+            }
+
+            // XXX Are we sure that we should skip notifications if values are null?
+            if (snapshot.calculationSucceeded && finalValue != null) {
+                Notification<T> notification =
+                        notificationSupportCache.notification(pv.getValue(), finalValue);
+                // Remember to notify anyway if an exception need to be notified
+                if (notification.isNotificationNeeded()) {
+                    pv.setValue(notification.getNewValue());
+                } else if (pv.isLastExceptionToNotify() || pv.isReadConnectionToNotify()) {
+                    pv.firePvValueChanged();
+                }
+            } else {
+                // Remember to notify anyway if an exception need to be notified
+                if (pv.isLastExceptionToNotify() || pv.isReadConnectionToNotify()) {
+                    pv.firePvValueChanged();
+                }
+            }
+        }
+    }
+
     /**
      * Posts a readTimeout exception in the exception queue.
      *
@@ -400,7 +739,7 @@ public class PVDirector<T> {
         @Override
         public void desiredRateEvent(DesiredRateEvent event) {
             if (isActive()) {
-                notifyPv();
+                notifyPv(metrics != null ? System.nanoTime() : 0);
             } else {
                 close();
             }
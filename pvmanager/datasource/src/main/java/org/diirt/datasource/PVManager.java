@@ -4,6 +4,10 @@
  */
 package org.diirt.datasource;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -25,7 +29,10 @@ import org.diirt.datasource.expression.WriteExpression;
  * managed by the DataSource and exceptions notification are run on the thread
  * where the exception is done. This can be changed to make all notifications
  * routed to single threaded sub-systems, such as UI environments like SWING,
- * SWT or similar. This can be changed on a PV by PV basis.
+ * SWT or similar. This can be changed on a PV by PV basis. When many readers
+ * notify on the same single threaded sub-system, the executor can be wrapped in a
+ * {@link org.diirt.datasource.util.CoalescingExecutor} so that all the
+ * notifications of a frame are dispatched as a single event.
  * <p>
  * <b>AsynchWriteExecutor</b> - This is used for asynchronous writes, to return
  * right away, and for running timeouts on each write.
@@ -41,6 +48,12 @@ import org.diirt.datasource.expression.WriteExpression;
  * scan for new values. By default this uses the internal PVManager work pool. The work
  * submitted here is the calculation of the corresponding {@link DesiredRateExpression}
  * and submission to the NotificationExecutor.
+ * <p>
+ * <b>ScanScheduler</b> - This is used to schedule the periodic scan of the
+ * expressions that need to be scanned at a fixed rate. By default this is not set,
+ * and each reader schedules its own task on the ReadScannerExecutorService.
+ * Setting a {@link HashedWheelScanScheduler} will share a single periodic
+ * task across all readers.
  *
  * @author carcassi
  */
@@ -56,6 +69,7 @@ public class PVManager {
             org.diirt.util.concurrent.Executors.namedPool("PVMgr Worker "));
     private static ScheduledExecutorService readScannerExecutorService = workerPool;
     private static ScheduledExecutorService asyncWriteExecutor = workerPool;
+    private static volatile ScanScheduler defaultScanScheduler;
 
     /**
      * Changes the default executor on which all notifications are going to be posted.
@@ -158,6 +172,25 @@ public class PVManager {
         return new PVConfiguration<R, W>(readWriteExpression);
     }
 
+    /**
+     * Reads the current value of the given channels once from the default
+     * data source.
+     *
+     * @param channelNames the names of the channels to read
+     * @param timeout the maximum time to wait for the values
+     * @return the values by channel name
+     * @see DataSource#readOnce(java.util.Collection, java.time.Duration)
+     */
+    public static CompletableFuture<Map<String, Object>> readOnce(Collection<String> channelNames, Duration timeout) {
+        DataSource dataSource = getDefaultDataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("You need to specify a source either "
+                    + "using PVManager.setDefaultDataSource or by using "
+                    + "dataSource.readOnce(...).");
+        }
+        return dataSource.readOnce(channelNames, timeout);
+    }
+
     /**
      * Returns the current executor on which the asynchronous calls are executed.
      *
@@ -196,4 +229,24 @@ public class PVManager {
         PVManager.readScannerExecutorService = readScannerExecutorService;
     }
 
+    /**
+     * Returns the scheduler used for the periodic scans of the readers that
+     * do not specify one.
+     *
+     * @return the default scan scheduler; null if each reader schedules its own task
+     */
+    public static ScanScheduler getDefaultScanScheduler() {
+        return defaultScanScheduler;
+    }
+
+    /**
+     * Changes the scheduler used for the periodic scans of the readers that
+     * do not specify one. Readers that were already created are not affected.
+     *
+     * @param scanScheduler the new scheduler; null if each reader should schedule its own task
+     */
+    public static void setDefaultScanScheduler(ScanScheduler scanScheduler) {
+        PVManager.defaultScanScheduler = scanScheduler;
+    }
+
 }
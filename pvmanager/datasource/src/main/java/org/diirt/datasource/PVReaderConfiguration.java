@@ -69,10 +69,30 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
         return this;
     }
 
+    /**
+     * Collects timing metrics for the reader: the time spent computing the
+     * value, the lag between scan and notification, the time spent in the
+     * notification queue and the number of scans skipped because the previous
+     * notification was still in flight.
+     * <p>
+     * The metrics can be retrieved with {@link PVReaderMetrics#of(org.diirt.datasource.PVReader) }
+     * and are also registered in the platform MBean server while the reader is open.
+     * Readers that do not collect metrics do not pay any overhead.
+     *
+     * @return this
+     */
+    @Override
+    public PVReaderConfiguration<T> collectMetrics() {
+        super.collectMetrics();
+        return this;
+    }
+
     private final DesiredRateExpression<T> aggregatedPVExpression;
     private final List<PVReaderListener<T>> readListeners = new ArrayList<>();
     private ExceptionHandler exceptionHandler;
     private Duration maxRate;
+    private ScanScheduler scanScheduler;
+    private BackpressurePolicy backpressurePolicy;
     PVReaderImpl<T> pv;
     ReadFunction<T> aggregatedFunction;
 
@@ -115,6 +135,45 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
         return this;
     }
 
+    /**
+     * Schedules the periodic scan of the expression on the given scheduler.
+     * <p>
+     * Only expressions that need to be scanned at a fixed rate use the
+     * scheduler: expressions that are scanned only when a new value is
+     * available (e.g. {@link ExpressionLanguage#latestValueOf(org.diirt.datasource.expression.SourceRateExpression) })
+     * are not affected. If no scheduler is set, the
+     * {@link PVManager#getDefaultScanScheduler() } is used.
+     *
+     * @param scanScheduler the scheduler for the periodic scan
+     * @return this
+     */
+    public PVReaderConfiguration<T> scanWith(ScanScheduler scanScheduler) {
+        if (this.scanScheduler != null) {
+            throw new IllegalStateException("Scan scheduler already set");
+        }
+        this.scanScheduler = scanScheduler;
+        return this;
+    }
+
+    /**
+     * Sets what to do when the listeners are slower than the rate at which
+     * new values are available. If not set, {@link BackpressurePolicy#latestValue() }
+     * is used.
+     *
+     * @param backpressurePolicy the policy for slow listeners
+     * @return this
+     */
+    public PVReaderConfiguration<T> backpressure(BackpressurePolicy backpressurePolicy) {
+        if (this.backpressurePolicy != null) {
+            throw new IllegalStateException("Backpressure policy already set");
+        }
+        if (backpressurePolicy == null) {
+            throw new IllegalArgumentException("backpressurePolicy can't be null");
+        }
+        this.backpressurePolicy = backpressurePolicy;
+        return this;
+    }
+
     /**
      * Sets the rate of scan of the expression and creates the actual {@link PVReader}
      * object that can be monitored through listeners.
@@ -146,6 +205,15 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
                 readConfiguration.timeoutMessage = "Read timeout";
             director.readTimeout(readConfiguration.timeout, readConfiguration.timeoutMessage);
         }
+        if (readConfiguration.backpressurePolicy != null) {
+            director.setBackpressurePolicy(readConfiguration.backpressurePolicy);
+        }
+        if (readConfiguration.collectMetrics) {
+            PVReaderMetrics metrics = new PVReaderMetrics(readConfiguration.aggregatedPVExpression.getName());
+            readConfiguration.pv.setMetrics(metrics);
+            director.setMetrics(metrics);
+            metrics.register();
+        }
         return director;
     }
 
@@ -153,7 +221,8 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
         ScannerParameters scannerParameters = new ScannerParameters()
                 .readerDirector(director)
                 .scannerExecutor(PVManager.getReadScannerExecutorService())
-                .maxDuration(readConfiguration.maxRate);
+                .maxDuration(readConfiguration.maxRate)
+                .scanScheduler(readConfiguration.scanScheduler != null ? readConfiguration.scanScheduler : PVManager.getDefaultScanScheduler());
         if (readConfiguration.aggregatedFunction instanceof Collector || readConfiguration.aggregatedFunction instanceof ValueCache) {
             scannerParameters.type(ScannerParameters.Type.PASSIVE);
         } else {
@@ -163,7 +232,14 @@ public class PVReaderConfiguration<T> extends CommonConfiguration {
 
         readConfiguration.pv.setDirector(director);
         director.setScanner(rateDecoupler);
-        director.connectReadExpression(readConfiguration.aggregatedPVExpression);
+        try {
+            director.connectReadExpression(readConfiguration.aggregatedPVExpression);
+        } catch (RuntimeException ex) {
+            // The reader is never returned, so nobody else can close it.
+            // The scan was never started, so the reader is never notified.
+            director.close();
+            throw ex;
+        }
         rateDecoupler.start();
     }
 
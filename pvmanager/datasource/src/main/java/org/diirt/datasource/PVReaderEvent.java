@@ -35,10 +35,18 @@ public class PVReaderEvent<T> {
 
     private final int notificationMask;
     private final PVReader<T> pvReader;
+    private final long droppedCount;
+    private final long conflatedCount;
 
     PVReaderEvent(int notificationMask, PVReader<T> pvReader) {
+        this(notificationMask, pvReader, 0, 0);
+    }
+
+    PVReaderEvent(int notificationMask, PVReader<T> pvReader, long droppedCount, long conflatedCount) {
         this.notificationMask = notificationMask;
         this.pvReader = pvReader;
+        this.droppedCount = droppedCount;
+        this.conflatedCount = conflatedCount;
     }
 
     /**
@@ -59,6 +67,29 @@ public class PVReaderEvent<T> {
         return notificationMask;
     }
 
+    /**
+     * The number of values that were computed but dropped, without being
+     * notified, since the previous event. Values are dropped only
+     * with the {@link BackpressurePolicy#queue(int) } policy.
+     *
+     * @return the number of values dropped
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * The number of source events that were merged into this event,
+     * beyond the first. Conflation is counted only with the
+     * {@link BackpressurePolicy#conflateAndCount() } and
+     * {@link BackpressurePolicy#queue(int) } policies.
+     *
+     * @return the number of source events conflated
+     */
+    public long getConflatedCount() {
+        return conflatedCount;
+    }
+
     /**
      * Whether this event was generated by a connection change.
      *
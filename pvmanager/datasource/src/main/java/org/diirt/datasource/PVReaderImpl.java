@@ -78,7 +78,32 @@ class PVReaderImpl<T> implements PVReader<T> {
     private boolean connectionToNotify = false;
     private boolean valueToNotify = false;
     private boolean sentFirstEvent = false;
+    private long droppedToNotify = 0;
+    private long conflatedToNotify = 0;
     private PVDirector director = null;
+    private volatile PVReaderMetrics metrics;
+
+    void setMetrics(PVReaderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    PVReaderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Accumulates the values dropped and conflated, which will be reported
+     * in the next event.
+     *
+     * @param dropped the number of values dropped
+     * @param conflated the number of source events conflated
+     */
+    void addBackpressureCounts(long dropped, long conflated) {
+        synchronized(lock) {
+            droppedToNotify += dropped;
+            conflatedToNotify += conflated;
+        }
+    }
 
     void setReaderForNotification(PVReader<T> readerForNotification) {
         synchronized(lock) {
@@ -103,7 +128,9 @@ class PVReaderImpl<T> implements PVReader<T> {
             valueToNotify = false;
             exceptionToNotify = false;
             sentFirstEvent = true;
-            event = new PVReaderEvent<>(notificationMask, readerForNotification);
+            event = new PVReaderEvent<>(notificationMask, readerForNotification, droppedToNotify, conflatedToNotify);
+            droppedToNotify = 0;
+            conflatedToNotify = 0;
         }
 
         for (PVReaderListener<T> listener : pvReaderListeners) {
@@ -226,6 +253,12 @@ class PVReaderImpl<T> implements PVReader<T> {
         }
     }
 
+    PVDirector getDirector() {
+        synchronized(this) {
+            return director;
+        }
+    }
+
 
 
     /**
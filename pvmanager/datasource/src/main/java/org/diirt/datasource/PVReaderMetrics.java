@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.diirt.datasource.util.LatencyHistogram;
+import org.diirt.datasource.util.LatencySummary;
+
+/**
+ * The metrics collected for a single {@link PVReader}.
+ * <p>
+ * Metrics are collected only if requested with
+ * {@link PVReaderConfiguration#collectMetrics() }: readers that are not
+ * instrumented do not take any timestamp. Instrumented readers are also
+ * registered in the platform MBean server, under the
+ * {@code org.diirt.datasource:type=PVReader} domain, for as long as they are open.
+ *
+ * @author carcassi
+ */
+public class PVReaderMetrics implements PVReaderMetricsMXBean {
+
+    private final String name;
+    final LongAdder scanCount = new LongAdder();
+    final LongAdder skippedScanCount = new LongAdder();
+    final LongAdder notificationCount = new LongAdder();
+    final LatencyHistogram readValueTime = new LatencyHistogram();
+    final LatencyHistogram scanToNotifyLag = new LatencyHistogram();
+    final LatencyHistogram notificationQueueTime = new LatencyHistogram();
+    private ObjectName objectName;
+
+    PVReaderMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metrics for the given reader, or null if the reader
+     * was not configured to collect them.
+     *
+     * @param pvReader a reader created by PVManager
+     * @return the metrics or null
+     */
+    public static PVReaderMetrics of(PVReader<?> pvReader) {
+        if (pvReader instanceof PV) {
+            pvReader = ((PV<?, ?>) pvReader).getReader();
+        }
+        return PVReaderImpl.implOf(pvReader).getMetrics();
+    }
+
+    void register() {
+        objectName = MetricsRegistration.register(this, "PVReader", name);
+    }
+
+    void unregister() {
+        MetricsRegistration.unregister(objectName);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getScanCount() {
+        return scanCount.sum();
+    }
+
+    @Override
+    public long getSkippedScanCount() {
+        return skippedScanCount.sum();
+    }
+
+    @Override
+    public long getNotificationCount() {
+        return notificationCount.sum();
+    }
+
+    @Override
+    public LatencySummary getReadValueTime() {
+        return readValueTime.getSummary();
+    }
+
+    @Override
+    public LatencySummary getScanToNotifyLag() {
+        return scanToNotifyLag.getSummary();
+    }
+
+    @Override
+    public LatencySummary getNotificationQueueTime() {
+        return notificationQueueTime.getSummary();
+    }
+
+    @Override
+    public void reset() {
+        scanCount.reset();
+        skippedScanCount.reset();
+        notificationCount.reset();
+        readValueTime.reset();
+        scanToNotifyLag.reset();
+        notificationQueueTime.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "PVReaderMetrics[" + name + ": scans=" + getScanCount() + " skipped=" + getSkippedScanCount()
+                + " notifications=" + getNotificationCount() + " readValue=(" + getReadValueTime()
+                + ") scanToNotify=(" + getScanToNotifyLag() + ")]";
+    }
+
+}
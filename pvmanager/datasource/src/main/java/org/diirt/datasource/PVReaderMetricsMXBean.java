@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import org.diirt.datasource.util.LatencySummary;
+
+/**
+ * The management interface for the metrics of a {@link PVReader}.
+ *
+ * @author carcassi
+ */
+public interface PVReaderMetricsMXBean {
+
+    /**
+     * The name of the reader.
+     *
+     * @return the reader name
+     */
+    public String getName();
+
+    /**
+     * The number of scans that computed a new value.
+     *
+     * @return the number of scans
+     */
+    public long getScanCount();
+
+    /**
+     * The number of scans skipped because the previous notification
+     * was still in flight.
+     *
+     * @return the number of skipped scans
+     */
+    public long getSkippedScanCount();
+
+    /**
+     * The number of notifications completed.
+     *
+     * @return the number of notifications
+     */
+    public long getNotificationCount();
+
+    /**
+     * The time spent computing the value of the expression.
+     *
+     * @return the read function compute time
+     */
+    public LatencySummary getReadValueTime();
+
+    /**
+     * The time between the start of the scan and the end of the
+     * notification on the notification executor.
+     *
+     * @return the scan to notify lag
+     */
+    public LatencySummary getScanToNotifyLag();
+
+    /**
+     * The time the notification waited on the notification executor.
+     *
+     * @return the notification queue time
+     */
+    public LatencySummary getNotificationQueueTime();
+
+    /**
+     * Removes all the samples and resets the counters.
+     */
+    public void reset();
+}
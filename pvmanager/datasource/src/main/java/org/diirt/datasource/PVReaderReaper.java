@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Closes the readers that were garbage collected without being closed,
+ * and keeps track of them.
+ * <p>
+ * Every reader is registered at creation. As soon as a reader that was not
+ * closed is collected, a background thread disconnects its expressions
+ * and stops its scanning, without waiting for the next scan to notice.
+ * The number of leaked readers and the stack traces of where the
+ * most recent ones were created can be used to find the client code
+ * that forgets to close them.
+ *
+ * @author carcassi
+ */
+public final class PVReaderReaper {
+
+    private static final Logger log = Logger.getLogger(PVReaderReaper.class.getName());
+
+    /** Maximum number of creation stack traces kept for the leaked readers */
+    static final int MAX_LEAK_TRACES = 100;
+
+    private static final ReferenceQueue<PVReaderImpl<?>> queue = new ReferenceQueue<>();
+    private static final Set<ReaderReference> openReaders = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong leakedCount = new AtomicLong();
+    /** Guarded by itself */
+    private static final Deque<Exception> leakTraces = new ArrayDeque<>();
+
+    static {
+        Thread reaper = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        ReaderReference reference = (ReaderReference) queue.remove();
+                        reference.director.reclaim();
+                    } catch (InterruptedException ex) {
+                        return;
+                    } catch (RuntimeException ex) {
+                        log.log(Level.WARNING, "Couldn't close leaked PVReader", ex);
+                    }
+                }
+            }
+        }, "diirt - PVReader reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private PVReaderReaper() {
+        // Prevent instances
+    }
+
+    /**
+     * The reference to the reader, which keeps the director alive
+     * until the reader is closed or reclaimed.
+     */
+    static final class ReaderReference extends WeakReference<PVReaderImpl<?>> {
+
+        private final PVDirector<?> director;
+
+        private ReaderReference(PVReaderImpl<?> pv, PVDirector<?> director) {
+            super(pv, queue);
+            this.director = director;
+        }
+    }
+
+    /**
+     * Starts tracking the given reader.
+     *
+     * @param pv the reader
+     * @param director the director of the reader
+     * @return the reference to use to unregister
+     */
+    static ReaderReference register(PVReaderImpl<?> pv, PVDirector<?> director) {
+        ReaderReference reference = new ReaderReference(pv, director);
+        openReaders.add(reference);
+        return reference;
+    }
+
+    /**
+     * Stops tracking the reader. Only the first call for a reference
+     * returns true, so that the reader is counted at most once.
+     *
+     * @param reference the reference returned by the registration; can be null
+     * @return true if the reader was being tracked
+     */
+    static boolean unregister(ReaderReference reference) {
+        if (reference == null) {
+            return false;
+        }
+        reference.clear();
+        return openReaders.remove(reference);
+    }
+
+    /**
+     * Records that a reader was collected without being closed.
+     *
+     * @param creationStackTrace where the reader was created
+     */
+    static void leaked(Exception creationStackTrace) {
+        leakedCount.incrementAndGet();
+        synchronized (leakTraces) {
+            if (leakTraces.size() == MAX_LEAK_TRACES) {
+                leakTraces.removeFirst();
+            }
+            leakTraces.addLast(creationStackTrace);
+        }
+    }
+
+    /**
+     * The number of readers that are neither closed nor reclaimed.
+     *
+     * @return the number of open readers
+     */
+    public static int getOpenCount() {
+        return openReaders.size();
+    }
+
+    /**
+     * The number of readers that were garbage collected without being closed
+     * since the start of the application.
+     *
+     * @return the number of leaked readers
+     */
+    public static long getLeakedCount() {
+        return leakedCount.get();
+    }
+
+    /**
+     * The stack traces of the creation of the most recently leaked readers,
+     * from the oldest to the newest. At most {@value #MAX_LEAK_TRACES} are kept.
+     *
+     * @return the creation stack traces
+     */
+    public static List<Exception> getLeakStackTraces() {
+        synchronized (leakTraces) {
+            return new ArrayList<>(leakTraces);
+        }
+    }
+
+}
@@ -67,8 +67,53 @@ public class PVWriterConfiguration<T> extends CommonConfiguration {
         return this;
     }
 
+    /**
+     * Collects timing metrics for the writer: the number of writes, their
+     * outcome and the time between the write request and the notification
+     * of the result.
+     * <p>
+     * The metrics can be retrieved with {@link PVWriterMetrics#of(org.diirt.datasource.PVWriter) }
+     * and are also registered in the platform MBean server while the writer is open.
+     * Writers that do not collect metrics do not pay any overhead.
+     *
+     * @return this
+     */
+    @Override
+    public PVWriterConfiguration<T> collectMetrics() {
+        super.collectMetrics();
+        return this;
+    }
+
+    /**
+     * Coalesces the asynchronous writes requested while a previous write
+     * is still in flight.
+     * <p>
+     * By default, each call to {@link PVWriter#write(java.lang.Object) } results
+     * in a separate write on the data source. With coalescing, the values
+     * requested while a write is in flight are kept until the write completes.
+     * Then they are all submitted in a single write. Each channel receives
+     * only its latest value, and all the channels changed by those values are
+     * written together. This lets a fast producer (e.g. a feedback loop) run
+     * at the speed of the data source instead of queuing puts.
+     * <p>
+     * The writer is notified once for each write submitted to the data source.
+     * The number of writes merged is reported by
+     * {@link PVWriterMetrics#getCoalescedWriteCount() }. Coalescing applies
+     * only to asynchronous writers: synchronous writes wait for their completion.
+     *
+     * @return this
+     */
+    public PVWriterConfiguration<T> coalesceWrites() {
+        if (coalesceWrites) {
+            throw new IllegalStateException("Write coalescing already set");
+        }
+        coalesceWrites = true;
+        return this;
+    }
+
     private final WriteExpression<T> writeExpression;
     private ExceptionHandler exceptionHandler;
+    private boolean coalesceWrites;
     private final List<PVWriterListener<T>> writeListeners = new ArrayList<>();
 
     PVWriterImpl<T> pvWriter;
@@ -139,6 +184,13 @@ public class PVWriterConfiguration<T> extends CommonConfiguration {
                 writerConfiguration.writeFunction, writerConfiguration.dataSource, PVManager.getAsyncWriteExecutor(),
                 writerConfiguration.notificationExecutor, PVManager.getReadScannerExecutorService(),
                 writerConfiguration.timeout, writerConfiguration.timeoutMessage, writerConfiguration.exceptionHandler);
+        if (writerConfiguration.collectMetrics) {
+            PVWriterMetrics metrics = new PVWriterMetrics(writerConfiguration.writeExpression.getName());
+            writerConfiguration.pvWriter.setMetrics(metrics);
+            writerDirector.setMetrics(metrics);
+            metrics.register();
+        }
+        writerDirector.setCoalesceWrites(writerConfiguration.coalesceWrites);
         writerDirector.connectExpression(writerConfiguration.writeExpression);
         writerConfiguration.pvWriter.setWriteDirector(writerDirector);
         return writerDirector;
@@ -6,6 +6,7 @@ package org.diirt.datasource;
 
 import java.lang.ref.WeakReference;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -78,6 +79,18 @@ public class PVWriterDirector<T> {
     /** DataSource to use for connect/disconnect expression and for write */
     private final DataSource dataSource;
     private WriteRecipe currentWriteRecipe;
+    /** Metrics for the writer; null if not collected */
+    private PVWriterMetrics metrics;
+
+    // Required for coalesced writes
+
+    private boolean coalesceWrites;
+    /** Values requested while the previous write was in flight, in order; guarded by lock */
+    private final List<T> pendingValues = new ArrayList<>();
+    /** Start times of the pending values; guarded by lock */
+    private final List<Long> pendingWriteStarts = new ArrayList<>();
+    /** Whether a coalesced write was submitted and did not complete; guarded by lock */
+    private boolean coalescedWriteInFlight;
 
     PVWriterDirector(PVWriterImpl<T> pvWriter, WriteFunction<T> writeFunction, DataSource dataSource,
             ScheduledExecutorService writeExecutor, Executor notificationExecutor,
@@ -98,6 +111,14 @@ public class PVWriterDirector<T> {
         }
     }
 
+    void setMetrics(PVWriterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setCoalesceWrites(boolean coalesceWrites) {
+        this.coalesceWrites = coalesceWrites;
+    }
+
     /**
      * Simulate a static connection in which the channel name has one exception
      * and the connection will never change.
@@ -194,10 +215,60 @@ public class PVWriterDirector<T> {
                 disconnectExpression(expression);
             }
         }
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Returns the time at which the write started, or 0 if metrics
+     * are not collected.
+     *
+     * @return the start time for the write round trip
+     */
+    private long writeStarted() {
+        if (metrics == null) {
+            return 0;
+        }
+        metrics.writeCount.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Wraps the notification of the result of a write, so that the write round
+     * trip is recorded on the notification thread. If metrics are not
+     * collected, the notification is returned as it is.
+     *
+     * @param notification the notification of the write result
+     * @param writeStarts the times at which the writes completed by this notification started
+     * @param success whether the write succeeded
+     * @return the notification to execute
+     */
+    private Runnable writeResultNotification(final Runnable notification, final boolean success, final long... writeStarts) {
+        final PVWriterMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return notification;
+        }
+        final long submissionTime = System.nanoTime();
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                metrics.notificationQueueTime.record(System.nanoTime() - submissionTime);
+                for (long writeStart : writeStarts) {
+                    metrics.writeCompleted(writeStart, success);
+                }
+                notification.run();
+            }
+        };
     }
 
     void write(final T newValue, final PVWriterImpl<T> pvWriter) {
-        WriteTask newTask = new WriteTask(pvWriter, newValue);
+        if (coalesceWrites) {
+            coalescedWrite(newValue, pvWriter);
+            return;
+        }
+        WriteTask newTask = new WriteTask(pvWriter, newValue, writeStarted());
         writeExecutor.execute(newTask);
         if (timeout != null) {
             writeExecutor.schedule(newTask.timeout(), timeout.toNanos(), TimeUnit.NANOSECONDS);
@@ -207,11 +278,13 @@ public class PVWriterDirector<T> {
     private class WriteTask implements Runnable {
         final PVWriterImpl<T> pvWriter;
         final T newValue;
+        final long writeStart;
         private final AtomicBoolean done = new AtomicBoolean();
 
-        public WriteTask(PVWriterImpl<T> pvWriter, T newValue) {
+        public WriteTask(PVWriterImpl<T> pvWriter, T newValue, long writeStart) {
             this.pvWriter = pvWriter;
             this.newValue = newValue;
+            this.writeStart = writeStart;
         }
 
         private Runnable timeout() {
@@ -235,13 +308,13 @@ public class PVWriterDirector<T> {
                     @Override
                     public void run() {
                         done.set(true);
-                        notificationExecutor.execute(new Runnable() {
+                        notificationExecutor.execute(writeResultNotification(new Runnable() {
 
                             @Override
                             public void run() {
                                 pvWriter.fireWriteSuccess();
                             }
-                        });
+                        }, true, writeStart));
                     }
                 }, new ExceptionHandler() {
 
@@ -249,13 +322,13 @@ public class PVWriterDirector<T> {
                     public void handleException(final Exception ex) {
                         boolean previousDone = done.getAndSet(true);
                         if (!previousDone) {
-                            notificationExecutor.execute(new Runnable() {
+                            notificationExecutor.execute(writeResultNotification(new Runnable() {
 
                                 @Override
                                 public void run() {
                                     pvWriter.fireWriteFailure(ex);
                                 }
-                            });
+                            }, false, writeStart));
                         } else {
                             pvWriter.setLastWriteException(ex);
                         }
@@ -267,10 +340,159 @@ public class PVWriterDirector<T> {
 
     };
 
+    /**
+     * Queues the value to be written. If no write is in flight, the write
+     * is submitted; otherwise, the value will be part of the write submitted
+     * when the current one completes.
+     *
+     * @param newValue the value to write
+     * @param pvWriter the writer to notify
+     */
+    private void coalescedWrite(final T newValue, final PVWriterImpl<T> pvWriter) {
+        boolean submit;
+        synchronized(lock) {
+            pendingValues.add(newValue);
+            if (metrics != null) {
+                pendingWriteStarts.add(writeStarted());
+            }
+            submit = !coalescedWriteInFlight;
+            coalescedWriteInFlight = true;
+        }
+        if (submit) {
+            submitCoalescedWrite(pvWriter);
+        }
+    }
+
+    private void submitCoalescedWrite(PVWriterImpl<T> pvWriter) {
+        CoalescedWriteTask newTask = new CoalescedWriteTask(pvWriter);
+        writeExecutor.execute(newTask);
+        if (timeout != null) {
+            writeExecutor.schedule(newTask.timeout(), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Called when a coalesced write completes: if other values were
+     * requested in the meantime, the next write is submitted.
+     *
+     * @param pvWriter the writer to notify
+     */
+    private void coalescedWriteCompleted(PVWriterImpl<T> pvWriter) {
+        boolean submit;
+        synchronized(lock) {
+            submit = !pendingValues.isEmpty();
+            coalescedWriteInFlight = submit;
+        }
+        if (submit) {
+            submitCoalescedWrite(pvWriter);
+        }
+    }
+
+    /**
+     * Writes all the values requested since the last submission with
+     * a single write of the recipe. All the values go through the write function
+     * in order, so that each channel cache keeps the latest value for that
+     * channel, and the channels changed by any of the values are written
+     * together.
+     */
+    private class CoalescedWriteTask implements Runnable {
+        final PVWriterImpl<T> pvWriter;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        public CoalescedWriteTask(PVWriterImpl<T> pvWriter) {
+            this.pvWriter = pvWriter;
+        }
+
+        private Runnable timeout() {
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!done.getAndSet(true)) {
+                        writeExceptionCollector.writeValue(new TimeoutException(timeoutMessage));
+                        // Do not hold the following writes
+                        coalescedWriteCompleted(pvWriter);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void run() {
+            final long[] writeStarts;
+            synchronized(lock) {
+                writeStarts = new long[pendingWriteStarts.size()];
+                for (int i = 0; i < writeStarts.length; i++) {
+                    writeStarts[i] = pendingWriteStarts.get(i);
+                }
+                pendingWriteStarts.clear();
+                try {
+                    for (T value : pendingValues) {
+                        writeFunction.writeValue(value);
+                    }
+                    if (metrics != null) {
+                        metrics.coalescedWriteCount.add(pendingValues.size() - 1);
+                    }
+                    pendingValues.clear();
+                    dataSource.write(currentWriteRecipe, new Runnable() {
+
+                        @Override
+                        public void run() {
+                            boolean previousDone = done.getAndSet(true);
+                            notificationExecutor.execute(writeResultNotification(new Runnable() {
+
+                                @Override
+                                public void run() {
+                                    pvWriter.fireWriteSuccess();
+                                }
+                            }, true, writeStarts));
+                            if (!previousDone) {
+                                coalescedWriteCompleted(pvWriter);
+                            }
+                        }
+                    }, new ExceptionHandler() {
+
+                        @Override
+                        public void handleException(final Exception ex) {
+                            boolean previousDone = done.getAndSet(true);
+                            if (!previousDone) {
+                                notificationExecutor.execute(writeResultNotification(new Runnable() {
+
+                                    @Override
+                                    public void run() {
+                                        pvWriter.fireWriteFailure(ex);
+                                    }
+                                }, false, writeStarts));
+                                coalescedWriteCompleted(pvWriter);
+                            } else {
+                                pvWriter.setLastWriteException(ex);
+                            }
+                        }
+
+                    });
+                } catch (RuntimeException ex) {
+                    // The values that failed can't be written: drop them
+                    // so that the next write can proceed
+                    pendingValues.clear();
+                    done.set(true);
+                    if (metrics != null) {
+                        for (long writeStart : writeStarts) {
+                            metrics.writeCompleted(writeStart, false);
+                        }
+                    }
+                    writeExceptionCollector.writeValue(ex);
+                    coalescedWriteInFlight = false;
+                }
+            }
+        }
+
+    };
+
     void syncWrite(final T newValue, final PVWriterImpl<T> pvWriter) {
         log.finest("Sync write: creating latch");
         final CountDownLatch latch = new CountDownLatch(1);
         final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+        final long writeStart = writeStarted();
         writeExecutor.execute(new Runnable() {
 
             @Override
@@ -283,33 +505,36 @@ public class PVWriterDirector<T> {
                             @Override
                             public void run() {
                                 log.finest("Writing done, releasing latch");
-                                notificationExecutor.execute(new Runnable() {
+                                notificationExecutor.execute(writeResultNotification(new Runnable() {
 
                                     @Override
                                     public void run() {
                                         pvWriter.fireWriteSuccess();
                                         latch.countDown();
                                     }
-                                });
+                                }, true, writeStart));
                             }
                         }, new ExceptionHandler() {
 
                             @Override
                             public void handleException(final Exception ex) {
                                 exception.set(ex);
-                                notificationExecutor.execute(new Runnable() {
+                                notificationExecutor.execute(writeResultNotification(new Runnable() {
 
                                     @Override
                                     public void run() {
                                         pvWriter.fireWriteFailure(ex);
                                         latch.countDown();
                                     }
-                                });
+                                }, false, writeStart));
                             }
 
                         });
                     }
                 } catch (RuntimeException ex) {
+                    if (metrics != null) {
+                        metrics.writeCompleted(writeStart, false);
+                    }
                     exception.set(ex);
                     latch.countDown();
                     writeExceptionCollector.writeValue(ex);
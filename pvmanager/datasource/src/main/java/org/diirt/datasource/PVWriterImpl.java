@@ -50,6 +50,7 @@ class PVWriterImpl<T> implements PVWriter<T> {
     private PVWriter<T> writerForNotification = this;
     private boolean needsConnectionNotification = false;
     private boolean needsExceptionNotification = false;
+    private volatile PVWriterMetrics metrics;
 
     PVWriterImpl(boolean syncWrite, boolean notifyFirstListener) {
         this.syncWrite = syncWrite;
@@ -99,6 +100,14 @@ class PVWriterImpl<T> implements PVWriter<T> {
         }
     }
 
+    void setMetrics(PVWriterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    PVWriterMetrics getMetrics() {
+        return metrics;
+    }
+
     void setWriteDirector(PVWriterDirector<T> writeDirector) {
         synchronized(lock) {
             this.writeDirector = writeDirector;
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import org.diirt.datasource.util.LatencyHistogram;
+import org.diirt.datasource.util.LatencySummary;
+
+/**
+ * The metrics collected for a single {@link PVWriter}.
+ * <p>
+ * Metrics are collected only if requested with
+ * {@link PVWriterConfiguration#collectMetrics() }: writers that are not
+ * instrumented do not take any timestamp. Instrumented writers are also
+ * registered in the platform MBean server, under the
+ * {@code org.diirt.datasource:type=PVWriter} domain, for as long as they are open.
+ *
+ * @author carcassi
+ */
+public class PVWriterMetrics implements PVWriterMetricsMXBean {
+
+    private final String name;
+    final LongAdder writeCount = new LongAdder();
+    final LongAdder writeSuccessCount = new LongAdder();
+    final LongAdder writeFailureCount = new LongAdder();
+    final LongAdder coalescedWriteCount = new LongAdder();
+    final LatencyHistogram writeRoundTrip = new LatencyHistogram();
+    final LatencyHistogram notificationQueueTime = new LatencyHistogram();
+    private ObjectName objectName;
+
+    PVWriterMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metrics for the given writer, or null if the writer
+     * was not configured to collect them.
+     *
+     * @param pvWriter a writer created by PVManager
+     * @return the metrics or null
+     */
+    public static PVWriterMetrics of(PVWriter<?> pvWriter) {
+        if (pvWriter instanceof PV) {
+            pvWriter = ((PV<?, ?>) pvWriter).getWriter();
+        }
+        return PVWriterImpl.implOf(pvWriter).getMetrics();
+    }
+
+    void register() {
+        objectName = MetricsRegistration.register(this, "PVWriter", name);
+    }
+
+    void unregister() {
+        MetricsRegistration.unregister(objectName);
+    }
+
+    /**
+     * Records the result of a write.
+     *
+     * @param startTime the time the write was requested
+     * @param success whether the write succeeded
+     */
+    void writeCompleted(long startTime, boolean success) {
+        writeRoundTrip.record(System.nanoTime() - startTime);
+        if (success) {
+            writeSuccessCount.increment();
+        } else {
+            writeFailureCount.increment();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    @Override
+    public long getWriteSuccessCount() {
+        return writeSuccessCount.sum();
+    }
+
+    @Override
+    public long getWriteFailureCount() {
+        return writeFailureCount.sum();
+    }
+
+    @Override
+    public long getCoalescedWriteCount() {
+        return coalescedWriteCount.sum();
+    }
+
+    @Override
+    public LatencySummary getWriteRoundTrip() {
+        return writeRoundTrip.getSummary();
+    }
+
+    @Override
+    public LatencySummary getNotificationQueueTime() {
+        return notificationQueueTime.getSummary();
+    }
+
+    @Override
+    public void reset() {
+        writeCount.reset();
+        writeSuccessCount.reset();
+        writeFailureCount.reset();
+        coalescedWriteCount.reset();
+        writeRoundTrip.reset();
+        notificationQueueTime.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "PVWriterMetrics[" + name + ": writes=" + getWriteCount() + " succeeded=" + getWriteSuccessCount()
+                + " failed=" + getWriteFailureCount() + " coalesced=" + getCoalescedWriteCount() + " roundTrip=(" + getWriteRoundTrip() + ")]";
+    }
+
+}
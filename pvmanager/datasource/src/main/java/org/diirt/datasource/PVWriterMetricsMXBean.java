@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import org.diirt.datasource.util.LatencySummary;
+
+/**
+ * The management interface for the metrics of a {@link PVWriter}.
+ *
+ * @author carcassi
+ */
+public interface PVWriterMetricsMXBean {
+
+    /**
+     * The name of the writer.
+     *
+     * @return the writer name
+     */
+    public String getName();
+
+    /**
+     * The number of writes requested.
+     *
+     * @return the number of writes
+     */
+    public long getWriteCount();
+
+    /**
+     * The number of writes that completed successfully.
+     *
+     * @return the number of successful writes
+     */
+    public long getWriteSuccessCount();
+
+    /**
+     * The number of writes that failed.
+     *
+     * @return the number of failed writes
+     */
+    public long getWriteFailureCount();
+
+    /**
+     * The number of writes that were merged into a later write, because
+     * a previous write was in flight. Only writers that coalesce writes
+     * have coalesced writes.
+     *
+     * @return the number of coalesced writes
+     */
+    public long getCoalescedWriteCount();
+
+    /**
+     * The time between the write request and the notification of its
+     * result, as seen on the notification executor.
+     *
+     * @return the write round trip time
+     */
+    public LatencySummary getWriteRoundTrip();
+
+    /**
+     * The time the notification waited on the notification executor.
+     *
+     * @return the notification queue time
+     */
+    public LatencySummary getNotificationQueueTime();
+
+    /**
+     * Removes all the samples and resets the counters.
+     */
+    public void reset();
+}
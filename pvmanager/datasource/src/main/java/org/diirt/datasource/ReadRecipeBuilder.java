@@ -4,9 +4,11 @@
  */
 package org.diirt.datasource;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -19,6 +21,7 @@ public class ReadRecipeBuilder {
 
     private final Map<String, Collection<ValueCache<?>>> channelCaches
             = new HashMap<>();
+    private final List<Runnable> disconnectTasks = new ArrayList<>();
 
     /**
      * Adds a channel and its read cache to the recipe.
@@ -37,6 +40,23 @@ public class ReadRecipeBuilder {
         return this;
     }
 
+    /**
+     * Adds a task to run when the expression that filled this recipe
+     * is disconnected. This allows parts of the expression that are not
+     * backed by channels to release their resources.
+     *
+     * @param task the task to run on disconnect
+     * @return this builder
+     */
+    public ReadRecipeBuilder addDisconnectTask(Runnable task) {
+        disconnectTasks.add(task);
+        return this;
+    }
+
+    List<Runnable> getDisconnectTasks() {
+        return disconnectTasks;
+    }
+
     /**
      * Builds the recipe.
      * <p>
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects value at read rate and puts them in a preallocated ring buffer.
+ * <p>
+ * Same semantic as {@link QueueCollector}: always returns the new values
+ * since the last read, oldest value first, and when maxSize is reached the
+ * oldest values are discarded. Differently from {@link QueueCollector}, no lock
+ * is taken: a write is a constant number of atomic operations on a
+ * preallocated buffer and a read copies the new elements in a reused list.
+ * <p>
+ * Each slot of the buffer is stamped with the sequence number of the value
+ * it holds, and the reader validates the stamp before and after reading
+ * the value. Values that are overwritten while the reader is copying are
+ * simply discarded, as they would have been by the next write anyway.
+ * <p>
+ * The collector supports a single consumer. By default it also supports a
+ * single producer, or multiple producers whose writes are serialized
+ * by the caller. Data sources are not required to serialize the writes
+ * to a collector, so a collector filled by a data source should be
+ * created with multiple producer support.
+ * <p>
+ * The list returned by {@link #readValue() } is reused by the next read.
+ *
+ * @param <T> the type contained in the queue
+ * @author carcassi
+ */
+public class RingBufferCollector<T> implements Collector<T, List<T>> {
+
+    /**
+     * Offset of the stamp for a slot that is being written: the stamp is
+     * BUSY plus the sequence number of the value being written, which
+     * keeps it well below the stamps of written values.
+     */
+    private static final long BUSY = Long.MIN_VALUE;
+    private static final long BUSY_LIMIT = Long.MIN_VALUE / 2;
+
+    private final int maxSize;
+    private final boolean multipleProducers;
+    private final int mask;
+    private final AtomicReferenceArray<T> values;
+    private final AtomicLongArray stamps;
+    /** Sequence number of the next value to be written */
+    private final AtomicLong writeSequence = new AtomicLong();
+    /** Sequence number of the next value to be read; accessed by the consumer only */
+    private long readSequence;
+    private final List<T> readBuffer;
+    private volatile Runnable notification;
+
+    /**
+     * New ring buffer collector with the given max size for the queue
+     * that supports a single producer.
+     *
+     * @param maxSize maximum number of elements in the queue
+     */
+    public RingBufferCollector(int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * New ring buffer collector with the given max size for the queue.
+     *
+     * @param maxSize maximum number of elements in the queue
+     * @param multipleProducers whether values can be written concurrently by
+     * different threads
+     */
+    public RingBufferCollector(int maxSize, boolean multipleProducers) {
+        if (maxSize <= 0 || maxSize > (1 << 30)) {
+            throw new IllegalArgumentException("maxSize must be between 1 and 2^30 (was " + maxSize + ")");
+        }
+        this.maxSize = maxSize;
+        this.multipleProducers = multipleProducers;
+        int capacity = Integer.highestOneBit(maxSize);
+        if (capacity < maxSize) {
+            capacity = capacity << 1;
+        }
+        this.mask = capacity - 1;
+        this.values = new AtomicReferenceArray<>(capacity);
+        this.stamps = new AtomicLongArray(capacity);
+        // Each slot is stamped as if written during the previous lap,
+        // so that the first write of each slot finds the expected value
+        for (int i = 0; i < capacity; i++) {
+            stamps.set(i, i - capacity);
+        }
+        this.readBuffer = new ArrayList<>(maxSize);
+    }
+
+    @Override
+    public void setChangeNotification(Runnable notification) {
+        this.notification = notification;
+    }
+
+    @Override
+    public void writeValue(T newValue) {
+        if (multipleProducers) {
+            writeConcurrently(newValue);
+        } else {
+            writeSerially(newValue);
+        }
+        Runnable task = notification;
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    private void writeSerially(T newValue) {
+        long sequence = writeSequence.get();
+        int index = (int) (sequence & mask);
+        // Marking the slot busy, so that a reader can detect the overwrite
+        stamps.lazySet(index, BUSY + sequence);
+        values.lazySet(index, newValue);
+        stamps.lazySet(index, sequence);
+        writeSequence.lazySet(sequence + 1);
+    }
+
+    private void writeConcurrently(T newValue) {
+        long sequence = writeSequence.getAndIncrement();
+        int index = (int) (sequence & mask);
+        long previousLap = sequence - values.length();
+        // Wait for the writer of the previous lap to be done with the slot.
+        // That writer has already claimed its sequence number, so the
+        // wait is bounded by the time it takes to complete that write.
+        while (!stamps.compareAndSet(index, previousLap, BUSY + sequence)) {
+            Thread.yield();
+        }
+        values.set(index, newValue);
+        stamps.set(index, sequence);
+    }
+
+    @Override
+    public List<T> readValue() {
+        readBuffer.clear();
+        long end = writeSequence.get();
+        long sequence = Math.max(readSequence, end - maxSize);
+        while (sequence < end) {
+            int index = (int) (sequence & mask);
+            long stamp = stamps.get(index);
+            if (stamp < BUSY_LIMIT) {
+                if (stamp - BUSY > sequence) {
+                    // Being overwritten by a later lap: the value is lost,
+                    // but the newer ones can still be read
+                    sequence++;
+                    continue;
+                }
+                // This value is being written: will be read next time
+                break;
+            }
+            if (stamp < sequence) {
+                // Value claimed but not yet written: will be read next time
+                break;
+            }
+            if (stamp == sequence) {
+                T value = values.get(index);
+                if (stamps.get(index) == sequence) {
+                    readBuffer.add(value);
+                }
+            }
+            // If the stamp is greater, the value was already overwritten
+            sequence++;
+        }
+        readSequence = sequence;
+        return readBuffer;
+    }
+
+    /**
+     * The maximum number of elements in the queue.
+     *
+     * @return the maximum number of elements in the queue
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Whether the collector supports values being written concurrently.
+     *
+     * @return true if multiple producers are supported
+     */
+    public boolean isMultipleProducers() {
+        return multipleProducers;
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+
+/**
+ * Schedules the periodic scans of the readers that need to be scanned
+ * at a fixed rate (i.e. readers whose expression can change even without
+ * external events).
+ * <p>
+ * By default, each reader schedules its own periodic task on the
+ * {@link PVManager#getReadScannerExecutorService() }. A different scheduler
+ * can be used to share the scheduling cost across readers, as done
+ * by {@link HashedWheelScanScheduler}.
+ *
+ * @author carcassi
+ */
+public interface ScanScheduler {
+
+    /**
+     * A scan registered with the scheduler.
+     */
+    public interface Scan {
+
+        /**
+         * Stops the scan. The task will not be started again, but
+         * an execution that is in progress is not interrupted.
+         */
+        public void cancel();
+    }
+
+    /**
+     * Schedules the given task to be executed right away and then periodically,
+     * with at least the given period between the start of two executions.
+     * Executions of the same task never overlap.
+     *
+     * @param task the scan task
+     * @param period the time between two scans
+     * @return the handle to the scan
+     */
+    public Scan schedule(Runnable task, Duration period);
+
+}
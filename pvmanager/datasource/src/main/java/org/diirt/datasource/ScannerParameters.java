@@ -17,6 +17,7 @@ class ScannerParameters {
 
     private Type type = Type.ACTIVE;
     private ScheduledExecutorService scannerExecutor;
+    private ScanScheduler scanScheduler;
     private Duration maxDuration;
     private Duration timeout;
     private String timeoutMessage;
@@ -59,6 +60,15 @@ class ScannerParameters {
         return scannerExecutor;
     }
 
+    public ScannerParameters scanScheduler(ScanScheduler scanScheduler) {
+        this.scanScheduler = scanScheduler;
+        return this;
+    }
+
+    public ScanScheduler getScanScheduler() {
+        return scanScheduler;
+    }
+
     public ScannerParameters timeout(Duration timeout, String timeoutMessage) {
         this.timeout = timeout;
         this.timeoutMessage = timeoutMessage;
@@ -76,7 +86,7 @@ class ScannerParameters {
             if (maxDuration == null) {
                 throw new NullPointerException("Active scanner requires a maxDuration");
             }
-            return new ActiveScanDecoupler(scannerExecutor, maxDuration, listener);
+            return new ActiveScanDecoupler(scannerExecutor, maxDuration, listener, scanScheduler);
         }
         if (type == Type.PASSIVE) {
             if (scannerExecutor == null) {
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import org.diirt.datasource.expression.DesiredRateExpression;
+import org.diirt.datasource.expression.DesiredRateExpressionImpl;
+import org.diirt.datasource.expression.DesiredRateExpressionListImpl;
+
+/**
+ * An expression whose evaluation is shared by all the readers that
+ * use the same key.
+ * <p>
+ * The expression behaves as a source for the reader: the values computed
+ * by the shared node are written into a collector owned by this expression,
+ * so that each reader keeps its own rate and notification.
+ *
+ * @param <T> the type of the expression
+ * @author carcassi
+ */
+class SharedReadExpression<T> extends DesiredRateExpressionImpl<T> {
+
+    private final Object key;
+    private final DesiredRateExpression<T> expression;
+
+    SharedReadExpression(Object key, DesiredRateExpression<T> expression) {
+        super(new DesiredRateExpressionListImpl<Object>(), new LatestValueCollector<T>(), expression.getName());
+        this.key = key;
+        this.expression = expression;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void fillReadRecipe(PVDirector director, ReadRecipeBuilder builder) {
+        // Registers the collector for the notifications
+        super.fillReadRecipe(director, builder);
+
+        final PVDirector<?> readerDirector = director;
+        final String connectionName = "shared(" + getName() + ")";
+        final SharedReadNode.Subscription<T> subscription = SharedReadNode.subscribe(readerDirector.getDataSource(), key, expression,
+                (LatestValueCollector<T>) getFunction(), readerDirector.getExceptionCollector(),
+                readerDirector.getConnectionCollector().addChannel(connectionName));
+        builder.addDisconnectTask(new Runnable() {
+
+            @Override
+            public void run() {
+                subscription.close();
+                readerDirector.getConnectionCollector().removeChannel(connectionName);
+            }
+        });
+    }
+
+}
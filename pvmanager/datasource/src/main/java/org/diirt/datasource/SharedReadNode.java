@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.diirt.datasource.expression.DesiredRateExpression;
+import static org.diirt.util.concurrent.Executors.localThread;
+
+/**
+ * The evaluation of an expression shared by all the readers that use
+ * the same key on the same data source.
+ * <p>
+ * The expression is evaluated by a single upstream reader, created when the first
+ * reader subscribes and closed when the last one unsubscribes. Each new value,
+ * connection change and exception of the upstream reader is forwarded
+ * to the collectors of the subscribed readers, which keep their own rate
+ * and notification.
+ * <p>
+ * The upstream reader is created outside the lock on the nodes: while it is
+ * created, the node is published as opening and the readers with the same
+ * key wait for it. If the creation fails, the node is removed.
+ *
+ * @param <T> the type of the shared value
+ * @author carcassi
+ */
+class SharedReadNode<T> {
+
+    /**
+     * The rate at which the upstream reader is evaluated. Active expressions
+     * are recomputed at this rate, and the subscribed readers can't be
+     * notified more often than this.
+     */
+    static final Duration UPSTREAM_MAX_RATE = Duration.ofMillis(
+            System.getProperty("SharedExpressionMaxRateMillis") != null
+                    ? Long.valueOf(System.getProperty("SharedExpressionMaxRateMillis"))
+                    : 10);
+
+    private static final Map<List<Object>, SharedReadNode<?>> nodes = new HashMap<>();
+
+    /**
+     * A reader subscribed to the node.
+     *
+     * @param <T> the type of the shared value
+     */
+    static class Subscription<T> {
+
+        private final SharedReadNode<T> node;
+        private final WriteFunction<T> valueWriteFunction;
+        private final WriteFunction<Exception> exceptionWriteFunction;
+        private final WriteFunction<Boolean> connectionWriteFunction;
+
+        private Subscription(SharedReadNode<T> node, WriteFunction<T> valueWriteFunction,
+                WriteFunction<Exception> exceptionWriteFunction, WriteFunction<Boolean> connectionWriteFunction) {
+            this.node = node;
+            this.valueWriteFunction = valueWriteFunction;
+            this.exceptionWriteFunction = exceptionWriteFunction;
+            this.connectionWriteFunction = connectionWriteFunction;
+        }
+
+        /**
+         * Removes the reader from the node. If it is the last reader,
+         * the upstream reader is closed.
+         */
+        void close() {
+            node.unsubscribe(this);
+        }
+    }
+
+    private final List<Object> nodeKey;
+    private final Object lock = new Object();
+    private final List<Subscription<T>> subscriptions = new ArrayList<>();
+    private PVReader<T> upstream;
+    private T value;
+    private boolean connected;
+    // Guarded by lock
+    private boolean opening = true;
+    private boolean closed;
+
+    private SharedReadNode(List<Object> nodeKey) {
+        this.nodeKey = nodeKey;
+    }
+
+    /**
+     * Subscribes a reader to the node for the given key, creating the node
+     * if it does not exist.
+     *
+     * @param <T> the type of the shared value
+     * @param dataSource the data source of the reader
+     * @param key the key that identifies the computation
+     * @param expression the expression to evaluate if the node needs to be created
+     * @param valueWriteFunction where the values are written
+     * @param exceptionWriteFunction where the exceptions are written
+     * @param connectionWriteFunction where the connection flag is written
+     * @return the new subscription
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Subscription<T> subscribe(DataSource dataSource, Object key, DesiredRateExpression<T> expression,
+            WriteFunction<T> valueWriteFunction, WriteFunction<Exception> exceptionWriteFunction,
+            WriteFunction<Boolean> connectionWriteFunction) {
+        List<Object> nodeKey = Arrays.asList(dataSource, key);
+        while (true) {
+            SharedReadNode<T> node;
+            Subscription<T> subscription;
+            boolean created = false;
+            synchronized (nodes) {
+                node = (SharedReadNode<T>) nodes.get(nodeKey);
+                if (node == null) {
+                    node = new SharedReadNode<>(nodeKey);
+                    nodes.put(nodeKey, node);
+                    created = true;
+                }
+                subscription = new Subscription<>(node, valueWriteFunction, exceptionWriteFunction, connectionWriteFunction);
+                if (created) {
+                    // The first subscription keeps the node open
+                    // while the upstream reader is created
+                    node.addSubscription(subscription);
+                }
+            }
+            if (created) {
+                node.open(dataSource, expression);
+                return subscription;
+            }
+            if (node.awaitAndAddSubscription(subscription)) {
+                return subscription;
+            }
+            // The node failed to open or was closed in the meantime: try again
+        }
+    }
+
+    /**
+     * The number of nodes currently evaluated.
+     *
+     * @return the number of nodes
+     */
+    static int getNodeCount() {
+        synchronized (nodes) {
+            return nodes.size();
+        }
+    }
+
+    private void open(DataSource dataSource, DesiredRateExpression<T> expression) {
+        PVReader<T> reader = null;
+        try {
+            PVReaderConfiguration<T> configuration = PVManager.read(expression)
+                    .notifyOn(localThread())
+                    .readListener(new PVReaderListener<T>() {
+
+                        @Override
+                        public void pvChanged(PVReaderEvent<T> event) {
+                            forward(event);
+                        }
+                    });
+            if (dataSource != null) {
+                configuration.from(dataSource);
+            }
+            reader = configuration.maxRate(UPSTREAM_MAX_RATE);
+        } finally {
+            if (reader == null) {
+                // Nobody will be able to unsubscribe: remove the node
+                synchronized (nodes) {
+                    nodes.remove(nodeKey, this);
+                }
+            }
+            synchronized (lock) {
+                upstream = reader;
+                opening = false;
+                closed = reader == null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the node to be open, and adds the subscription.
+     *
+     * @param subscription the new subscription
+     * @return false if the node failed to open or was closed
+     */
+    private boolean awaitAndAddSubscription(Subscription<T> subscription) {
+        synchronized (lock) {
+            boolean interrupted = false;
+            while (opening) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (closed) {
+                return false;
+            }
+            addSubscription(subscription);
+            return true;
+        }
+    }
+
+    private void forward(PVReaderEvent<T> event) {
+        PVReader<T> reader = event.getPvReader();
+        Exception ex = reader.lastException();
+        synchronized (lock) {
+            if (event.isConnectionChanged()) {
+                connected = reader.isConnected();
+                for (Subscription<T> subscription : subscriptions) {
+                    subscription.connectionWriteFunction.writeValue(connected);
+                }
+            }
+            if (ex != null) {
+                for (Subscription<T> subscription : subscriptions) {
+                    subscription.exceptionWriteFunction.writeValue(ex);
+                }
+            }
+            if (event.isValueChanged()) {
+                value = reader.getValue();
+                for (Subscription<T> subscription : subscriptions) {
+                    subscription.valueWriteFunction.writeValue(value);
+                }
+            }
+        }
+    }
+
+    private void addSubscription(Subscription<T> subscription) {
+        synchronized (lock) {
+            subscriptions.add(subscription);
+            // Bring the new reader up to date
+            subscription.connectionWriteFunction.writeValue(connected);
+            if (value != null) {
+                subscription.valueWriteFunction.writeValue(value);
+            }
+        }
+    }
+
+    private void unsubscribe(Subscription<T> subscription) {
+        PVReader<T> toClose = null;
+        synchronized (nodes) {
+            synchronized (lock) {
+                if (!subscriptions.remove(subscription)) {
+                    return;
+                }
+                if (subscriptions.isEmpty()) {
+                    nodes.remove(nodeKey, this);
+                    toClose = upstream;
+                    upstream = null;
+                    closed = true;
+                }
+            }
+        }
+        if (toClose != null) {
+            toClose.close();
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ abstract class SourceDesiredRateDecoupler {
     protected final Object lock = new Object();
     private boolean eventProcessing = false;
     private boolean paused = false;
+    private boolean started = false;
     private boolean stopped = false;
 
     /**
@@ -51,9 +52,16 @@ abstract class SourceDesiredRateDecoupler {
 
     /**
      * Starts the scanning. From this moment on, source rate events
-     * may trigger desired rate events.
+     * may trigger desired rate events. Does nothing if the scanning
+     * was already stopped.
      */
     final void start() {
+        synchronized(lock) {
+            if (stopped) {
+                return;
+            }
+            started = true;
+        }
         onStart();
     }
 
@@ -102,12 +110,19 @@ abstract class SourceDesiredRateDecoupler {
     /**
      * Stops the scanning. From this moment on, the pv will no longer be
      * notified. Can't be restarted.
+     * <p>
+     * If the scanning was never started, no cleanup is needed and
+     * the scanning can't be started anymore.
      */
     final void stop() {
+        boolean wasStarted;
         synchronized(lock) {
             stopped = true;
+            wasStarted = started;
+        }
+        if (wasStarted) {
+            onStop();
         }
-        onStop();
     }
 
     /**
@@ -10,6 +10,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -48,6 +49,8 @@ public abstract class TypeSupport<T> {
         new ConcurrentHashMap<Class<? extends TypeSupport>, TypeSupportMap>();
     private static final Map<Class<? extends TypeSupport>, TypeSupportMap> allCalcTypeSupports =
         new ConcurrentHashMap<Class<? extends TypeSupport>, TypeSupportMap>();
+    // Changes every time a support is added
+    private static final AtomicInteger supportVersion = new AtomicInteger();
 
 
     private static
@@ -96,6 +99,18 @@ public abstract class TypeSupport<T> {
         // add it to the old map and the next time findTypeSupportFor is called,
         // it will use a clear, new map.
         allCalcTypeSupports.put(typeSupportFamily, new TypeSupportMap());
+        supportVersion.incrementAndGet();
+    }
+
+    /**
+     * A number that changes every time a type support is added. Supports
+     * resolved while this number stays the same are still valid: caches
+     * should read it before resolving, and resolve again when it changes.
+     *
+     * @return the current version of the registered supports
+     */
+    static int getSupportVersion() {
+        return supportVersion.get();
     }
 
     /**
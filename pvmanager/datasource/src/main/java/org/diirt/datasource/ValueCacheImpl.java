@@ -4,13 +4,18 @@
  */
 package org.diirt.datasource;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represent a building block that can store a particular value
+ * <p>
+ * Each write increases the version of the cache, so that the readers
+ * can tell whether the value changed from {@link #getVersion() }.
  *
  * @param <T> the type of the value held by the cache
  * @author carcassi
  */
-public class ValueCacheImpl<T> implements ValueCache<T> {
+public class ValueCacheImpl<T> implements ValueCache<T>, VersionedReadFunction<T> {
 
     /**
      * The value cached
@@ -22,6 +27,17 @@ public class ValueCacheImpl<T> implements ValueCache<T> {
      */
     private final Class<T> type;
 
+    /**
+     * The number of writes; it is updated after the value, so that
+     * reading it first guarantees the value is at least as recent
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The version of the last value read
+     */
+    private long readVersion;
+
     /**
      * Creates a new cache for the given data type.
      *
@@ -39,6 +55,7 @@ public class ValueCacheImpl<T> implements ValueCache<T> {
      */
     @Override
     public T readValue() {
+        readVersion = version.get();
         return value;
     }
 
@@ -51,6 +68,17 @@ public class ValueCacheImpl<T> implements ValueCache<T> {
     public void writeValue(Object newValue) {
         // TODO should add type check
         this.value = type.cast(newValue);
+        version.incrementAndGet();
+    }
+
+    /**
+     * The version of the value returned by the last {@link #readValue() }.
+     *
+     * @return the version of the last value read
+     */
+    @Override
+    public long getVersion() {
+        return readVersion;
     }
 
     /**
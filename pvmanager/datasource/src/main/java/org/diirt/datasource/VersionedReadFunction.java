@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+/**
+ * A read function that also tells whether its value changed, so that
+ * the functions that depend on it can skip their calculation without
+ * comparing the values.
+ * <p>
+ * The version is a number that increases every time the value may have
+ * changed. {@link #getVersion() } returns the version of the value returned
+ * by the last call to {@link #readValue() }, so it must be called after
+ * it, on the same thread. If two calls to readValue are followed by
+ * the same version, the value did not change in between; the opposite
+ * is not guaranteed: a different version may still carry an equal value.
+ *
+ * @param <R> result type
+ * @author carcassi
+ */
+public interface VersionedReadFunction<R> extends ReadFunction<R> {
+
+    /**
+     * The version of the value returned by the last call to {@link #readValue() }.
+     *
+     * @return the version of the last value read
+     */
+    public long getVersion();
+}
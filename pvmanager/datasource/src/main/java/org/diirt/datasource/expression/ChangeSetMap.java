@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.expression;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.diirt.datasource.util.PersistentMap;
+
+/**
+ * The value of an incremental {@link ReadMap}: an immutable map of all
+ * the current values, together with the changes since the previous value
+ * computed for the same reader.
+ * <p>
+ * The map shares the unchanged entries with the previous value, so that computing
+ * a new value allocates only for the entries that changed. Consumers that
+ * process deltas can use {@link #getChanges() } and {@link #getRemovedKeys() }
+ * instead of iterating over the whole map.
+ * <p>
+ * The changes are valid only if the consumer receives every computed value.
+ * With the latest value policies a value is not computed while the previous
+ * notification is in flight, and with {@link org.diirt.datasource.BackpressurePolicy#queue(int) }
+ * the changes of the dropped values are merged in the next value notified.
+ * A consumer that gets the maps in some other way, which may skip values,
+ * should compare the whole map instead.
+ *
+ * @param <T> the type for the values in the map
+ * @author carcassi
+ */
+public final class ChangeSetMap<T> extends AbstractMap<String, T> {
+
+    private final PersistentMap<String, T> map;
+    private final Map<String, T> changes;
+    private final Set<String> removedKeys;
+
+    ChangeSetMap(PersistentMap<String, T> map, Map<String, T> changes, Set<String> removedKeys) {
+        this.map = map;
+        this.changes = Collections.unmodifiableMap(changes);
+        this.removedKeys = Collections.unmodifiableSet(removedKeys);
+    }
+
+    /**
+     * Merges the changes of two consecutive maps, so that the result
+     * has the values of the newer map and the changes since the map
+     * preceding the older one. It is used when the older map is
+     * never notified.
+     * <p>
+     * The removed keys may include keys that were added by the older map,
+     * and therefore were not in the map preceding it.
+     *
+     * @param <T> the type for the values in the map
+     * @param older the map whose changes would be lost
+     * @param newer the map that follows the older one
+     * @return the newer map with the changes of both
+     */
+    public static <T> ChangeSetMap<T> merge(ChangeSetMap<T> older, ChangeSetMap<T> newer) {
+        Map<String, T> changes = new HashMap<>(older.changes);
+        changes.keySet().removeAll(newer.removedKeys);
+        changes.putAll(newer.changes);
+        Set<String> removedKeys = new HashSet<>(older.removedKeys);
+        removedKeys.removeAll(newer.changes.keySet());
+        removedKeys.addAll(newer.removedKeys);
+        return new ChangeSetMap<>(newer.map, changes, removedKeys);
+    }
+
+    /**
+     * The entries that were added or that changed value since the previous map.
+     * For the first map, these are all the entries.
+     *
+     * @return the changed entries; never null
+     */
+    public Map<String, T> getChanges() {
+        return changes;
+    }
+
+    /**
+     * The keys that were removed since the previous map, either because
+     * the expression was removed or because its value became null.
+     *
+     * @return the removed keys; never null
+     */
+    public Set<String> getRemovedKeys() {
+        return removedKeys;
+    }
+
+    /**
+     * The map of all current values as a persistent map, which can be
+     * used to derive other maps without copying.
+     *
+     * @return the current values
+     */
+    public PersistentMap<String, T> toPersistentMap() {
+        return map;
+    }
+
+    @Override
+    public T get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, T>> entrySet() {
+        return map.entrySet();
+    }
+
+}
@@ -6,12 +6,20 @@ package org.diirt.datasource.expression;
 
 import org.diirt.datasource.ReadFunction;
 import org.diirt.datasource.QueueCollector;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import org.diirt.datasource.util.PersistentMap;
 
 /**
  * A function that takes a set of inputs and transforms them in a new map.
+ * <p>
+ * In incremental mode, the function returns a {@link ChangeSetMap}:
+ * the previous map is updated only for the keys whose value changed, and
+ * the unchanged entries are shared.
  *
  * @author carcassi
  */
@@ -20,13 +28,24 @@ class MapOfReadFunction<T> implements ReadFunction<Map<String, T>> {
     private final Map<String, ReadFunction<T>> functions = new HashMap<>();
     private final QueueCollector<MapUpdate<T>> mapUpdateCollector;
     private Map<String, T> previousValue;
+    private final boolean incremental;
+    private ChangeSetMap<T> previousChangeSet;
 
     public MapOfReadFunction(QueueCollector<MapUpdate<T>> mapUpdateCollector) {
+        this(mapUpdateCollector, false);
+    }
+
+    public MapOfReadFunction(QueueCollector<MapUpdate<T>> mapUpdateCollector, boolean incremental) {
         this.mapUpdateCollector = mapUpdateCollector;
+        this.incremental = incremental;
     }
 
     @Override
     public Map<String, T> readValue() {
+        if (incremental) {
+            return readChangeSet();
+        }
+
         for (MapUpdate<T> mapUpdate : mapUpdateCollector.readValue()) {
             for (String name : mapUpdate.getExpressionsToDelete()) {
                 functions.remove(name);
@@ -52,6 +71,71 @@ class MapOfReadFunction<T> implements ReadFunction<Map<String, T>> {
         return map;
     }
 
+    private ChangeSetMap<T> readChangeSet() {
+        PersistentMap<String, T> map = previousChangeSet != null ? previousChangeSet.toPersistentMap() : PersistentMap.<String, T>empty();
+        Set<String> removedKeys = null;
+        Set<String> removedFunctions = null;
+        for (MapUpdate<T> mapUpdate : mapUpdateCollector.readValue()) {
+            if (removedFunctions == null) {
+                removedFunctions = new HashSet<>();
+            }
+            if (mapUpdate.isToClear()) {
+                removedFunctions.addAll(functions.keySet());
+                functions.clear();
+            }
+            for (String name : mapUpdate.getExpressionsToDelete()) {
+                functions.remove(name);
+                removedFunctions.add(name);
+            }
+            functions.putAll(mapUpdate.getReadFunctionsToAdd());
+        }
+
+        // Remove the values of the functions that are gone
+        if (removedFunctions != null) {
+            for (String name : removedFunctions) {
+                if (!functions.containsKey(name) && map.containsKey(name)) {
+                    map = map.minus(name);
+                    if (removedKeys == null) {
+                        removedKeys = new HashSet<>();
+                    }
+                    removedKeys.add(name);
+                }
+            }
+        }
+
+        Map<String, T> changes = null;
+        for (Map.Entry<String, ReadFunction<T>> entry : functions.entrySet()) {
+            String name = entry.getKey();
+            T value = entry.getValue().readValue();
+            T oldValue = map.get(name);
+            if (Objects.equals(value, oldValue)) {
+                continue;
+            }
+            if (value == null) {
+                map = map.minus(name);
+                if (removedKeys == null) {
+                    removedKeys = new HashSet<>();
+                }
+                removedKeys.add(name);
+            } else {
+                map = map.plus(name, value);
+                if (changes == null) {
+                    changes = new HashMap<>();
+                }
+                changes.put(name, value);
+            }
+        }
+
+        if (previousChangeSet != null && changes == null && removedKeys == null) {
+            return previousChangeSet;
+        }
+
+        previousChangeSet = new ChangeSetMap<>(map,
+                changes != null ? changes : Collections.<String, T>emptyMap(),
+                removedKeys != null ? removedKeys : Collections.<String>emptySet());
+        return previousChangeSet;
+    }
+
     public QueueCollector<MapUpdate<T>> getMapUpdateCollector() {
         return mapUpdateCollector;
     }
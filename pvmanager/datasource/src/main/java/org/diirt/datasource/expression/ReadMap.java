@@ -36,7 +36,18 @@ public class ReadMap<T> extends DesiredRateExpressionImpl<Map<String, T>> {
      * Creates a new group.
      */
     public ReadMap() {
-        super(new DesiredRateExpressionListImpl<Object>(), new MapOfReadFunction<T>(new QueueCollector<MapUpdate<T>>(1000)), "map");
+        this(false);
+    }
+
+    /**
+     * Creates a new group. If incremental, each value is a {@link ChangeSetMap}
+     * that is derived from the previous one, sharing the unchanged entries,
+     * and that reports the changes since the previous value.
+     *
+     * @param incremental whether the values are computed incrementally
+     */
+    public ReadMap(boolean incremental) {
+        super(new DesiredRateExpressionListImpl<Object>(), new MapOfReadFunction<T>(new QueueCollector<MapUpdate<T>>(1000), incremental), "map");
     }
 
     MapOfReadFunction<T> getMapOfFunction() {
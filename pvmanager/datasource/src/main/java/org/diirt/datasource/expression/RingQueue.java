@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.expression;
+
+import java.util.List;
+import org.diirt.datasource.RingBufferCollector;
+import org.diirt.datasource.WriteFunction;
+
+/**
+ * A queue expression backed by a preallocated lock-free ring buffer.
+ * <p>
+ * Values can be added concurrently from any number of threads without
+ * taking a lock. Differently from {@link Queue}, the size of the queue
+ * is fixed at creation.
+ *
+ * @param <T> the type of values in the queue
+ * @author carcassi
+ */
+public class RingQueue<T> extends DesiredRateExpressionImpl<List<T>> {
+
+    /**
+     * Creates a new ring queue expression.
+     *
+     * @param maxSize the maximum number of elements in the queue
+     */
+    public RingQueue(int maxSize) {
+        super(new DesiredRateExpressionListImpl<Object>(), new RingBufferCollector<T>(maxSize, true), "queue");
+    }
+
+    /**
+     * The write function to be used to fill the queue.
+     *
+     * @return a write function
+     */
+    public WriteFunction<T> getWriteFunction() {
+        return getCollector();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RingBufferCollector<T> getCollector() {
+        return (RingBufferCollector<T>) getFunction();
+    }
+
+    /**
+     * The maximum number of elements in the queue.
+     *
+     * @return the maximum size of the queue
+     */
+    public int getMaxSize() {
+        return getCollector().getMaxSize();
+    }
+
+    /**
+     * Adds a new value to the queue
+     *
+     * @param newValue the new value
+     */
+    public void add(T newValue) {
+        getWriteFunction().writeValue(newValue);
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An executor that collects the tasks submitted during a frame and
+ * forwards them to the target executor as a single batch.
+ * <p>
+ * This is meant to be used as a notification executor for single threaded
+ * subsystems, such as UI event threads, that would otherwise receive
+ * a separate event for each reader notification. The frame starts when
+ * the first task is submitted, and at the end of the frame all the
+ * tasks submitted in the meantime are run, in order, within a single task
+ * of the target executor.
+ * <p>
+ * Since pvmanager does not send a new notification for a reader until the
+ * previous one was processed, each reader has at most one notification
+ * per batch. Tasks are run in submission order within a batch; batches
+ * are run in order only if the target executor is itself serial. If the
+ * target executor rejects a batch, the batch is run on the thread that
+ * ends the frame.
+ * <p>
+ * The size of each batch and the latency between the end of the frame
+ * and the start of the batch on the target executor are recorded.
+ *
+ * @author carcassi
+ */
+public class CoalescingExecutor implements Executor {
+
+    private static final Logger log = Logger.getLogger(CoalescingExecutor.class.getName());
+
+    private final Executor target;
+    private final ScheduledExecutorService timer;
+    private final long frameNanos;
+
+    private final Object lock = new Object();
+    private List<Runnable> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private volatile int lastBatchSize;
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+
+    private final Runnable flushTask = new Runnable() {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a new executor that forwards batches of tasks to the target.
+     *
+     * @param target the executor that will run the batches
+     * @param frameInterval the time during which tasks are collected
+     * @param timer the executor used to time the end of the frame
+     */
+    public CoalescingExecutor(Executor target, Duration frameInterval, ScheduledExecutorService timer) {
+        if (frameInterval.isNegative() || frameInterval.isZero()) {
+            throw new IllegalArgumentException("frameInterval must be positive (was " + frameInterval + ")");
+        }
+        this.target = target;
+        this.timer = timer;
+        this.frameNanos = frameInterval.toNanos();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        boolean startFrame;
+        synchronized (lock) {
+            pending.add(command);
+            startFrame = !flushScheduled;
+            flushScheduled = true;
+        }
+        if (startFrame) {
+            try {
+                timer.schedule(flushTask, frameNanos, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException ex) {
+                // The end of the frame can't be timed (e.g. the timer was
+                // shut down): run the batch now, or the tasks would
+                // stay pending forever
+                log.log(Level.WARNING, "Couldn't schedule the end of the frame, forwarding the tasks now", ex);
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        final List<Runnable> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>(batch.size());
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int batchSize = batch.size();
+        frameCount.incrementAndGet();
+        taskCount.addAndGet(batchSize);
+        lastBatchSize = batchSize;
+        long currentMax = maxBatchSize.get();
+        while (batchSize > currentMax && !maxBatchSize.compareAndSet(currentMax, batchSize)) {
+            currentMax = maxBatchSize.get();
+        }
+
+        final long submissionTime = System.nanoTime();
+        Runnable batchTask = new Runnable() {
+
+            @Override
+            public void run() {
+                dispatchLatency.record(System.nanoTime() - submissionTime);
+                for (Runnable task : batch) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException ex) {
+                        log.log(Level.WARNING, "Exception while running batched notification", ex);
+                    }
+                }
+            }
+        };
+        try {
+            target.execute(batchTask);
+        } catch (RuntimeException ex) {
+            // The target refused the batch (e.g. it was shut down): run it
+            // here, or the tasks would be lost and the readers would never
+            // be notified again
+            log.log(Level.WARNING, "Couldn't forward the batch to the target executor, running the tasks now", ex);
+            batchTask.run();
+        }
+    }
+
+    /**
+     * The duration of the frame during which tasks are collected.
+     *
+     * @return the frame interval
+     */
+    public Duration getFrameInterval() {
+        return Duration.ofNanos(frameNanos);
+    }
+
+    /**
+     * The number of batches forwarded to the target executor.
+     *
+     * @return the number of frames
+     */
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * The number of tasks forwarded to the target executor.
+     *
+     * @return the number of tasks
+     */
+    public long getTaskCount() {
+        return taskCount.get();
+    }
+
+    /**
+     * The number of tasks in the last batch.
+     *
+     * @return the size of the last batch
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * The largest number of tasks in a batch.
+     *
+     * @return the size of the largest batch
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * The average number of tasks in a batch, or NaN if no batch
+     * was forwarded.
+     *
+     * @return the average batch size
+     */
+    public double getAverageBatchSize() {
+        long frames = frameCount.get();
+        if (frames == 0) {
+            return Double.NaN;
+        }
+        return ((double) taskCount.get()) / frames;
+    }
+
+    /**
+     * The distribution of the time between the end of each frame and the
+     * start of the batch on the target executor.
+     *
+     * @return the dispatch latency histogram
+     */
+    public LatencyHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations, expressed in nanoseconds.
+ * <p>
+ * Values are accumulated in buckets that grow exponentially, with 8 linear
+ * sub-buckets for every power of two, so that percentiles are reported
+ * with a relative error of at most 12.5%. Recording a value is a few atomic
+ * increments and never allocates, so the histogram can be used on
+ * hot paths and updated from multiple threads.
+ *
+ * @author carcassi
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int N_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(N_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a new duration to the histogram. Negative durations are
+     * recorded as zero.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int sub = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The number of durations recorded.
+     *
+     * @return the number of samples
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * The average of the durations recorded, or NaN if none were recorded.
+     *
+     * @return the average in nanoseconds
+     */
+    public double getMeanNanos() {
+        long n = count.sum();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return ((double) sum.sum()) / n;
+    }
+
+    /**
+     * The maximum duration recorded.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * The duration below which the given percentage of the samples fall.
+     * The result is the upper bound of the bucket that contains the
+     * percentile, capped by the maximum.
+     *
+     * @param percentile a number between 0 and 100
+     * @return the percentile in nanoseconds, or 0 if no samples were recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100 (was " + percentile + ")");
+        }
+        long total = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long accumulated = 0;
+        for (int i = 0; i < N_BUCKETS; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= target) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * A snapshot of the current statistics.
+     *
+     * @return a new summary
+     */
+    public LatencySummary getSummary() {
+        return new LatencySummary(getCount(), getMeanNanos(), getPercentileNanos(50),
+                getPercentileNanos(90), getPercentileNanos(99), getMaxNanos());
+    }
+
+    /**
+     * Removes all the samples from the histogram. Samples recorded concurrently
+     * with the reset may or may not be discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < N_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                getCount(), getMeanNanos() / 1_000_000.0, getPercentileNanos(50) / 1_000_000.0,
+                getPercentileNanos(99) / 1_000_000.0, getMaxNanos() / 1_000_000.0);
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the statistics of a {@link LatencyHistogram}.
+ * <p>
+ * The snapshot is immutable and can be exposed through JMX: an MXBean
+ * attribute of this type is mapped to a composite with one item per property.
+ *
+ * @author carcassi
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    /**
+     * Creates a new summary.
+     *
+     * @param count the number of samples
+     * @param meanNanos the average
+     * @param p50Nanos the median
+     * @param p90Nanos the 90th percentile
+     * @param p99Nanos the 99th percentile
+     * @param maxNanos the maximum
+     */
+    @ConstructorProperties({"count", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "maxNanos"})
+    public LatencySummary(long count, double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * The number of samples.
+     *
+     * @return the number of samples
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The average of the samples, or NaN if there are none.
+     *
+     * @return the average in nanoseconds
+     */
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * The median of the samples.
+     *
+     * @return the 50th percentile in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * The 90th percentile of the samples.
+     *
+     * @return the 90th percentile in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * The 99th percentile of the samples.
+     *
+     * @return the 99th percentile in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * The maximum of the samples.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                count, meanNanos / 1_000_000.0, p50Nanos / 1_000_000.0, p90Nanos / 1_000_000.0,
+                p99Nanos / 1_000_000.0, maxNanos / 1_000_000.0);
+    }
+
+}
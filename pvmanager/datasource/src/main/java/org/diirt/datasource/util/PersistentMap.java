@@ -0,0 +1,424 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map where each modification returns a new map that shares
+ * the unchanged entries with the original.
+ * <p>
+ * The map is a hash array mapped trie: each level uses 5 bits of the hash
+ * of the key, so adding, replacing or removing an entry copies at most
+ * one small array per level (a handful of levels even for millions of keys)
+ * instead of the whole map. Null keys are not allowed.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author carcassi
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns a map with the given entry added or replaced. If the key
+     * is already mapped to the same value, this map is returned.
+     *
+     * @param key the key; can't be null
+     * @param value the value
+     * @return the new map
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("Key can't be null");
+        }
+        boolean[] added = new boolean[1];
+        Node start = root != null ? root : BitmapNode.EMPTY;
+        Node newRoot = start.plus(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the given key. If the key is not present,
+     * this map is returned.
+     *
+     * @param key the key to remove
+     * @return the new map
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (key == null || root == null) {
+            return this;
+        }
+        Node newRoot = root.minus(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        return new PersistentMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null || root == null) {
+            return null;
+        }
+        Leaf leaf = root.find(0, hash(key), key);
+        return leaf == null ? null : (V) leaf.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null || root == null) {
+            return false;
+        }
+        return root.find(0, hash(key), key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * A single entry of the map.
+     */
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+
+        private static final long serialVersionUID = 1L;
+        final int hash;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    private static abstract class Node {
+
+        abstract Leaf find(int shift, int hash, Object key);
+
+        abstract Node plus(int shift, int hash, Object key, Object value, boolean[] added);
+
+        abstract Node minus(int shift, int hash, Object key);
+
+        /**
+         * The elements of the node: either leaves or other nodes.
+         */
+        abstract Object[] slots();
+    }
+
+    /**
+     * A node where the bitmap tells which of the 32 possible
+     * positions are used, and only those are stored.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static int bit(int shift, int hash) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node) {
+                return ((Node) slot).find(shift + 5, hash, key);
+            }
+            Leaf leaf = (Leaf) slot;
+            return key.equals(leaf.getKey()) ? leaf : null;
+        }
+
+        @Override
+        Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = new Leaf(hash, key, value);
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node) slot).plus(shift + 5, hash, key, value, added);
+            } else {
+                Leaf leaf = (Leaf) slot;
+                if (key.equals(leaf.getKey())) {
+                    if (leaf.getValue() == value) {
+                        return this;
+                    }
+                    newSlot = new Leaf(hash, key, value);
+                } else {
+                    newSlot = pair(shift + 5, leaf, new Leaf(hash, key, value));
+                    added[0] = true;
+                }
+            }
+            if (newSlot == slot) {
+                return this;
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        private static Node pair(int shift, Leaf leaf1, Leaf leaf2) {
+            if (leaf1.hash == leaf2.hash) {
+                return new CollisionNode(leaf1.hash, new Leaf[] {leaf1, leaf2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.plus(shift, leaf1.hash, leaf1.getKey(), leaf1.getValue(), added)
+                    .plus(shift, leaf2.hash, leaf2.getKey(), leaf2.getValue(), added);
+        }
+
+        @Override
+        Node minus(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node newNode = ((Node) slot).minus(shift + 5, hash, key);
+                if (newNode == slot) {
+                    return this;
+                }
+                if (newNode != null) {
+                    Object[] newSlots = slots.clone();
+                    // Keep a single leaf inline instead of in a subnode
+                    Object[] childSlots = newNode.slots();
+                    newSlots[index] = childSlots.length == 1 && childSlots[0] instanceof Leaf ? childSlots[0] : newNode;
+                    return new BitmapNode(bitmap, newSlots);
+                }
+            } else if (!key.equals(((Leaf) slot).getKey())) {
+                return this;
+            }
+
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+    }
+
+    /**
+     * A node for keys whose hashes are identical.
+     */
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+        final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (key.equals(leaves[i].getKey())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index == -1 ? null : leaves[index];
+        }
+
+        @Override
+        Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down, next to the new key
+                Node node = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[] {this});
+                return node.plus(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index != -1) {
+                if (leaves[index].getValue() == value) {
+                    return this;
+                }
+                Leaf[] newLeaves = leaves.clone();
+                newLeaves[index] = new Leaf(hash, key, value);
+                return new CollisionNode(hash, newLeaves);
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = new Leaf(hash, key, value);
+            added[0] = true;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Node minus(int shift, int hash, Object key) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            if (index == -1) {
+                return this;
+            }
+            if (leaves.length == 1) {
+                return null;
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index, leaves.length - index - 1);
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Object[] slots() {
+            return leaves;
+        }
+    }
+
+    /**
+     * Depth first iteration over the leaves.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> slotsStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Object[] slots;
+        private int index;
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            slots = root != null ? root.slots() : new Object[0];
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null) {
+                if (index < slots.length) {
+                    Object slot = slots[index++];
+                    if (slot instanceof Leaf) {
+                        next = (Leaf) slot;
+                    } else {
+                        slotsStack.push(slots);
+                        indexStack.push(index);
+                        slots = ((Node) slot).slots();
+                        index = 0;
+                    }
+                } else if (!slotsStack.isEmpty()) {
+                    slots = slotsStack.pop();
+                    index = indexStack.pop();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = (Map.Entry<K, V>) (Map.Entry<?, ?>) next;
+            advance();
+            return entry;
+        }
+    }
+
+}
@@ -40,6 +40,18 @@ public class ActiveScanDecouplerTest {
         assertThat(decoupler.isStopped(), equalTo(true));
     }
 
+    @Test
+    public void stopBeforeStart() throws Exception {
+        DesiredRateEventLog log = new DesiredRateEventLog();
+        SourceDesiredRateDecoupler decoupler = new ActiveScanDecoupler(PVManager.getReadScannerExecutorService(), TimeDuration.ofHertz(100), log);
+        log.setDecoupler(decoupler);
+        decoupler.stop();
+        assertThat(decoupler.isStopped(), equalTo(true));
+        decoupler.start();
+        Thread.sleep(50);
+        assertThat(log.getEvents().size(), equalTo(0));
+    }
+
     @Test
     public void activeScanningRate() throws Exception {
         repeatTest(10, new Callable<Object>() {
@@ -51,7 +63,9 @@ public class ActiveScanDecouplerTest {
                 decoupler.start();
                 Thread.sleep(500);
                 decoupler.stop();
-                assertThat(log.getEvents().size(), lessThanOrEqualTo(5));
+                // Scans run at 0, 100, ..., 400ms; the one at 500ms can
+                // still land if the sleep overruns before stop() is called
+                assertThat(log.getEvents().size(), lessThanOrEqualTo(6));
                 assertThat(log.getEvents().size(), greaterThanOrEqualTo(4));
                 return null;
             }
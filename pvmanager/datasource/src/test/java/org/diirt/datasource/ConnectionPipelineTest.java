@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class ConnectionPipelineTest {
+
+    private ConnectionPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void submit1() throws Exception {
+        // Operations on the same key are executed in order
+        pipeline = new ConnectionPipeline("Test Connector ", 4, Duration.ofMillis(5));
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(100);
+        Object key = new Object();
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            pipeline.submit(key, new Runnable() {
+
+                @Override
+                public void run() {
+                    executed.add(n);
+                    latch.countDown();
+                }
+            });
+        }
+        assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+        for (int i = 0; i < 100; i++) {
+            assertThat(executed.get(i), equalTo(i));
+        }
+        assertThat(pipeline.getOperationCount(), equalTo(100L));
+        assertThat(pipeline.getBatchCount(), equalTo(1L));
+    }
+
+    @Test
+    public void submit2() throws Exception {
+        // A blocked key does not prevent the others from being executed
+        pipeline = new ConnectionPipeline("Test Connector ", 2, Duration.ZERO);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(10);
+        pipeline.submit("blocked", new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    release.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit("channel" + i, new Runnable() {
+
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertThat(done.await(500, TimeUnit.MILLISECONDS), equalTo(true));
+        release.countDown();
+    }
+
+    @Test
+    public void submit3() throws Exception {
+        // Operations that arrive within the window are batched, at most one task per thread
+        pipeline = new ConnectionPipeline("Test Connector ", 3, Duration.ofMillis(50));
+        final CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            pipeline.submit("channel" + i, new Runnable() {
+
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertThat(done.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(pipeline.getBatchCount(), equalTo(3L));
+        assertThat(pipeline.getQueueLatency().getCount(), equalTo(1000L));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void new1() {
+        new ConnectionPipeline("Test Connector ", 0, Duration.ZERO);
+    }
+
+    @Test
+    public void submit4() throws Exception {
+        // An error in an operation does not prevent the later operations
+        // on the same key, or on the other keys of the same group
+        pipeline = new ConnectionPipeline("Test Connector ", 1, Duration.ofMillis(5));
+        final CountDownLatch done = new CountDownLatch(2);
+        pipeline.submit("a", new Runnable() {
+
+            @Override
+            public void run() {
+                throw new LinkageError("Native library failed");
+            }
+        });
+        Runnable countDown = new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        pipeline.submit("a", countDown);
+        pipeline.submit("b", countDown);
+        assertThat(done.await(1, TimeUnit.SECONDS), equalTo(true));
+
+        final CountDownLatch later = new CountDownLatch(1);
+        pipeline.submit("a", new Runnable() {
+
+            @Override
+            public void run() {
+                later.countDown();
+            }
+        });
+        assertThat(later.await(1, TimeUnit.SECONDS), equalTo(true));
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.diirt.util.time.TimeDuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author carcassi
+ */
+public class HashedWheelScanSchedulerTest {
+
+    private HashedWheelScanScheduler scheduler;
+
+    @Before
+    public void createScheduler() {
+        scheduler = new HashedWheelScanScheduler(PVManager.getReadScannerExecutorService(), Duration.ofMillis(5), 16);
+    }
+
+    @After
+    public void closeScheduler() {
+        scheduler.close();
+    }
+
+    @Test
+    public void activeScanningRate() throws Exception {
+        DesiredRateEventLog log = new DesiredRateEventLog();
+        SourceDesiredRateDecoupler decoupler = new ActiveScanDecoupler(PVManager.getReadScannerExecutorService(), TimeDuration.ofHertz(10), log, scheduler);
+        log.setDecoupler(decoupler);
+        decoupler.start();
+        Thread.sleep(500);
+        decoupler.stop();
+        assertThat(log.getEvents().size(), lessThanOrEqualTo(6));
+        assertThat(log.getEvents().size(), greaterThanOrEqualTo(4));
+    }
+
+    @Test
+    public void samePeriodSharesBucket() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        };
+        ScanScheduler.Scan scan1 = scheduler.schedule(task, Duration.ofMillis(100));
+        ScanScheduler.Scan scan2 = scheduler.schedule(task, Duration.ofMillis(100));
+        ScanScheduler.Scan scan3 = scheduler.schedule(task, Duration.ofMillis(200));
+        assertThat(scheduler.getBucketCount(), equalTo(2));
+        assertThat(scheduler.getScanCount(), equalTo(3));
+        Thread.sleep(250);
+        scan1.cancel();
+        scan2.cancel();
+        scan3.cancel();
+        assertThat(scheduler.getScanCount(), equalTo(0));
+        // Each scan runs right away, then the 100ms scans twice and the 200ms scan once
+        assertThat(counter.get(), greaterThanOrEqualTo(6));
+        assertThat(counter.get(), lessThanOrEqualTo(9));
+        assertThat(scheduler.getTickCount(), greaterThan(0L));
+        assertThat(scheduler.getTickLag().getCount(), equalTo(scheduler.getTickCount()));
+    }
+
+    @Test
+    public void periodLongerThanWheel() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        // 16 slots of 5ms: a 150ms period requires the wheel to turn twice
+        ScanScheduler.Scan scan = scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        }, Duration.ofMillis(150));
+        Thread.sleep(400);
+        scan.cancel();
+        assertThat(counter.get(), equalTo(3));
+    }
+
+    @Test
+    public void firstPeriodIsNotShortened() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            // A different period each time, so that the scan doesn't join
+            // the bucket of the previous one
+            Duration period = Duration.ofMillis(50 + 5 * i);
+            final CountDownLatch latch = new CountDownLatch(2);
+            final AtomicLong secondRun = new AtomicLong();
+            long scheduled = System.nanoTime();
+            ScanScheduler.Scan scan = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (latch.getCount() == 1) {
+                        secondRun.set(System.nanoTime());
+                    }
+                    latch.countDown();
+                }
+            }, period);
+            assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+            scan.cancel();
+            assertThat(secondRun.get() - scheduled, greaterThanOrEqualTo(period.toNanos()));
+            // Schedule the next scan at a different point within the tick
+            Thread.sleep(1 + i % 4);
+        }
+    }
+
+    @Test
+    public void cancelledScanIsNotRun() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        ScanScheduler.Scan scan = scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        }, Duration.ofMillis(10));
+        Thread.sleep(55);
+        scan.cancel();
+        int count = counter.get();
+        Thread.sleep(50);
+        assertThat(counter.get(), equalTo(count));
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class MultiplexedChannelHandlerTest {
+
+    private static class TestChannel extends MultiplexedChannelHandler<Object, Object> {
+
+        private volatile Object connection = new Object();
+
+        TestChannel() {
+            super("test");
+        }
+
+        @Override
+        protected void connect() {
+            processConnection(connection);
+        }
+
+        @Override
+        protected void disconnect() {
+            processConnection(null);
+        }
+
+        @Override
+        protected void write(Object newValue, ChannelWriteCallback callback) {
+            callback.channelWritten(null);
+        }
+
+        void reconnect(Object newConnection) {
+            connection = newConnection;
+            processConnection(newConnection);
+        }
+
+        void fire(Object message) {
+            processMessage(message);
+        }
+    }
+
+    private static final WriteFunction<Exception> noException = new WriteFunction<Exception>() {
+
+        @Override
+        public void writeValue(Exception newValue) {
+            throw new AssertionError("Unexpected exception", newValue);
+        }
+    };
+
+    private static ChannelHandlerReadSubscription subscription(ValueCache<?> cache) {
+        return new ChannelHandlerReadSubscription(cache, noException, new ValueCacheImpl<>(Boolean.class));
+    }
+
+    @Test
+    public void processMessage1() {
+        // Message is dispatched to all readers, and new readers get the last message
+        TestChannel channel = new TestChannel();
+        ValueCacheImpl<Object> cache1 = new ValueCacheImpl<>(Object.class);
+        ValueCacheImpl<Object> cache2 = new ValueCacheImpl<>(Object.class);
+        channel.addReader(subscription(cache1));
+        channel.fire("A");
+        assertThat(cache1.readValue(), equalTo((Object) "A"));
+        channel.addReader(subscription(cache2));
+        assertThat(cache2.readValue(), equalTo((Object) "A"));
+        channel.fire("B");
+        assertThat(cache1.readValue(), equalTo((Object) "B"));
+        assertThat(cache2.readValue(), equalTo((Object) "B"));
+    }
+
+    @Test
+    public void processMessage2() {
+        // Removed readers are not notified
+        TestChannel channel = new TestChannel();
+        ValueCacheImpl<Object> cache1 = new ValueCacheImpl<>(Object.class);
+        ValueCacheImpl<Object> cache2 = new ValueCacheImpl<>(Object.class);
+        ChannelHandlerReadSubscription subscription1 = subscription(cache1);
+        channel.addReader(subscription1);
+        channel.addReader(subscription(cache2));
+        channel.fire("A");
+        channel.removeReader(subscription1);
+        channel.fire("B");
+        assertThat(cache1.readValue(), equalTo((Object) "A"));
+        assertThat(cache2.readValue(), equalTo((Object) "B"));
+        assertThat(channel.getReadUsageCounter(), equalTo(1));
+    }
+
+    @Test
+    public void processConnection1() {
+        // The type adapter is matched again at each connection, and the message
+        // is processed with the connection payload it was matched for
+        final List<Object> connections = new ArrayList<>();
+        TestChannel channel = new TestChannel() {
+
+            @Override
+            protected DataSourceTypeAdapter<Object, Object> findTypeAdapter(ValueCache<?> cache, final Object connection) {
+                connections.add(connection);
+                return new DataSourceTypeAdapter<Object, Object>() {
+
+                    @Override
+                    public int match(ValueCache<?> cache, Object connection) {
+                        return 1;
+                    }
+
+                    @Override
+                    public Object getSubscriptionParameter(ValueCache<?> cache, Object connection) {
+                        return null;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public boolean updateCache(ValueCache cache, Object connection, Object message) {
+                        cache.writeValue(connection + ":" + message);
+                        return true;
+                    }
+                };
+            }
+        };
+        ValueCacheImpl<Object> cache = new ValueCacheImpl<>(Object.class);
+        channel.reconnect("c1");
+        channel.addReader(subscription(cache));
+        channel.fire("A");
+        assertThat(cache.readValue(), equalTo((Object) "c1:A"));
+        channel.reconnect("c2");
+        assertThat(cache.readValue(), equalTo((Object) "c2:A"));
+        assertThat(connections, contains((Object) "c1", "c1", "c2"));
+    }
+
+    @Test
+    public void processMessage3() throws Exception {
+        // Readers added while messages are dispatched end up with the last message
+        final TestChannel channel = new TestChannel();
+        channel.addReader(subscription(new ValueCacheImpl<>(Object.class)));
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread transport = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < 20000; i++) {
+                    channel.fire(i);
+                }
+                done.countDown();
+            }
+        });
+        transport.start();
+        List<ValueCacheImpl<Object>> caches = new ArrayList<>();
+        while (done.getCount() != 0 && caches.size() < 200) {
+            ValueCacheImpl<Object> cache = new ValueCacheImpl<>(Object.class);
+            channel.addReader(subscription(cache));
+            caches.add(cache);
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        for (ValueCacheImpl<Object> cache : caches) {
+            assertThat(cache.readValue(), equalTo((Object) 19999));
+        }
+    }
+
+    @Test
+    public void processMessage4() throws Exception {
+        // A message dispatched while the last message is replayed to a new reader
+        // is processed after the replay, and only once
+        final CountDownLatch replaying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final QueueCollector<Object> queue = new QueueCollector<>(10);
+        final TestChannel channel = new TestChannel() {
+
+            @Override
+            protected DataSourceTypeAdapter<Object, Object> findTypeAdapter(final ValueCache<?> cache, Object connection) {
+                return new DataSourceTypeAdapter<Object, Object>() {
+
+                    @Override
+                    public int match(ValueCache<?> cache, Object connection) {
+                        return 1;
+                    }
+
+                    @Override
+                    public Object getSubscriptionParameter(ValueCache<?> cache, Object connection) {
+                        return null;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public boolean updateCache(ValueCache cache, Object connection, Object message) {
+                        if (cache.getType().equals(String.class)) {
+                            // The cache of the new reader: block during the replay
+                            if (replaying.getCount() != 0) {
+                                replaying.countDown();
+                                try {
+                                    release.await(10, TimeUnit.SECONDS);
+                                } catch (InterruptedException ex) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            queue.writeValue(message);
+                        }
+                        cache.writeValue(message);
+                        return true;
+                    }
+                };
+            }
+        };
+        channel.addReader(subscription(new ValueCacheImpl<>(Object.class)));
+        channel.fire("A");
+        Thread subscriber = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                channel.addReader(subscription(new ValueCacheImpl<>(String.class)));
+            }
+        });
+        subscriber.start();
+        assertThat(replaying.await(10, TimeUnit.SECONDS), equalTo(true));
+        Thread transport = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                channel.fire("B");
+            }
+        });
+        transport.start();
+        // Give the transport the time to reach the new reader
+        Thread.sleep(100);
+        release.countDown();
+        subscriber.join(10000);
+        transport.join(10000);
+        assertThat(queue.readValue(), contains((Object) "A", "B"));
+    }
+
+}
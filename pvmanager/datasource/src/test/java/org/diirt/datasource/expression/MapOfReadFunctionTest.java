@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.expression;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.diirt.datasource.QueueCollector;
+import org.diirt.datasource.ReadFunction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the map read function.
+ *
+ * @author carcassi
+ */
+public class MapOfReadFunctionTest {
+
+    private static class ValueFunction implements ReadFunction<Object> {
+
+        private Object value;
+
+        @Override
+        public Object readValue() {
+            return value;
+        }
+    }
+
+    private static Set<String> keys(String... keys) {
+        return new HashSet<>(Arrays.asList(keys));
+    }
+
+    @Test
+    public void incremental1() {
+        QueueCollector<MapUpdate<Object>> updates = new QueueCollector<>(1000);
+        MapOfReadFunction<Object> function = new MapOfReadFunction<>(updates, true);
+        ValueFunction a = new ValueFunction();
+        ValueFunction b = new ValueFunction();
+        a.value = "a1";
+        b.value = "b1";
+        updates.writeValue(MapUpdate.<Object>addReadFunction("a", a));
+        updates.writeValue(MapUpdate.<Object>addReadFunction("b", b));
+
+        ChangeSetMap<Object> map1 = (ChangeSetMap<Object>) function.readValue();
+        assertThat(map1.size(), equalTo(2));
+        assertThat(map1.getChanges().keySet(), equalTo(keys("a", "b")));
+        assertThat(map1.getRemovedKeys(), equalTo(keys()));
+
+        // Nothing changed: same instance
+        assertThat(function.readValue(), sameInstance((Map<String, Object>) map1));
+
+        b.value = "b2";
+        ChangeSetMap<Object> map2 = (ChangeSetMap<Object>) function.readValue();
+        assertThat(map2.get("a"), equalTo((Object) "a1"));
+        assertThat(map2.get("b"), equalTo((Object) "b2"));
+        assertThat(map2.getChanges().keySet(), equalTo(keys("b")));
+        assertThat(map2.getRemovedKeys(), equalTo(keys()));
+        assertThat(map1.get("b"), equalTo((Object) "b1"));
+    }
+
+    @Test
+    public void incremental2() {
+        QueueCollector<MapUpdate<Object>> updates = new QueueCollector<>(1000);
+        MapOfReadFunction<Object> function = new MapOfReadFunction<>(updates, true);
+        ValueFunction a = new ValueFunction();
+        ValueFunction b = new ValueFunction();
+        a.value = "a1";
+        b.value = "b1";
+        updates.writeValue(MapUpdate.<Object>addReadFunction("a", a));
+        updates.writeValue(MapUpdate.<Object>addReadFunction("b", b));
+        function.readValue();
+
+        updates.writeValue(MapUpdate.<Object>removeFunction("a"));
+        ChangeSetMap<Object> map = (ChangeSetMap<Object>) function.readValue();
+        assertThat(map.keySet(), equalTo(keys("b")));
+        assertThat(map.getChanges().isEmpty(), equalTo(true));
+        assertThat(map.getRemovedKeys(), equalTo(keys("a")));
+
+        // A null value removes the key
+        b.value = null;
+        map = (ChangeSetMap<Object>) function.readValue();
+        assertThat(map.isEmpty(), equalTo(true));
+        assertThat(map.getRemovedKeys(), equalTo(keys("b")));
+    }
+
+    @Test
+    public void incremental3() {
+        QueueCollector<MapUpdate<Object>> updates = new QueueCollector<>(1000);
+        MapOfReadFunction<Object> function = new MapOfReadFunction<>(updates, true);
+        ValueFunction a = new ValueFunction();
+        a.value = "a1";
+        updates.writeValue(MapUpdate.<Object>addReadFunction("a", a));
+        function.readValue();
+
+        updates.writeValue(MapUpdate.<Object>clear());
+        ChangeSetMap<Object> map = (ChangeSetMap<Object>) function.readValue();
+        assertThat(map.isEmpty(), equalTo(true));
+        assertThat(map.getRemovedKeys(), equalTo(keys("a")));
+    }
+
+    @Test
+    public void merge1() {
+        QueueCollector<MapUpdate<Object>> updates = new QueueCollector<>(1000);
+        MapOfReadFunction<Object> function = new MapOfReadFunction<>(updates, true);
+        ValueFunction a = new ValueFunction();
+        ValueFunction b = new ValueFunction();
+        ValueFunction c = new ValueFunction();
+        a.value = "a1";
+        b.value = "b1";
+        updates.writeValue(MapUpdate.<Object>addReadFunction("a", a));
+        updates.writeValue(MapUpdate.<Object>addReadFunction("b", b));
+        updates.writeValue(MapUpdate.<Object>addReadFunction("c", c));
+        function.readValue();
+
+        // The older map changes a and b, and adds c
+        a.value = "a2";
+        b.value = "b2";
+        c.value = "c1";
+        ChangeSetMap<Object> older = (ChangeSetMap<Object>) function.readValue();
+        // The newer map removes a, changes c and removes b
+        updates.writeValue(MapUpdate.<Object>removeFunction("a"));
+        b.value = null;
+        c.value = "c2";
+        ChangeSetMap<Object> newer = (ChangeSetMap<Object>) function.readValue();
+
+        ChangeSetMap<Object> merged = ChangeSetMap.merge(older, newer);
+        assertThat(merged, equalTo((Map<String, Object>) newer));
+        assertThat(merged.getChanges().keySet(), equalTo(keys("c")));
+        assertThat(merged.get("c"), equalTo((Object) "c2"));
+        assertThat(merged.getRemovedKeys(), equalTo(keys("a", "b")));
+
+        // A key removed by the older map and added back by the newer one
+        b.value = "b3";
+        ChangeSetMap<Object> last = (ChangeSetMap<Object>) function.readValue();
+        merged = ChangeSetMap.merge(newer, last);
+        assertThat(merged.getChanges().keySet(), equalTo(keys("c", "b")));
+        assertThat(merged.getRemovedKeys(), equalTo(keys("a")));
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the frame coalescing executor.
+ *
+ * @author carcassi
+ */
+public class CoalescingExecutorTest {
+
+    private static final ScheduledExecutorService timer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor();
+
+    @AfterClass
+    public static void shutdownTimer() {
+        timer.shutdownNow();
+    }
+
+    private static class CountingExecutor implements Executor {
+
+        private int count;
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            count++;
+            command.run();
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+    }
+
+    private static Runnable add(final List<Integer> list, final int value) {
+        return add(list, value, new CountDownLatch(1));
+    }
+
+    private static Runnable add(final List<Integer> list, final int value, final CountDownLatch latch) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                list.add(value);
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void singleBatch() throws Exception {
+        CountingExecutor target = new CountingExecutor();
+        CoalescingExecutor executor = new CoalescingExecutor(target, Duration.ofMillis(50), timer);
+        List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(add(values, i, latch));
+        }
+        assertThat(values.size(), equalTo(0));
+        assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(values, equalTo(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+        assertThat(target.getCount(), equalTo(1));
+        assertThat(executor.getFrameCount(), equalTo(1L));
+        assertThat(executor.getTaskCount(), equalTo(10L));
+        assertThat(executor.getLastBatchSize(), equalTo(10));
+        assertThat(executor.getMaxBatchSize(), equalTo(10L));
+        assertThat(executor.getDispatchLatency().getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void multipleFrames() throws Exception {
+        CountingExecutor target = new CountingExecutor();
+        CoalescingExecutor executor = new CoalescingExecutor(target, Duration.ofMillis(20), timer);
+        List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch firstFrame = new CountDownLatch(2);
+        executor.execute(add(values, 0, firstFrame));
+        executor.execute(add(values, 1, firstFrame));
+        assertThat(firstFrame.await(1, TimeUnit.SECONDS), equalTo(true));
+        CountDownLatch secondFrame = new CountDownLatch(1);
+        executor.execute(add(values, 2, secondFrame));
+        assertThat(secondFrame.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(values, equalTo(Arrays.asList(0, 1, 2)));
+        assertThat(target.getCount(), equalTo(2));
+        assertThat(executor.getAverageBatchSize(), equalTo(1.5));
+        assertThat(executor.getMaxBatchSize(), equalTo(2L));
+        assertThat(executor.getLastBatchSize(), equalTo(1));
+    }
+
+    @Test
+    public void failingTaskDoesNotStopBatch() throws Exception {
+        CoalescingExecutor executor = new CoalescingExecutor(org.diirt.util.concurrent.Executors.localThread(), Duration.ofMillis(20), timer);
+        List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                throw new RuntimeException("Failure");
+            }
+        });
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(add(values, 1, latch));
+        assertThat(latch.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(values, equalTo(Arrays.asList(1)));
+    }
+
+    @Test
+    public void timerShutDown() throws Exception {
+        // Without a timer, the tasks are forwarded right away
+        ScheduledExecutorService deadTimer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor();
+        deadTimer.shutdownNow();
+        CountingExecutor target = new CountingExecutor();
+        CoalescingExecutor executor = new CoalescingExecutor(target, Duration.ofMillis(50), deadTimer);
+        List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        executor.execute(add(values, 1));
+        executor.execute(add(values, 2));
+        assertThat(values, equalTo(Arrays.asList(1, 2)));
+        assertThat(target.getCount(), equalTo(2));
+    }
+
+    @Test
+    public void rejectingTarget() throws Exception {
+        // A batch refused by the target is run on the timer thread
+        ExecutorService deadTarget = java.util.concurrent.Executors.newSingleThreadExecutor();
+        deadTarget.shutdownNow();
+        CoalescingExecutor executor = new CoalescingExecutor(deadTarget, Duration.ofMillis(20), timer);
+        List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch latch1 = new CountDownLatch(2);
+        executor.execute(add(values, 1, latch1));
+        executor.execute(add(values, 2, latch1));
+        assertThat(latch1.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(values, equalTo(Arrays.asList(1, 2)));
+
+        // The following frames still work
+        CountDownLatch latch2 = new CountDownLatch(1);
+        executor.execute(add(values, 3, latch2));
+        assertThat(latch2.await(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(values, equalTo(Arrays.asList(1, 2, 3)));
+        assertThat(executor.getFrameCount(), equalTo(2L));
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.datasource.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests the persistent map.
+ *
+ * @author carcassi
+ */
+public class PersistentMapTest {
+
+    @Test
+    public void plus1() {
+        PersistentMap<String, Integer> map0 = PersistentMap.empty();
+        PersistentMap<String, Integer> map1 = map0.plus("a", 1);
+        PersistentMap<String, Integer> map2 = map1.plus("b", 2);
+        assertThat(map0.size(), equalTo(0));
+        assertThat(map1.size(), equalTo(1));
+        assertThat(map2.size(), equalTo(2));
+        assertThat(map1.get("b"), nullValue());
+        assertThat(map2.get("a"), equalTo(1));
+        assertThat(map2.get("b"), equalTo(2));
+    }
+
+    @Test
+    public void plus2() {
+        Integer value = 1000;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value);
+        // Same value: nothing to copy
+        assertThat(map.plus("a", value), sameInstance(map));
+        PersistentMap<String, Integer> map2 = map.plus("a", 2);
+        assertThat(map2.get("a"), equalTo(2));
+        assertThat(map2.size(), equalTo(1));
+        assertThat(map.get("a"), equalTo(1000));
+    }
+
+    @Test
+    public void minus1() {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        assertThat(map.minus("c"), sameInstance(map));
+        PersistentMap<String, Integer> map2 = map.minus("a");
+        assertThat(map2.size(), equalTo(1));
+        assertThat(map2.containsKey("a"), equalTo(false));
+        assertThat(map.containsKey("a"), equalTo(true));
+        assertThat(map2.minus("b"), sameInstance(PersistentMap.<String, Integer>empty()));
+    }
+
+    @Test
+    public void collision1() {
+        // "Aa" and "BB" have the same hash code
+        assertThat("Aa".hashCode(), equalTo("BB".hashCode()));
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("Aa", 1).plus("BB", 2).plus("C", 3);
+        assertThat(map.size(), equalTo(3));
+        assertThat(map.get("Aa"), equalTo(1));
+        assertThat(map.get("BB"), equalTo(2));
+        assertThat(map.minus("Aa").get("BB"), equalTo(2));
+        assertThat(map.minus("Aa").containsKey("Aa"), equalTo(false));
+        assertThat(map.minus("Aa").minus("BB").size(), equalTo(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void plus3() {
+        PersistentMap.<String, Integer>empty().plus(null, 1);
+    }
+
+    @Test
+    public void random1() {
+        Random rand = new Random(1);
+        Map<Integer, Integer> reference = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            Integer key = rand.nextInt(2000) - 1000;
+            if (rand.nextInt(3) == 0) {
+                reference.remove(key);
+                map = map.minus(key);
+            } else {
+                Integer value = rand.nextInt();
+                reference.put(key, value);
+                map = map.plus(key, value);
+            }
+        }
+        assertThat(map.size(), equalTo(reference.size()));
+        assertThat(map, equalTo(reference));
+        assertThat(reference, equalTo((Map<Integer, Integer>) map));
+        assertThat(map.hashCode(), equalTo(reference.hashCode()));
+    }
+
+}
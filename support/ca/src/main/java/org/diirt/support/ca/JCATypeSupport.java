@@ -4,6 +4,7 @@
  */
 package org.diirt.support.ca;
 
+import java.util.Arrays;
 import org.diirt.datasource.DataSourceTypeSupport;
 import org.diirt.datasource.ValueCache;
 
@@ -39,4 +40,15 @@ public class JCATypeSupport extends DataSourceTypeSupport {
         return find(adapters.getAdapters(), cache, channel);
     }
 
+    @Override
+    protected Object typeSignature(Object connection) {
+        JCAConnectionPayload payload = (JCAConnectionPayload) connection;
+        if (!payload.isChannelConnected()) {
+            return null;
+        }
+        // JCATypeAdapter matches on the field type, on whether the channel
+        // is an array and on whether it is a long string
+        return Arrays.asList(payload.getFieldType(), payload.getChannel().getElementCount() == 1, payload.isLongString());
+    }
+
 }
@@ -64,4 +64,12 @@ public class PVATypeSupport extends DataSourceTypeSupport {
         }
     }
 
+    @Override
+    protected Object typeSignature(Object connection) {
+        // PVATypeAdapter matches on the normative type id and on the
+        // type of the value field, which are both part of the channel type.
+        // Returns null (not cached) if the type is not known yet.
+        return ((PVAChannelHandler) connection).getChannelType();
+    }
+
 }
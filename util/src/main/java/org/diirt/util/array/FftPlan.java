@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tables to calculate the fast Fourier transform of a given size.
+ * <p>
+ * Power of two sizes use the iterative radix-2 algorithm. Other sizes use
+ * Bluestein's algorithm, which turns the transform into a convolution
+ * calculated with radix-2 transforms of at least twice the size.
+ * The real input of even size is packed into a complex input of half the
+ * size. The tables are calculated once for each size, and cached.
+ * <p>
+ * The transforms are calculated in place, and are not normalized.
+ *
+ * @author carcassi
+ */
+final class FftPlan {
+
+    private static final int MAX_CACHED_PLANS = 64;
+    private static final Map<Integer, FftPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the plan for the given size, calculating it if not cached.
+     *
+     * @param size the size of the transform; must be positive
+     * @return the plan
+     */
+    static FftPlan of(int size) {
+        FftPlan plan = plans.get(size);
+        if (plan == null) {
+            plan = new FftPlan(size);
+            // Waveforms have few sizes: if there are too many,
+            // just start again
+            if (plans.size() >= MAX_CACHED_PLANS) {
+                plans.clear();
+            }
+            plans.put(size, plan);
+        }
+        return plan;
+    }
+
+    private final int size;
+    // cos and sin of 2 pi k / size, for k < size / 2
+    private final double[] cos;
+    private final double[] sin;
+    // For radix-2: the bit reversed indexes
+    private final int[] reversed;
+    // For Bluestein: the transform used for the convolution,
+    // the chirp exp(-i pi k^2 / size) and the transform
+    // of its conjugate divided by the size of the convolution
+    private final FftPlan convolution;
+    private final double[] chirpRe;
+    private final double[] chirpIm;
+    private final double[] filterRe;
+    private final double[] filterIm;
+
+    private FftPlan(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive (was " + size + ")");
+        }
+        this.size = size;
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            if (4 * k == size) {
+                cos[k] = 0.0;
+                sin[k] = 1.0;
+            } else {
+                double angle = 2 * Math.PI * k / size;
+                cos[k] = Math.cos(angle);
+                sin[k] = Math.sin(angle);
+            }
+        }
+
+        if (Integer.bitCount(size) == 1) {
+            reversed = new int[size];
+            int bits = Integer.numberOfTrailingZeros(size);
+            for (int i = 1; i < size; i++) {
+                reversed[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+            convolution = null;
+            chirpRe = null;
+            chirpIm = null;
+            filterRe = null;
+            filterIm = null;
+        } else {
+            reversed = null;
+            int convolutionSize = Integer.highestOneBit(2 * size - 1) << 1;
+            convolution = of(convolutionSize);
+            chirpRe = new double[size];
+            chirpIm = new double[size];
+            for (int k = 0; k < size; k++) {
+                // k^2 modulo 2 size keeps the angle small
+                double angle = Math.PI * ((long) k * k % (2L * size)) / size;
+                chirpRe[k] = Math.cos(angle);
+                chirpIm[k] = -Math.sin(angle);
+            }
+            filterRe = new double[convolutionSize];
+            filterIm = new double[convolutionSize];
+            filterRe[0] = chirpRe[0];
+            filterIm[0] = -chirpIm[0];
+            for (int k = 1; k < size; k++) {
+                filterRe[k] = chirpRe[k];
+                filterIm[k] = -chirpIm[k];
+                filterRe[convolutionSize - k] = chirpRe[k];
+                filterIm[convolutionSize - k] = -chirpIm[k];
+            }
+            convolution.forward(filterRe, filterIm);
+            for (int k = 0; k < convolutionSize; k++) {
+                filterRe[k] /= convolutionSize;
+                filterIm[k] /= convolutionSize;
+            }
+        }
+    }
+
+    /**
+     * Calculates the forward transform, with exp(-2 pi i j k / n).
+     *
+     * @param re the real part
+     * @param im the imaginary part
+     */
+    void forward(double[] re, double[] im) {
+        if (reversed != null) {
+            radix2(re, im);
+        } else {
+            bluestein(re, im);
+        }
+    }
+
+    /**
+     * Calculates the inverse transform, with exp(2 pi i j k / n).
+     *
+     * @param re the real part
+     * @param im the imaginary part
+     */
+    void inverse(double[] re, double[] im) {
+        // The inverse is the conjugate of the forward transform of the conjugate
+        for (int i = 0; i < size; i++) {
+            im[i] = -im[i];
+        }
+        forward(re, im);
+        for (int i = 0; i < size; i++) {
+            im[i] = -im[i];
+        }
+    }
+
+    /**
+     * Calculates the forward transform of real data.
+     *
+     * @param data the real input
+     * @param re the real part of the transform
+     * @param im the imaginary part of the transform
+     */
+    void forwardReal(double[] data, double[] re, double[] im) {
+        if (size % 2 != 0) {
+            System.arraycopy(data, 0, re, 0, size);
+            forward(re, im);
+            return;
+        }
+
+        // Even and odd elements as the real and imaginary part
+        // of a complex transform of half the size
+        int half = size / 2;
+        double[] zRe = new double[half];
+        double[] zIm = new double[half];
+        for (int k = 0; k < half; k++) {
+            zRe[k] = data[2 * k];
+            zIm[k] = data[2 * k + 1];
+        }
+        of(half).forward(zRe, zIm);
+
+        for (int k = 0; k < half; k++) {
+            int conjugate = k == 0 ? 0 : half - k;
+            double a = zRe[k];
+            double b = zIm[k];
+            double c = zRe[conjugate];
+            double d = zIm[conjugate];
+            // Transform of the even elements
+            double evenRe = (a + c) / 2;
+            double evenIm = (b - d) / 2;
+            // Transform of the odd elements
+            double oddRe = (b + d) / 2;
+            double oddIm = -(a - c) / 2;
+            // Multiplied by exp(-2 pi i k / n)
+            double tRe = oddRe * cos[k] + oddIm * sin[k];
+            double tIm = oddIm * cos[k] - oddRe * sin[k];
+            re[k] = evenRe + tRe;
+            im[k] = evenIm + tIm;
+            re[k + half] = evenRe - tRe;
+            im[k + half] = evenIm - tIm;
+        }
+    }
+
+    private void radix2(double[] re, double[] im) {
+        for (int i = 1; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double tmp = re[i];
+                re[i] = re[j];
+                re[j] = tmp;
+                tmp = im[i];
+                im[i] = im[j];
+                im[j] = tmp;
+            }
+        }
+
+        for (int half = 1; half < size; half *= 2) {
+            int step = size / (2 * half);
+            for (int start = 0; start < size; start += 2 * half) {
+                for (int j = 0, k = 0; j < half; j++, k += step) {
+                    int a = start + j;
+                    int b = a + half;
+                    // Multiplied by exp(-2 pi i k / n)
+                    double tRe = re[b] * cos[k] + im[b] * sin[k];
+                    double tIm = im[b] * cos[k] - re[b] * sin[k];
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+            }
+        }
+    }
+
+    private void bluestein(double[] re, double[] im) {
+        int convolutionSize = convolution.size;
+        double[] aRe = new double[convolutionSize];
+        double[] aIm = new double[convolutionSize];
+        for (int k = 0; k < size; k++) {
+            aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+            aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+        }
+        convolution.forward(aRe, aIm);
+        for (int k = 0; k < convolutionSize; k++) {
+            double tRe = aRe[k] * filterRe[k] - aIm[k] * filterIm[k];
+            aIm[k] = aRe[k] * filterIm[k] + aIm[k] * filterRe[k];
+            aRe[k] = tRe;
+        }
+        convolution.inverse(aRe, aIm);
+        for (int k = 0; k < size; k++) {
+            re[k] = aRe[k] * chirpRe[k] - aIm[k] * chirpIm[k];
+            im[k] = aRe[k] * chirpIm[k] + aIm[k] * chirpRe[k];
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array;
+
+/**
+ * A list of doubles calculated element by element from one or two other
+ * lists of the same size, such as the element-wise operations of {@link ListMath}.
+ * <p>
+ * The elements are not stored: each access calculates the element from
+ * the arguments, which can themselves be the result of other operations.
+ * A chain of operations, such as {@code (a + b) * c - d}, forms a tree
+ * that is walked again at each access. {@link #toArrayDouble()} calculates
+ * all the elements in a single pass: the tree is evaluated a block
+ * at a time, each operation being a loop on primitive arrays that fit in
+ * the cache, and the result is stored in an {@link ArrayDouble}.
+ * Lists that are read more than once should be materialized first.
+ *
+ * @author carcassi
+ */
+public abstract class FusedListDouble extends ListDouble {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private final ListNumber arg1;
+    private final ListNumber arg2;
+    // Number of fused operations on the longest path to an argument
+    private final int depth;
+
+    /**
+     * An operation on the elements of one list.
+     *
+     * @param arg the argument
+     */
+    protected FusedListDouble(ListNumber arg) {
+        this(arg, null);
+    }
+
+    /**
+     * An operation on the elements of two lists of the same size.
+     *
+     * @param arg1 the first argument
+     * @param arg2 the second argument; null if the operation has only one argument
+     */
+    protected FusedListDouble(ListNumber arg1, ListNumber arg2) {
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.depth = 1 + Math.max(depthOf(arg1), depthOf(arg2));
+    }
+
+    private static int depthOf(ListNumber data) {
+        if (data instanceof FusedListDouble) {
+            return ((FusedListDouble) data).depth;
+        }
+        return 0;
+    }
+
+    /**
+     * Calculates a block of elements from the elements of the arguments.
+     * This must be the same calculation as {@link #getDouble(int) }. The output
+     * array can be the array of the first argument.
+     *
+     * @param values1 the elements of the first argument
+     * @param offset1 the index of the first element of the block in values1
+     * @param values2 the elements of the second argument; null if there is only one argument
+     * @param offset2 the index of the first element of the block in values2
+     * @param result where the result is written
+     * @param resultOffset the index of the first element of the block in result
+     * @param length the number of elements in the block
+     */
+    protected abstract void calculate(double[] values1, int offset1, double[] values2, int offset2,
+            double[] result, int resultOffset, int length);
+
+    /**
+     * Calculates all the elements and returns them in a new array.
+     *
+     * @return a read-only array with the elements of this list
+     */
+    public final ArrayDouble toArrayDouble() {
+        int size = size();
+        double[] result = new double[size];
+        double[][] buffers = new double[depth][Math.min(BLOCK_SIZE, size)];
+        for (int from = 0; from < size; from += BLOCK_SIZE) {
+            evaluate(from, Math.min(BLOCK_SIZE, size - from), result, from, buffers, 0);
+        }
+        return new ArrayDouble(result);
+    }
+
+    /**
+     * Writes the block of elements starting from the given index in the output
+     * array. The first argument is calculated in the output array, the second
+     * argument in the buffer for this level, and the arguments use the buffers
+     * of the levels below.
+     */
+    private void evaluate(int from, int length, double[] out, int outOffset, double[][] buffers, int level) {
+        double[] values1;
+        int offset1;
+        if (arg1 instanceof ArrayDouble) {
+            values1 = ((ArrayDouble) arg1).wrappedArray();
+            offset1 = from;
+        } else {
+            load(arg1, from, length, out, outOffset, buffers, level + 1);
+            values1 = out;
+            offset1 = outOffset;
+        }
+
+        double[] values2 = null;
+        int offset2 = 0;
+        if (arg2 instanceof ArrayDouble) {
+            values2 = ((ArrayDouble) arg2).wrappedArray();
+            offset2 = from;
+        } else if (arg2 != null) {
+            values2 = buffers[level];
+            load(arg2, from, length, values2, 0, buffers, level + 1);
+        }
+
+        calculate(values1, offset1, values2, offset2, out, outOffset, length);
+    }
+
+    private static void load(ListNumber data, int from, int length, double[] out, int outOffset, double[][] buffers, int level) {
+        if (data instanceof FusedListDouble) {
+            ((FusedListDouble) data).evaluate(from, length, out, outOffset, buffers, level);
+        } else {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = data.getDouble(from + i);
+            }
+        }
+    }
+
+}
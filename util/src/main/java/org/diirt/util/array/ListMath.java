@@ -9,6 +9,11 @@ import java.util.List;
 
 /**
  * Math operations defined on lists of numbers.
+ * <p>
+ * The element-wise operations return a {@link FusedListDouble}, which
+ * calculates the elements when accessed: chained operations are not
+ * calculated until the result is read, and can be materialized
+ * in a single pass with {@link FusedListDouble#toArrayDouble() }.
  *
  * @author carcassi
  * @author Mark Davis (NSCL/FRIB)
@@ -100,7 +105,7 @@ public class ListMath {
     public static ListDouble rescale(final ListNumber data, final double factor, final double offset) {
         if (factor == 1.0)
             return add(data, offset);
-        return new ListDouble() {
+        return new FusedListDouble(data) {
 
             @Override
             public double getDouble(int index) {
@@ -111,6 +116,14 @@ public class ListMath {
             public int size() {
                 return data.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = factor * values1[offset1 + i] + offset;
+                }
+            }
         };
     }
 
@@ -123,7 +136,7 @@ public class ListMath {
      * @return result[x] = numerator / data[x] + offset
      */
     public static ListDouble inverseRescale(final ListNumber data, final double numerator, final double offset) {
-        return new ListDouble() {
+        return new FusedListDouble(data) {
 
             @Override
             public double getDouble(int index) {
@@ -134,6 +147,14 @@ public class ListMath {
             public int size() {
                 return data.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = numerator / values1[offset1 + i] + offset;
+                }
+            }
         };
     }
 
@@ -145,7 +166,7 @@ public class ListMath {
      * @return result[x] = data[x] ** expon
      */
     public static ListDouble pow(final ListNumber data, final double expon) {
-        return new ListDouble() {
+        return new FusedListDouble(data) {
 
             @Override
             public double getDouble(int index) {
@@ -156,6 +177,14 @@ public class ListMath {
             public int size() {
                 return data.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = Math.pow(values1[offset1 + i], expon);
+                }
+            }
         };
     }
 
@@ -167,7 +196,7 @@ public class ListMath {
      * @return result[x] = base ** expons[x]
      */
     public static ListDouble pow(final double base, final ListNumber expons) {
-        return new ListDouble() {
+        return new FusedListDouble(expons) {
 
             @Override
             public double getDouble(int index) {
@@ -178,6 +207,14 @@ public class ListMath {
             public int size() {
                 return expons.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = Math.pow(base, values1[offset1 + i]);
+                }
+            }
         };
     }
 
@@ -189,7 +226,7 @@ public class ListMath {
      * @return result[x] = data[x] + offset
      */
     public static ListDouble add(final ListNumber data, final double offset) {
-        return new ListDouble() {
+        return new FusedListDouble(data) {
 
             @Override
             public double getDouble(int index) {
@@ -200,6 +237,14 @@ public class ListMath {
             public int size() {
                 return data.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = values1[offset1 + i] + offset;
+                }
+            }
         };
     }
 
@@ -214,7 +259,7 @@ public class ListMath {
     public static ListDouble add(final ListNumber data1, final ListNumber data2) {
         if (data1.size() != data2.size())
             throw new IllegalArgumentException("Can't sum ListNumbers of different size (" + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new FusedListDouble(data1, data2) {
 
             @Override
             public double getDouble(int index) {
@@ -225,6 +270,14 @@ public class ListMath {
             public int size() {
                 return data1.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = values1[offset1 + i] + values2[offset2 + i];
+                }
+            }
         };
     }
 
@@ -239,7 +292,7 @@ public class ListMath {
     public static ListDouble subtract(final ListNumber data1, final ListNumber data2) {
         if (data1.size() != data2.size())
             throw new IllegalArgumentException("Can't subtract ListNumbers of different size (" + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new FusedListDouble(data1, data2) {
 
             @Override
             public double getDouble(int index) {
@@ -250,6 +303,14 @@ public class ListMath {
             public int size() {
                 return data1.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = values1[offset1 + i] - values2[offset2 + i];
+                }
+            }
         };
     }
 
@@ -266,7 +327,7 @@ public class ListMath {
             throw new IllegalArgumentException(
                         "Can't do element-wise mult on ListNumbers of different size ("
                      + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new FusedListDouble(data1, data2) {
 
             @Override
             public double getDouble(int index) {
@@ -277,6 +338,14 @@ public class ListMath {
             public int size() {
                 return data1.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = values1[offset1 + i] * values2[offset2 + i];
+                }
+            }
         };
     }
 
@@ -293,7 +362,7 @@ public class ListMath {
             throw new IllegalArgumentException(
                         "Can't do element-wise mult on ListNumbers of different size ("
                      + data1.size() + " - " + data2.size() + ")");
-        return new ListDouble() {
+        return new FusedListDouble(data1, data2) {
 
             @Override
             public double getDouble(int index) {
@@ -304,11 +373,23 @@ public class ListMath {
             public int size() {
                 return data1.size();
             }
+
+            @Override
+            protected void calculate(double[] values1, int offset1, double[] values2, int offset2,
+                    double[] result, int resultOffset, int length) {
+                for (int i = 0; i < length; i++) {
+                    result[resultOffset + i] = values1[offset1 + i] / values2[offset2 + i];
+                }
+            }
         };
     }
 
     /**
-     * XXX: This is just a prototype
+     * Calculates the discrete Fourier transform directly from its definition,
+     * in O(n<sup>2</sup>). This is kept as a reference: use
+     * {@link #fft(org.diirt.util.array.ListNumber, org.diirt.util.array.ListNumber) },
+     * which calculates the same transform in O(n log n).
+     *
      * @param x real part
      * @param y imaginary part
      * @return the real and imaginary part of the transform
@@ -344,4 +425,134 @@ public class ListMath {
             return Arrays.<ListNumber>asList(new ArrayDouble(resY), new ArrayDouble(resX));
         }
     }
+
+    /**
+     * Calculates the discrete Fourier transform of the complex data, divided
+     * by the number of elements. This is the same transform as
+     * {@link #dft(org.diirt.util.array.ListNumber, org.diirt.util.array.ListNumber) },
+     * calculated in O(n log n) for any size.
+     *
+     * @param x real part
+     * @param y imaginary part
+     * @return the real and imaginary part of the transform
+     */
+    public static List<ListNumber> fft(ListNumber x, ListNumber y) {
+        if (x.size() != y.size()) {
+            throw new IllegalArgumentException("Real and imaginary part must be of the same length");
+        }
+
+        double[] resX = CollectionNumbers.doubleArrayCopyOf(x);
+        double[] resY = CollectionNumbers.doubleArrayCopyOf(y);
+        if (resX.length != 0) {
+            FftPlan.of(resX.length).forward(resX, resY);
+        }
+        return normalized(resX, resY, resX.length);
+    }
+
+    /**
+     * Calculates the discrete Fourier transform of the real data, divided
+     * by the number of elements. The real input of even size is calculated
+     * with a complex transform of half the size.
+     *
+     * @param x the real data
+     * @return the real and imaginary part of the transform
+     */
+    public static List<ListNumber> fft(ListNumber x) {
+        int size = x.size();
+        double[] resX = new double[size];
+        double[] resY = new double[size];
+        if (size != 0) {
+            FftPlan.of(size).forwardReal(CollectionNumbers.doubleArrayCopyOf(x), resX, resY);
+        }
+        return normalized(resX, resY, size);
+    }
+
+    /**
+     * Calculates the inverse of {@link #fft(org.diirt.util.array.ListNumber, org.diirt.util.array.ListNumber) }:
+     * the transform is not divided by the number of elements, so that the
+     * inverse of the transform returns the original data.
+     *
+     * @param x real part
+     * @param y imaginary part
+     * @return the real and imaginary part of the inverse transform
+     */
+    public static List<ListNumber> ifft(ListNumber x, ListNumber y) {
+        if (x.size() != y.size()) {
+            throw new IllegalArgumentException("Real and imaginary part must be of the same length");
+        }
+
+        double[] resX = CollectionNumbers.doubleArrayCopyOf(x);
+        double[] resY = CollectionNumbers.doubleArrayCopyOf(y);
+        if (resX.length != 0) {
+            FftPlan.of(resX.length).inverse(resX, resY);
+        }
+        return Arrays.<ListNumber>asList(new ArrayDouble(resX), new ArrayDouble(resY));
+    }
+
+    private static List<ListNumber> normalized(double[] resX, double[] resY, int size) {
+        for (int i = 0; i < size; i++) {
+            resX[i] = resX[i] / size;
+            resY[i] = resY[i] / size;
+        }
+        return Arrays.<ListNumber>asList(new ArrayDouble(resX), new ArrayDouble(resY));
+    }
+
+    /**
+     * Calculates the power spectrum of the real data: the square modulus
+     * of the {@link #fft(org.diirt.util.array.ListNumber) } for the
+     * frequencies from 0 to n/2. The other frequencies of a real input
+     * are the complex conjugate, and are not returned.
+     *
+     * @param x the real data
+     * @return the power for the n/2 + 1 non-negative frequencies
+     */
+    public static ListDouble powerSpectrum(ListNumber x) {
+        List<ListNumber> transform = fft(x);
+        ListNumber re = transform.get(0);
+        ListNumber im = transform.get(1);
+        int size = x.size() == 0 ? 0 : x.size() / 2 + 1;
+        double[] power = new double[size];
+        for (int i = 0; i < size; i++) {
+            double a = re.getDouble(i);
+            double b = im.getDouble(i);
+            power[i] = a * a + b * b;
+        }
+        return new ArrayDouble(power);
+    }
+
+    /**
+     * Returns the Hann window of the given size: a raised cosine that is
+     * zero at both ends.
+     *
+     * @param size the number of elements
+     * @return w[j] = 0.5 - 0.5 cos(2 pi j / (size - 1))
+     */
+    public static ListDouble hannWindow(int size) {
+        return cosineWindow(size, 0.5, 0.5);
+    }
+
+    /**
+     * Returns the Hamming window of the given size: a raised cosine that
+     * does not go to zero at the ends.
+     *
+     * @param size the number of elements
+     * @return w[j] = 0.54 - 0.46 cos(2 pi j / (size - 1))
+     */
+    public static ListDouble hammingWindow(int size) {
+        return cosineWindow(size, 0.54, 0.46);
+    }
+
+    private static ListDouble cosineWindow(int size, double a, double b) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size can't be negative (was " + size + ")");
+        }
+        if (size == 1) {
+            return new ArrayDouble(1.0);
+        }
+        double[] window = new double[size];
+        for (int j = 0; j < size; j++) {
+            window[j] = a - b * Math.cos(2 * Math.PI * j / (size - 1));
+        }
+        return new ArrayDouble(window);
+    }
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ * @author carcassi
+ */
+public class FusedListDoubleTest {
+
+    private static double[] random(int size, int seed) {
+        double[] data = new double[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.sin(seed * 31.0 + i) * 10;
+        }
+        return data;
+    }
+
+    @Test
+    public void toArrayDouble1() {
+        ArrayDouble a = new ArrayDouble(1, 2, 3);
+        ArrayDouble b = new ArrayDouble(4, 5, 6);
+        FusedListDouble result = (FusedListDouble) ListMath.subtract(ListMath.multiply(ListMath.add(a, b), b), a);
+        ArrayDouble array = result.toArrayDouble();
+        assertThat(CollectionNumbers.doubleArrayCopyOf(array), equalTo(new double[] {19, 33, 51}));
+    }
+
+    @Test
+    public void toArrayDouble2() {
+        // Same elements as the lazy access, on sizes that are not a multiple
+        // of a block and with arguments that are not arrays of doubles
+        for (int size : new int[] {0, 1, 1023, 1024, 1025, 5000}) {
+            ArrayDouble a = new ArrayDouble(random(size, 1));
+            ArrayDouble b = new ArrayDouble(random(size, 2));
+            ListNumber c = ListMath.limit(new ArrayDouble(random(size + 2, 3)), 1, size + 1);
+            int[] ints = new int[size];
+            for (int i = 0; i < size; i++) {
+                ints[i] = i % 7 + 1;
+            }
+            ArrayInt d = new ArrayInt(ints);
+            ListDouble result = ListMath.subtract(ListMath.multiply(ListMath.add(a, b), c),
+                    ListMath.divide(ListMath.rescale(d, 2.0, 1.0), ListMath.pow(ListMath.add(a, 0.5), 2.0)));
+            result = ListMath.add(ListMath.inverseRescale(result, 3.0, -1.0), ListMath.pow(1.5, b));
+            ArrayDouble array = ((FusedListDouble) result).toArrayDouble();
+            assertThat(array.size(), equalTo(size));
+            for (int i = 0; i < size; i++) {
+                assertThat(array.getDouble(i), equalTo(result.getDouble(i)));
+            }
+        }
+    }
+
+    @Test
+    public void toArrayDouble3() {
+        // Same results as the unfused operations
+        ArrayDouble a = new ArrayDouble(random(3000, 4));
+        ArrayDouble b = new ArrayDouble(random(3000, 5));
+        ArrayDouble array = ((FusedListDouble) ListMath.multiply(ListMath.rescale(a, 2.5, -1.0), b)).toArrayDouble();
+        for (int i = 0; i < a.size(); i++) {
+            assertThat(array.getDouble(i), equalTo((2.5 * a.getDouble(i) - 1.0) * b.getDouble(i)));
+        }
+    }
+
+}
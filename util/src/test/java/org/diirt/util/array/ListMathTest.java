@@ -61,4 +61,85 @@ public class ListMathTest {
         ListDouble y = new ArrayDouble(0, 0, 0, 0, 0, 0, 0, 0);
         List<ListNumber> res = ListMath.dft(x, y);
     }
+
+    private static double[] random(int size, int seed) {
+        double[] data = new double[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.sin(seed * 31.0 + i * i) * 10;
+        }
+        return data;
+    }
+
+    private static void assertEquals(ListNumber expected, ListNumber actual, double delta) {
+        assertThat(actual.size(), equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.getDouble(i), closeTo(expected.getDouble(i), delta));
+        }
+    }
+
+    @Test
+    public void fft1() {
+        // Same as the transform from the definition, for radix-2 and Bluestein sizes
+        for (int size : new int[] {0, 1, 2, 3, 5, 8, 12, 16, 100, 127, 1024}) {
+            ListDouble x = new ArrayDouble(random(size, 1));
+            ListDouble y = new ArrayDouble(random(size, 2));
+            List<ListNumber> expected = ListMath.dft(x, y);
+            List<ListNumber> actual = ListMath.fft(x, y);
+            assertEquals(expected.get(0), actual.get(0), 1e-10);
+            assertEquals(expected.get(1), actual.get(1), 1e-10);
+        }
+    }
+
+    @Test
+    public void fft2() {
+        // Real input: same as the complex transform
+        for (int size : new int[] {0, 1, 2, 3, 6, 8, 10, 100, 127, 1000, 1024}) {
+            ListDouble x = new ArrayDouble(random(size, 3));
+            List<ListNumber> expected = ListMath.fft(x, new ArrayDouble(new double[size]));
+            List<ListNumber> actual = ListMath.fft(x);
+            assertEquals(expected.get(0), actual.get(0), 1e-12);
+            assertEquals(expected.get(1), actual.get(1), 1e-12);
+        }
+    }
+
+    @Test
+    public void fft3() {
+        List<ListNumber> res = ListMath.fft(new ArrayDouble(0, 1.0, 0, -1.0, 0, 1, 0, -1));
+        assertEquals(new ArrayDouble(0, 0, 0, 0, 0, 0, 0, 0), res.get(0), 1e-15);
+        assertEquals(new ArrayDouble(0, 0, -0.5, 0, 0, 0, 0.5, 0), res.get(1), 1e-15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fft4() {
+        ListMath.fft(new ArrayDouble(1, 2, 3), new ArrayDouble(1, 2));
+    }
+
+    @Test
+    public void ifft1() {
+        // The inverse returns the original data
+        for (int size : new int[] {0, 1, 7, 64, 100}) {
+            ListDouble x = new ArrayDouble(random(size, 4));
+            ListDouble y = new ArrayDouble(random(size, 5));
+            List<ListNumber> transform = ListMath.fft(x, y);
+            List<ListNumber> inverse = ListMath.ifft(transform.get(0), transform.get(1));
+            assertEquals(x, inverse.get(0), 1e-12);
+            assertEquals(y, inverse.get(1), 1e-12);
+        }
+    }
+
+    @Test
+    public void powerSpectrum1() {
+        ListDouble power = ListMath.powerSpectrum(new ArrayDouble(0, 1.0, 0, -1.0, 0, 1, 0, -1));
+        assertEquals(new ArrayDouble(0, 0, 0.25, 0, 0), power, 1e-15);
+        assertThat(ListMath.powerSpectrum(new ArrayDouble(1, 1, 1)).size(), equalTo(2));
+        assertThat(ListMath.powerSpectrum(new ArrayDouble()).size(), equalTo(0));
+    }
+
+    @Test
+    public void window1() {
+        assertEquals(new ArrayDouble(0, 0.5, 1, 0.5, 0), ListMath.hannWindow(5), 1e-15);
+        assertEquals(new ArrayDouble(0.08, 0.54, 1, 0.54, 0.08), ListMath.hammingWindow(5), 1e-15);
+        assertEquals(new ArrayDouble(1), ListMath.hannWindow(1), 0);
+        assertThat(ListMath.hammingWindow(0).size(), equalTo(0));
+    }
 }
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2010-18 diirt developers. See COPYRIGHT.TXT
+ * All rights reserved. Use is subject to license terms. See LICENSE.TXT
+ */
+package org.diirt.util.array.performance;
+
+import java.util.List;
+import java.util.Random;
+import org.diirt.util.array.ArrayDouble;
+import org.diirt.util.array.ListMath;
+import org.diirt.util.array.ListNumber;
+
+/**
+ * Compares the transform from the definition with the fast transform,
+ * for radix-2 and other sizes, and complex and real input.
+ *
+ * @author carcassi
+ */
+public class FftBenchmark {
+
+    private static ArrayDouble zeros(int size) {
+        return new ArrayDouble(new double[size]);
+    }
+
+    public static void main(String[] args) {
+        System.out.println(System.getProperty("java.version"));
+
+        Random rand = new Random();
+        for (int nSamples : new int[] {1000, 1024, 4096, 65536, 100000}) {
+            double[] doubleArray = new double[nSamples];
+            for (int i = 0; i < doubleArray.length; i++) {
+                doubleArray[i] = rand.nextGaussian();
+            }
+            ArrayDouble data = new ArrayDouble(doubleArray);
+
+            // The transform from the definition is too slow on large arrays
+            if (nSamples <= 4096) {
+                profile("dft", data, 20, false, true);
+            }
+            profile("fft", data, 2000000 / nSamples, false, false);
+            profile("fft real", data, 2000000 / nSamples, true, false);
+        }
+    }
+
+    private static void profile(String name, ArrayDouble data, int nIterations, boolean real, boolean dft) {
+        ArrayDouble imaginary = zeros(data.size());
+        // Warm up
+        for (int i = 0; i < nIterations; i++) {
+            transform(data, imaginary, real, dft);
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < nIterations; i++) {
+            List<ListNumber> result = transform(data, imaginary, real, dft);
+            if (result.get(0).size() != data.size()) {
+                System.out.println("Unexpected size " + result.get(0).size());
+            }
+        }
+        long stopTime = System.nanoTime();
+
+        System.out.println(name + " on " + data.size() + " samples: " + (stopTime - startTime) / nIterations / 1000 + " us/iter");
+    }
+
+    private static List<ListNumber> transform(ArrayDouble data, ArrayDouble imaginary, boolean real, boolean dft) {
+        if (dft) {
+            return ListMath.dft(data, imaginary);
+        } else if (real) {
+            return ListMath.fft(data);
+        } else {
+            return ListMath.fft(data, imaginary);
+        }
+    }
+}